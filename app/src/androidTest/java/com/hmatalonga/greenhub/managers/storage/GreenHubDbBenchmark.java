@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2016 Hugo Matalonga & João Paulo Fernandes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmatalonga.greenhub.managers.storage;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.hmatalonga.greenhub.Config;
+import com.hmatalonga.greenhub.models.data.BatterySession;
+import com.hmatalonga.greenhub.models.data.BatteryUsage;
+import com.hmatalonga.greenhub.models.data.Sample;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import io.realm.OrderedRealmCollectionSnapshot;
+import io.realm.Realm;
+import io.realm.RealmConfiguration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Benchmark of the bulk operations of the database on 100k-row tables, against the
+ * original per-object loops. Runs on an in-memory Realm.
+ */
+@RunWith(AndroidJUnit4.class)
+public class GreenHubDbBenchmark {
+
+    private static final String TAG = "GreenHubDbBenchmark";
+
+    private static final int ROWS = 100000;
+
+    // Acknowledged ids deleted at a time, as many as the retention task deletes
+    private static final int ID_SET_SIZE = Config.SAMPLES_MAX_STORAGE_NUM;
+
+    private Realm mRealm;
+
+    private GreenHubDb mDatabase;
+
+    @Before
+    public void setUp() {
+        RealmConfiguration config = new RealmConfiguration.Builder()
+                .name("benchmark.realm")
+                .inMemory()
+                .build();
+        mRealm = Realm.getInstance(config);
+        mDatabase = new GreenHubDb(mRealm);
+    }
+
+    @After
+    public void tearDown() {
+        mRealm.close();
+    }
+
+    @Test
+    public void deleteUsagesByRange() throws Exception {
+        insertUsages();
+        long start = System.nanoTime();
+        mRealm.beginTransaction();
+        OrderedRealmCollectionSnapshot<BatteryUsage> usages = mRealm.where(BatteryUsage.class)
+                .lessThan("timestamp", ROWS / 2)
+                .findAll()
+                .createSnapshot();
+        for (BatteryUsage usage : usages) {
+            usage.deleteFromRealm();
+        }
+        mRealm.commitTransaction();
+        long legacy = System.nanoTime() - start;
+        assertEquals(ROWS / 2, mDatabase.count(BatteryUsage.class));
+
+        mRealm.beginTransaction();
+        mRealm.delete(BatteryUsage.class);
+        mRealm.commitTransaction();
+
+        insertUsages();
+        start = System.nanoTime();
+        long deleted = mDatabase.delete(BatteryUsage.class, Long.MIN_VALUE, ROWS / 2);
+        long bulk = System.nanoTime() - start;
+        assertEquals(ROWS / 2, deleted);
+        assertEquals(ROWS / 2, mDatabase.count(BatteryUsage.class));
+
+        Log.i(TAG, ROWS / 2 + " usages, loop: " + legacy / 1000000
+                + " ms, range delete: " + bulk / 1000000 + " ms");
+    }
+
+    @Test
+    public void aggregateUsagesByRange() throws Exception {
+        insertUsages();
+
+        long start = System.nanoTime();
+        long count = mDatabase.count(BatteryUsage.class, 1000, 2000);
+        Number min = mDatabase.min(BatteryUsage.class, "level", 1000, 2000);
+        Number max = mDatabase.max(BatteryUsage.class, "timestamp", 1000, 2000);
+        long bulk = System.nanoTime() - start;
+
+        assertEquals(1000, count);
+        assertEquals(0, min.intValue());
+        assertEquals(1999, max.longValue());
+
+        Log.i(TAG, ROWS + " usages, count/min/max: " + bulk / 1000 + " us");
+    }
+
+    @Test
+    public void deleteSamplesById() throws Exception {
+        insertSamples();
+        long start = System.nanoTime();
+        for (int id = 0; id < ID_SET_SIZE; id++) {
+            // One transaction per acknowledged sample, as the upload used to do
+            mRealm.beginTransaction();
+            Sample sample = mRealm.where(Sample.class).equalTo("id", id).findFirst();
+            if (sample != null) {
+                SampleDelta.promote(mRealm, sample);
+                sample.deleteFromRealm();
+            }
+            mRealm.commitTransaction();
+        }
+        long legacy = System.nanoTime() - start;
+
+        mRealm.beginTransaction();
+        mRealm.delete(Sample.class);
+        mRealm.commitTransaction();
+
+        insertSamples();
+        // Ends in the middle of a keyframe interval, so the first kept sample is promoted
+        int[] ids = new int[ID_SET_SIZE + Config.SAMPLE_KEYFRAME_INTERVAL / 2];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = i;
+        }
+        start = System.nanoTime();
+        long deleted = mDatabase.delete(Sample.class, ids);
+        long bulk = System.nanoTime() - start;
+
+        assertEquals(ids.length, deleted);
+        assertEquals(ROWS - ids.length, mDatabase.count(Sample.class));
+        Sample first = mRealm.where(Sample.class).sort("timestamp").findFirst();
+        assertTrue(first != null && first.isKeyframe);
+        assertEquals(Config.SAMPLE_KEYFRAME_INTERVAL / 2 - 1,
+                mRealm.where(Sample.class).equalTo("keyframeId", first.id).count());
+
+        Log.i(TAG, ID_SET_SIZE + " samples, one by one: " + legacy / 1000000
+                + " ms, id set delete: " + bulk / 1000000 + " ms");
+    }
+
+    private void insertUsages() {
+        List<BatteryUsage> usages = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            BatteryUsage usage = new BatteryUsage();
+            usage.id = i;
+            usage.timestamp = i;
+            usage.level = i % 100;
+            usages.add(usage);
+        }
+
+        long start = System.nanoTime();
+        mDatabase.insert(
+                Collections.<Sample>emptyList(),
+                usages,
+                Collections.<BatterySession>emptyList()
+        );
+        Log.i(TAG, ROWS + " usages, bulk insert: "
+                + (System.nanoTime() - start) / 1000000 + " ms");
+    }
+
+    private void insertSamples() {
+        List<Sample> samples = new ArrayList<>(ROWS);
+        int keyframe = 0;
+        for (int i = 0; i < ROWS; i++) {
+            Sample sample = new Sample();
+            sample.id = i;
+            sample.timestamp = i;
+            if (i % Config.SAMPLE_KEYFRAME_INTERVAL == 0) {
+                sample.isKeyframe = true;
+                keyframe = i;
+            } else {
+                sample.keyframeId = keyframe;
+            }
+            samples.add(sample);
+        }
+
+        // Already encoded, so they are inserted as they are
+        mRealm.beginTransaction();
+        mRealm.insert(samples);
+        mRealm.commitTransaction();
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) 2016 Hugo Matalonga & João Paulo Fernandes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmatalonga.greenhub.managers.storage;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import com.hmatalonga.greenhub.models.data.AppPermission;
+import com.hmatalonga.greenhub.models.data.AppSignature;
+import com.hmatalonga.greenhub.models.data.BatterySession;
+import com.hmatalonga.greenhub.models.data.BatteryUsage;
+import com.hmatalonga.greenhub.models.data.LocationProvider;
+import com.hmatalonga.greenhub.models.data.ProcessInfo;
+import com.hmatalonga.greenhub.models.data.Sample;
+import com.hmatalonga.greenhub.models.data.SensorDetails;
+import com.hmatalonga.greenhub.models.data.Settings;
+import com.hmatalonga.greenhub.models.data.StorageDetails;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import io.realm.Realm;
+import io.realm.RealmConfiguration;
+import io.realm.RealmList;
+import io.realm.RealmResults;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that samples stored as deltas are rebuilt as they were taken, also after their
+ * keyframe is deleted. Runs on an in-memory Realm.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SampleDeltaTest {
+
+    private static final int SAMPLES = 5;
+
+    private Realm mRealm;
+
+    private GreenHubDb mDatabase;
+
+    @Before
+    public void setUp() {
+        RealmConfiguration config = new RealmConfiguration.Builder()
+                .name("delta.realm")
+                .inMemory()
+                .build();
+        mRealm = Realm.getInstance(config);
+        mDatabase = new GreenHubDb(mRealm);
+        StringDictionary.reset();
+    }
+
+    @After
+    public void tearDown() {
+        mRealm.close();
+        StringDictionary.reset();
+    }
+
+    @Test
+    public void decodesWhatWasEncoded() throws Exception {
+        insertSamples();
+
+        RealmResults<Sample> stored = mRealm.where(Sample.class).sort("timestamp").findAll();
+        assertEquals(SAMPLES, stored.size());
+        assertTrue(stored.get(0).isKeyframe);
+        for (int i = 1; i < SAMPLES; i++) {
+            // Measured fields differ between samples, the static ones are still inherited
+            assertFalse(stored.get(i).isKeyframe);
+            assertTrue(stored.get(i).deltaMask != 0);
+        }
+
+        for (int i = 0; i < SAMPLES; i++) {
+            assertSampleEquals(sample(i), SampleDelta.decode(mRealm, stored.get(i)));
+        }
+    }
+
+    @Test
+    public void deltasSurviveDeletionOfTheirKeyframe() throws Exception {
+        insertSamples();
+
+        assertEquals(1, mDatabase.delete(Sample.class, Long.MIN_VALUE, timestamp(1)));
+
+        RealmResults<Sample> stored = mRealm.where(Sample.class).sort("timestamp").findAll();
+        assertEquals(SAMPLES - 1, stored.size());
+        assertTrue(stored.get(0).isKeyframe);
+        for (int i = 1; i < SAMPLES; i++) {
+            assertSampleEquals(sample(i), SampleDelta.decode(mRealm, stored.get(i - 1)));
+        }
+    }
+
+    private void insertSamples() {
+        List<Sample> samples = new ArrayList<>();
+        for (int i = 0; i < SAMPLES; i++) {
+            samples.add(sample(i));
+        }
+        mDatabase.insert(samples, Collections.<BatteryUsage>emptyList(),
+                Collections.<BatterySession>emptyList());
+    }
+
+    private static long timestamp(int i) {
+        return 1000 + i;
+    }
+
+    /**
+     * Builds sample i, equal on every call. Static fields are the same for every sample,
+     * measured ones depend on i.
+     */
+    private static Sample sample(int i) {
+        Sample sample = new Sample();
+        sample.id = i + 1;
+        sample.timestamp = timestamp(i);
+        sample.batteryLevel = 0.5 + i / 100.0;
+        sample.features = new RealmList<>();
+
+        sample.sensorDetailsList = new RealmList<>();
+        for (int s = 0; s < 2; s++) {
+            SensorDetails sensor = new SensorDetails();
+            sensor.id = s;
+            sensor.name = "Sensor " + s;
+            sensor.vendor = "Vendor";
+            sensor.stringType = "android.sensor.type" + s;
+            sensor.codeType = s + 1;
+            sensor.maximumRange = 10.5f;
+            sensor.power = 0.25f;
+            sensor.isWakeUpSensor = s == 0;
+            sensor.frequencyOfUse = i * 10 + s;
+            sensor.iniTimestamp = 100 + i;
+            sensor.endTimestamp = 200 + i;
+            sample.sensorDetailsList.add(sensor);
+        }
+
+        sample.locationProviders = new RealmList<>();
+        sample.locationProviders.add(new LocationProvider("gps"));
+        sample.locationProviders.add(new LocationProvider("network"));
+
+        sample.settings = new Settings();
+        sample.settings.bluetoothEnabled = true;
+        sample.settings.developerMode = 1;
+
+        sample.storageDetails = new StorageDetails();
+        sample.storageDetails.total = 32000;
+        sample.storageDetails.totalSystem = 4000;
+        sample.storageDetails.free = 16000 - i;
+        sample.storageDetails.freeSystem = 1000 - i;
+
+        sample.processInfos = new RealmList<>();
+        ProcessInfo process = new ProcessInfo();
+        process.processId = 100 + i;
+        process.name = "com.example.app";
+        process.importance = "Foreground app";
+        process.versionCode = 3;
+        process.appPermissions = new RealmList<>();
+        process.appPermissions.add(new AppPermission("android.permission.INTERNET"));
+        process.appSignatures = new RealmList<>();
+        process.appSignatures.add(new AppSignature("0a1b2c"));
+        sample.processInfos.add(process);
+
+        return sample;
+    }
+
+    private static void assertSampleEquals(Sample expected, Sample actual) {
+        assertEquals(expected.id, actual.id);
+        assertEquals(expected.timestamp, actual.timestamp);
+        assertEquals(expected.batteryLevel, actual.batteryLevel, 0);
+
+        assertEquals(expected.sensorDetailsList.size(), actual.sensorDetailsList.size());
+        for (int i = 0; i < expected.sensorDetailsList.size(); i++) {
+            SensorDetails x = expected.sensorDetailsList.get(i);
+            SensorDetails y = actual.sensorDetailsList.get(i);
+            assertEquals(x.id, y.id);
+            assertEquals(x.name, y.name);
+            assertEquals(x.vendor, y.vendor);
+            assertEquals(x.stringType, y.stringType);
+            assertEquals(x.codeType, y.codeType);
+            assertEquals(x.maximumRange, y.maximumRange, 0);
+            assertEquals(x.power, y.power, 0);
+            assertEquals(x.isWakeUpSensor, y.isWakeUpSensor);
+            assertEquals(x.frequencyOfUse, y.frequencyOfUse);
+            assertEquals(x.iniTimestamp, y.iniTimestamp);
+            assertEquals(x.endTimestamp, y.endTimestamp);
+        }
+
+        assertEquals(expected.locationProviders.size(), actual.locationProviders.size());
+        for (int i = 0; i < expected.locationProviders.size(); i++) {
+            assertEquals(expected.locationProviders.get(i).provider,
+                    actual.locationProviders.get(i).provider);
+        }
+
+        assertEquals(expected.settings.bluetoothEnabled, actual.settings.bluetoothEnabled);
+        assertEquals(expected.settings.developerMode, actual.settings.developerMode);
+
+        assertEquals(expected.storageDetails.total, actual.storageDetails.total);
+        assertEquals(expected.storageDetails.totalSystem, actual.storageDetails.totalSystem);
+        assertEquals(expected.storageDetails.free, actual.storageDetails.free);
+        assertEquals(expected.storageDetails.freeSystem, actual.storageDetails.freeSystem);
+
+        assertEquals(expected.processInfos.size(), actual.processInfos.size());
+        for (int i = 0; i < expected.processInfos.size(); i++) {
+            ProcessInfo x = expected.processInfos.get(i);
+            ProcessInfo y = actual.processInfos.get(i);
+            assertEquals(x.processId, y.processId);
+            assertEquals(x.name, y.name);
+            assertEquals(x.importance, y.importance);
+            assertEquals(x.appPermissions.size(), y.appPermissions.size());
+            for (int p = 0; p < x.appPermissions.size(); p++) {
+                assertEquals(x.appPermissions.get(p).permission,
+                        y.appPermissions.get(p).permission);
+            }
+            assertEquals(x.appSignatures.size(), y.appSignatures.size());
+            for (int s = 0; s < x.appSignatures.size(); s++) {
+                assertEquals(x.appSignatures.get(s).signature,
+                        y.appSignatures.get(s).signature);
+            }
+        }
+    }
+}
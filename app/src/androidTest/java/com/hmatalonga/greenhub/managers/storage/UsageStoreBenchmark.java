@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2016 Hugo Matalonga & João Paulo Fernandes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmatalonga.greenhub.managers.storage;
+
+import android.content.Intent;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.hmatalonga.greenhub.models.data.BatteryDetails;
+import com.hmatalonga.greenhub.models.data.BatteryUsage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import io.realm.Realm;
+import io.realm.RealmConfiguration;
+import io.realm.RealmResults;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Benchmark of the usage store against Realm, for the append rate and the scan of the
+ * five days shown by the charts.
+ */
+@RunWith(AndroidJUnit4.class)
+public class UsageStoreBenchmark {
+
+    private static final String TAG = "UsageStoreBenchmark";
+
+    private static final long DAY = 86400000;
+
+    private static final int APPENDS = 10000;
+
+    // One usage every 10s
+    private static final int INTERVAL = 10000;
+
+    private static final int ROWS = (int) (5 * DAY / INTERVAL);
+
+    private File mDirectory;
+
+    private Realm mRealm;
+
+    @Before
+    public void setUp() {
+        mDirectory = new File(
+                InstrumentationRegistry.getTargetContext().getCacheDir(),
+                "usage-benchmark"
+        );
+        deleteDirectory();
+
+        RealmConfiguration config = new RealmConfiguration.Builder()
+                .name("usage-benchmark.realm")
+                .build();
+        Realm.deleteRealm(config);
+        mRealm = Realm.getInstance(config);
+    }
+
+    @After
+    public void tearDown() {
+        RealmConfiguration config = mRealm.getConfiguration();
+        mRealm.close();
+        Realm.deleteRealm(config);
+        deleteDirectory();
+    }
+
+    @Test
+    public void appendRate() throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < APPENDS; i++) {
+            // One transaction per usage, as each battery event is stored
+            mRealm.beginTransaction();
+            mRealm.insert(usage(i, (long) i * INTERVAL));
+            mRealm.commitTransaction();
+        }
+        long realm = System.nanoTime() - start;
+
+        UsageStore store = new UsageStore(mDirectory, 8192);
+        start = System.nanoTime();
+        for (int i = 0; i < APPENDS; i++) {
+            store.append(usage(i, (long) i * INTERVAL));
+        }
+        store.sync();
+        long mapped = System.nanoTime() - start;
+
+        assertEquals(APPENDS, store.count());
+        Log.i(TAG, APPENDS + " appends, realm: " + realm / APPENDS / 1000
+                + " us/usage, store: " + mapped / APPENDS / 1000 + " us/usage");
+    }
+
+    @Test
+    public void scanFiveDays() throws Exception {
+        List<BatteryUsage> usages = new ArrayList<>(ROWS);
+        UsageStore store = new UsageStore(mDirectory, 8192);
+        for (int i = 0; i < ROWS; i++) {
+            BatteryUsage usage = usage(i, (long) i * INTERVAL);
+            usages.add(usage);
+            store.append(usage);
+        }
+        mRealm.beginTransaction();
+        mRealm.insert(usages);
+        mRealm.commitTransaction();
+
+        long to = (long) ROWS * INTERVAL;
+
+        long start = System.nanoTime();
+        RealmResults<BatteryUsage> results = mRealm.where(BatteryUsage.class)
+                .equalTo("triggeredBy", Intent.ACTION_BATTERY_CHANGED)
+                .between("timestamp", 0, to)
+                .sort("timestamp")
+                .findAll();
+        double realmSum = 0;
+        for (BatteryUsage usage : results) {
+            realmSum += usage.level + usage.details.temperature + usage.details.voltage;
+        }
+        long realm = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        UsageScan scan = store.scan(0, to);
+        double storeSum = 0;
+        while (scan.moveToNext()) {
+            if (!Intent.ACTION_BATTERY_CHANGED.equals(scan.getTriggeredBy())) continue;
+            storeSum += scan.getLevel() + scan.getTemperature() + scan.getVoltage();
+        }
+        long mapped = System.nanoTime() - start;
+
+        assertEquals(results.size(), scan.getCount());
+        assertEquals(realmSum, storeSum, 1e-3 * ROWS);
+        Log.i(TAG, ROWS + " usages, realm scan: " + realm / 1000000
+                + " ms, store scan: " + mapped / 1000000 + " ms");
+    }
+
+    private static BatteryUsage usage(int id, long timestamp) {
+        BatteryUsage usage = new BatteryUsage();
+        usage.id = id;
+        usage.timestamp = timestamp;
+        usage.level = (id % 100) / 100f;
+        usage.state = "Discharging";
+        usage.screenOn = id % 2;
+        usage.triggeredBy = Intent.ACTION_BATTERY_CHANGED;
+        usage.details = new BatteryDetails();
+        usage.details.temperature = 25 + id % 10;
+        usage.details.voltage = 3.8;
+        return usage;
+    }
+
+    private void deleteDirectory() {
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDirectory.delete();
+    }
+}
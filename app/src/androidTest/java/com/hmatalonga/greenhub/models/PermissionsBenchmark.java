@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2016 Hugo Matalonga & João Paulo Fernandes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmatalonga.greenhub.models;
+
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.hmatalonga.greenhub.Config;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Microbenchmark of the permission fingerprint over every installed package,
+ * against the original ArrayList lookup.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PermissionsBenchmark {
+
+    private static final String TAG = "PermissionsBenchmark";
+
+    private static final int WARMUP_ROUNDS = 5;
+
+    private static final int ROUNDS = 50;
+
+    private static final List<String> PERMISSION_LIST = new ArrayList<>();
+
+    static {
+        Collections.addAll(PERMISSION_LIST, Config.PERMISSIONS_ARRAY);
+    }
+
+    // Original implementation, only aware of the first table
+    private static byte[] legacyPermissionBytes(String[] perms) {
+        byte[] bytes = new byte[PERMISSION_LIST.size() / 8 + 1];
+
+        for (String p : perms) {
+            int idx = PERMISSION_LIST.indexOf(p);
+            if (idx > 0) {
+                int i = idx / 8;
+                idx = (int) Math.pow(2, idx - i * 8);
+                bytes[i] = (byte) (bytes[i] | idx);
+            }
+        }
+        return bytes;
+    }
+
+    private static List<String[]> getRequestedPermissions() {
+        PackageManager pm = InstrumentationRegistry.getTargetContext().getPackageManager();
+        List<String[]> result = new ArrayList<>();
+
+        for (PackageInfo info : pm.getInstalledPackages(PackageManager.GET_PERMISSIONS)) {
+            if (info.requestedPermissions != null) {
+                result.add(info.requestedPermissions);
+            }
+        }
+        return result;
+    }
+
+    @Test
+    public void fingerprintInstalledPackages() throws Exception {
+        List<String[]> packages = getRequestedPermissions();
+        assertTrue(packages.size() > 0);
+
+        int legacyLength = Config.PERMISSIONS_ARRAY.length / 8 + 1;
+
+        for (String[] perms : packages) {
+            byte[] expected = legacyPermissionBytes(perms);
+            byte[] actual = Arrays.copyOf(Permissions.getPermissionBytes(perms), legacyLength);
+            // The original lookup dropped the first permission and knew no later tables
+            actual[0] &= ~1;
+            actual[legacyLength - 1] &= (1 << (Config.PERMISSIONS_ARRAY.length % 8)) - 1;
+            assertArrayEquals(expected, actual);
+        }
+
+        long legacy = 0;
+        long indexed = 0;
+
+        for (int round = 0; round < WARMUP_ROUNDS + ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (String[] perms : packages) {
+                legacyPermissionBytes(perms);
+            }
+            long middle = System.nanoTime();
+            for (String[] perms : packages) {
+                Permissions.getPermissionBytes(perms);
+            }
+            long end = System.nanoTime();
+
+            if (round >= WARMUP_ROUNDS) {
+                legacy += middle - start;
+                indexed += end - middle;
+            }
+        }
+
+        long calls = (long) ROUNDS * packages.size();
+        Log.i(TAG, packages.size() + " packages, legacy: " + legacy / calls
+                + " ns/package, indexed: " + indexed / calls + " ns/package");
+    }
+}
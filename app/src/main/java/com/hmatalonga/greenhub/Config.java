@@ -56,7 +56,7 @@ public final class Config {
     public static final String SERVER_URL_DEFAULT = "none";
     public static final String SERVER_URL_DEVELOPMENT = "http://192.168.1.95:8080";
 
-    public static final int DATABASE_VERSION = 5;
+    public static final int DATABASE_VERSION = 9;
 
     public static final String IMPORTANCE_NOT_RUNNING = "Not Running";
     public static final String IMPORTANCE_UNINSTALLED = "uninstalled";
@@ -97,13 +97,55 @@ public final class Config {
     public static final int DEFAULT_WIRELESS_CHARGE_RATE = 500;
     // assume a continuous discharge of 200 mA per hour
     public static final int DEFAULT_DISCHARGE_RATE = 200;
+    public static final String REMAINING_TIME_PREFERENCES = "remaining_time";
 
     public static final String DATA_HISTORY_DEFAULT = "4";
 
     public static final int UPLOAD_MAX_TRIES = 3;
     public static final String UPLOAD_DEFAULT_RATE = "20";
+    // Sample ids read at a time by an upload run
+    public static final int UPLOAD_PAGE_SIZE = 50;
 
     public static final int SAMPLES_MAX_STORAGE_NUM = 500;
+    // Records waiting to be written are flushed when this many are pending, or after the delay
+    public static final int WRITE_BUFFER_SIZE = 16;
+    public static final int WRITE_BUFFER_DELAY = 30000; // 30s
+    // Attempts to write a batch before its records are dropped
+    public static final int WRITE_BUFFER_ATTEMPTS = 3;
+    // A sample is stored in full every N samples, the others as deltas
+    public static final int SAMPLE_KEYFRAME_INTERVAL = 20;
+    // Battery usages per segment file of the usage store, a day may span several segments
+    public static final int USAGE_SEGMENT_CAPACITY = 8192;
+
+    public static final int SAMPLING_PROBE_THREADS = 3;
+    public static final int SAMPLING_PROBE_QUEUE_SIZE = 32;
+    public static final int SAMPLING_PROBE_DEADLINE = 3000; // 3s
+    public static final int SAMPLING_EXPENSIVE_PROBE_INTERVAL = 5;
+    // CPU time budget of sampling, in ms per hour
+    public static final String SAMPLING_BUDGET_DEFAULT = "15000";
+    // Initial estimates of the CPU time of a full and a light sample, in ms
+    public static final int SAMPLING_FULL_COST = 300;
+    public static final int SAMPLING_LIGHT_COST = 20;
+    public static final String SAMPLING_MODE = "samplingMode";
+    public static final String SAMPLING_PROBE_TIMED_OUT = "probeTimedOut";
+    public static final String SAMPLING_PROBE_SKIPPED = "probeSkipped";
+    public static final String SAMPLING_GOVERNOR_PREFERENCES = "sampling_governor";
+    // A sampling run not finished after this long is considered lost
+    public static final int SAMPLING_RUN_TIMEOUT = 60000; // 1 min
+    // Events waiting for the sampling actor, further events are dropped
+    public static final int SAMPLING_MAILBOX_SIZE = 8;
+    // Time between readings of the battery telemetry recorder while it is shown, in ms
+    public static final String TELEMETRY_INTERVAL_DEFAULT = "1000";
+    // Time between readings while nothing shows the current, in ms
+    public static final int TELEMETRY_IDLE_INTERVAL = 60000; // 1 min
+
+    public static final int PACKAGE_CACHE_SIZE = 512;
+    public static final String PACKAGE_CACHE_FILE = "packages.json";
+    public static final int SIGNATURE_CACHE_SIZE = 1024;
+    public static final String SIGNATURE_CACHE_FILE = "signatures.json";
+    public static final String PACKAGE_JOURNAL_FILE = "package_events.log";
+    public static final String PACKAGE_JOURNAL_PREFERENCES = "package_journal";
+    public static final int PACKAGE_JOURNAL_COMPACT_SIZE = 16 * 1024;
 
     public static final int STARTER_MESSAGE_ID = 0;
 
@@ -251,4 +293,34 @@ public final class Config {
             "android.permission.WRITE_SMS",
             "android.permission.WRITE_SYNC_SETTINGS"
     };
+
+    // Permissions added after the first table, up to API 29. New permissions must only be
+    // appended here or in a new table, so the bits of the existing ones never move
+    public static final String[] PERMISSIONS_ARRAY_V2 = {
+            "android.permission.READ_EXTERNAL_STORAGE",
+            "android.permission.READ_CALL_LOG",
+            "android.permission.WRITE_CALL_LOG",
+            "android.permission.NFC",
+            "android.permission.USE_SIP",
+            "android.permission.BODY_SENSORS",
+            "android.permission.PACKAGE_USAGE_STATS",
+            "android.permission.ACCESS_NOTIFICATION_POLICY",
+            "android.permission.REQUEST_IGNORE_BATTERY_OPTIMIZATIONS",
+            "android.permission.USE_FINGERPRINT",
+            "android.permission.REQUEST_INSTALL_PACKAGES",
+            "android.permission.ANSWER_PHONE_CALLS",
+            "android.permission.READ_PHONE_NUMBERS",
+            "android.permission.FOREGROUND_SERVICE",
+            "android.permission.USE_BIOMETRIC",
+            "android.permission.ACCESS_BACKGROUND_LOCATION",
+            "android.permission.ACCESS_MEDIA_LOCATION",
+            "android.permission.ACTIVITY_RECOGNITION",
+            "com.android.launcher.permission.INSTALL_SHORTCUT"
+    };
+
+    // Permission tables in the order their bits are assigned
+    public static final String[][] PERMISSIONS_TABLES = {
+            PERMISSIONS_ARRAY,
+            PERMISSIONS_ARRAY_V2
+    };
 }
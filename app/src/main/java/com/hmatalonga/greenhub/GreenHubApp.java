@@ -27,6 +27,8 @@ import com.crashlytics.android.Crashlytics;
 import com.hmatalonga.greenhub.managers.sampling.BatteryService;
 import com.hmatalonga.greenhub.managers.sampling.DataEstimator;
 import com.hmatalonga.greenhub.managers.storage.GreenHubDbMigration;
+import com.hmatalonga.greenhub.managers.storage.UsageStore;
+import com.hmatalonga.greenhub.managers.storage.WriteBehindBuffer;
 import com.hmatalonga.greenhub.receivers.NotificationReceiver;
 import com.hmatalonga.greenhub.tasks.DeleteSessionsTask;
 import com.hmatalonga.greenhub.tasks.DeleteUsagesTask;
@@ -85,7 +87,7 @@ public class GreenHubApp extends Application {
 
             // Delete old data history
             final int interval = SettingsUtils.fetchDataHistoryInterval(context);
-            new DeleteUsagesTask().execute(interval);
+            new DeleteUsagesTask(context).execute(interval);
             new DeleteSessionsTask().execute(interval);
 
             if (SettingsUtils.isPowerIndicatorShown(context)) {
@@ -94,6 +96,22 @@ public class GreenHubApp extends Application {
         }
     }
 
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+
+        // Going to the background, write the pending records while the process is alive
+        if (level >= TRIM_MEMORY_UI_HIDDEN) {
+            // The rollups too, so they need not be rebuilt if the process is killed
+            WriteBehindBuffer.getInstance().flush(new Runnable() {
+                @Override
+                public void run() {
+                    UsageStore.syncInstance();
+                }
+            });
+        }
+    }
+
     public void startGreenHubService() {
         if (!BatteryService.isServiceRunning) {
             logI(TAG, "GreenHubService starting...");
@@ -22,6 +22,7 @@ import android.graphics.Color;
 import android.os.BatteryManager;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.SystemClock;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
@@ -37,6 +38,7 @@ import com.hmatalonga.greenhub.events.BatteryLevelEvent;
 import com.hmatalonga.greenhub.events.BatteryTimeEvent;
 import com.hmatalonga.greenhub.events.PowerSourceEvent;
 import com.hmatalonga.greenhub.events.StatusEvent;
+import com.hmatalonga.greenhub.managers.sampling.BatteryTelemetry;
 import com.hmatalonga.greenhub.managers.sampling.DataEstimator;
 import com.hmatalonga.greenhub.managers.sampling.Inspector;
 import com.hmatalonga.greenhub.models.Battery;
@@ -95,10 +97,18 @@ public class HomeFragment extends Fragment {
 
     private Handler mHandler;
 
+    // Min and max current are taken from the recorded history since then
+    private long mCurrentSince;
+
+    // Min and max current since then, in A, NaN until known
     private double mMin;
 
     private double mMax;
 
+    private long[] mCurrentTimes;
+
+    private float[] mCurrentValues;
+
     private String mActivePower;
 
     public static HomeFragment newInstance() {
@@ -140,8 +150,15 @@ public class HomeFragment extends Fragment {
         mPowerWireless = view.findViewById(R.id.imgPowerWireless);
         mActivePower = "";
 
-        mMin = Integer.MAX_VALUE;
-        mMax = 0;
+        int capacity = Math.max(
+                BatteryTelemetry.capacity(BatteryTelemetry.RESOLUTION_SECOND),
+                BatteryTelemetry.capacity(BatteryTelemetry.RESOLUTION_TEN_SECONDS)
+        );
+        mCurrentSince = 0;
+        mMin = Double.NaN;
+        mMax = Double.NaN;
+        mCurrentTimes = new long[capacity];
+        mCurrentValues = new float[capacity];
         mHandler = new Handler();
         mHandler.postDelayed(mRunnable, Config.REFRESH_CURRENT_INTERVAL);
 
@@ -163,6 +180,8 @@ public class HomeFragment extends Fragment {
     @Override
     public void onResume() {
         super.onResume();
+        // The current is shown, read it at the configured rate
+        BatteryTelemetry.getInstance().acquire();
         if (mActivity.getEstimator() != null) {
             String level = Integer.toString(mActivity.getEstimator().getLevel());
             mBatteryPercentage.setText(level);
@@ -172,6 +191,12 @@ public class HomeFragment extends Fragment {
         }
     }
 
+    @Override
+    public void onPause() {
+        BatteryTelemetry.getInstance().release();
+        super.onPause();
+    }
+
     @Subscribe(threadMode = ThreadMode.MAIN)
     public void updateBatteryLevelUI(BatteryLevelEvent event) {
         String text = "" + event.level;
@@ -301,8 +326,6 @@ public class HomeFragment extends Fragment {
     }
 
     private void loadPluggedState(String status) {
-        mMin = Integer.MAX_VALUE;
-        mMax = Integer.MIN_VALUE;
         String batteryCharger = "unplugged";
 
         if (status.equals("home")) {
@@ -352,12 +375,18 @@ public class HomeFragment extends Fragment {
                 break;
         }
 
+        if (!mActivePower.isEmpty() && !mActivePower.equals(batteryCharger)) {
+            mCurrentSince = SystemClock.elapsedRealtime();
+            mMin = Double.NaN;
+            mMax = Double.NaN;
+        }
         mActivePower = batteryCharger;
     }
 
     private void resetBatteryCurrent() {
-        mMin = Integer.MAX_VALUE;
-        mMax = 0;
+        mCurrentSince = SystemClock.elapsedRealtime();
+        mMin = Double.NaN;
+        mMax = Double.NaN;
         String value = "min: --";
         mBatteryCurrentMin.setText(value);
         value = "max: --";
@@ -386,14 +415,22 @@ public class HomeFragment extends Fragment {
                 return;
             }
 
-            if (Math.abs(now) < Math.abs(mMin)) {
-                mMin = now;
-                value = "min: " + String.format(Locale.getDefault(), "%.3f", mMin) + " A";
-                mBatteryCurrentMin.setText(value);
+            BatteryTelemetry telemetry = BatteryTelemetry.getInstance();
+            if (telemetry.isRecording()) {
+                // Recorded in the background, so the range survives the fragment. The 1 s
+                // history spans 5 minutes, older readings come from the 10 s averages
+                mMin = Double.NaN;
+                mMax = Double.NaN;
+                includeRecorded(telemetry, BatteryTelemetry.RESOLUTION_TEN_SECONDS);
+                includeRecorded(telemetry, BatteryTelemetry.RESOLUTION_SECOND);
+            } else {
+                // Nothing is recorded while the service is stopped
+                includeCurrent(now);
             }
 
-            if (Math.abs(now) > Math.abs(mMax)) {
-                mMax = now;
+            if (!Double.isNaN(mMin)) {
+                value = "min: " + String.format(Locale.getDefault(), "%.3f", mMin) + " A";
+                mBatteryCurrentMin.setText(value);
                 value = "max: " + String.format(Locale.getDefault(), "%.3f", mMax) + " A";
                 mBatteryCurrentMax.setText(value);
             }
@@ -403,4 +440,23 @@ public class HomeFragment extends Fragment {
             mHandler.postDelayed(this, Config.REFRESH_CURRENT_INTERVAL);
         }
     };
+
+    private void includeRecorded(BatteryTelemetry telemetry, int resolution) {
+        int count = telemetry.snapshot(
+                BatteryTelemetry.CURRENT,
+                resolution,
+                mCurrentSince,
+                mCurrentTimes,
+                mCurrentValues
+        );
+
+        for (int i = 0; i < count; i++) {
+            includeCurrent(mCurrentValues[i] / 1000000);
+        }
+    }
+
+    private void includeCurrent(double current) {
+        if (Double.isNaN(mMin) || Math.abs(current) < Math.abs(mMin)) mMin = current;
+        if (Double.isNaN(mMax) || Math.abs(current) > Math.abs(mMax)) mMax = current;
+    }
 }
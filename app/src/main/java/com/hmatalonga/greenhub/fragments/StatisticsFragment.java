@@ -18,6 +18,8 @@ package com.hmatalonga.greenhub.fragments;
 
 import android.app.Fragment;
 import android.content.Context;
+import android.content.Intent;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.support.annotation.NonNull;
 import android.support.design.widget.BottomNavigationView;
@@ -32,7 +34,9 @@ import com.github.mikephil.charting.data.Entry;
 import com.github.mikephil.charting.utils.ColorTemplate;
 import com.hmatalonga.greenhub.R;
 import com.hmatalonga.greenhub.events.RefreshChartEvent;
-import com.hmatalonga.greenhub.models.data.BatteryUsage;
+import com.hmatalonga.greenhub.managers.storage.UsageRollup;
+import com.hmatalonga.greenhub.managers.storage.UsageScan;
+import com.hmatalonga.greenhub.managers.storage.UsageStore;
 import com.hmatalonga.greenhub.models.ui.ChartCard;
 import com.hmatalonga.greenhub.ui.MainActivity;
 import com.hmatalonga.greenhub.ui.adapters.ChartRVAdapter;
@@ -44,8 +48,6 @@ import org.greenrobot.eventbus.ThreadMode;
 
 import java.util.ArrayList;
 
-import io.realm.RealmResults;
-
 import static com.hmatalonga.greenhub.util.LogUtils.makeLogTag;
 
 /**
@@ -138,128 +140,87 @@ public class StatisticsFragment extends Fragment {
     }
 
     /**
-     * Queries the data from mDatabase.
+     * Queries the data from the usage store, in the background since opening the store
+     * may have to move old usages over or rebuild the rollups.
      *
      * @param interval Time interval for fetching the data.
      */
     private void loadData(final int interval) {
         long now = System.currentTimeMillis();
-        RealmResults<BatteryUsage> results;
-
-        mChartCards = new ArrayList<>();
-
-        // Make sure mDatabase instance is opened
-        if (mActivity.mDatabase.isClosed()) {
-            mActivity.mDatabase.getDefaultInstance();
-        }
+        long from;
 
         // Query results according to selected time interval
-        if (interval == DateUtils.INTERVAL_24H) {
-            results = mActivity.mDatabase.betweenUsages(
-                    DateUtils.getMilliSecondsInterval(DateUtils.INTERVAL_24H),
-                    now
-            );
-        } else if (interval == DateUtils.INTERVAL_3DAYS) {
-            results = mActivity.mDatabase.betweenUsages(
-                    DateUtils.getMilliSecondsInterval(DateUtils.INTERVAL_3DAYS),
-                    now
-            );
+        if (interval == DateUtils.INTERVAL_3DAYS) {
+            from = DateUtils.getMilliSecondsInterval(DateUtils.INTERVAL_3DAYS);
         } else if (interval == DateUtils.INTERVAL_5DAYS) {
-            results = mActivity.mDatabase.betweenUsages(
-                    DateUtils.getMilliSecondsInterval(DateUtils.INTERVAL_5DAYS),
-                    now
-            );
+            from = DateUtils.getMilliSecondsInterval(DateUtils.INTERVAL_5DAYS);
         } else {
-            results = mActivity.mDatabase.betweenUsages(
-                    DateUtils.getMilliSecondsInterval(DateUtils.INTERVAL_24H),
-                    now
-            );
+            from = DateUtils.getMilliSecondsInterval(DateUtils.INTERVAL_24H);
         }
 
-        fillData(results);
+        new LoadUsagesTask(mActivity, interval).execute(from, now + 1);
+    }
+
+    /**
+     * Called on the main thread once the store is open and the window summarized.
+     */
+    private void onLoadComplete(int interval, UsageScan scan, UsageRollup summary) {
+        // Skip results of an interval that is no longer selected, or of a detached fragment
+        if (interval != mSelectedInterval || !isAdded()) return;
+
+        mChartCards = new ArrayList<>();
+        fillData(scan, summary);
 
         setAdapter(mSelectedInterval);
     }
 
     /**
-     * Fills in the data queried from the mDatabase.
+     * Fills in the charts with the usages, and their extras with the summary of the window.
      *
-     * @param results Collection of results fetched from the mDatabase.
+     * @param scan    Usages of the selected time interval.
+     * @param summary Rollup of the selected time interval.
      */
-    private void fillData(@NonNull RealmResults<BatteryUsage> results) {
-        ChartCard card;
-        double min = 0;
-        double avg = 0;
-        double max = 0;
-
-        // Battery Level
-        card = new ChartCard(
+    private void fillData(@NonNull UsageScan scan, @NonNull UsageRollup summary) {
+        ChartCard level = new ChartCard(
                 ChartRVAdapter.BATTERY_LEVEL,
                 getString(R.string.chart_battery_level),
                 ColorTemplate.rgb("#E84813")
         );
-
-        for (BatteryUsage usage : results) {
-            card.entries.add(new Entry((float) usage.timestamp, usage.level));
-        }
-
-        mChartCards.add(card);
-
-        // Battery Temperature
-        if (!results.isEmpty()) {
-            min = Double.MAX_VALUE;
-            avg = 0;
-            max = Double.MIN_VALUE;
-        }
-
-        card = new ChartCard(
+        ChartCard temperature = new ChartCard(
                 ChartRVAdapter.BATTERY_TEMPERATURE,
                 getString(R.string.chart_battery_temperature),
                 ColorTemplate.rgb("#E81332")
         );
-
-        for (BatteryUsage usage : results) {
-            card.entries.add(new Entry((float) usage.timestamp, (float) usage.details.temperature));
-            if (usage.details.temperature < min) {
-                min = usage.details.temperature;
-            }
-            if (usage.details.temperature > max) {
-                max = usage.details.temperature;
-            }
-            avg += usage.details.temperature;
-        }
-
-        avg /= results.size();
-        card.extras = new double[] {min, avg, max};
-        mChartCards.add(card);
-
-        // Battery Voltage
-        if (!results.isEmpty()) {
-            min = Double.MAX_VALUE;
-            avg = 0;
-            max = Double.MIN_VALUE;
-        }
-
-        card = new ChartCard(
+        ChartCard voltage = new ChartCard(
                 ChartRVAdapter.BATTERY_VOLTAGE,
                 getString(R.string.chart_battery_voltage),
                 ColorTemplate.rgb("#FF15AC")
         );
 
-        for (BatteryUsage usage : results) {
-            card.entries.add(new Entry((float) usage.timestamp, (float) usage.details.voltage));
-            if (usage.details.voltage < min) {
-                min = usage.details.voltage;
-            }
-            if (usage.details.voltage > max) {
-                max = usage.details.voltage;
-            }
-            avg += usage.details.voltage;
+        while (scan.moveToNext()) {
+            // Charts only show the periodic battery changes
+            if (!Intent.ACTION_BATTERY_CHANGED.equals(scan.getTriggeredBy())) continue;
+
+            float timestamp = (float) scan.getTimestamp();
+            level.entries.add(new Entry(timestamp, scan.getLevel()));
+            temperature.entries.add(new Entry(timestamp, scan.getTemperature()));
+            voltage.entries.add(new Entry(timestamp, scan.getVoltage()));
         }
 
-        avg /= results.size();
-        card.extras = new double[] {min, avg, max};
-        mChartCards.add(card);
+        temperature.extras = extrasOf(summary, UsageRollup.TEMPERATURE);
+        voltage.extras = extrasOf(summary, UsageRollup.VOLTAGE);
+
+        mChartCards.add(level);
+        mChartCards.add(temperature);
+        mChartCards.add(voltage);
+    }
+
+    private static double[] extrasOf(UsageRollup summary, int metric) {
+        if (summary.getCount() == 0) return new double[] {0, 0, 0};
+
+        return new double[] {
+                summary.getMin(metric), summary.getAverage(metric), summary.getMax(metric)
+        };
     }
 
     /**
@@ -281,4 +242,35 @@ public class StatisticsFragment extends Fragment {
         }
         mRecyclerView.invalidate();
     }
+
+    private class LoadUsagesTask extends AsyncTask<Long, Void, UsageRollup> {
+
+        private final Context mContext;
+
+        private final int mInterval;
+
+        private long mFrom;
+
+        private long mTo;
+
+        LoadUsagesTask(final Context context, int interval) {
+            mContext = context.getApplicationContext();
+            mInterval = interval;
+        }
+
+        @Override
+        protected UsageRollup doInBackground(Long... params) {
+            mFrom = params[0];
+            mTo = params[1];
+            return UsageStore.getInstance(mContext).summarize(mFrom, mTo);
+        }
+
+        @Override
+        protected void onPostExecute(UsageRollup summary) {
+            super.onPostExecute(summary);
+            // The store is open by now, scans only read the mapped segments
+            UsageScan scan = UsageStore.getInstance(mContext).scan(mFrom, mTo);
+            onLoadComplete(mInterval, scan, summary);
+        }
+    }
 }
@@ -2,11 +2,15 @@ package com.hmatalonga.greenhub.managers.sampling;
 
 
 import android.app.Service;
+import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.os.IBinder;
 
+import com.hmatalonga.greenhub.managers.storage.UsageStore;
+import com.hmatalonga.greenhub.managers.storage.WriteBehindBuffer;
+import com.hmatalonga.greenhub.models.Screen;
 import com.hmatalonga.greenhub.util.SettingsUtils;
 
 import static com.hmatalonga.greenhub.util.LogUtils.logE;
@@ -25,6 +29,18 @@ public class BatteryService extends Service {
 
     public static DataEstimator estimator = null;
 
+    // Whether the notification reads the battery current
+    private boolean mPowerIndicator = false;
+
+    private final BroadcastReceiver mScreenReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            BatteryTelemetry.getInstance().setScreenOn(
+                    Intent.ACTION_SCREEN_ON.equals(intent.getAction())
+            );
+        }
+    };
+
     @Override
     public IBinder onBind(Intent intent) {
         return null;
@@ -43,6 +59,19 @@ public class BatteryService extends Service {
 
         registerReceiver(estimator, mIntentFilter);
 
+        BatteryTelemetry telemetry = BatteryTelemetry.getInstance();
+        telemetry.setScreenOn(Screen.isOn(context) == 1);
+        mPowerIndicator = SettingsUtils.isPowerIndicatorShown(context);
+        if (mPowerIndicator) {
+            telemetry.acquire();
+        }
+        telemetry.start(context);
+
+        IntentFilter screenFilter = new IntentFilter();
+        screenFilter.addAction(Intent.ACTION_SCREEN_ON);
+        screenFilter.addAction(Intent.ACTION_SCREEN_OFF);
+        registerReceiver(mScreenReceiver, screenFilter);
+
         if (SettingsUtils.isSamplingScreenOn(context)) {
             mIntentFilter.addAction(Intent.ACTION_SCREEN_ON);
             registerReceiver(estimator, mIntentFilter);
@@ -55,6 +84,14 @@ public class BatteryService extends Service {
     @Override
     public void onDestroy() {
         isServiceRunning = false;
+        unregisterReceiver(mScreenReceiver);
+        BatteryTelemetry telemetry = BatteryTelemetry.getInstance();
+        telemetry.stop();
+        if (mPowerIndicator) {
+            telemetry.release();
+        }
+        WriteBehindBuffer.getInstance().flush();
+        UsageStore.syncInstance();
         try {
             unregisterReceiver(estimator);
         } catch (IllegalArgumentException e) {
@@ -0,0 +1,315 @@
+/*
+ * Copyright (c) 2016 Hugo Matalonga & João Paulo Fernandes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmatalonga.greenhub.managers.sampling;
+
+import android.content.Context;
+import android.os.BatteryManager;
+import android.os.SystemClock;
+
+import com.hmatalonga.greenhub.Config;
+import com.hmatalonga.greenhub.util.SettingsUtils;
+import com.hmatalonga.greenhub.util.TelemetryRing;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the battery current, voltage and temperature in the background.
+ * <p>
+ * The current is read from the BatteryManager on a dedicated thread, at the configured
+ * rate while a consumer is active, see {@link #acquire()}, at a slow idle rate otherwise
+ * and not at all while the screen is off. Voltage and temperature are taken from the latest
+ * battery broadcast so they cost no binder call. Readings are averaged into rings of 1 s,
+ * 10 s and 1 min resolution, see {@link TelemetryRing}, so the home screen, the
+ * notification and the estimators read the same recent history instead of querying the
+ * battery themselves. Times are given by {@link SystemClock#elapsedRealtime()}. The thread
+ * holds no wake lock, nothing is recorded while the device sleeps.
+ */
+public class BatteryTelemetry {
+
+    // Current now, in uA as reported by the BatteryManager
+    public static final int CURRENT = 0;
+
+    // Voltage, in V
+    public static final int VOLTAGE = 1;
+
+    // Temperature, in ºC
+    public static final int TEMPERATURE = 2;
+
+    public static final int RESOLUTION_SECOND = 0;
+
+    public static final int RESOLUTION_TEN_SECONDS = 1;
+
+    public static final int RESOLUTION_MINUTE = 2;
+
+    private static final int CHANNELS = 3;
+
+    private static final long[] PERIODS = {1000, 10000, 60000};
+
+    // 5 minutes, 1 hour and 1 day of history
+    private static final int[] CAPACITIES = {300, 360, 1440};
+
+    private static BatteryTelemetry sInstance = null;
+
+    private final TelemetryRing[][] mRings = new TelemetryRing[CHANNELS][PERIODS.length];
+
+    // Last reading of every channel, written by the recorder only
+    private final TelemetryRing[] mLatest = new TelemetryRing[CHANNELS];
+
+    // Bucket being averaged for every channel and resolution, recorder thread only
+    private final long[][] mBuckets = new long[CHANNELS][PERIODS.length];
+
+    private final double[][] mSums = new double[CHANNELS][PERIODS.length];
+
+    private final int[][] mCounts = new int[CHANNELS][PERIODS.length];
+
+    // Values of the latest battery broadcast, NaN until the first one
+    private volatile float mVoltage = Float.NaN;
+
+    private volatile float mTemperature = Float.NaN;
+
+    // Time between readings of the running task, in ms
+    private volatile long mInterval = Config.TELEMETRY_IDLE_INTERVAL;
+
+    // Time between readings while a consumer is active, in ms
+    private long mFastInterval = Integer.parseInt(Config.TELEMETRY_INTERVAL_DEFAULT);
+
+    private int mConsumers = 0;
+
+    private boolean mScreenOn = true;
+
+    // Application context while started, null while stopped
+    private Context mContext = null;
+
+    private ScheduledExecutorService mExecutor = null;
+
+    private ScheduledFuture<?> mTask = null;
+
+    public static synchronized BatteryTelemetry getInstance() {
+        if (sInstance == null) {
+            sInstance = new BatteryTelemetry();
+        }
+        return sInstance;
+    }
+
+    BatteryTelemetry() {
+        for (int channel = 0; channel < CHANNELS; channel++) {
+            for (int resolution = 0; resolution < PERIODS.length; resolution++) {
+                mRings[channel][resolution] = new TelemetryRing(CAPACITIES[resolution]);
+                mBuckets[channel][resolution] = -1;
+            }
+            mLatest[channel] = new TelemetryRing(1);
+        }
+    }
+
+    /**
+     * Starts recording at the idle rate, consumers raise it while they are active.
+     *
+     * @param context the Context.
+     */
+    public synchronized void start(final Context context) {
+        mContext = context.getApplicationContext();
+        mFastInterval = SettingsUtils.fetchTelemetryInterval(mContext);
+        schedule();
+    }
+
+    public synchronized void stop() {
+        mContext = null;
+        if (mTask != null) {
+            mTask.cancel(false);
+            mTask = null;
+        }
+        if (mExecutor != null) {
+            mExecutor.shutdown();
+            mExecutor = null;
+        }
+    }
+
+    /**
+     * Marks a reader of the current as active, such as the visible home screen or the
+     * notification, the current is read at the configured rate until it is released.
+     */
+    public synchronized void acquire() {
+        mConsumers++;
+        schedule();
+    }
+
+    public synchronized void release() {
+        if (mConsumers > 0) mConsumers--;
+        schedule();
+    }
+
+    /**
+     * Nothing is shown while the screen is off, so the current is not read at all.
+     */
+    public synchronized void setScreenOn(boolean screenOn) {
+        mScreenOn = screenOn;
+        schedule();
+    }
+
+    /**
+     * @param interval time between readings while a consumer is active, in ms.
+     */
+    public synchronized void setInterval(long interval) {
+        mFastInterval = interval;
+        schedule();
+    }
+
+    /**
+     * @return time between readings of the current in the present state, in ms,
+     * or 0 if it should not be read.
+     */
+    synchronized long interval() {
+        if (!mScreenOn) return 0;
+        return mConsumers > 0 ? mFastInterval : Config.TELEMETRY_IDLE_INTERVAL;
+    }
+
+    private void schedule() {
+        if (mContext == null) return;
+
+        long interval = interval();
+        if (mTask != null) {
+            if (interval == mInterval) return;
+            mTask.cancel(false);
+            mTask = null;
+        }
+        if (interval == 0) return;
+
+        final BatteryManager manager =
+                (BatteryManager) mContext.getSystemService(Context.BATTERY_SERVICE);
+        if (manager == null) return;
+
+        if (mExecutor == null) {
+            mExecutor = createExecutor();
+        }
+
+        mInterval = interval;
+        mTask = mExecutor.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                int current = manager.getIntProperty(BatteryManager.BATTERY_PROPERTY_CURRENT_NOW);
+                if (current == Integer.MIN_VALUE) current = 0;
+                record(SystemClock.elapsedRealtime(), current, mVoltage, mTemperature);
+            }
+        }, 0, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return true if the current is being read in the background.
+     */
+    public synchronized boolean isRecording() {
+        return mTask != null;
+    }
+
+    /**
+     * Keeps the voltage and temperature of a battery broadcast for the next readings.
+     */
+    public void report(float voltage, float temperature) {
+        mVoltage = voltage;
+        mTemperature = temperature;
+    }
+
+    /**
+     * @param channel one of CURRENT, VOLTAGE or TEMPERATURE.
+     * @return the last reading of the channel, or NaN if it is not recent.
+     */
+    public float getLatest(int channel) {
+        long[] times = new long[1];
+        float[] values = new float[1];
+
+        long since = SystemClock.elapsedRealtime() - 2 * mInterval;
+        if (mLatest[channel].snapshot(since, times, values) == 0) return Float.NaN;
+
+        return values[0];
+    }
+
+    /**
+     * Copies the recent averages of a channel, oldest first.
+     *
+     * @param channel    one of CURRENT, VOLTAGE or TEMPERATURE.
+     * @param resolution one of the RESOLUTION_* constants.
+     * @param since      oldest time to copy, as given by {@link SystemClock#elapsedRealtime()}.
+     * @param times      receives the start time of every average.
+     * @param values     receives the averages.
+     * @return the number of averages copied.
+     */
+    public int snapshot(int channel, int resolution, long since, long[] times, float[] values) {
+        return mRings[channel][resolution].snapshot(since, times, values);
+    }
+
+    /**
+     * @return the number of averages kept for the resolution.
+     */
+    public static int capacity(int resolution) {
+        return CAPACITIES[resolution];
+    }
+
+    /**
+     * Adds a reading of every channel. Recorder thread only.
+     */
+    void record(long time, float current, float voltage, float temperature) {
+        add(CURRENT, time, current);
+        add(VOLTAGE, time, voltage);
+        add(TEMPERATURE, time, temperature);
+    }
+
+    private void add(int channel, long time, float value) {
+        if (Float.isNaN(value)) return;
+
+        mLatest[channel].add(time, value);
+
+        for (int resolution = 0; resolution < PERIODS.length; resolution++) {
+            long bucket = time / PERIODS[resolution];
+
+            // The previous bucket is complete once a reading falls in the next one
+            if (bucket != mBuckets[channel][resolution]) {
+                if (mCounts[channel][resolution] > 0) {
+                    mRings[channel][resolution].add(
+                            mBuckets[channel][resolution] * PERIODS[resolution],
+                            (float) (mSums[channel][resolution] / mCounts[channel][resolution])
+                    );
+                }
+                mBuckets[channel][resolution] = bucket;
+                mSums[channel][resolution] = 0;
+                mCounts[channel][resolution] = 0;
+            }
+
+            mSums[channel][resolution] += value;
+            mCounts[channel][resolution]++;
+        }
+    }
+
+    private static ScheduledExecutorService createExecutor() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(
+                1,
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "BatteryTelemetry");
+                        thread.setDaemon(true);
+                        thread.setPriority(Thread.MIN_PRIORITY);
+                        return thread;
+                    }
+                }
+        );
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+}
@@ -17,12 +17,9 @@
 package com.hmatalonga.greenhub.managers.sampling;
 
 
-import android.app.job.JobInfo;
 import android.app.job.JobParameters;
-import android.app.job.JobScheduler;
 import android.app.job.JobService;
 import android.content.BroadcastReceiver;
-import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
@@ -31,9 +28,10 @@ import android.os.BatteryManager;
 
 import com.hmatalonga.greenhub.R;
 import com.hmatalonga.greenhub.events.BatteryLevelEvent;
-import com.hmatalonga.greenhub.models.Battery;
+import com.hmatalonga.greenhub.models.BatterySnapshot;
 import com.hmatalonga.greenhub.util.LogUtils;
 import com.hmatalonga.greenhub.util.Notifier;
+import com.hmatalonga.greenhub.util.SettingsSnapshot;
 import com.hmatalonga.greenhub.util.SettingsUtils;
 
 import org.greenrobot.eventbus.EventBus;
@@ -53,11 +51,6 @@ public class DataEstimator extends BroadcastReceiver {
 
     private static final String TAG = makeLogTag(DataEstimator.class);
 
-    private static int mJobId = 0;
-    private static Context mContext;
-    private static Intent mIntent;
-    private static String mAction;
-
     private long mLastNotify;
     private int mHealth;
     private int mLevel;
@@ -71,7 +64,6 @@ public class DataEstimator extends BroadcastReceiver {
 
     @Override
     public void onReceive(Context context, Intent intent) {
-        mContext = context;
         //region null conditionals validations
         if (context == null) {
             logE(TAG, "Error, context is null");
@@ -83,40 +75,45 @@ public class DataEstimator extends BroadcastReceiver {
             return;
         }
 
-        mIntent = intent;
-        mAction = intent.getAction();
+        String action = intent.getAction();
 
-        if (mAction == null) {
+        if (action == null) {
             logE(TAG, "Intent has no action");
             return;
         }
         //endregion
 
-        logI(TAG, "ENTRY onReceive => " + mAction);
+        logI(TAG, "ENTRY onReceive => " + action);
+
+        if (action.equals(Intent.ACTION_SCREEN_ON) || action.equals(Intent.ACTION_SCREEN_OFF)) {
+            postScreenEvent(context.getApplicationContext(), new Intent(intent));
+            return;
+        }
 
-        if (!mAction.equals(Intent.ACTION_BATTERY_CHANGED)) return;
+        if (!action.equals(Intent.ACTION_BATTERY_CHANGED)) return;
 
         // Fetch Intent extras related to the battery state
-        try {
-            mLevel = intent.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
-            mScale = intent.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
-            mHealth = intent.getIntExtra(BatteryManager.EXTRA_HEALTH, 0);
-            mPlugged = intent.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0);
-            mPresent = intent.getExtras().getBoolean(BatteryManager.EXTRA_PRESENT);
-            mStatus = intent.getIntExtra(BatteryManager.EXTRA_STATUS, 0);
-            mTechnology = intent.getExtras().getString(BatteryManager.EXTRA_TECHNOLOGY);
-            mTemperature = ((float) intent.getIntExtra(BatteryManager.EXTRA_TEMPERATURE, 0)) / 10;
-            mVoltage = ((float) intent.getIntExtra(BatteryManager.EXTRA_VOLTAGE, 0)) / 1000;
-        } catch (RuntimeException e) {
-            e.printStackTrace();
-        }
+        BatterySnapshot battery = BatterySnapshot.fromIntent(intent);
+        mLevel = battery.level;
+        mScale = battery.scale;
+        mPlugged = battery.plugged;
+        mPresent = battery.present;
+        mTechnology = battery.technology;
+        mTemperature = battery.temperature;
+        mVoltage = battery.voltage;
+        // The codes are kept for the localized names shown by the UI
+        mHealth = intent.getIntExtra(BatteryManager.EXTRA_HEALTH, 0);
+        mStatus = intent.getIntExtra(BatteryManager.EXTRA_STATUS, 0);
+
+        BatteryTelemetry.getInstance().report(mVoltage, mTemperature);
 
         /* We don't send battery mLevel alerts here because we need to check if the mLevel changed
            So we verify that inside the DataEstimator Service */
 
-        if (mTemperature > SettingsUtils.fetchTemperatureWarning(context)) {
-            if (SettingsUtils.isBatteryAlertsOn(context) &&
-                    SettingsUtils.isTemperatureAlertsOn(context)) {
+        SettingsSnapshot settings = SettingsUtils.snapshot(context);
+
+        if (mTemperature > settings.temperatureWarning) {
+            if (settings.batteryAlerts && settings.temperatureAlerts) {
 
                 // Check mTemperature limit rate
                 Calendar lastAlert = Calendar.getInstance();
@@ -126,21 +123,21 @@ public class DataEstimator extends BroadcastReceiver {
                 if (lastSavedTime != 0) {
                     lastAlert.setTimeInMillis(lastSavedTime);
                 }
-                int minutes = SettingsUtils.fetchTemperatureAlertsRate(context);
+                int minutes = settings.temperatureRate;
 
                 lastAlert.add(Calendar.MINUTE, minutes);
 
                 // If last saved time isn't default and now is after limit rate then notify
                 if (lastSavedTime == 0 || Calendar.getInstance().after(lastAlert)) {
                     // Notify for mTemperature alerts...
-                    if (mTemperature > SettingsUtils.fetchTemperatureHigh(context)) {
+                    if (mTemperature > settings.temperatureHigh) {
                         Notifier.batteryHighTemperature(context);
                         SettingsUtils.saveLastTemperatureAlertDate(
                                 context,
                                 System.currentTimeMillis()
                         );
-                    } else if (mTemperature <= SettingsUtils.fetchTemperatureHigh(context) &&
-                            mTemperature > SettingsUtils.fetchTemperatureWarning(context)) {
+                    } else if (mTemperature <= settings.temperatureHigh &&
+                            mTemperature > settings.temperatureWarning) {
                         Notifier.batteryWarningTemperature(context);
                         SettingsUtils.saveLastTemperatureAlertDate(
                                 context,
@@ -151,7 +148,7 @@ public class DataEstimator extends BroadcastReceiver {
             }
         }
 
-        if (SettingsUtils.isPowerIndicatorShown(context)) {
+        if (settings.powerIndicator) {
             logI(TAG, "Updating notification mStatus bar");
             Notifier.updateStatusBar(context);
         }
@@ -160,25 +157,26 @@ public class DataEstimator extends BroadcastReceiver {
         if (mScale == 0) mScale = 100;
 
         if (mLevel > 0) {
-            Inspector.setCurrentBatteryLevel(mLevel, mScale);
+            SamplingActor.getInstance().reportBatteryLevel(mLevel, mScale);
 
             EventBus.getDefault().post(new BatteryLevelEvent(mLevel));
 
-            scheduleJob(context);
+            // Bursts of broadcasts end up in a single sampling run
+            SampleScheduler.getInstance().offer(context, intent);
         }
 
     }
 
-    private static void scheduleJob(Context context) {
-        ComponentName serviceComponent = new ComponentName(context, EstimatorJob.class);
-        JobInfo.Builder builder = new JobInfo.Builder(mJobId++, serviceComponent);
-        builder.setMinimumLatency(1); // wait at least
-        builder.setOverrideDeadline(10); // maximum delay
-        builder.setRequiresCharging(false);
-        builder.setRequiresDeviceIdle(false);
-
-        JobScheduler jobScheduler = context.getSystemService(JobScheduler.class);
-        jobScheduler.schedule(builder.build());
+    /**
+     * Records the battery usage when the screen is turned on or off, on the sampling actor.
+     */
+    private static void postScreenEvent(final Context context, final Intent intent) {
+        SamplingActor.getInstance().post(new Runnable() {
+            @Override
+            public void run() {
+                DataEstimatorService.takeScreenUsage(context, intent);
+            }
+        });
     }
 
     public static Intent getBatteryChangedIntent(final Context context) {
@@ -278,13 +276,15 @@ public class DataEstimator extends BroadcastReceiver {
 
         @Override
         public boolean onStartJob(JobParameters params) {
-            final int jobID = params.getJobId();
+            Intent intent = SampleScheduler.getInstance().start();
 
-            Intent service = new Intent(mContext, DataEstimatorService.class);
-            service.putExtra("OriginalAction", mAction);
-            service.fillIn(mIntent, 0);
+            if (intent != null) {
+                Intent service = new Intent(this, DataEstimatorService.class);
+                service.putExtra("OriginalAction", intent.getAction());
+                service.fillIn(intent, 0);
 
-            startService(service);
+                startService(service);
+            }
             jobFinished(params, false);
 
             return true;
@@ -48,13 +48,15 @@ package com.hmatalonga.greenhub.managers.sampling;
 import android.app.IntentService;
 import android.content.Context;
 import android.content.Intent;
-import android.os.BatteryManager;
 import android.os.Bundle;
+import android.os.Process;
 
 import com.hmatalonga.greenhub.Config;
 import com.hmatalonga.greenhub.R;
 import com.hmatalonga.greenhub.events.StatusEvent;
 import com.hmatalonga.greenhub.managers.storage.GreenHubDb;
+import com.hmatalonga.greenhub.managers.storage.UsageStore;
+import com.hmatalonga.greenhub.models.BatterySnapshot;
 import com.hmatalonga.greenhub.models.data.BatteryUsage;
 import com.hmatalonga.greenhub.models.data.Sample;
 import com.hmatalonga.greenhub.network.CommunicationManager;
@@ -83,13 +85,23 @@ public class DataEstimatorService extends IntentService {
     }
 
     @Override
-    protected void onHandleIntent(Intent intent) {
-        Context context = getApplicationContext();
-
-        if (intent != null) {
-            takeSampleIfBatteryLevelChanged(context, intent);
+    protected void onHandleIntent(final Intent intent) {
+        final Context context = getApplicationContext();
+
+        try {
+            if (intent != null) {
+                // Sampling runs on the actor thread, along with the other sampling events
+                SamplingActor.getInstance().call(new Runnable() {
+                    @Override
+                    public void run() {
+                        takeSampleIfBatteryLevelChanged(context, intent);
+                    }
+                }, Config.SAMPLING_RUN_TIMEOUT);
+            }
+        } finally {
+            // Let the broadcasts received meanwhile through
+            SampleScheduler.getInstance().finish(context);
         }
-
     }
 
     /**
@@ -108,34 +120,33 @@ public class DataEstimatorService extends IntentService {
         String action = intent.getAction();
         if (action == null) return;
 
+        long start = System.nanoTime();
+
+        SamplingActor actor = SamplingActor.getInstance();
+
         // Make sure our new sample doesn't have a zero value as its current battery level
-        if (Inspector.getCurrentBatteryLevel() <= 0) return;
+        if (actor.getBatteryLevel() <= 0) return;
 
         GreenHubDb database = new GreenHubDb();
-        Sample lastSample = database.lastSample();
 
-        // If intent has action Screen ON or Screen OFF don't check the change on battery level
-        if (action.equals(Intent.ACTION_SCREEN_ON) ||
-                action.equals(Intent.ACTION_SCREEN_OFF)) {
-            LogUtils.logI(TAG, "Getting new usage details");
-            getBatteryUsage(context, intent, database, true);
-            database.close();
-            return;
-        }
+        // Battery state shared by the sample, the usage and the alerts of this event
+        BatterySnapshot battery = BatterySnapshot.from(context, intent);
 
-        // Set last sample, if exists extract the last battery level
-        if (lastSample != null) {
-            Inspector.setLastBatteryLevel(lastSample.batteryLevel);
+        // The last sample only seeds the level handled, once per process. Samples may be
+        // skipped, so it is not the level of the last change afterwards
+        if (actor.getLastBatteryLevel() <= 0) {
+            Sample lastSample = database.lastSample();
+            if (lastSample != null) {
+                actor.setLastBatteryLevel(lastSample.batteryLevel);
+            }
         }
 
         /*
-         * Read the battery levels again, they are now changed. We just
-         * changed the last battery level (in the previous block of code).
-         * The current battery level might also have been changed while the
-         * device has been taking a sample.
+         * The current battery level only changes between events of the actor.
+         * The level is marked as handled right away, even if its sample is skipped.
          */
-        boolean batteryLevelChanged =
-                Inspector.getLastBatteryLevel() != Inspector.getCurrentBatteryLevel();
+        double lastBatteryLevel = actor.getLastBatteryLevel();
+        boolean batteryLevelChanged = actor.takeLevelChange();
 
         /*
          * Among all occurrence of the event BATTERY_CHANGED, only take a sample
@@ -143,48 +154,33 @@ public class DataEstimatorService extends IntentService {
          * (BATTERY_CHANGED happens whenever the battery temperature
          * or voltage of other parameters change)
          */
-        if (!batteryLevelChanged || Inspector.isSampling) {
-            if (!batteryLevelChanged) {
-                logI(TAG, "No battery percentage change. BatteryLevel=" +
-                        Inspector.getCurrentBatteryLevel());
-            } else if (Inspector.isSampling) {
-                logI(TAG, "Inspector is already sampling...");
-            }
+        if (!batteryLevelChanged) {
+            logI(TAG, "No battery percentage change. BatteryLevel=" +
+                    actor.getBatteryLevel());
         } else {
             String message =
                     "The battery percentage changed. " +
                             "About to take a new sample (currentBatteryLevel=" +
-                            Inspector.getCurrentBatteryLevel() + ", lastBatteryLevel=" +
-                            Inspector.getLastBatteryLevel() + ")";
+                            actor.getBatteryLevel() + ", lastBatteryLevel=" +
+                            lastBatteryLevel + ")";
             LogUtils.logI(TAG, message);
 
             // take a sample and store it in the mDatabase
             EventBus.getDefault().post(new StatusEvent(getString(R.string.event_new_sample)));
 
-            getSample(context, intent, database);
-            getBatteryUsage(context, intent, database, false);
+            getSample(context, intent, battery, database);
+            getBatteryUsage(context, intent, battery);
 
-            boolean isPlugged = 0 != intent.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0);
+            boolean isPlugged = battery.isPlugged();
 
             if (SettingsUtils.isBatteryAlertsOn(context) &&
                     SettingsUtils.isChargeAlertsOn(context)) {
-                if (Inspector.getCurrentBatteryLevel() == 1 && isPlugged) {
+                if (actor.getBatteryLevel() == 1 && isPlugged) {
                     Notifier.batteryFullAlert(context);
-                } else if (Inspector.getCurrentBatteryLevel() == Config.BATTERY_LOW_LEVEL) {
+                } else if (actor.getBatteryLevel() == Config.BATTERY_LOW_LEVEL) {
                     Notifier.batteryLowAlert(context);
                 }
             }
-
-            // If last battery level = 0 then it is the first sample in the current instance
-            if (Inspector.getLastBatteryLevel() == 0) {
-                LogUtils.logI(
-                        TAG,
-                        "Last Battery Level = 0. Updating to BatteryLevel => " +
-                                Inspector.getCurrentBatteryLevel()
-                );
-                // before taking the first sample in a batch, first record the battery level
-                Inspector.setLastBatteryLevel(Inspector.getCurrentBatteryLevel());
-            }
         }
 
         /*
@@ -202,6 +198,7 @@ public class DataEstimatorService extends IntentService {
                 !batteryLevelChanged) {
             database.close();
             LogUtils.logI(TAG, "Database closed. No upload now.");
+            SamplingMetrics.phase(SamplingMetrics.PHASE_TAKE_SAMPLE).recordSince(start);
             return;
         }
 
@@ -222,6 +219,7 @@ public class DataEstimatorService extends IntentService {
 
         // Finally close mDatabase access
         database.close();
+        SamplingMetrics.phase(SamplingMetrics.PHASE_TAKE_SAMPLE).recordSince(start);
     }
 
     /**
@@ -230,10 +228,25 @@ public class DataEstimatorService extends IntentService {
      *
      * @param context  from onReceive
      * @param intent   from onReceive
+     * @param battery  battery state of the event
      * @param database GreenHub database
      */
-    private void getSample(Context context, Intent intent, GreenHubDb database) {
-        Sample sample = Inspector.getSample(context, intent);
+    private void getSample(Context context, Intent intent, BatterySnapshot battery,
+                           GreenHubDb database) {
+        SamplingGovernor governor = SamplingGovernor.getInstance(context);
+        int mode = governor.decide(context);
+
+        if (mode == SamplingGovernor.MODE_SKIP) {
+            LogUtils.logI(TAG, "Sampling budget exhausted, skipping sample");
+            EventBus.getDefault().post(new StatusEvent(context.getString(R.string.event_idle)));
+            return;
+        }
+
+        long cpuTime = Process.getElapsedCpuTime();
+        Sample sample = Inspector.getSample(
+                context, intent, battery, mode == SamplingGovernor.MODE_LIGHT
+        );
+        governor.charge(mode, Process.getElapsedCpuTime() - cpuTime);
 
         // Write to mDatabase, but only after first real numbers
         if (sample != null && !sample.batteryState.equals("Unknown") && sample.batteryLevel >= 0) {
@@ -246,19 +259,41 @@ public class DataEstimatorService extends IntentService {
         EventBus.getDefault().post(new StatusEvent(context.getString(R.string.event_idle)));
     }
 
-    private void getBatteryUsage(Context context, Intent intent, GreenHubDb database,
-                                 boolean isScreenIntent) {
-        // if Intent is screen related, it is necessary to add extras from DataEstimator
-        // since original intent has none
-        if (isScreenIntent) {
-            Bundle extras = DataEstimator.getBatteryChangedIntent(context).getExtras();
-            if (extras != null) intent.putExtras(extras);
-        }
+    /**
+     * Stores the battery usage for a screen event. Runs on the sampling actor.
+     *
+     * @param context the Context.
+     * @param intent  the SCREEN_ON or SCREEN_OFF broadcast.
+     */
+    static void takeScreenUsage(final Context context, Intent intent) {
+        if (SamplingActor.getInstance().getBatteryLevel() <= 0) return;
+
+        long start = System.nanoTime();
+
+        LogUtils.logI(TAG, "Getting new usage details");
+        getBatteryUsage(context, intent, getScreenBattery(context, intent));
+        SamplingMetrics.phase(SamplingMetrics.PHASE_TAKE_SAMPLE).recordSince(start);
+    }
+
+    /**
+     * Screen intents have no battery extras, they are added from the last battery broadcast.
+     */
+    private static BatterySnapshot getScreenBattery(Context context, Intent intent) {
+        Bundle extras = DataEstimator.getBatteryChangedIntent(context).getExtras();
+        if (extras != null) intent.putExtras(extras);
+
+        return BatterySnapshot.from(context, intent);
+    }
 
-        BatteryUsage usage = Inspector.getBatteryUsage(context, intent);
+    private static void getBatteryUsage(Context context, Intent intent,
+                                        BatterySnapshot battery) {
+        BatteryUsage usage = Inspector.getBatteryUsage(context, intent, battery);
 
-        if (usage != null && !usage.state.equals("Unknown") && usage.level >= 0) {
-            database.saveUsage(usage);
+        // Usages of an unknown or invalid state are not kept
+        if (usage != null && !usage.state.equals("Unknown") && !usage.state.equals("None") &&
+                usage.level >= 0) {
+            UsageStore.getInstance(context).append(usage);
+            RemainingTimeEstimator.getInstance(context).add(usage);
             LogUtils.logI(TAG, "Took usage details " + usage.id + " for " + intent.getAction());
         }
     }
@@ -48,14 +48,7 @@ package com.hmatalonga.greenhub.managers.sampling;
 
 import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
-import android.content.pm.ApplicationInfo;
-import android.content.pm.PackageInfo;
-import android.content.pm.PackageManager;
-import android.content.pm.PermissionInfo;
-import android.os.BatteryManager;
 import android.os.Build;
-import android.preference.PreferenceManager;
 import android.util.Log;
 
 import com.hmatalonga.greenhub.BuildConfig;
@@ -63,24 +56,24 @@ import com.hmatalonga.greenhub.Config;
 import com.hmatalonga.greenhub.R;
 import com.hmatalonga.greenhub.events.BatteryTimeEvent;
 import com.hmatalonga.greenhub.events.StatusEvent;
+import com.hmatalonga.greenhub.managers.sampling.probes.ProbeRegistry;
+import com.hmatalonga.greenhub.managers.sampling.probes.SampleProbe;
+import com.hmatalonga.greenhub.managers.storage.PackageCache;
+import com.hmatalonga.greenhub.managers.storage.PackageJournal;
+import com.hmatalonga.greenhub.managers.storage.StringDictionary;
 import com.hmatalonga.greenhub.models.Application;
 import com.hmatalonga.greenhub.models.Battery;
-import com.hmatalonga.greenhub.models.Bluetooth;
+import com.hmatalonga.greenhub.models.BatterySnapshot;
 import com.hmatalonga.greenhub.models.Cpu;
-import com.hmatalonga.greenhub.models.Gps;
-import com.hmatalonga.greenhub.models.LocationInfo;
 import com.hmatalonga.greenhub.models.Memory;
+import com.hmatalonga.greenhub.models.MemorySnapshot;
 import com.hmatalonga.greenhub.models.Network;
 import com.hmatalonga.greenhub.models.Package;
-import com.hmatalonga.greenhub.models.Phone;
+import com.hmatalonga.greenhub.models.PackageMetadata;
 import com.hmatalonga.greenhub.models.Process;
 import com.hmatalonga.greenhub.models.Screen;
-import com.hmatalonga.greenhub.models.Sensors;
 import com.hmatalonga.greenhub.models.SettingsInfo;
-import com.hmatalonga.greenhub.models.SimCard;
 import com.hmatalonga.greenhub.models.Specifications;
-import com.hmatalonga.greenhub.models.Storage;
-import com.hmatalonga.greenhub.models.Wifi;
 import com.hmatalonga.greenhub.models.data.AppPermission;
 import com.hmatalonga.greenhub.models.data.BatteryDetails;
 import com.hmatalonga.greenhub.models.data.BatterySession;
@@ -91,6 +84,7 @@ import com.hmatalonga.greenhub.models.data.NetworkDetails;
 import com.hmatalonga.greenhub.models.data.ProcessInfo;
 import com.hmatalonga.greenhub.models.data.Sample;
 import com.hmatalonga.greenhub.models.data.Settings;
+import com.hmatalonga.greenhub.models.data.StorageDetails;
 import com.hmatalonga.greenhub.util.LogUtils;
 import com.hmatalonga.greenhub.util.Notifier;
 import com.hmatalonga.greenhub.util.SettingsUtils;
@@ -113,30 +107,25 @@ import static com.hmatalonga.greenhub.util.LogUtils.makeLogTag;
  */
 public final class Inspector {
 
-    public static boolean isSampling = false;
-
     private static final String TAG = makeLogTag(Inspector.class);
 
-    private static final String INSTALLED = "installed:";
-
-    private static final String REPLACED = "replaced:";
-
-    private static final String UNINSTALLED = "uninstalled:";
+    // Reused /proc/stat readings, one row per core
+    private static long[] sCpuStatsBefore = null;
 
-    // Disabled or turned off applications will be scheduled for reporting using this prefix
-    private static final String DISABLED = "disabled:";
+    private static long[] sCpuStatsAfter = null;
 
-    private static double sLastBatteryLevel = 0;
+    private static final MemorySnapshot sMemory = new MemorySnapshot();
 
-    private static double sCurrentBatteryLevel = 0;
+    private static final ProcessCpuTracker sProcessCpu = new ProcessCpuTracker();
 
-    // we might not be able to read the current battery level at the first run
-    // of GreenHub.
-    // so it might be zero until we get the non-zero value from the intent
-    // (BatteryManager.EXTRA_LEVEL & BatteryManager.EXTRA_SCALE)
+    // Reused list of pids handed to the process CPU tracker
+    private static int[] sPids = new int[64];
 
+    /**
+     * @return the battery level of the latest broadcast, between 0 and 1.
+     */
     public static double getCurrentBatteryLevel() {
-        return sCurrentBatteryLevel;
+        return SamplingActor.getInstance().getReportedBatteryLevel();
     }
 
     public static BatterySession getBatterySession(final Context context, Intent intent) {
@@ -144,53 +133,20 @@ public final class Inspector {
 
         session.timestamp = System.currentTimeMillis();
         session.id = String.valueOf(session.timestamp).hashCode();
-        session.level = (float) sCurrentBatteryLevel;
+        session.level = (float) SamplingActor.getInstance().getBatteryLevel();
         session.screenOn = Screen.isOn(context);
         session.triggeredBy = intent.getAction();
 
         return session;
     }
 
-    static void setLastBatteryLevel(double level) {
-        sLastBatteryLevel = level;
-    }
-
-    static double getLastBatteryLevel() {
-        return sLastBatteryLevel;
-    }
-
-    /**
-     * Take in currentLevel and scale as doubles to avoid loss of precision issues.
-     * Note that GreenHub stores battery level as a value between 0 and 1, e.g. 0.45 for 45%.
-     *
-     * @param currentLevel Current battery level, usually in percent.
-     * @param scale        Battery scale, usually 100.0.
-     */
-    static void setCurrentBatteryLevel(double currentLevel, double scale) {
-        /*
-         * we should multiply the result of the division below by 100.0 to get the battery level
-         * in the scale of 0-100, but since the previous samples
-         * in our server's dataset are in the scale of 0.00-1.00, we omit the multiplication.
-         */
-        double level = currentLevel / scale;
-        /*
-         * whenever we get these two arguments (extras from the intent:
-         * EXTRA_LEVEL & EXTRA_SCALE), it doesn't necessarily mean that a battery
-         * percentage change has happened. Check the comments in the
-         * broadcast receiver (sampler).
-         */
-        if (level != sCurrentBatteryLevel) sCurrentBatteryLevel = level;
-    }
-
-    static Sample getSample(final Context context, Intent intent) {
-        isSampling = true;
+    static Sample getSample(final Context context, Intent intent, BatterySnapshot battery,
+                            boolean light) {
+        long start = System.nanoTime();
 
         // Construct sample and return it in the end
         Sample newSample = new Sample();
-        NetworkDetails networkDetails = new NetworkDetails();
-        BatteryDetails batteryDetails = new BatteryDetails();
         CpuStatus cpuStatus = new CpuStatus();
-        Settings settings = new Settings();
 
         newSample.processInfos = new RealmList<>();
         newSample.locationProviders = new RealmList<>();
@@ -211,7 +167,32 @@ public final class Inspector {
         newSample.database = Config.DATABASE_VERSION;
 
         // Record first data point for CPU usage
-        long[] idleAndCpu1 = Cpu.readUsagePoint();
+        if (sCpuStatsBefore == null) {
+            sCpuStatsBefore = Cpu.newStatsArray();
+            sCpuStatsAfter = Cpu.newStatsArray();
+        }
+        Cpu.readCoreStats(sCpuStatsBefore);
+
+        // Default values are kept for skipped or timed out probes
+        newSample.networkDetails = new NetworkDetails();
+        newSample.batteryDetails = new BatteryDetails();
+        newSample.storageDetails = new StorageDetails();
+        newSample.settings = new Settings();
+        newSample.countryCode = "Unknown";
+        newSample.networkStatus = Network.TYPE_UNKNOWN;
+
+        // Independent probes run on the pool while the process list is built here
+        boolean charging = battery.isPlugged();
+        ProbeStage stage = new ProbeStage();
+        List<ProbeStage.Probe<?>> probes = new ArrayList<>();
+        List<String> skipped = new ArrayList<>();
+        // Light samples run no probe, their battery values come from the snapshot
+        List<SampleProbe<?>> selected = light
+                ? new ArrayList<SampleProbe<?>>()
+                : ProbeRegistry.select(context, charging, skipped);
+        for (SampleProbe<?> probe : selected) {
+            probes.add(stage.submit(context, probe));
+        }
 
         // If the sampler is running because of the SCREEN_ON or SCREEN_OFF
         // event/action,
@@ -221,63 +202,20 @@ public final class Inspector {
         // be running when
         // those events (screen on / screen off) occur
 
-        EventBus.getDefault().post(
-                new StatusEvent(context.getString(R.string.event_get_processes))
-        );
-        newSample.processInfos.addAll(getRunningProcessInfoForSample(context));
-
-        newSample.screenBrightness = Screen.getBrightness(context);
-        boolean autoScreenBrightness = Screen.isAutoBrightness(context);
-        if (autoScreenBrightness) {
-            // Auto
-            newSample.screenBrightness = -1;
+        // Light samples only keep battery and CPU data
+        if (!light) {
+            EventBus.getDefault().post(
+                    new StatusEvent(context.getString(R.string.event_get_processes))
+            );
+            long scanStart = System.nanoTime();
+            newSample.processInfos.addAll(getRunningProcessInfoForSample(context));
+            SamplingMetrics.phase(SamplingMetrics.PHASE_PROCESS_SCAN).recordSince(scanStart);
         }
 
-        // SensorDetails list
-        newSample.sensorDetailsList.addAll(Sensors.getSensorDetailsList(context));
-        Sensors.clearSensorsMap();
-
-        // Location providers
-        newSample.locationProviders.addAll(LocationInfo.getEnabledLocationProviders(context));
-
-        String network = Network.getStatus(context);
-        String networkType = Network.getType(context);
-        String mobileNetworkType = Network.getMobileNetworkType(context);
-
-        if (network.equals(Network.NETWORKSTATUS_CONNECTED)) {
-            if ("WIFI".equals(networkType)) {
-                newSample.networkStatus = networkType;
-            } else {
-                newSample.networkStatus = mobileNetworkType;
-            }
-        } else {
-            newSample.networkStatus = network;
+        for (ProbeStage.Probe<?> probe : probes) {
+            stage.store(probe, newSample);
         }
 
-        // Network Details
-        networkDetails.networkType = networkType;
-        networkDetails.mobileNetworkType = mobileNetworkType;
-        networkDetails.roamingEnabled = Network.getRoamingStatus(context);
-        networkDetails.mobileDataStatus = Network.getDataState(context);
-        networkDetails.mobileDataActivity = Network.getDataActivity(context);
-        networkDetails.simOperator = SimCard.getSIMOperator(context);
-        networkDetails.networkOperator = Phone.getNetworkOperator(context);
-        networkDetails.mcc = Phone.getMcc(context);
-        networkDetails.mnc = Phone.getMnc(context);
-
-        // Wifi stuff
-        networkDetails.wifiStatus = Wifi.getState(context);
-        networkDetails.wifiSignalStrength = Wifi.getSignalStrength(context);
-        networkDetails.wifiLinkSpeed = Wifi.getLinkSpeed(context);
-        networkDetails.wifiApStatus = Wifi.getHotspotState(context);
-
-        // No easy way to check this as API keeps changing
-        // Possible by using reflection and checking build version
-        // NetworkStatistics ns = new NetworkStatistics();
-
-        // Add NetworkDetails substruct to Sample
-        newSample.networkDetails = networkDetails;
-
         // For now calling info is not included so is null the object
         newSample.callInfo = null;
 
@@ -303,114 +241,18 @@ public final class Inspector {
          * mySample.setCallInfo(ci);
          */
 
-        // Bundle b = intent.getExtras();
-
-        // Battery details
-        int health = intent.getIntExtra(BatteryManager.EXTRA_HEALTH, 0);
-        int status = intent.getIntExtra(BatteryManager.EXTRA_STATUS, 0);
-        // This is really an int.
-        // FIXED: Not used yet, Sample needs more fields
-
-        int plugged = intent.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0);
-        String batteryTechnology = intent.getExtras().getString(BatteryManager.EXTRA_TECHNOLOGY);
-
-        // FIXED: Not used yet, Sample needs more fields
-        String batteryHealth = "Unknown";
-        String batteryStatus;
-
-        switch (health) {
-            case BatteryManager.BATTERY_HEALTH_DEAD:
-                batteryHealth = "Dead";
-                break;
-            case BatteryManager.BATTERY_HEALTH_GOOD:
-                batteryHealth = "Good";
-                break;
-            case BatteryManager.BATTERY_HEALTH_OVER_VOLTAGE:
-                batteryHealth = "Over voltage";
-                break;
-            case BatteryManager.BATTERY_HEALTH_OVERHEAT:
-                batteryHealth = "Overheat";
-                break;
-            case BatteryManager.BATTERY_HEALTH_UNKNOWN:
-                batteryHealth = "Unknown";
-                break;
-            case BatteryManager.BATTERY_HEALTH_UNSPECIFIED_FAILURE:
-                batteryHealth = "Unspecified failure";
-                break;
-        }
-
-        switch (status) {
-            case BatteryManager.BATTERY_STATUS_CHARGING:
-                batteryStatus = "Charging";
-                break;
-            case BatteryManager.BATTERY_STATUS_DISCHARGING:
-                batteryStatus = "Discharging";
-                break;
-            case BatteryManager.BATTERY_STATUS_FULL:
-                batteryStatus = "Full";
-                break;
-            case BatteryManager.BATTERY_STATUS_NOT_CHARGING:
-                batteryStatus = "Not charging";
-                break;
-            case BatteryManager.BATTERY_STATUS_UNKNOWN:
-                batteryStatus = "Unknown";
-                break;
-            default:
-                // New value for error state
-                batteryStatus = "None";
-        }
-
-        String batteryCharger;
-        switch (plugged) {
-            case BatteryManager.BATTERY_PLUGGED_AC:
-                batteryCharger = "ac";
-                break;
-            case BatteryManager.BATTERY_PLUGGED_USB:
-                batteryCharger = "usb";
-                break;
-            case BatteryManager.BATTERY_PLUGGED_WIRELESS:
-                batteryCharger = "wireless";
-                break;
-            default:
-                batteryCharger = "unplugged";
-        }
-
-
-        // otherInfo.setCPUIdleTime(totalIdleTime);
-
-        // IMPORTANT: All of the battery details fields were never set (=always
-        // zero), like the last battery level.
-        // Now all must have been fixed.
-
-        // current battery temperature in degrees Centigrade (the unit of the
-        // temperature value
-        // (returned by BatteryManager) is not Centigrade, it should be divided
-        // by 10)
-        batteryDetails.temperature =
-                ((float) intent.getIntExtra(BatteryManager.EXTRA_TEMPERATURE, 0)) / 10;
-        // otherInfo.setBatteryTemperature(temperature);
-
-        // current battery voltage in VOLTS (the unit of the returned value by
-        // BatteryManager is millivolts)
-        batteryDetails.voltage =
-                ((float) intent.getIntExtra(BatteryManager.EXTRA_VOLTAGE, 0)) / 1000;
-        // otherInfo.setBatteryVoltage(voltage);
-
-        batteryDetails.charger = batteryCharger;
-        batteryDetails.health = batteryHealth;
-        batteryDetails.technology = batteryTechnology;
-
-        // Battery other values with API level limitations
-        batteryDetails.remainingCapacity = Battery.getBatteryRemainingCapacity(context);
-        batteryDetails.capacity = Battery.getBatteryDesignCapacity(context);
-        batteryDetails.chargeCounter = Battery.getBatteryChargeCounter(context);
-        batteryDetails.currentAverage = Battery.getBatteryCurrentAverage(context);
-        batteryDetails.currentNow = Battery.getBatteryCurrentNow(context);
-        batteryDetails.energyCounter = Battery.getBatteryEnergyCounter(context);
-
-        boolean isCharging = "Charging".equals(batteryStatus);
-        int batteryRemaining =
-                (int) (Battery.getRemainingBatteryTime(context, isCharging, batteryCharger) / 60);
+        // Battery details, read once for the whole event
+        BatteryDetails batteryDetails = newSample.batteryDetails;
+        batteryDetails.temperature = battery.temperature;
+        batteryDetails.voltage = battery.voltage;
+        batteryDetails.charger = battery.charger;
+        batteryDetails.health = battery.health;
+        batteryDetails.technology = battery.technology;
+        setBatteryProperties(batteryDetails, battery);
+
+        boolean isCharging = battery.isCharging();
+        int batteryRemaining = (int) (Battery.getRemainingBatteryTime(
+                context, battery, isCharging, battery.charger) / 60);
         int batteryRemainingHours = batteryRemaining / 60;
         int batteryRemainingMinutes = batteryRemaining % 60;
 
@@ -423,48 +265,37 @@ public final class Inspector {
 //                isCharging
 //        );
 
-        newSample.batteryDetails = batteryDetails;
-        newSample.batteryLevel = sCurrentBatteryLevel;
-        newSample.batteryState = batteryStatus;
-
-        // Memory statistics
-        int[] usedFreeActiveInactive = Memory.readMemoryInfo();
-        if (usedFreeActiveInactive.length == 4) {
-            newSample.memoryUser = usedFreeActiveInactive[0];
-            newSample.memoryFree = usedFreeActiveInactive[1];
-            newSample.memoryActive = usedFreeActiveInactive[2];
-            newSample.memoryInactive = usedFreeActiveInactive[3];
+        newSample.batteryLevel = SamplingActor.getInstance().getBatteryLevel();
+        newSample.batteryState = battery.status;
+
+        // Memory statistics, in KB
+        if (!light && Memory.readMemoryInfo(sMemory)) {
+            newSample.memoryUser = (int) sMemory.used();
+            newSample.memoryFree = (int) sMemory.free;
+            newSample.memoryActive = (int) sMemory.active;
+            newSample.memoryInactive = (int) sMemory.inactive;
         }
 
         // Record second data point for cpu/idle time
-        long[] idleAndCpu2 = Cpu.readUsagePoint();
+        int cpuRows = Cpu.readCoreStats(sCpuStatsAfter);
 
         // CPU status
         long uptime = Cpu.getUptime();
         long sleep = Cpu.getSleepTime();
 
-        cpuStatus.cpuUsage = Cpu.getUsage(idleAndCpu1, idleAndCpu2);
+        double cpuUsage = Cpu.getUsage(sCpuStatsBefore, sCpuStatsAfter, 0);
+        cpuStatus.cpuUsage = (cpuUsage < 0) ? 0 : cpuUsage;
+        cpuStatus.coreUsage = new RealmList<>();
+        for (int row = 1; row < cpuRows; row++) {
+            cpuStatus.coreUsage.add(Cpu.getUsage(sCpuStatsBefore, sCpuStatsAfter, row));
+        }
         cpuStatus.upTime = uptime;
         cpuStatus.sleepTime = sleep;
         newSample.cpuStatus = cpuStatus;
 
-        // Storage details
-        newSample.storageDetails = Storage.getStorageDetails();
-
-        // System settings
-        settings.bluetoothEnabled = Bluetooth.isEnabled();
-        settings.locationEnabled = Gps.isEnabled(context);
-        settings.powersaverEnabled = SettingsInfo.isPowerSaveEnabled(context);
-        settings.flashlightEnabled = false;
-        settings.nfcEnabled = SettingsInfo.isNfcEnabled(context);
-        settings.developerMode = SettingsInfo.isDeveloperModeOn(context);
-        settings.unknownSources = SettingsInfo.allowUnknownSources(context);
-        newSample.settings = settings;
-
         // Other fields
         newSample.screenOn = Screen.isOn(context);
         newSample.timeZone = SettingsInfo.getTimeZone();
-        newSample.countryCode = LocationInfo.getCountryCode(context);
 
         // If there are extra fields, include them into the sample.
         List<Feature> extras = getExtras();
@@ -472,106 +303,87 @@ public final class Inspector {
             newSample.features.addAll(extras);
         }
 
-        isSampling = false;
+        // Flag the probes that missed the deadline, their fields keep default values
+        stage.addTimeoutMarkers(newSample.features);
+
+        // Same for the probes left out of this sample, expensive or lacking their permission
+        for (String name : skipped) {
+            Feature feature = new Feature();
+            feature.key = Config.SAMPLING_PROBE_SKIPPED;
+            feature.value = name;
+            newSample.features.add(feature);
+        }
+
+        if (light) {
+            Feature mode = new Feature();
+            mode.key = Config.SAMPLING_MODE;
+            mode.value = "light";
+            newSample.features.add(mode);
+        }
+
+        SamplingMetrics.phase(SamplingMetrics.PHASE_GET_SAMPLE).recordSince(start);
 
         return newSample;
     }
 
-    static BatteryUsage getBatteryUsage(final Context context, Intent intent) {
+    static BatteryUsage getBatteryUsage(final Context context, Intent intent,
+                                        BatterySnapshot battery) {
+        long start = System.nanoTime();
         BatteryUsage usage = new BatteryUsage();
         BatteryDetails details = new BatteryDetails();
 
-        // Battery details
-        int health = intent.getIntExtra(BatteryManager.EXTRA_HEALTH, 0);
-        int status = intent.getIntExtra(BatteryManager.EXTRA_STATUS, 0);
-        int plugged = intent.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0);
-        String batteryTechnology = intent.getExtras().getString(BatteryManager.EXTRA_TECHNOLOGY);
-        String batteryHealth = "Unknown";
-        String batteryCharger = "unplugged";
-        String batteryStatus;
-
         usage.timestamp = System.currentTimeMillis();
         usage.id = String.valueOf(usage.timestamp).hashCode();
 
-        switch (health) {
-            case BatteryManager.BATTERY_HEALTH_DEAD:
-                batteryHealth = "Dead";
-                break;
-            case BatteryManager.BATTERY_HEALTH_GOOD:
-                batteryHealth = "Good";
-                break;
-            case BatteryManager.BATTERY_HEALTH_OVER_VOLTAGE:
-                batteryHealth = "Over voltage";
-                break;
-            case BatteryManager.BATTERY_HEALTH_OVERHEAT:
-                batteryHealth = "Overheat";
-                break;
-            case BatteryManager.BATTERY_HEALTH_UNKNOWN:
-                batteryHealth = "Unknown";
-                break;
-            case BatteryManager.BATTERY_HEALTH_UNSPECIFIED_FAILURE:
-                batteryHealth = "Unspecified failure";
-                break;
-        }
+        details.temperature = battery.temperature;
+        details.voltage = battery.voltage;
+        details.charger = battery.charger;
+        details.health = battery.health;
+        details.technology = battery.technology;
+        setBatteryProperties(details, battery);
 
-        switch (status) {
-            case BatteryManager.BATTERY_STATUS_CHARGING:
-                batteryStatus = "Charging";
-                break;
-            case BatteryManager.BATTERY_STATUS_DISCHARGING:
-                batteryStatus = "Discharging";
-                break;
-            case BatteryManager.BATTERY_STATUS_FULL:
-                batteryStatus = "Full";
-                break;
-            case BatteryManager.BATTERY_STATUS_NOT_CHARGING:
-                batteryStatus = "Not charging";
-                break;
-            case BatteryManager.BATTERY_STATUS_UNKNOWN:
-                batteryStatus = "Unknown";
-                break;
-            default:
-                batteryStatus = "Unknown";
-        }
+        usage.level = (float) SamplingActor.getInstance().getBatteryLevel();
+        usage.state = battery.status;
+        usage.screenOn = Screen.isOn(context);
+        usage.triggeredBy = intent.getAction();
+        usage.details = details;
 
-        switch (plugged) {
-            case BatteryManager.BATTERY_PLUGGED_AC:
-                batteryCharger = "ac";
-                break;
-            case BatteryManager.BATTERY_PLUGGED_USB:
-                batteryCharger = "usb";
-                break;
-            case BatteryManager.BATTERY_PLUGGED_WIRELESS:
-                batteryCharger = "wireless";
-        }
+        SamplingMetrics.phase(SamplingMetrics.PHASE_BATTERY_USAGE).recordSince(start);
 
-        details.temperature =
-                ((float) intent.getIntExtra(BatteryManager.EXTRA_TEMPERATURE, 0)) / 10;
+        return usage;
+    }
 
-        // current battery voltage in VOLTS
-        // (the unit of the returned value by BatteryManager is millivolts)
-        details.voltage =
-                ((float) intent.getIntExtra(BatteryManager.EXTRA_VOLTAGE, 0)) / 1000;
+    /**
+     * Battery values with API level limitations.
+     */
+    private static void setBatteryProperties(BatteryDetails details, BatterySnapshot battery) {
+        details.capacity = battery.designCapacity;
+        details.chargeCounter = battery.chargeCounter;
+        details.currentAverage = battery.currentAverage;
+        details.currentNow = battery.currentNow;
+        details.energyCounter = battery.energyCounter;
+        details.remainingCapacity = battery.remainingCapacity;
+    }
 
-        details.charger = batteryCharger;
-        details.health = batteryHealth;
-        details.technology = batteryTechnology;
+    /**
+     * Attaches to each running process the CPU time it used since the previous sample.
+     */
+    private static void updateProcessCpuTimes(List<ProcessInfo> processes) {
+        if (sPids.length < processes.size()) {
+            sPids = new int[processes.size()];
+        }
 
-        // Battery other values with API level limitations
-        details.capacity = Battery.getBatteryDesignCapacity(context);
-        details.chargeCounter = Battery.getBatteryChargeCounter(context);
-        details.currentAverage = Battery.getBatteryCurrentAverage(context);
-        details.currentNow = (int) Battery.getBatteryCurrentNow(context);
-        details.energyCounter = Battery.getBatteryEnergyCounter(context);
-        details.remainingCapacity = Battery.getBatteryRemainingCapacity(context);
+        int count = 0;
+        for (ProcessInfo item : processes) {
+            sPids[count++] = item.processId;
+        }
 
-        usage.level = (float) sCurrentBatteryLevel;
-        usage.state = batteryStatus;
-        usage.screenOn = Screen.isOn(context);
-        usage.triggeredBy = intent.getAction();
-        usage.details = details;
+        sProcessCpu.update(sPids, count);
 
-        return usage;
+        for (ProcessInfo item : processes) {
+            item.cpuUserTime = sProcessCpu.getUserTime(item.processId);
+            item.cpuSystemTime = sProcessCpu.getSystemTime(item.processId);
+        }
     }
 
     /**
@@ -590,9 +402,21 @@ public final class Inspector {
                 ? Application.getRunningAppInfo(context)
                 : Application.getRunningAppInfoLegacy(context);
 
+        // Restricted devices only report the app itself, fill in what /proc still shows
+        if (isNewerApi && list.size() <= 1) {
+            Set<String> names = new HashSet<>();
+            for (ProcessInfo pi : list) {
+                names.add(pi.name);
+            }
+            for (ProcessInfo pi : Application.getRunningAppInfoLegacy(context)) {
+                if (names.add(pi.name)) list.add(pi);
+            }
+        }
+
         List<ProcessInfo> result = new ArrayList<>();
 
-        PackageManager pm = context.getPackageManager();
+        PackageCache packages = PackageCache.getInstance(context);
+        packages.refresh();
         // Collected in the same loop to save computation.
         // int[] procMem = new int[list.size()];
 
@@ -604,6 +428,9 @@ public final class Inspector {
                 (included) ? Package.getInstalledPackages(context, false) : null;
 
 
+        // Time spent on package lookups, recorded once for the whole scan
+        long lookupTime = 0;
+
         if (list != null) {
             for (ProcessInfo pi : list) {
                 String pName = pi.name;
@@ -617,29 +444,25 @@ public final class Inspector {
                 item.appPermissions = new RealmList<>();
                 item.appSignatures = new RealmList<>();
 
-                PackageInfo packageInfo = Package.getPackageInfo(context, pName);
+                long lookupStart = System.nanoTime();
+                PackageMetadata metadata = packages.get(pName);
 
-                if (packageInfo != null) {
-                    item.versionName = packageInfo.versionName;
-                    item.versionCode = packageInfo.versionCode;
-                    ApplicationInfo info = packageInfo.applicationInfo;
+                if (metadata != null) {
+                    item.versionName = metadata.versionName;
+                    item.versionCode = metadata.versionCode;
 
                     // Human readable label (if any)
-                    String label = pm.getApplicationLabel(info).toString();
-                    if (label.length() > 0) {
+                    String label = packages.getLabel(metadata);
+                    if (label != null && label.length() > 0) {
                         item.applicationLabel = label;
                     }
-                    int flags = packageInfo.applicationInfo.flags;
                     // Check if it is a system app
-                    boolean isSystemApp = (flags & ApplicationInfo.FLAG_SYSTEM) > 0;
-                    isSystemApp = isSystemApp || (flags & ApplicationInfo.FLAG_UPDATED_SYSTEM_APP) > 0;
-                    item.isSystemApp = isSystemApp;
-
-                    // Get app permissions
-                    if (packageInfo.permissions != null) {
-                        for (PermissionInfo permission : packageInfo.permissions) {
-                            item.appPermissions.add(new AppPermission(permission.name));
-                        }
+                    item.isSystemApp = metadata.isSystemApp();
+
+                    // Get app permissions, sharing the instances already in the dictionary
+                    for (String permission : metadata.permissions) {
+                        String name = StringDictionary.canonical(permission);
+                        item.appPermissions.add(new AppPermission(name));
                     }
 
                     /*
@@ -658,17 +481,14 @@ public final class Inspector {
                 item.name = pi.name;
 
                 String installationSource = null;
-                if (!pi.isSystemApp) {
-                    try {
-                        installationSource = pm.getInstallerPackageName(pName);
-                    } catch (IllegalArgumentException iae) {
-                        Log.e(TAG, "Could not get installer for " + pName);
-                    }
+                if (!pi.isSystemApp && metadata != null) {
+                    installationSource = packages.getInstaller(metadata);
                 }
                 if (installationSource == null) {
                     installationSource = "null";
                 }
-                item.installationPkg = installationSource;
+                item.installationPkg = StringDictionary.canonical(installationSource);
+                lookupTime += System.nanoTime() - lookupStart;
 
                 // TODO: More fields will need to be added here, but ProcessInfo needs to change.
                 // procMem[list.indexOf(pi)] = pi.getPId();
@@ -679,15 +499,21 @@ public final class Inspector {
             }
         }
 
+        SamplingMetrics.phase(SamplingMetrics.PHASE_PACKAGE_LOOKUP).record(lookupTime / 1000);
+
+        updateProcessCpuTimes(result);
+
+        // Labels and installers looked up for the first time are kept for the next samples
+        packages.save();
+
         // Send installed packages if we were to do so.
         if (processInfoMap != null && processInfoMap.size() > 0) {
             result.addAll(processInfoMap.values());
             SettingsUtils.markInstalledPackagesIncluded(context, false);
         }
 
-        // Go through the preferences and look for UNINSTALL, INSTALL and
-        // REPLACE keys set by InstallReceiver.
-        updatePackagePreferences(context, result);
+        // Report the packages installed, replaced, uninstalled or disabled since then
+        updatePackageEvents(context, result);
 
         // FIXME: These are not used yet.
         // ActivityManager pActivityManager =
@@ -703,59 +529,42 @@ public final class Inspector {
         return result;
     }
 
-    private static void updatePackagePreferences(final Context context, List<ProcessInfo> result) {
-        // Go through the preferences and look for UNINSTALL, INSTALL and
-        // REPLACE keys set by InstallReceiver.
-        SharedPreferences p = PreferenceManager.getDefaultSharedPreferences(context);
-        Set<String> ap = p.getAll().keySet();
-        SharedPreferences.Editor e = p.edit();
-        boolean edited = false;
-        for (String pref : ap) {
-            if (pref.startsWith(INSTALLED)) {
-                String pname = pref.substring(INSTALLED.length());
-                boolean installed = p.getBoolean(pref, false);
-                if (installed) {
+    private static void updatePackageEvents(final Context context, List<ProcessInfo> result) {
+        // Only the events recorded since the previous sample are read
+        PackageJournal journal = PackageJournal.getInstance(context);
+        for (PackageJournal.Event event : journal.read()) {
+            String pname = event.packageName;
+            ProcessInfo i;
+            switch (event.type) {
+                case PackageJournal.INSTALLED:
                     Log.i(TAG, "Installed:" + pname);
-                    ProcessInfo i = Package.getInstalledPackage(context, pname);
+                    i = Package.getInstalledPackage(context, pname);
                     if (i != null) {
                         i.importance = Config.IMPORTANCE_INSTALLED;
                         result.add(i);
-                        e.remove(pref);
-                        edited = true;
                     }
-                }
-            } else if (pref.startsWith(REPLACED)) {
-                String pname = pref.substring(REPLACED.length());
-                boolean replaced = p.getBoolean(pref, false);
-                if (replaced) {
+                    break;
+                case PackageJournal.REPLACED:
                     Log.i(TAG, "Replaced:" + pname);
-                    ProcessInfo i = Package.getInstalledPackage(context, pname);
+                    i = Package.getInstalledPackage(context, pname);
                     if (i != null) {
                         i.importance = Config.IMPORTANCE_REPLACED;
                         result.add(i);
-                        e.remove(pref);
-                        edited = true;
                     }
-                }
-            } else if (pref.startsWith(UNINSTALLED)) {
-                String pname = pref.substring(UNINSTALLED.length());
-                boolean uninstalled = p.getBoolean(pref, false);
-                if (uninstalled) {
+                    break;
+                case PackageJournal.UNINSTALLED:
                     Log.i(TAG, "Uninstalled:" + pname);
-                    result.add(Process.uninstalledItem(pname, pref, e));
-                    edited = true;
-                }
-            } else if (pref.startsWith(DISABLED)) {
-                String pname = pref.substring(DISABLED.length());
-                boolean disabled = p.getBoolean(pref, false);
-                if (disabled) {
+                    result.add(Process.uninstalledItem(pname));
+                    break;
+                case PackageJournal.DISABLED:
                     Log.i(TAG, "Disabled app:" + pname);
-                    result.add(Process.disabledItem(pname, pref, e));
-                    edited = true;
-                }
+                    result.add(Process.disabledItem(pname));
+                    break;
+                default:
+                    break;
             }
         }
-        if (edited) e.apply();
+        journal.commit();
     }
 
     /**
@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2016 Hugo Matalonga & João Paulo Fernandes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmatalonga.greenhub.managers.sampling;
+
+import android.content.Context;
+import android.os.SystemClock;
+
+import com.hmatalonga.greenhub.Config;
+import com.hmatalonga.greenhub.managers.sampling.probes.SampleProbe;
+import com.hmatalonga.greenhub.models.data.Feature;
+import com.hmatalonga.greenhub.models.data.Sample;
+import com.hmatalonga.greenhub.util.LatencyHistogram;
+import com.hmatalonga.greenhub.util.LogUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.hmatalonga.greenhub.util.LogUtils.makeLogTag;
+
+/**
+ * Runs independent sample probes concurrently on a small bounded pool.
+ * <p>
+ * Each stage has a deadline shared by all of its probes. Results are collected on the
+ * sampling thread with {@link #get(Probe, Object)}, a probe that misses the deadline
+ * gives back the fallback value and is reported as a {@link Feature} marker, so a slow
+ * binder call on some ROMs no longer stalls the whole sample.
+ */
+public class ProbeStage {
+
+    private static final String TAG = makeLogTag(ProbeStage.class);
+
+    private static final ThreadPoolExecutor sExecutor = createExecutor();
+
+    private final long mDeadline;
+
+    private final List<String> mTimedOut = new ArrayList<>();
+
+    /**
+     * Handle of a submitted probe.
+     */
+    public static final class Probe<T> {
+        final String name;
+
+        final Future<T> future;
+
+        final T value;
+
+        SampleProbe<T> source;
+
+        Probe(String name, Future<T> future, T value) {
+            this.name = name;
+            this.future = future;
+            this.value = value;
+        }
+    }
+
+    public ProbeStage() {
+        this(Config.SAMPLING_PROBE_DEADLINE);
+    }
+
+    public ProbeStage(long timeout) {
+        mDeadline = SystemClock.elapsedRealtime() + timeout;
+    }
+
+    /**
+     * Starts a probe on the pool. When the pool is saturated the probe runs right away
+     * on the calling thread. The probe latency is recorded in {@link SamplingMetrics}.
+     *
+     * @param name  name used to report the probe if it times out.
+     * @param probe the probe itself, must not touch managed Realm objects.
+     */
+    public <T> Probe<T> submit(String name, final Callable<T> probe) {
+        final LatencyHistogram histogram = SamplingMetrics.probe(name);
+        Callable<T> callable = new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                long start = System.nanoTime();
+                try {
+                    return probe.call();
+                } finally {
+                    histogram.recordSince(start);
+                }
+            }
+        };
+
+        try {
+            return new Probe<>(name, sExecutor.submit(callable), null);
+        } catch (RejectedExecutionException e) {
+            T value = null;
+            try {
+                value = callable.call();
+            } catch (Exception x) {
+                LogUtils.logE(TAG, "Probe " + name + " failed: " + x.getMessage());
+            }
+            return new Probe<>(name, null, value);
+        }
+    }
+
+    /**
+     * Starts the collection of a {@link SampleProbe}, see {@link #store(Probe, Sample)}.
+     */
+    public <T> Probe<T> submit(final Context context, final SampleProbe<T> probe) {
+        Probe<T> handle = submit(probe.getName(), new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                return probe.collect(context);
+            }
+        });
+        handle.source = probe;
+        return handle;
+    }
+
+    /**
+     * Waits for a {@link SampleProbe} and stores its value in the sample. The sample is
+     * left untouched if the probe failed or timed out.
+     */
+    public <T> void store(Probe<T> probe, Sample sample) {
+        T value = get(probe, null);
+        if (value != null) {
+            probe.source.store(sample, value);
+        }
+    }
+
+    /**
+     * Waits for the result of a probe until the stage deadline.
+     *
+     * @param probe    the probe to wait for.
+     * @param fallback value returned if the probe failed or timed out.
+     * @return the value computed by the probe, or the fallback.
+     */
+    public <T> T get(Probe<T> probe, T fallback) {
+        if (probe.future == null) {
+            return (probe.value != null) ? probe.value : fallback;
+        }
+
+        long remaining = Math.max(0, mDeadline - SystemClock.elapsedRealtime());
+
+        try {
+            T value = probe.future.get(remaining, TimeUnit.MILLISECONDS);
+            return (value != null) ? value : fallback;
+        } catch (TimeoutException e) {
+            probe.future.cancel(true);
+            mTimedOut.add(probe.name);
+            LogUtils.logI(TAG, "Probe " + probe.name + " timed out");
+        } catch (ExecutionException e) {
+            LogUtils.logE(TAG, "Probe " + probe.name + " failed: " + e.getCause());
+        } catch (InterruptedException e) {
+            probe.future.cancel(true);
+            Thread.currentThread().interrupt();
+        }
+
+        return fallback;
+    }
+
+    public List<String> getTimedOut() {
+        return mTimedOut;
+    }
+
+    /**
+     * Adds a marker feature for every probe that missed the deadline.
+     */
+    public void addTimeoutMarkers(List<Feature> features) {
+        for (String name : mTimedOut) {
+            Feature feature = new Feature();
+            feature.key = Config.SAMPLING_PROBE_TIMED_OUT;
+            feature.value = name;
+            features.add(feature);
+        }
+    }
+
+    private static ThreadPoolExecutor createExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                Config.SAMPLING_PROBE_THREADS,
+                Config.SAMPLING_PROBE_THREADS,
+                30,
+                TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(Config.SAMPLING_PROBE_QUEUE_SIZE),
+                new ThreadFactory() {
+                    private final AtomicInteger mCount = new AtomicInteger(1);
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "SampleProbe #" + mCount.getAndIncrement());
+                        thread.setDaemon(true);
+                        thread.setPriority(Thread.MIN_PRIORITY);
+                        return thread;
+                    }
+                }
+        );
+        // Idle workers are released between samples
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
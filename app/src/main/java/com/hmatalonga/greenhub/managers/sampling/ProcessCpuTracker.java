@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2016 Hugo Matalonga & João Paulo Fernandes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmatalonga.greenhub.managers.sampling;
+
+import android.os.SystemClock;
+
+import com.hmatalonga.greenhub.util.ProcFileReader;
+
+import java.util.Arrays;
+
+/**
+ * Tracks the CPU time used by a set of processes between two consecutive samples.
+ * <p>
+ * utime and stime are read from /proc/[pid]/stat into primitive arrays sorted by pid,
+ * and each update is compared against the previous one with a binary search. The
+ * process start time is kept along with the counters so a pid reused by a new process
+ * is not mistaken for the old one. All reads share the same buffer.
+ * <p>
+ * Since Android N the stat files of other apps are usually not readable, in which case
+ * only the own processes of the app are measured.
+ */
+public class ProcessCpuTracker {
+
+    // Value of sysconf(_SC_CLK_TCK), which is 100 on every Android kernel
+    private static final long JIFFIES_PER_SECOND = 100;
+
+    // Tokens after the process name to reach each field, see proc(5)
+    private static final int TOKENS_BEFORE_UTIME = 11;
+
+    private static final int TOKENS_BEFORE_START_TIME = 6;
+
+    private final ProcFileReader mReader = new ProcFileReader(null, 1024);
+
+    private final StringBuilder mPath = new StringBuilder(24);
+
+    private int mSize = 0;
+
+    private int[] mPids;
+
+    private long[] mStartTimes;
+
+    private long[] mUserTimes;
+
+    private long[] mSystemTimes;
+
+    private long[] mUserDeltas;
+
+    private long[] mSystemDeltas;
+
+    // Counters of the previous update, swapped with the current ones on every update
+    private int mLastSize = 0;
+
+    private int[] mLastPids;
+
+    private long[] mLastStartTimes;
+
+    private long[] mLastUserTimes;
+
+    private long[] mLastSystemTimes;
+
+    // Uptime in jiffies of the previous update, -1 if there is none yet
+    private long mLastUptime = -1;
+
+    public ProcessCpuTracker() {
+        this(64);
+    }
+
+    public ProcessCpuTracker(int capacity) {
+        allocate(capacity);
+        mLastPids = new int[capacity];
+        mLastStartTimes = new long[capacity];
+        mLastUserTimes = new long[capacity];
+        mLastSystemTimes = new long[capacity];
+    }
+
+    /**
+     * Reads the CPU times of the given processes and computes the time each one used
+     * since the previous update. Pids that were not given are dropped from the tracker.
+     *
+     * @param pids  pids to read, may be unsorted and contain duplicates. It is sorted in place.
+     * @param count number of valid entries in {@code pids}.
+     */
+    public synchronized void update(int[] pids, int count) {
+        swap();
+
+        if (mPids.length < count) {
+            allocate(count);
+        }
+
+        long uptime = SystemClock.elapsedRealtime() * JIFFIES_PER_SECOND / 1000;
+
+        Arrays.sort(pids, 0, count);
+        mSize = 0;
+
+        for (int i = 0; i < count; i++) {
+            int pid = pids[i];
+            if (pid <= 0 || (mSize > 0 && mPids[mSize - 1] == pid)) continue;
+            if (!readStat(pid, mSize)) continue;
+
+            int last = Arrays.binarySearch(mLastPids, 0, mLastSize, pid);
+
+            if (last >= 0 && mLastStartTimes[last] == mStartTimes[mSize]) {
+                mUserDeltas[mSize] = Math.max(0, mUserTimes[mSize] - mLastUserTimes[last]);
+                mSystemDeltas[mSize] = Math.max(0, mSystemTimes[mSize] - mLastSystemTimes[last]);
+            } else if (mLastUptime >= 0 && mStartTimes[mSize] >= mLastUptime) {
+                // New process (or reused pid) started after the previous update,
+                // so all of its CPU time belongs to this interval. Older kernels do not
+                // count deep sleep in the start time, which only makes this check stricter
+                mUserDeltas[mSize] = mUserTimes[mSize];
+                mSystemDeltas[mSize] = mSystemTimes[mSize];
+            } else {
+                // Not tracked before, there is no baseline to compare with
+                mUserDeltas[mSize] = -1;
+                mSystemDeltas[mSize] = -1;
+            }
+            mSize++;
+        }
+
+        mLastUptime = uptime;
+    }
+
+    /**
+     * @return jiffies spent in user mode since the previous update, -1 if unknown.
+     */
+    public synchronized long getUserTime(int pid) {
+        int index = Arrays.binarySearch(mPids, 0, mSize, pid);
+        return index >= 0 ? mUserDeltas[index] : -1;
+    }
+
+    /**
+     * @return jiffies spent in kernel mode since the previous update, -1 if unknown.
+     */
+    public synchronized long getSystemTime(int pid) {
+        int index = Arrays.binarySearch(mPids, 0, mSize, pid);
+        return index >= 0 ? mSystemDeltas[index] : -1;
+    }
+
+    public synchronized int size() {
+        return mSize;
+    }
+
+    public synchronized void reset() {
+        mSize = 0;
+        mLastSize = 0;
+        mLastUptime = -1;
+    }
+
+    private boolean readStat(int pid, int index) {
+        mPath.setLength(0);
+        mPath.append("/proc/").append(pid).append("/stat");
+
+        if (!mReader.readOnce(mPath.toString())) return false;
+
+        // The process name may contain spaces and parentheses, fields start after the last ')'
+        if (!mReader.skipPastLast((byte) ')')) return false;
+
+        // State, ppid, pgrp, session, tty_nr, tpgid, flags and fault counters,
+        // skipped as tokens since some of them can be negative
+        for (int i = 0; i < TOKENS_BEFORE_UTIME; i++) {
+            mReader.skipToken();
+        }
+        long userTime = mReader.nextLong();
+        long systemTime = mReader.nextLong();
+
+        // cutime, cstime, priority, nice, num_threads, itrealvalue
+        for (int i = 0; i < TOKENS_BEFORE_START_TIME; i++) {
+            mReader.skipToken();
+        }
+        long startTime = mReader.nextLong();
+
+        if (userTime < 0 || systemTime < 0 || startTime < 0) return false;
+
+        mPids[index] = pid;
+        mUserTimes[index] = userTime;
+        mSystemTimes[index] = systemTime;
+        mStartTimes[index] = startTime;
+        return true;
+    }
+
+    private void swap() {
+        int[] pids = mLastPids;
+        long[] startTimes = mLastStartTimes;
+        long[] userTimes = mLastUserTimes;
+        long[] systemTimes = mLastSystemTimes;
+
+        mLastPids = mPids;
+        mLastStartTimes = mStartTimes;
+        mLastUserTimes = mUserTimes;
+        mLastSystemTimes = mSystemTimes;
+        mLastSize = mSize;
+
+        mPids = pids;
+        mStartTimes = startTimes;
+        mUserTimes = userTimes;
+        mSystemTimes = systemTimes;
+        mSize = 0;
+    }
+
+    private void allocate(int capacity) {
+        mPids = new int[capacity];
+        mStartTimes = new long[capacity];
+        mUserTimes = new long[capacity];
+        mSystemTimes = new long[capacity];
+        mUserDeltas = new long[capacity];
+        mSystemDeltas = new long[capacity];
+    }
+}
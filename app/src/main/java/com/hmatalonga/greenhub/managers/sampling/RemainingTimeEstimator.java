@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) 2016 Hugo Matalonga & João Paulo Fernandes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmatalonga.greenhub.managers.sampling;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import com.hmatalonga.greenhub.Config;
+import com.hmatalonga.greenhub.models.data.BatteryUsage;
+
+/**
+ * Online estimate of the remaining battery time, and of the time left to a full charge.
+ * <p>
+ * Keeps an exponentially weighted average of the seconds taken per mAh of charge, one for
+ * discharging and one for each charger type, updated in O(1) with every battery usage
+ * saved. The averages and the last usage seen are kept in a small preferences file of
+ * their own, so an estimate never needs a query. Until a rate has been measured, the
+ * default rates of {@link Config} are used.
+ */
+public final class RemainingTimeEstimator {
+
+    static final int MODE_NONE = -1;
+
+    static final int MODE_DISCHARGE = 0;
+
+    static final int MODE_AC = 1;
+
+    static final int MODE_USB = 2;
+
+    static final int MODE_WIRELESS = 3;
+
+    // Charging from a source not reported by the intent
+    static final int MODE_CHARGE = 4;
+
+    private static final int MODES = 5;
+
+    // Same smoothing as a moving average of the last BATTERY_CAPACITY_SAMPLES_SIZE samples
+    private static final float WEIGHT = 2f / (Config.BATTERY_CAPACITY_SAMPLES_SIZE + 1);
+
+    private static final String KEY_RATE = "rate_";
+
+    private static final String KEY_LAST_MODE = "last_mode";
+
+    private static final String KEY_LAST_TIME = "last_time";
+
+    private static final String KEY_LAST_CAPACITY = "last_capacity";
+
+    private static RemainingTimeEstimator sInstance = null;
+
+    private final SharedPreferences mPreferences;
+
+    // Seconds per mAh, 0 while not measured yet
+    private final float[] mRates = new float[MODES];
+
+    private int mLastMode = MODE_NONE;
+
+    private long mLastTime;
+
+    private int mLastCapacity;
+
+    public static synchronized RemainingTimeEstimator getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new RemainingTimeEstimator(context.getApplicationContext()
+                    .getSharedPreferences(Config.REMAINING_TIME_PREFERENCES,
+                            Context.MODE_PRIVATE));
+        }
+        return sInstance;
+    }
+
+    /**
+     * @param preferences where the state is kept, or null to keep it in memory only.
+     */
+    RemainingTimeEstimator(SharedPreferences preferences) {
+        mPreferences = preferences;
+        if (preferences == null) return;
+
+        for (int i = 0; i < MODES; i++) {
+            mRates[i] = preferences.getFloat(KEY_RATE + i, 0);
+        }
+        mLastMode = preferences.getInt(KEY_LAST_MODE, MODE_NONE);
+        mLastTime = preferences.getLong(KEY_LAST_TIME, 0);
+        mLastCapacity = preferences.getInt(KEY_LAST_CAPACITY, 0);
+    }
+
+    /**
+     * Updates the rate of the usage mode with the change since the previous usage.
+     */
+    public void add(BatteryUsage usage) {
+        if (usage.details == null) return;
+
+        add(getMode(usage.state, usage.details.charger), usage.timestamp,
+                usage.details.remainingCapacity);
+    }
+
+    /**
+     * Calculates an estimate, in seconds, for the remaining battery time,
+     * or for the remaining time to fully charge the battery.
+     *
+     * @param charging          if true, estimates the time until full charge.
+     * @param charger           the charger type, "ac", "usb" or "wireless".
+     * @param remainingCapacity capacity to discharge, or to charge, in mAh.
+     * @return the estimated time in seconds.
+     */
+    public long estimate(boolean charging, String charger, double remainingCapacity) {
+        return estimate(charging ? getMode("Charging", charger) : MODE_DISCHARGE,
+                remainingCapacity);
+    }
+
+    synchronized void add(int mode, long timestamp, int capacity) {
+        if (mode != mLastMode || capacity <= 0 || timestamp < mLastTime) {
+            // Plugged, unplugged or full, start measuring again from here
+            start(mode, timestamp, capacity);
+            save(MODE_NONE);
+            return;
+        }
+
+        int delta = mode == MODE_DISCHARGE ? mLastCapacity - capacity : capacity - mLastCapacity;
+        if (delta == 0) {
+            // Keep the start point, so the time spent on the same reading is not lost
+            return;
+        }
+        if (delta < 0) {
+            start(mode, timestamp, capacity);
+            save(MODE_NONE);
+            return;
+        }
+
+        float rate = (float) (timestamp - mLastTime) / 1000 / delta;
+        if (mRates[mode] == 0) {
+            mRates[mode] = rate;
+        } else {
+            mRates[mode] += WEIGHT * (rate - mRates[mode]);
+        }
+        start(mode, timestamp, capacity);
+        save(mode);
+    }
+
+    synchronized long estimate(int mode, double remainingCapacity) {
+        if (mode < 0 || remainingCapacity <= 0) return 0;
+
+        if (mRates[mode] > 0) {
+            return (long) (remainingCapacity * mRates[mode]);
+        }
+        return (long) (remainingCapacity * 60 * 60 / getDefaultRate(mode));
+    }
+
+    synchronized float getRate(int mode) {
+        return mRates[mode];
+    }
+
+    static int getMode(String state, String charger) {
+        if ("Discharging".equals(state)) return MODE_DISCHARGE;
+        if (!"Charging".equals(state)) return MODE_NONE;
+
+        if (charger == null) return MODE_CHARGE;
+        switch (charger) {
+            case "ac":
+                return MODE_AC;
+            case "usb":
+                return MODE_USB;
+            case "wireless":
+                return MODE_WIRELESS;
+            default:
+                return MODE_CHARGE;
+        }
+    }
+
+    private static int getDefaultRate(int mode) {
+        switch (mode) {
+            case MODE_AC:
+                return Config.DEFAULT_AC_CHARGE_RATE;
+            case MODE_USB:
+                return Config.DEFAULT_USB_CHARGE_RATE;
+            case MODE_WIRELESS:
+                return Config.DEFAULT_WIRELESS_CHARGE_RATE;
+            default:
+                return Config.DEFAULT_DISCHARGE_RATE;
+        }
+    }
+
+    private void start(int mode, long timestamp, int capacity) {
+        mLastMode = capacity > 0 ? mode : MODE_NONE;
+        mLastTime = timestamp;
+        mLastCapacity = capacity;
+    }
+
+    /**
+     * Persists the last usage and, unless MODE_NONE, the rate of the given mode.
+     */
+    private void save(int mode) {
+        if (mPreferences == null) return;
+
+        SharedPreferences.Editor editor = mPreferences.edit()
+                .putInt(KEY_LAST_MODE, mLastMode)
+                .putLong(KEY_LAST_TIME, mLastTime)
+                .putInt(KEY_LAST_CAPACITY, mLastCapacity);
+        if (mode != MODE_NONE) {
+            editor.putFloat(KEY_RATE + mode, mRates[mode]);
+        }
+        editor.apply();
+    }
+}
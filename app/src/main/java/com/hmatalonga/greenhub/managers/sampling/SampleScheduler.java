@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2016 Hugo Matalonga & João Paulo Fernandes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmatalonga.greenhub.managers.sampling;
+
+import android.app.job.JobInfo;
+import android.app.job.JobScheduler;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.os.SystemClock;
+
+import com.hmatalonga.greenhub.Config;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collapses bursts of battery broadcasts into single sampling runs.
+ * <p>
+ * At most one run is in flight, from the moment its job is scheduled until the
+ * {@link DataEstimatorService} is done with it, and at most one more is pending behind it.
+ * Broadcasts arriving meanwhile only replace the battery state the next run will use, so
+ * a run always sees the latest broadcast. A run that never reports back is given up after
+ * {@link Config#SAMPLING_RUN_TIMEOUT}.
+ */
+public class SampleScheduler {
+
+    // Fixed id, scheduling it again replaces a job not started yet
+    private static final int JOB_ID = 1;
+
+    private static SampleScheduler sInstance = null;
+
+    private final AtomicLong mReceived =
+            SamplingMetrics.counter(SamplingMetrics.COUNTER_EVENTS_RECEIVED);
+
+    private final AtomicLong mCoalesced =
+            SamplingMetrics.counter(SamplingMetrics.COUNTER_EVENTS_COALESCED);
+
+    private final AtomicLong mExecuted =
+            SamplingMetrics.counter(SamplingMetrics.COUNTER_EVENTS_EXECUTED);
+
+    // Latest broadcast not handed to a run yet
+    private Intent mLatest = null;
+
+    // A job is scheduled and has not started
+    private boolean mScheduled = false;
+
+    // A run started and has not finished
+    private boolean mRunning = false;
+
+    // When the in flight run was scheduled or started
+    private long mSince;
+
+    // Another run is due once the current one finishes
+    private boolean mPending = false;
+
+    public static synchronized SampleScheduler getInstance() {
+        if (sInstance == null) {
+            sInstance = new SampleScheduler();
+        }
+        return sInstance;
+    }
+
+    /**
+     * Requests a sampling run for a battery broadcast.
+     *
+     * @param context the Context.
+     * @param intent  the ACTION_BATTERY_CHANGED broadcast.
+     */
+    public void offer(final Context context, Intent intent) {
+        if (offer(intent, SystemClock.elapsedRealtime())) {
+            schedule(context);
+        }
+    }
+
+    /**
+     * @return true if a job has to be scheduled for the broadcast.
+     */
+    synchronized boolean offer(Intent intent, long now) {
+        mReceived.incrementAndGet();
+        mLatest = intent;
+
+        if ((mScheduled || mRunning) && now - mSince > Config.SAMPLING_RUN_TIMEOUT) {
+            // The run was lost, for instance the job was dropped or the service got killed
+            mScheduled = false;
+            mRunning = false;
+            mPending = false;
+        }
+
+        if (mScheduled || (mRunning && mPending)) {
+            mCoalesced.incrementAndGet();
+            return false;
+        }
+        if (mRunning) {
+            mPending = true;
+            return false;
+        }
+
+        mScheduled = true;
+        mSince = now;
+        return true;
+    }
+
+    /**
+     * Starts the scheduled run.
+     *
+     * @return the broadcast to sample, or null if there is nothing to do.
+     */
+    public synchronized Intent start() {
+        return start(SystemClock.elapsedRealtime());
+    }
+
+    synchronized Intent start(long now) {
+        mScheduled = false;
+
+        Intent intent = mLatest;
+        if (intent == null) return null;
+
+        mLatest = null;
+        mRunning = true;
+        mSince = now;
+        mExecuted.incrementAndGet();
+        return intent;
+    }
+
+    /**
+     * Ends the current run, and schedules the pending one if there is any.
+     *
+     * @param context the Context.
+     */
+    public void finish(final Context context) {
+        if (finish(SystemClock.elapsedRealtime())) {
+            schedule(context);
+        }
+    }
+
+    /**
+     * @return true if a job has to be scheduled for the pending run.
+     */
+    synchronized boolean finish(long now) {
+        mRunning = false;
+
+        if (!mPending) return false;
+
+        mPending = false;
+        if (mLatest == null) return false;
+
+        mScheduled = true;
+        mSince = now;
+        return true;
+    }
+
+    private static void schedule(final Context context) {
+        ComponentName serviceComponent =
+                new ComponentName(context, DataEstimator.EstimatorJob.class);
+        JobInfo.Builder builder = new JobInfo.Builder(JOB_ID, serviceComponent);
+        builder.setMinimumLatency(1); // wait at least
+        builder.setOverrideDeadline(10); // maximum delay
+        builder.setRequiresCharging(false);
+        builder.setRequiresDeviceIdle(false);
+
+        JobScheduler jobScheduler = context.getSystemService(JobScheduler.class);
+        jobScheduler.schedule(builder.build());
+    }
+}
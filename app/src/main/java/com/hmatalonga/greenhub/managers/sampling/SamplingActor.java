@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2016 Hugo Matalonga & João Paulo Fernandes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmatalonga.greenhub.managers.sampling;
+
+import com.hmatalonga.greenhub.Config;
+import com.hmatalonga.greenhub.util.LogUtils;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.hmatalonga.greenhub.util.LogUtils.makeLogTag;
+
+/**
+ * Single thread that owns the sampler state and handles sampling events one at a time.
+ * <p>
+ * Battery level updates, sample runs, screen and power events are queued in a bounded
+ * mailbox and run in the order they were sent, so a sample never sees the battery level
+ * change halfway through. When the mailbox is full the event is rejected right away and
+ * counted, instead of piling up behind a slow sample. Battery level updates are merged so
+ * there is at most one of them in the mailbox.
+ * <p>
+ * The state getters are meant for the actor thread, other threads read the level of the
+ * latest broadcast with {@link #getReportedBatteryLevel()}.
+ */
+public class SamplingActor {
+
+    private static final String TAG = makeLogTag(SamplingActor.class);
+
+    private static SamplingActor sInstance = null;
+
+    private final ThreadPoolExecutor mExecutor;
+
+    private final AtomicLong mRejected =
+            SamplingMetrics.counter(SamplingMetrics.COUNTER_MAILBOX_REJECTED);
+
+    // Level of the latest battery broadcast, written by the receiver
+    private volatile double mReportedLevel = 0;
+
+    // Whether a battery level update is waiting in the mailbox
+    private final AtomicBoolean mLevelQueued = new AtomicBoolean(false);
+
+    // Owned by the actor thread.
+    // The level might be zero until we get the non-zero value from the intent
+    private double mBatteryLevel = 0;
+
+    // Level of the last battery change handled, whether its sample was stored or skipped
+    private double mLastBatteryLevel = 0;
+
+    private final Runnable mApplyLevel = new Runnable() {
+        @Override
+        public void run() {
+            mLevelQueued.set(false);
+            mBatteryLevel = mReportedLevel;
+        }
+    };
+
+    public static synchronized SamplingActor getInstance() {
+        if (sInstance == null) {
+            sInstance = new SamplingActor(Config.SAMPLING_MAILBOX_SIZE);
+        }
+        return sInstance;
+    }
+
+    SamplingActor(int capacity) {
+        mExecutor = new ThreadPoolExecutor(
+                1,
+                1,
+                0,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(capacity),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "SamplingActor");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                }
+        );
+    }
+
+    /**
+     * Reports the battery level of a broadcast. It is applied to the actor state
+     * after the events already in the mailbox.
+     * <p>
+     * Take in level and scale as doubles to avoid loss of precision issues.
+     * Note that GreenHub stores battery level as a value between 0 and 1, e.g. 0.45 for 45%.
+     *
+     * @param level Current battery level, usually in percent.
+     * @param scale Battery scale, usually 100.0.
+     */
+    public void reportBatteryLevel(double level, double scale) {
+        /*
+         * we should multiply the result of the division below by 100.0 to get the battery level
+         * in the scale of 0-100, but since the previous samples
+         * in our server's dataset are in the scale of 0.00-1.00, we omit the multiplication.
+         */
+        mReportedLevel = level / scale;
+
+        if (mLevelQueued.compareAndSet(false, true) && !post(mApplyLevel)) {
+            mLevelQueued.set(false);
+        }
+    }
+
+    /**
+     * Queues an event.
+     *
+     * @return false if the mailbox is full and the event was dropped.
+     */
+    public boolean post(Runnable event) {
+        try {
+            mExecutor.execute(event);
+            return true;
+        } catch (RejectedExecutionException e) {
+            mRejected.incrementAndGet();
+            LogUtils.logI(TAG, "Mailbox full, event dropped");
+            return false;
+        }
+    }
+
+    /**
+     * Queues an event and waits for it to be handled, for callers that have to stay alive
+     * until then, such as services.
+     *
+     * @param timeout maximum time to wait, in ms.
+     * @return false if the event was dropped, failed or did not finish in time.
+     */
+    public boolean call(Runnable event, long timeout) {
+        Future<?> future;
+        try {
+            future = mExecutor.submit(event);
+        } catch (RejectedExecutionException e) {
+            mRejected.incrementAndGet();
+            LogUtils.logI(TAG, "Mailbox full, event dropped");
+            return false;
+        }
+
+        try {
+            future.get(timeout, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (TimeoutException e) {
+            LogUtils.logI(TAG, "Event still running after " + timeout + " ms");
+        } catch (ExecutionException e) {
+            LogUtils.logE(TAG, "Event failed: " + e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    /**
+     * @return the battery level of the latest broadcast, between 0 and 1. Any thread.
+     */
+    public double getReportedBatteryLevel() {
+        return mReportedLevel;
+    }
+
+    /**
+     * @return the battery level, between 0 and 1. Actor thread only.
+     */
+    public double getBatteryLevel() {
+        return mBatteryLevel;
+    }
+
+    /**
+     * @return the battery level of the last change handled. Actor thread only.
+     */
+    public double getLastBatteryLevel() {
+        return mLastBatteryLevel;
+    }
+
+    /**
+     * Checks whether the battery level changed since the last change handled, and marks
+     * the current level as handled. A change whose sample is skipped afterwards is handled
+     * all the same, so the next broadcasts at that level are not changes. Actor thread only.
+     *
+     * @return true if the level changed.
+     */
+    public boolean takeLevelChange() {
+        if (mBatteryLevel == mLastBatteryLevel) return false;
+
+        mLastBatteryLevel = mBatteryLevel;
+        return true;
+    }
+
+    /**
+     * Actor thread only.
+     */
+    public void setLastBatteryLevel(double level) {
+        mLastBatteryLevel = level;
+    }
+}
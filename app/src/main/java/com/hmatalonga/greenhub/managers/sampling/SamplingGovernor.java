@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2016 Hugo Matalonga & João Paulo Fernandes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmatalonga.greenhub.managers.sampling;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.SystemClock;
+
+import com.hmatalonga.greenhub.Config;
+import com.hmatalonga.greenhub.models.Screen;
+import com.hmatalonga.greenhub.util.SettingsUtils;
+
+/**
+ * Decides how much of a sample to take for each battery level change.
+ * <p>
+ * Sampling CPU time is paid from a token bucket, refilled at the budget set in the
+ * preferences (ms of CPU per hour) and holding up to a quarter of it. The cost of full
+ * and light samples is measured and smoothed, and a sample is only taken if the bucket
+ * can pay for it. A full sample needs twice its cost while the screen is off, and is
+ * never taken on low battery, in which case a light sample (battery and CPU only) is
+ * taken instead.
+ * <p>
+ * The bucket and the costs are kept in a small preferences file of their own after every
+ * sample, so a restart of the process does not refill the bucket. The bucket is not
+ * refilled for the time the device was off, since refills follow
+ * {@link SystemClock#elapsedRealtime()}.
+ */
+public class SamplingGovernor {
+
+    public static final int MODE_SKIP = 0;
+
+    public static final int MODE_LIGHT = 1;
+
+    public static final int MODE_FULL = 2;
+
+    private static final long HOUR = 3600000;
+
+    // Weight of the last measured cost in the smoothed cost
+    private static final double COST_WEIGHT = 0.25;
+
+    private static final String KEY_TOKENS = "tokens";
+
+    private static final String KEY_LAST_REFILL = "last_refill";
+
+    private static final String KEY_FULL_COST = "full_cost";
+
+    private static final String KEY_LIGHT_COST = "light_cost";
+
+    private static SamplingGovernor sInstance = null;
+
+    private final SharedPreferences mPreferences;
+
+    private boolean mStarted = false;
+
+    private double mTokens;
+
+    private long mLastRefill;
+
+    private double mFullCost = Config.SAMPLING_FULL_COST;
+
+    private double mLightCost = Config.SAMPLING_LIGHT_COST;
+
+    public static synchronized SamplingGovernor getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new SamplingGovernor(context.getApplicationContext()
+                    .getSharedPreferences(Config.SAMPLING_GOVERNOR_PREFERENCES,
+                            Context.MODE_PRIVATE));
+        }
+        return sInstance;
+    }
+
+    /**
+     * @param preferences where the state is kept, or null to keep it in memory only.
+     */
+    SamplingGovernor(SharedPreferences preferences) {
+        mPreferences = preferences;
+        if (preferences == null || !preferences.contains(KEY_TOKENS)) return;
+
+        mStarted = true;
+        mTokens = preferences.getFloat(KEY_TOKENS, 0);
+        mLastRefill = preferences.getLong(KEY_LAST_REFILL, 0);
+        mFullCost = preferences.getFloat(KEY_FULL_COST, Config.SAMPLING_FULL_COST);
+        mLightCost = preferences.getFloat(KEY_LIGHT_COST, Config.SAMPLING_LIGHT_COST);
+
+        // The clock started over after a reboot
+        long now = SystemClock.elapsedRealtime();
+        if (mLastRefill > now) mLastRefill = now;
+    }
+
+    /**
+     * Chooses the mode of the next sample from the current device state.
+     *
+     * @return one of MODE_SKIP, MODE_LIGHT or MODE_FULL.
+     */
+    public int decide(final Context context) {
+        return decide(
+                SystemClock.elapsedRealtime(),
+                SettingsUtils.fetchSamplingBudget(context),
+                Screen.isOn(context) == 1,
+                SamplingActor.getInstance().getBatteryLevel()
+        );
+    }
+
+    /**
+     * @param now          current time in ms, monotonic.
+     * @param budget       CPU time budget in ms per hour.
+     * @param screenOn     whether the screen is on.
+     * @param batteryLevel battery level, between 0 and 1.
+     * @return one of MODE_SKIP, MODE_LIGHT or MODE_FULL.
+     */
+    public synchronized int decide(long now, long budget, boolean screenOn, double batteryLevel) {
+        refill(now, budget);
+
+        boolean lowBattery = batteryLevel <= Config.BATTERY_LOW_LEVEL;
+        double fullCost = screenOn ? mFullCost : 2 * mFullCost;
+
+        if (!lowBattery && mTokens >= fullCost) {
+            return MODE_FULL;
+        }
+        if (mTokens >= mLightCost) {
+            return MODE_LIGHT;
+        }
+        return MODE_SKIP;
+    }
+
+    /**
+     * Pays the measured CPU time of a sample and updates the cost estimate of its mode.
+     *
+     * @param mode      the mode the sample was taken with.
+     * @param cpuMillis CPU time used by the sample, in ms.
+     */
+    public synchronized void charge(int mode, long cpuMillis) {
+        if (cpuMillis < 0) return;
+
+        // The bucket may go negative, the debt is paid before the next sample
+        mTokens -= cpuMillis;
+
+        if (mode == MODE_FULL) {
+            mFullCost += COST_WEIGHT * (cpuMillis - mFullCost);
+        } else if (mode == MODE_LIGHT) {
+            mLightCost += COST_WEIGHT * (cpuMillis - mLightCost);
+        }
+        save();
+    }
+
+    public synchronized double getTokens() {
+        return mTokens;
+    }
+
+    public synchronized double getFullCost() {
+        return mFullCost;
+    }
+
+    public synchronized double getLightCost() {
+        return mLightCost;
+    }
+
+    private void refill(long now, long budget) {
+        double capacity = budget / 4.0;
+
+        if (!mStarted) {
+            // First decision, start with a full bucket
+            mTokens = capacity;
+            mStarted = true;
+        } else if (now > mLastRefill) {
+            mTokens += (double) (now - mLastRefill) * budget / HOUR;
+        }
+
+        mTokens = Math.min(mTokens, capacity);
+        mLastRefill = now;
+    }
+
+    private void save() {
+        if (mPreferences == null) return;
+
+        mPreferences.edit()
+                .putFloat(KEY_TOKENS, (float) mTokens)
+                .putLong(KEY_LAST_REFILL, mLastRefill)
+                .putFloat(KEY_FULL_COST, (float) mFullCost)
+                .putFloat(KEY_LIGHT_COST, (float) mLightCost)
+                .apply();
+    }
+}
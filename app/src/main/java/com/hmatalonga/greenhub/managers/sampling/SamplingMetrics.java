@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2016 Hugo Matalonga & João Paulo Fernandes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmatalonga.greenhub.managers.sampling;
+
+import com.google.gson.JsonObject;
+import com.hmatalonga.greenhub.util.LatencyHistogram;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency histograms of the sampling pipeline, per probe and per phase, along with
+ * a few event counters.
+ * <p>
+ * Histograms and counters are created once per name and kept for the lifetime of the
+ * process, so recording a latency or an event does not allocate.
+ */
+public final class SamplingMetrics {
+
+    // Whole DataEstimatorService run for a battery event
+    public static final String PHASE_TAKE_SAMPLE = "takeSample";
+
+    // Inspector.getSample, including the probes
+    public static final String PHASE_GET_SAMPLE = "getSample";
+
+    // Running processes listing and ProcessInfo building
+    public static final String PHASE_PROCESS_SCAN = "processScan";
+
+    // Time spent on PackageManager lookups during the process scan
+    public static final String PHASE_PACKAGE_LOOKUP = "packageLookup";
+
+    // Inspector.getBatteryUsage, mostly battery properties
+    public static final String PHASE_BATTERY_USAGE = "batteryUsage";
+
+    // Batches of samples, usages and sessions written to the database
+    public static final String PHASE_DB_WRITE = "dbWrite";
+
+    // Signature digests found in, or missing from, the signature cache
+    public static final String COUNTER_SIGNATURE_HITS = "signatureCacheHits";
+
+    public static final String COUNTER_SIGNATURE_MISSES = "signatureCacheMisses";
+
+    // Battery broadcasts received, merged into another run, and sampled
+    public static final String COUNTER_EVENTS_RECEIVED = "batteryEventsReceived";
+
+    public static final String COUNTER_EVENTS_COALESCED = "batteryEventsCoalesced";
+
+    public static final String COUNTER_EVENTS_EXECUTED = "batteryEventsExecuted";
+
+    // Events dropped because the mailbox of the sampling actor was full
+    public static final String COUNTER_MAILBOX_REJECTED = "samplingMailboxRejected";
+
+    // Records dropped by the write-behind buffer after failing to be written too many times
+    public static final String COUNTER_WRITES_DROPPED = "writeBufferRecordsDropped";
+
+    private static final Map<String, LatencyHistogram> sPhases = new HashMap<>();
+
+    private static final Map<String, LatencyHistogram> sProbes = new HashMap<>();
+
+    private static final Map<String, AtomicLong> sCounters = new HashMap<>();
+
+    private SamplingMetrics() {
+    }
+
+    public static LatencyHistogram phase(String name) {
+        return get(sPhases, name);
+    }
+
+    public static LatencyHistogram probe(String name) {
+        return get(sProbes, name);
+    }
+
+    public static AtomicLong counter(String name) {
+        synchronized (sCounters) {
+            AtomicLong counter = sCounters.get(name);
+            if (counter == null) {
+                counter = new AtomicLong();
+                sCounters.put(name, counter);
+            }
+            return counter;
+        }
+    }
+
+    /**
+     * Exports every histogram with its count, mean, p50, p90, p99 and max, in microseconds,
+     * and the value of every counter.
+     */
+    public static JsonObject toJson() {
+        JsonObject root = new JsonObject();
+        root.add("phases", toJson(sPhases));
+        root.add("probes", toJson(sProbes));
+
+        JsonObject counters = new JsonObject();
+        synchronized (sCounters) {
+            for (Map.Entry<String, AtomicLong> entry : sCounters.entrySet()) {
+                counters.addProperty(entry.getKey(), entry.getValue().get());
+            }
+        }
+        root.add("counters", counters);
+        return root;
+    }
+
+    public static void reset() {
+        synchronized (sPhases) {
+            for (LatencyHistogram histogram : sPhases.values()) {
+                histogram.reset();
+            }
+        }
+        synchronized (sProbes) {
+            for (LatencyHistogram histogram : sProbes.values()) {
+                histogram.reset();
+            }
+        }
+        synchronized (sCounters) {
+            for (AtomicLong counter : sCounters.values()) {
+                counter.set(0);
+            }
+        }
+    }
+
+    private static LatencyHistogram get(Map<String, LatencyHistogram> map, String name) {
+        synchronized (map) {
+            LatencyHistogram histogram = map.get(name);
+            if (histogram == null) {
+                histogram = new LatencyHistogram();
+                map.put(name, histogram);
+            }
+            return histogram;
+        }
+    }
+
+    private static JsonObject toJson(Map<String, LatencyHistogram> map) {
+        JsonObject json = new JsonObject();
+        synchronized (map) {
+            for (Map.Entry<String, LatencyHistogram> entry : map.entrySet()) {
+                json.add(entry.getKey(), entry.getValue().toJson());
+            }
+        }
+        return json;
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2016 Hugo Matalonga & João Paulo Fernandes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmatalonga.greenhub.managers.sampling.probes;
+
+import android.content.Context;
+
+import com.hmatalonga.greenhub.models.LocationInfo;
+import com.hmatalonga.greenhub.models.data.LocationProvider;
+import com.hmatalonga.greenhub.models.data.Sample;
+
+import java.util.List;
+
+/**
+ * Enabled location providers.
+ */
+public class LocationProvidersProbe implements SampleProbe<List<LocationProvider>> {
+
+    @Override
+    public String getName() {
+        return "locationProviders";
+    }
+
+    @Override
+    public int getCost() {
+        return COST_MEDIUM;
+    }
+
+    @Override
+    public String getRequiredPermission() {
+        return null;
+    }
+
+    @Override
+    public List<LocationProvider> collect(Context context) {
+        return LocationInfo.getEnabledLocationProviders(context);
+    }
+
+    @Override
+    public void store(Sample sample, List<LocationProvider> value) {
+        sample.locationProviders.addAll(value);
+    }
+}
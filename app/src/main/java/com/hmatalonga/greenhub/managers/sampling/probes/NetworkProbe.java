@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2016 Hugo Matalonga & João Paulo Fernandes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmatalonga.greenhub.managers.sampling.probes;
+
+import android.Manifest;
+import android.content.Context;
+
+import com.hmatalonga.greenhub.models.Network;
+import com.hmatalonga.greenhub.models.Phone;
+import com.hmatalonga.greenhub.models.SimCard;
+import com.hmatalonga.greenhub.models.data.NetworkDetails;
+import com.hmatalonga.greenhub.models.data.Sample;
+
+/**
+ * Connectivity, mobile network and operator details.
+ */
+public class NetworkProbe implements SampleProbe<NetworkProbe.Reading> {
+
+    /**
+     * Network status along with the details read in the same pass.
+     */
+    public static class Reading {
+        public String status;
+
+        public final NetworkDetails details = new NetworkDetails();
+    }
+
+    @Override
+    public String getName() {
+        return "network";
+    }
+
+    @Override
+    public int getCost() {
+        return COST_MEDIUM;
+    }
+
+    @Override
+    public String getRequiredPermission() {
+        return Manifest.permission.ACCESS_NETWORK_STATE;
+    }
+
+    @Override
+    public Reading collect(Context context) {
+        Reading reading = new Reading();
+        NetworkDetails details = reading.details;
+
+        reading.status = Network.getStatus(context);
+        details.networkType = Network.getType(context);
+        details.mobileNetworkType = Network.getMobileNetworkType(context);
+        details.roamingEnabled = Network.getRoamingStatus(context);
+        details.mobileDataStatus = Network.getDataState(context);
+        details.mobileDataActivity = Network.getDataActivity(context);
+        details.simOperator = SimCard.getSIMOperator(context);
+        details.networkOperator = Phone.getNetworkOperator(context);
+        details.mcc = Phone.getMcc(context);
+        details.mnc = Phone.getMnc(context);
+
+        // No easy way to check this as API keeps changing
+        // Possible by using reflection and checking build version
+        // NetworkStatistics ns = new NetworkStatistics();
+
+        return reading;
+    }
+
+    @Override
+    public void store(Sample sample, Reading value) {
+        NetworkDetails details = sample.networkDetails;
+
+        if (Network.NETWORKSTATUS_CONNECTED.equals(value.status)) {
+            if ("WIFI".equals(value.details.networkType)) {
+                sample.networkStatus = value.details.networkType;
+            } else {
+                sample.networkStatus = value.details.mobileNetworkType;
+            }
+        } else {
+            sample.networkStatus = value.status;
+        }
+
+        details.networkType = value.details.networkType;
+        details.mobileNetworkType = value.details.mobileNetworkType;
+        details.roamingEnabled = value.details.roamingEnabled;
+        details.mobileDataStatus = value.details.mobileDataStatus;
+        details.mobileDataActivity = value.details.mobileDataActivity;
+        details.simOperator = value.details.simOperator;
+        details.networkOperator = value.details.networkOperator;
+        details.mcc = value.details.mcc;
+        details.mnc = value.details.mnc;
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2016 Hugo Matalonga & João Paulo Fernandes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmatalonga.greenhub.managers.sampling.probes;
+
+import android.content.Context;
+
+import com.hmatalonga.greenhub.Config;
+import com.hmatalonga.greenhub.util.PermissionsUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Registry of the probes that make up a sample.
+ * <p>
+ * Cheap and medium probes run on every sample. Expensive probes only run every
+ * {@link Config#SAMPLING_EXPENSIVE_PROBE_INTERVAL} samples, or on every sample while the
+ * device is charging, the other samples report them as skipped. Light samples run none,
+ * the battery properties of every sample come from the BatterySnapshot of its event.
+ * Probes lacking their required permission are left out and reported as skipped too.
+ */
+public final class ProbeRegistry {
+
+    private static final List<SampleProbe<?>> sProbes = new ArrayList<>();
+
+    private static int sSampleCount = 0;
+
+    static {
+        sProbes.add(new ScreenBrightnessProbe());
+        sProbes.add(new CountryCodeProbe());
+        sProbes.add(new NetworkProbe());
+        sProbes.add(new WifiProbe());
+        sProbes.add(new SettingsProbe());
+        sProbes.add(new LocationProvidersProbe());
+        sProbes.add(new SensorsProbe());
+        sProbes.add(new StorageProbe());
+    }
+
+    private ProbeRegistry() {
+    }
+
+    public static synchronized void register(SampleProbe<?> probe) {
+        unregister(probe.getName());
+        sProbes.add(probe);
+    }
+
+    public static synchronized void unregister(String name) {
+        for (int i = sProbes.size() - 1; i >= 0; i--) {
+            if (sProbes.get(i).getName().equals(name)) {
+                sProbes.remove(i);
+            }
+        }
+    }
+
+    public static synchronized List<SampleProbe<?>> getProbes() {
+        return new ArrayList<>(sProbes);
+    }
+
+    /**
+     * Selects the probes to run for the next sample.
+     *
+     * @param context  the context used to check permissions.
+     * @param charging whether the device is plugged in.
+     * @param skipped  receives the names of the probes not run this time, expensive ones
+     *                 left out of this sample or lacking their permission.
+     * @return the probes to run, in registration order.
+     */
+    public static synchronized List<SampleProbe<?>> select(final Context context,
+                                                         boolean charging,
+                                                         List<String> skipped) {
+        boolean runExpensive =
+                charging || sSampleCount % Config.SAMPLING_EXPENSIVE_PROBE_INTERVAL == 0;
+        sSampleCount++;
+
+        List<SampleProbe<?>> selected = new ArrayList<>(sProbes.size());
+
+        for (SampleProbe<?> probe : sProbes) {
+            if (probe.getCost() == SampleProbe.COST_EXPENSIVE && !runExpensive) {
+                skipped.add(probe.getName());
+                continue;
+            }
+
+            String permission = probe.getRequiredPermission();
+            if (permission != null && !PermissionsUtils.checkPermission(context, permission)) {
+                skipped.add(probe.getName());
+                continue;
+            }
+
+            selected.add(probe);
+        }
+
+        return selected;
+    }
+}
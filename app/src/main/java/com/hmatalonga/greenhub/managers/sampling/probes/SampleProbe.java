@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2016 Hugo Matalonga & João Paulo Fernandes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmatalonga.greenhub.managers.sampling.probes;
+
+import android.content.Context;
+
+import com.hmatalonga.greenhub.models.data.Sample;
+
+/**
+ * A data source of the sample.
+ * <p>
+ * {@link #collect(Context)} runs on a probe worker thread and must only create unmanaged
+ * objects. {@link #store(Sample, Object)} runs afterwards on the sampling thread and
+ * writes the value into its slot of the sample.
+ */
+public interface SampleProbe<T> {
+
+    // Single property reads, run on every sample
+    int COST_CHEAP = 0;
+
+    // Several system service calls, run on every sample
+    int COST_MEDIUM = 1;
+
+    // Iterates hardware or file systems, only run every few samples or while charging
+    int COST_EXPENSIVE = 2;
+
+    /**
+     * @return unique name of the probe, used in logs and timeout markers.
+     */
+    String getName();
+
+    /**
+     * @return one of COST_CHEAP, COST_MEDIUM or COST_EXPENSIVE.
+     */
+    int getCost();
+
+    /**
+     * @return permission needed to collect the data, or null if none is needed.
+     */
+    String getRequiredPermission();
+
+    T collect(Context context);
+
+    void store(Sample sample, T value);
+}
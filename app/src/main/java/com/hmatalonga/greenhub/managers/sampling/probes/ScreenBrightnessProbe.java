@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2016 Hugo Matalonga & João Paulo Fernandes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmatalonga.greenhub.managers.sampling.probes;
+
+import android.content.Context;
+
+import com.hmatalonga.greenhub.models.Screen;
+import com.hmatalonga.greenhub.models.data.Sample;
+
+/**
+ * Screen brightness, -1 if automatic.
+ */
+public class ScreenBrightnessProbe implements SampleProbe<Integer> {
+
+    @Override
+    public String getName() {
+        return "screenBrightness";
+    }
+
+    @Override
+    public int getCost() {
+        return COST_CHEAP;
+    }
+
+    @Override
+    public String getRequiredPermission() {
+        return null;
+    }
+
+    @Override
+    public Integer collect(Context context) {
+        if (Screen.isAutoBrightness(context)) return -1;
+        return Screen.getBrightness(context);
+    }
+
+    @Override
+    public void store(Sample sample, Integer value) {
+        sample.screenBrightness = value;
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2016 Hugo Matalonga & João Paulo Fernandes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmatalonga.greenhub.managers.sampling.probes;
+
+import android.content.Context;
+
+import com.hmatalonga.greenhub.models.Bluetooth;
+import com.hmatalonga.greenhub.models.Gps;
+import com.hmatalonga.greenhub.models.SettingsInfo;
+import com.hmatalonga.greenhub.models.data.Sample;
+import com.hmatalonga.greenhub.models.data.Settings;
+
+/**
+ * System settings relevant to energy consumption.
+ */
+public class SettingsProbe implements SampleProbe<Settings> {
+
+    @Override
+    public String getName() {
+        return "settings";
+    }
+
+    @Override
+    public int getCost() {
+        return COST_MEDIUM;
+    }
+
+    @Override
+    public String getRequiredPermission() {
+        return null;
+    }
+
+    @Override
+    public Settings collect(Context context) {
+        Settings settings = new Settings();
+
+        settings.bluetoothEnabled = Bluetooth.isEnabled();
+        settings.locationEnabled = Gps.isEnabled(context);
+        settings.powersaverEnabled = SettingsInfo.isPowerSaveEnabled(context);
+        settings.flashlightEnabled = false;
+        settings.nfcEnabled = SettingsInfo.isNfcEnabled(context);
+        settings.developerMode = SettingsInfo.isDeveloperModeOn(context);
+        settings.unknownSources = SettingsInfo.allowUnknownSources(context);
+
+        return settings;
+    }
+
+    @Override
+    public void store(Sample sample, Settings value) {
+        sample.settings = value;
+    }
+}
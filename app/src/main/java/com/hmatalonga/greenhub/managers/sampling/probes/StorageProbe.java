@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2016 Hugo Matalonga & João Paulo Fernandes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmatalonga.greenhub.managers.sampling.probes;
+
+import android.content.Context;
+
+import com.hmatalonga.greenhub.models.Storage;
+import com.hmatalonga.greenhub.models.data.Sample;
+import com.hmatalonga.greenhub.models.data.StorageDetails;
+
+/**
+ * Free and total space of the storage partitions.
+ */
+public class StorageProbe implements SampleProbe<StorageDetails> {
+
+    @Override
+    public String getName() {
+        return "storage";
+    }
+
+    @Override
+    public int getCost() {
+        return COST_EXPENSIVE;
+    }
+
+    @Override
+    public String getRequiredPermission() {
+        return null;
+    }
+
+    @Override
+    public StorageDetails collect(Context context) {
+        return Storage.getStorageDetails();
+    }
+
+    @Override
+    public void store(Sample sample, StorageDetails value) {
+        sample.storageDetails = value;
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2016 Hugo Matalonga & João Paulo Fernandes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmatalonga.greenhub.managers.sampling.probes;
+
+import android.Manifest;
+import android.content.Context;
+
+import com.hmatalonga.greenhub.models.Wifi;
+import com.hmatalonga.greenhub.models.data.NetworkDetails;
+import com.hmatalonga.greenhub.models.data.Sample;
+
+/**
+ * Wifi and hotspot state, stored in the network details of the sample.
+ */
+public class WifiProbe implements SampleProbe<NetworkDetails> {
+
+    @Override
+    public String getName() {
+        return "wifi";
+    }
+
+    @Override
+    public int getCost() {
+        return COST_MEDIUM;
+    }
+
+    @Override
+    public String getRequiredPermission() {
+        return Manifest.permission.ACCESS_WIFI_STATE;
+    }
+
+    @Override
+    public NetworkDetails collect(Context context) {
+        NetworkDetails details = new NetworkDetails();
+
+        details.wifiStatus = Wifi.getState(context);
+        details.wifiSignalStrength = Wifi.getSignalStrength(context);
+        details.wifiLinkSpeed = Wifi.getLinkSpeed(context);
+        details.wifiApStatus = Wifi.getHotspotState(context);
+
+        return details;
+    }
+
+    @Override
+    public void store(Sample sample, NetworkDetails value) {
+        NetworkDetails details = sample.networkDetails;
+
+        details.wifiStatus = value.wifiStatus;
+        details.wifiSignalStrength = value.wifiSignalStrength;
+        details.wifiLinkSpeed = value.wifiLinkSpeed;
+        details.wifiApStatus = value.wifiApStatus;
+    }
+}
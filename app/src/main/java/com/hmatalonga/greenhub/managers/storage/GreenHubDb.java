@@ -16,17 +16,17 @@
 
 package com.hmatalonga.greenhub.managers.storage;
 
-import android.content.Intent;
-
 import com.hmatalonga.greenhub.models.data.BatterySession;
 import com.hmatalonga.greenhub.models.data.BatteryUsage;
 import com.hmatalonga.greenhub.models.data.Message;
 import com.hmatalonga.greenhub.models.data.Sample;
 
-import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.List;
 
+import io.realm.OrderedRealmCollectionSnapshot;
 import io.realm.Realm;
+import io.realm.RealmObject;
+import io.realm.RealmQuery;
 import io.realm.RealmResults;
 import io.realm.Sort;
 import io.realm.exceptions.RealmMigrationNeededException;
@@ -49,6 +49,13 @@ public class GreenHubDb {
         }
     }
 
+    /**
+     * Package-private for tests, which run against their own Realm.
+     */
+    GreenHubDb(Realm realm) {
+        mRealm = realm;
+    }
+
     public void getDefaultInstance() {
         if (mRealm.isClosed()) {
             mRealm = Realm.getDefaultInstance();
@@ -63,21 +70,64 @@ public class GreenHubDb {
         return mRealm.isClosed();
     }
 
-    public long count(Class className) {
-        long size = -1;
-        if (className.equals(Sample.class)) {
-            size = mRealm.where(Sample.class).count();
-        } else if (className.equals(BatteryUsage.class)) {
-            size = mRealm.where(BatteryUsage.class).count();
-        } else if (className.equals(BatterySession.class)) {
-            size = mRealm.where(BatterySession.class).count();
-        } else if (className.equals(Message.class)) {
-            size = mRealm.where(Message.class).count();
+    public long count(Class<? extends RealmObject> type) {
+        return mRealm.where(type).count();
+    }
+
+    /**
+     * Counts the records of a type with a timestamp in [from, to).
+     */
+    public long count(Class<? extends RealmObject> type, long from, long to) {
+        return range(type, from, to).count();
+    }
+
+    /**
+     * @return the minimum value of a field over the records with a timestamp in [from, to),
+     * or null if there are none.
+     */
+    public Number min(Class<? extends RealmObject> type, String field, long from, long to) {
+        return range(type, from, to).min(field);
+    }
+
+    /**
+     * @return the maximum value of a field over the records with a timestamp in [from, to),
+     * or null if there are none.
+     */
+    public Number max(Class<? extends RealmObject> type, String field, long from, long to) {
+        return range(type, from, to).max(field);
+    }
+
+    /**
+     * Deletes the records of a type with a timestamp in [from, to), in a single transaction.
+     *
+     * @return the number of records deleted.
+     */
+    public long delete(Class<? extends RealmObject> type, long from, long to) {
+        return delete(type, range(type, from, to));
+    }
+
+    /**
+     * Deletes the records of a type with the given ids, in a single transaction.
+     *
+     * @return the number of records deleted.
+     */
+    public long delete(Class<? extends RealmObject> type, int[] ids) {
+        if (ids.length == 0) return 0;
+
+        Integer[] values = new Integer[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            values[i] = ids[i];
         }
-        return size;
+        return delete(type, mRealm.where(type).in("id", values));
     }
 
+    /**
+     * @return the latest sample, which may still be waiting in the write-behind buffer.
+     */
     public Sample lastSample() {
+        Sample pending = WriteBehindBuffer.getInstance().lastSample();
+        if (pending != null) return pending;
+
         if (mRealm.where(Sample.class).count() > 0) {
             return mRealm.where(Sample.class).findAll().last();
         }
@@ -85,56 +135,81 @@ public class GreenHubDb {
     }
 
     /**
-     * Store the sample into the database
+     * Store the sample into the database, through the write-behind buffer
      *
      * @param sample the sample to be saved
      */
     public void saveSample(Sample sample) {
-        mRealm.beginTransaction();
-        mRealm.copyToRealm(sample);
-        mRealm.commitTransaction();
+        WriteBehindBuffer.getInstance().add(sample);
     }
 
     /**
-     * Store the usage details into the database
+     * Store a new battery session into the database, through the write-behind buffer
      *
-     * @param usage the usage details to be saved
+     * @param session the session to be saved
      */
-    public void saveUsage(BatteryUsage usage) {
-        mRealm.beginTransaction();
-        mRealm.copyToRealm(usage);
-        mRealm.commitTransaction();
+    public void saveSession(BatterySession session) {
+        WriteBehindBuffer.getInstance().add(session);
     }
 
     /**
-     * Store a new battery session into the database
-     *
-     * @param session the session to be saved
+     * Stores a batch of records in a single transaction, without going through the
+     * write-behind buffer. The records are inserted without creating managed copies,
+     * since they are never read back.
      */
-    public void saveSession(BatterySession session) {
+    public void insert(List<Sample> samples, List<BatteryUsage> usages,
+                       List<BatterySession> sessions) {
         mRealm.beginTransaction();
-        mRealm.copyToRealm(session);
-        mRealm.commitTransaction();
+        try {
+            for (Sample sample : samples) {
+                insertSample(sample);
+            }
+            for (BatteryUsage usage : usages) {
+                StringDictionary.encode(mRealm, usage);
+            }
+            mRealm.insert(usages);
+            mRealm.insert(sessions);
+            mRealm.commitTransaction();
+        } catch (RuntimeException e) {
+            if (mRealm.isInTransaction()) mRealm.cancelTransaction();
+            // Entries added to the dictionary by this transaction were rolled back
+            StringDictionary.reset();
+            throw e;
+        }
     }
 
-    public Iterator<Integer> allSamplesIds() {
-        ArrayList<Integer> list = new ArrayList<>();
-        RealmResults<Sample> samples = mRealm.where(Sample.class).findAll();
-        if (!samples.isEmpty()) {
-            for (Sample sample : samples) {
-                list.add(sample.id);
+    /**
+     * Encodes and inserts a sample, within a transaction. The keyframe of the previous
+     * samples of the batch is found since they are already part of the transaction.
+     */
+    private void insertSample(Sample sample) {
+        StringDictionary.encode(mRealm, sample);
+        // A sample requeued after a failed write was encoded already, its keyframe is
+        // either stored or requeued before it
+        if (sample.isKeyframe || sample.keyframeId != 0) {
+            mRealm.insert(sample);
+            return;
+        }
+        // Light samples are too sparse to be keyframes, they are kept self-contained
+        if (!SampleDelta.isLight(sample)) {
+            Sample keyframe = SampleDelta.findKeyframe(mRealm);
+            if (keyframe != null) {
+                SampleDelta.encode(sample, keyframe);
+            } else {
+                sample.isKeyframe = true;
             }
         }
-        return list.iterator();
+        mRealm.insert(sample);
     }
 
-    public RealmResults<BatteryUsage> betweenUsages(long from, long to) {
-        return mRealm
-                .where(BatteryUsage.class)
-                .equalTo("triggeredBy", Intent.ACTION_BATTERY_CHANGED)
-                .between("timestamp", from, to)
-                .sort("timestamp")
-                .findAll();
+    /**
+     * Opens a cursor over the stored samples, oldest first. The cursor uses the Realm of
+     * this database, which must stay open while it is in use.
+     *
+     * @param pageSize number of ids read at a time.
+     */
+    public SampleCursor sampleCursor(int pageSize) {
+        return new SampleCursor(mRealm, pageSize);
     }
 
     public RealmResults<Message> allMessages() {
@@ -144,11 +219,66 @@ public class GreenHubDb {
                 .findAll();
     }
 
-    public RealmResults<BatteryUsage> getUsages() {
-        return mRealm
+    /**
+     * Usages are now kept in the {@link UsageStore}, Realm only holds those of older versions.
+     *
+     * @param after only the usages after this timestamp are returned.
+     * @return unmanaged copies of the usages, oldest first, with their strings resolved.
+     */
+    public List<BatteryUsage> getUsages(long after) {
+        RealmResults<BatteryUsage> results = mRealm
                 .where(BatteryUsage.class)
-                .sort("timestamp", Sort.DESCENDING)
+                .greaterThan("timestamp", after)
+                .sort("timestamp")
                 .findAll();
+
+        List<BatteryUsage> usages = mRealm.copyFromRealm(results);
+        for (BatteryUsage usage : usages) {
+            StringDictionary.decode(mRealm, usage);
+        }
+        return usages;
+    }
+
+    private <E extends RealmObject> RealmQuery<E> range(Class<E> type, long from, long to) {
+        return mRealm.where(type)
+                .greaterThanOrEqualTo("timestamp", from)
+                .lessThan("timestamp", to);
+    }
+
+    @SuppressWarnings("unchecked")
+    private long delete(Class<? extends RealmObject> type,
+                        RealmQuery<? extends RealmObject> query) {
+        mRealm.beginTransaction();
+        try {
+            RealmResults<? extends RealmObject> results = query.findAll();
+            long count = results.size();
+            if (type == Sample.class) {
+                deleteSamples((RealmResults<Sample>) results);
+            } else {
+                results.deleteAllFromRealm();
+            }
+            mRealm.commitTransaction();
+            return count;
+        } catch (RuntimeException e) {
+            if (mRealm.isInTransaction()) mRealm.cancelTransaction();
+            throw e;
+        }
+    }
+
+    /**
+     * Deletes samples within a transaction. Deltas go first, so each deleted keyframe is
+     * promoted to the first of its deltas that is kept.
+     */
+    private void deleteSamples(RealmResults<Sample> samples) {
+        OrderedRealmCollectionSnapshot<Sample> keyframes =
+                samples.where().equalTo("isKeyframe", true).findAll().createSnapshot();
+
+        samples.where().equalTo("isKeyframe", false).findAll().deleteAllFromRealm();
+
+        for (Sample keyframe : keyframes) {
+            SampleDelta.promote(mRealm, keyframe);
+        }
+        keyframes.deleteAllFromRealm();
     }
 
     public void markMessageAsRead(int id) {
@@ -4,7 +4,12 @@ import android.support.annotation.NonNull;
 
 import com.hmatalonga.greenhub.util.LogUtils;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import io.realm.DynamicRealm;
+import io.realm.DynamicRealmObject;
+import io.realm.FieldAttribute;
 import io.realm.RealmMigration;
 import io.realm.RealmObjectSchema;
 import io.realm.RealmSchema;
@@ -90,12 +95,54 @@ public class GreenHubDbMigration implements RealmMigration {
 
             if (oldVersion == 5) {
                 objectSchema = schema.get("SensorDetails");
-                if (objectSchema != null) {
+                // Fresh installs of version 5 already have these fields
+                if (objectSchema != null && !objectSchema.hasField("frequencyOfUse")) {
                     objectSchema
                             .addField("frequencyOfUse", int.class)
                             .addField("iniTimestamp", long.class)
                             .addField("endTimestamp", long.class);
                 }
+                objectSchema = schema.get("CpuStatus");
+                if (objectSchema != null) {
+                    objectSchema.addRealmListField("coreUsage", Double.class);
+                }
+                oldVersion++;
+            }
+
+            if (oldVersion == 6) {
+                objectSchema = schema.get("ProcessInfo");
+                if (objectSchema != null) {
+                    objectSchema
+                            .addField("cpuUserTime", long.class)
+                            .addField("cpuSystemTime", long.class);
+                }
+                oldVersion++;
+            }
+
+            if (oldVersion == 7) {
+                // Existing samples are kept as self-contained samples
+                objectSchema = schema.get("Sample");
+                if (objectSchema != null) {
+                    objectSchema
+                            .addField("isKeyframe", boolean.class)
+                            .addField("keyframeId", int.class, FieldAttribute.INDEXED)
+                            .addField("deltaMask", int.class);
+                }
+                oldVersion++;
+            }
+
+            if (oldVersion == 8) {
+                // Strings repeated across samples are moved to a dictionary
+                schema.create("StringEntry")
+                        .addField("id", int.class, FieldAttribute.PRIMARY_KEY)
+                        .addField("value", String.class, FieldAttribute.INDEXED);
+
+                Map<String, Integer> ids = new HashMap<>();
+                toDictionary(realm, ids, schema.get("ProcessInfo"),
+                        "name", "importance", "installationPkg");
+                toDictionary(realm, ids, schema.get("AppPermission"), "permission");
+                toDictionary(realm, ids, schema.get("BatteryDetails"),
+                        "charger", "health", "technology");
                 oldVersion++;
             }
         } catch (NullPointerException e) {
@@ -103,4 +150,39 @@ public class GreenHubDbMigration implements RealmMigration {
             e.printStackTrace();
         }
     }
+
+    /**
+     * Replaces string fields with the ids of their values in the StringEntry table,
+     * e.g. name becomes nameId.
+     */
+    private static void toDictionary(final DynamicRealm realm, final Map<String, Integer> ids,
+                                     RealmObjectSchema objectSchema, final String... fields) {
+        if (objectSchema == null) return;
+
+        for (String field : fields) {
+            objectSchema.addField(field + "Id", int.class);
+        }
+
+        objectSchema.transform(new RealmObjectSchema.Function() {
+            @Override
+            public void apply(@NonNull DynamicRealmObject obj) {
+                for (String field : fields) {
+                    String value = obj.getString(field);
+                    if (value == null) continue;
+
+                    Integer id = ids.get(value);
+                    if (id == null) {
+                        id = ids.size() + 1;
+                        ids.put(value, id);
+                        realm.createObject("StringEntry", id).setString("value", value);
+                    }
+                    obj.setInt(field + "Id", id);
+                }
+            }
+        });
+
+        for (String field : fields) {
+            objectSchema.removeField(field);
+        }
+    }
 }
@@ -0,0 +1,385 @@
+/*
+ * Copyright (c) 2016 Hugo Matalonga & João Paulo Fernandes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmatalonga.greenhub.managers.storage;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.ChangedPackages;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.AtomicFile;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.hmatalonga.greenhub.Config;
+import com.hmatalonga.greenhub.models.PackageMetadata;
+import com.hmatalonga.greenhub.util.LogUtils;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.hmatalonga.greenhub.util.LogUtils.makeLogTag;
+
+/**
+ * Strongly held, size bounded cache of installed package metadata.
+ * <p>
+ * The installed packages are listed once per boot. After that, entries are only dropped
+ * when a package is added, removed or replaced, which is reported by PackageReceiver and,
+ * since Android O where those broadcasts no longer reach manifest receivers, by
+ * {@link PackageManager#getChangedPackages(int)}. The cache is persisted to a file, so a
+ * regular sample does not need the package manager at all.
+ */
+public final class PackageCache {
+
+    private static final String TAG = makeLogTag(PackageCache.class);
+
+    private static final int FLAGS = PackageManager.GET_SIGNATURES | PackageManager.GET_PERMISSIONS;
+
+    // Boot times closer than this belong to the same boot, the wall clock may drift a little
+    private static final long BOOT_TIME_TOLERANCE = 30000;
+
+    private static PackageCache sInstance = null;
+
+    private final PackageManager mPackageManager;
+
+    private final AtomicFile mFile;
+
+    private final SignatureCache mSignatures;
+
+    private final PackageJournal mJournal;
+
+    private final Map<String, PackageMetadata> mEntries;
+
+    // Process names that differ from the name of their package
+    private final Map<String, String> mProcesses = new HashMap<>();
+
+    // Names known not to belong to a package, such as native processes
+    private final Set<String> mMissing = new HashSet<>();
+
+    private final long mBootTime;
+
+    private int mSequence = 0;
+
+    private boolean mPopulated = false;
+
+    private boolean mDirty = false;
+
+    /**
+     * Persisted state of the cache.
+     */
+    private static class Snapshot {
+        long bootTime;
+
+        int sequence;
+
+        boolean populated;
+
+        List<PackageMetadata> entries;
+
+        Map<String, String> processes;
+
+        Set<String> missing;
+    }
+
+    public static synchronized PackageCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new PackageCache(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private PackageCache(Context context) {
+        mPackageManager = context.getPackageManager();
+        mFile = new AtomicFile(new File(context.getFilesDir(), Config.PACKAGE_CACHE_FILE));
+        mSignatures = SignatureCache.getInstance(context);
+        mJournal = PackageJournal.getInstance(context);
+        mEntries = new LinkedHashMap<String, PackageMetadata>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PackageMetadata> eldest) {
+                return size() > Config.PACKAGE_CACHE_SIZE;
+            }
+        };
+        mBootTime = System.currentTimeMillis() - SystemClock.elapsedRealtime();
+        load();
+    }
+
+    /**
+     * Brings the cache up to date before a sample. It lists the installed packages on the
+     * first use after a boot, otherwise it only drops the packages changed since last time.
+     */
+    public synchronized void refresh() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            refreshChangedPackages();
+        }
+        if (!mPopulated) {
+            populate();
+        }
+    }
+
+    /**
+     * Gets the metadata of a package, by package or process name.
+     * Unknown names are queried from the package manager once.
+     *
+     * @return the package metadata, or null if no installed package matches the name.
+     */
+    public synchronized PackageMetadata get(String name) {
+        if (name == null) return null;
+
+        String packageName = mProcesses.get(name);
+        if (packageName == null) {
+            // Secondary processes are named package:process
+            int colon = name.indexOf(':');
+            packageName = (colon > 0) ? name.substring(0, colon) : name;
+        }
+
+        PackageMetadata metadata = mEntries.get(packageName);
+        if (metadata != null || mMissing.contains(packageName)) return metadata;
+
+        return fetch(packageName);
+    }
+
+    /**
+     * @return the human readable label of the package, loaded on first use.
+     */
+    public synchronized String getLabel(PackageMetadata metadata) {
+        if (!metadata.labelLoaded) {
+            try {
+                ApplicationInfo info = mPackageManager.getApplicationInfo(metadata.packageName, 0);
+                metadata.label = mPackageManager.getApplicationLabel(info).toString();
+            } catch (PackageManager.NameNotFoundException e) {
+                metadata.label = null;
+            }
+            metadata.labelLoaded = true;
+            mDirty = true;
+        }
+        return metadata.label;
+    }
+
+    /**
+     * @return the package that installed the package, loaded on first use.
+     */
+    public synchronized String getInstaller(PackageMetadata metadata) {
+        if (!metadata.installerLoaded) {
+            try {
+                metadata.installer = mPackageManager.getInstallerPackageName(metadata.packageName);
+            } catch (IllegalArgumentException e) {
+                LogUtils.logE(TAG, "Could not get installer for " + metadata.packageName);
+            }
+            metadata.installerLoaded = true;
+            mDirty = true;
+        }
+        return metadata.installer;
+    }
+
+    /**
+     * Lists all installed packages from the package manager and refills the cache.
+     *
+     * @return the metadata of every installed package, which may exceed the cache size.
+     */
+    public synchronized List<PackageMetadata> getInstalled() {
+        return populate();
+    }
+
+    /**
+     * Drops a package that was added, removed or replaced, and loads it again if it is
+     * still installed.
+     */
+    public synchronized void invalidate(String packageName) {
+        mEntries.remove(packageName);
+        mMissing.remove(packageName);
+
+        Iterator<String> iterator = mProcesses.values().iterator();
+        while (iterator.hasNext()) {
+            if (packageName.equals(iterator.next())) {
+                iterator.remove();
+            }
+        }
+
+        fetch(packageName);
+    }
+
+    /**
+     * Drops a package whose enabled state or components changed, and records it as
+     * disabled only if it went from enabled to disabled. Packages not in the cache are
+     * recorded if they are disabled now.
+     */
+    public synchronized void invalidateChanged(String packageName) {
+        PackageMetadata previous = mEntries.get(packageName);
+        invalidate(packageName);
+        PackageMetadata current = mEntries.get(packageName);
+
+        if (current != null && !current.enabled && (previous == null || previous.enabled)) {
+            mJournal.append(PackageJournal.DISABLED, packageName);
+        }
+    }
+
+    /**
+     * Writes the cache, and the signature digests, to disk if they changed.
+     */
+    public synchronized void save() {
+        mSignatures.save();
+
+        if (!mDirty) return;
+
+        Snapshot snapshot = new Snapshot();
+        snapshot.bootTime = mBootTime;
+        snapshot.sequence = mSequence;
+        snapshot.populated = mPopulated;
+        snapshot.entries = new ArrayList<>(mEntries.values());
+        snapshot.processes = mProcesses;
+        snapshot.missing = mMissing;
+
+        FileOutputStream out = null;
+        try {
+            out = mFile.startWrite();
+            out.write(new Gson().toJson(snapshot).getBytes("UTF-8"));
+            mFile.finishWrite(out);
+            mDirty = false;
+        } catch (IOException e) {
+            LogUtils.logE(TAG, "Could not save the package cache: " + e.getMessage());
+            if (out != null) mFile.failWrite(out);
+        }
+    }
+
+    private void load() {
+        Snapshot snapshot;
+        try {
+            snapshot = new Gson().fromJson(new String(mFile.readFully(), "UTF-8"), Snapshot.class);
+        } catch (FileNotFoundException e) {
+            return;
+        } catch (IOException | JsonParseException e) {
+            LogUtils.logE(TAG, "Could not load the package cache: " + e.getMessage());
+            return;
+        }
+
+        // Packages may have been updated with the system while the device was off
+        if (snapshot == null || Math.abs(snapshot.bootTime - mBootTime) > BOOT_TIME_TOLERANCE) {
+            return;
+        }
+
+        if (snapshot.entries != null) {
+            for (PackageMetadata metadata : snapshot.entries) {
+                mEntries.put(metadata.packageName, metadata);
+            }
+        }
+        if (snapshot.processes != null) mProcesses.putAll(snapshot.processes);
+        if (snapshot.missing != null) mMissing.addAll(snapshot.missing);
+        mSequence = snapshot.sequence;
+        mPopulated = snapshot.populated;
+    }
+
+    private List<PackageMetadata> populate() {
+        List<PackageMetadata> result = new ArrayList<>();
+        List<PackageInfo> packages = null;
+
+        try {
+            packages = mPackageManager.getInstalledPackages(FLAGS);
+        } catch (Throwable th) {
+            // The transaction may be too large on devices with many packages
+            LogUtils.logE(TAG, "Could not list installed packages: " + th.getMessage());
+        }
+        if (packages == null) return result;
+
+        mEntries.clear();
+        mProcesses.clear();
+        mMissing.clear();
+
+        for (PackageInfo pak : packages) {
+            if (pak == null || pak.applicationInfo == null) continue;
+            PackageMetadata metadata = PackageMetadata.from(pak, mSignatures);
+            put(metadata);
+            result.add(metadata);
+        }
+
+        mPopulated = true;
+        mDirty = true;
+        return result;
+    }
+
+    @TargetApi(Build.VERSION_CODES.O)
+    private void refreshChangedPackages() {
+        ChangedPackages changed = mPackageManager.getChangedPackages(mSequence);
+        if (changed == null) return;
+
+        // Without the packages listed earlier in this boot, every package changed since
+        // the boot would look new, the list that follows is taken as the baseline instead
+        boolean report = mPopulated;
+
+        for (String packageName : changed.getPackageNames()) {
+            PackageMetadata previous = mEntries.get(packageName);
+            invalidate(packageName);
+            if (report) journal(packageName, previous, mEntries.get(packageName));
+        }
+        mSequence = changed.getSequenceNumber();
+        mDirty = true;
+    }
+
+    /**
+     * Records the event behind a change, since the package broadcasts that would report
+     * it do not reach manifest receivers anymore.
+     */
+    private void journal(String packageName, PackageMetadata previous, PackageMetadata current) {
+        if (current == null) {
+            mJournal.append(PackageJournal.UNINSTALLED, packageName);
+        } else if (previous == null) {
+            // Either new or evicted from the cache, the install times tell which
+            boolean updated = current.lastUpdateTime != current.firstInstallTime;
+            mJournal.append(updated ? PackageJournal.REPLACED : PackageJournal.INSTALLED,
+                    packageName);
+        } else if (previous.lastUpdateTime != current.lastUpdateTime) {
+            mJournal.append(PackageJournal.REPLACED, packageName);
+        } else if (previous.enabled && !current.enabled) {
+            mJournal.append(PackageJournal.DISABLED, packageName);
+        }
+    }
+
+    private PackageMetadata fetch(String packageName) {
+        PackageMetadata metadata = null;
+
+        try {
+            PackageInfo pak = mPackageManager.getPackageInfo(packageName, FLAGS);
+            metadata = PackageMetadata.from(pak, mSignatures);
+            put(metadata);
+        } catch (PackageManager.NameNotFoundException e) {
+            if (mMissing.size() >= Config.PACKAGE_CACHE_SIZE) mMissing.clear();
+            mMissing.add(packageName);
+        }
+
+        mDirty = true;
+        return metadata;
+    }
+
+    private void put(PackageMetadata metadata) {
+        mEntries.put(metadata.packageName, metadata);
+        if (metadata.processName != null && !metadata.processName.equals(metadata.packageName)) {
+            mProcesses.put(metadata.processName, metadata.packageName);
+        }
+    }
+}
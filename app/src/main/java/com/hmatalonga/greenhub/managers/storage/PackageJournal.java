@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2016 Hugo Matalonga & João Paulo Fernandes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmatalonga.greenhub.managers.storage;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import com.hmatalonga.greenhub.Config;
+import com.hmatalonga.greenhub.util.LogUtils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.hmatalonga.greenhub.util.LogUtils.makeLogTag;
+
+/**
+ * Append-only journal of package events, written by PackageReceiver and PackageCache
+ * and consumed by the sampling.
+ * <p>
+ * Each event is a line of the journal file. The consumer keeps the offset of the first
+ * unread line in a small preferences file of its own, so reading the new events costs
+ * O(new events) and never touches the settings. The file is truncated once every event
+ * has been consumed and it grew past {@link Config#PACKAGE_JOURNAL_COMPACT_SIZE}.
+ */
+public final class PackageJournal {
+
+    private static final String TAG = makeLogTag(PackageJournal.class);
+
+    public static final int INSTALLED = 1;
+
+    public static final int REPLACED = 2;
+
+    public static final int UNINSTALLED = 3;
+
+    public static final int DISABLED = 4;
+
+    private static final String KEY_CURSOR = "cursor";
+
+    private static PackageJournal sInstance = null;
+
+    private final File mFile;
+
+    private final SharedPreferences mPreferences;
+
+    private long mCursor;
+
+    // Offset right after the last event returned by read(), saved by commit()
+    private long mPending;
+
+    /**
+     * A package event.
+     */
+    public static final class Event {
+        public final int type;
+
+        public final long timestamp;
+
+        public final String packageName;
+
+        Event(int type, long timestamp, String packageName) {
+            this.type = type;
+            this.timestamp = timestamp;
+            this.packageName = packageName;
+        }
+    }
+
+    public static synchronized PackageJournal getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new PackageJournal(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private PackageJournal(Context context) {
+        mFile = new File(context.getFilesDir(), Config.PACKAGE_JOURNAL_FILE);
+        mPreferences = context.getSharedPreferences(
+                Config.PACKAGE_JOURNAL_PREFERENCES,
+                Context.MODE_PRIVATE
+        );
+        mCursor = mPreferences.getLong(KEY_CURSOR, 0);
+        mPending = mCursor;
+    }
+
+    /**
+     * Adds an event at the end of the journal.
+     */
+    public synchronized void append(int type, String packageName) {
+        String line = type + "\t" + System.currentTimeMillis() + "\t" + packageName + "\n";
+
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(mFile, true);
+            out.write(line.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            LogUtils.logE(TAG, "Could not append package event: " + e.getMessage());
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // Nothing to do here
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the events appended since the last {@link #commit()}.
+     */
+    public synchronized List<Event> read() {
+        List<Event> events = new ArrayList<>();
+        mPending = mCursor;
+
+        long length = mFile.length();
+        if (length <= mCursor) {
+            // Nothing new, or the file was removed behind our back
+            if (length < mCursor) mCursor = mPending = 0;
+            return events;
+        }
+
+        byte[] buffer = new byte[(int) (length - mCursor)];
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(mFile, "r");
+            file.seek(mCursor);
+            file.readFully(buffer);
+        } catch (IOException e) {
+            LogUtils.logE(TAG, "Could not read package events: " + e.getMessage());
+            return events;
+        } finally {
+            if (file != null) {
+                try {
+                    file.close();
+                } catch (IOException e) {
+                    // Nothing to do here
+                }
+            }
+        }
+
+        int start = 0;
+        for (int i = 0; i < buffer.length; i++) {
+            if (buffer[i] != '\n') continue;
+
+            Event event = parse(new String(buffer, start, i - start, StandardCharsets.UTF_8));
+            if (event != null) events.add(event);
+            start = i + 1;
+        }
+        // A line without its end is still being written, it is read next time
+        mPending = mCursor + start;
+
+        return events;
+    }
+
+    /**
+     * Marks the events returned by the last {@link #read()} as consumed.
+     */
+    public synchronized void commit() {
+        if (mPending == mCursor) return;
+
+        mCursor = mPending;
+        if (mCursor == mFile.length() && mCursor >= Config.PACKAGE_JOURNAL_COMPACT_SIZE) {
+            if (mFile.delete()) {
+                mCursor = mPending = 0;
+            }
+        }
+        mPreferences.edit().putLong(KEY_CURSOR, mCursor).apply();
+    }
+
+    private static Event parse(String line) {
+        String[] fields = line.split("\t", 3);
+        if (fields.length != 3) return null;
+
+        try {
+            return new Event(Integer.parseInt(fields[0]), Long.parseLong(fields[1]), fields[2]);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2016 Hugo Matalonga & João Paulo Fernandes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmatalonga.greenhub.managers.storage;
+
+import com.hmatalonga.greenhub.models.data.Sample;
+
+import java.util.NoSuchElementException;
+
+import io.realm.Realm;
+import io.realm.RealmResults;
+import io.realm.Sort;
+
+/**
+ * Forward-only cursor over the stored samples, oldest first.
+ * <p>
+ * Ids are read in pages of primitive ints, keyed by the timestamp and id of the last read, so
+ * memory use does not grow with the number of stored samples and samples deleted while
+ * the cursor is open are simply skipped. Samples are then loaded one at a time from the
+ * same Realm, which is refreshed on every page. Must be used on the thread of the Realm.
+ */
+public final class SampleCursor {
+
+    private final Realm mRealm;
+
+    private final int[] mIds;
+
+    private int mCount = 0;
+
+    private int mPosition = 0;
+
+    private long mLastTimestamp = Long.MIN_VALUE;
+
+    private int mLastId = Integer.MIN_VALUE;
+
+    SampleCursor(Realm realm, int pageSize) {
+        mRealm = realm;
+        mIds = new int[pageSize];
+    }
+
+    public boolean hasNext() {
+        if (mPosition < mCount) return true;
+
+        loadPage();
+        return mPosition < mCount;
+    }
+
+    /**
+     * @return the id of the next sample.
+     */
+    public int next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        return mIds[mPosition++];
+    }
+
+    /**
+     * Loads a sample by id.
+     *
+     * @return a full, unmanaged copy of the sample, or null if it was deleted meanwhile.
+     */
+    public Sample load(int id) {
+        Sample sample = mRealm.where(Sample.class).equalTo("id", id).findFirst();
+        return sample == null ? null : SampleDelta.decode(mRealm, sample);
+    }
+
+    private void loadPage() {
+        // Let deletions and new samples through, and release the old versions
+        mRealm.refresh();
+
+        // Results are lazy, only the rows of the page are read
+        RealmResults<Sample> results = mRealm.where(Sample.class)
+                .greaterThan("timestamp", mLastTimestamp)
+                .or()
+                .beginGroup()
+                .equalTo("timestamp", mLastTimestamp)
+                .greaterThan("id", mLastId)
+                .endGroup()
+                .sort("timestamp", Sort.ASCENDING, "id", Sort.ASCENDING)
+                .findAll();
+
+        mCount = Math.min(results.size(), mIds.length);
+        mPosition = 0;
+        for (int i = 0; i < mCount; i++) {
+            Sample sample = results.get(i);
+            mIds[i] = sample.id;
+            mLastTimestamp = sample.timestamp;
+            mLastId = sample.id;
+        }
+    }
+}
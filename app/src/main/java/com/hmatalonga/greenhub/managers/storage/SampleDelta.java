@@ -0,0 +1,389 @@
+/*
+ * Copyright (c) 2016 Hugo Matalonga & João Paulo Fernandes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmatalonga.greenhub.managers.storage;
+
+import com.hmatalonga.greenhub.Config;
+import com.hmatalonga.greenhub.models.data.AppPermission;
+import com.hmatalonga.greenhub.models.data.AppSignature;
+import com.hmatalonga.greenhub.models.data.Feature;
+import com.hmatalonga.greenhub.models.data.LocationProvider;
+import com.hmatalonga.greenhub.models.data.ProcessInfo;
+import com.hmatalonga.greenhub.models.data.Sample;
+import com.hmatalonga.greenhub.models.data.SensorDetails;
+import com.hmatalonga.greenhub.models.data.Settings;
+import com.hmatalonga.greenhub.models.data.StorageDetails;
+
+import java.util.List;
+
+import io.realm.Realm;
+import io.realm.RealmList;
+import io.realm.RealmResults;
+import io.realm.Sort;
+
+/**
+ * Differential encoding of samples against a keyframe sample.
+ * <p>
+ * A keyframe is stored in full. The following samples are stored as deltas: sections
+ * equal to the ones of the keyframe are left empty and flagged in {@link Sample#deltaMask},
+ * and processes whose package is the same as in the keyframe drop their permission and
+ * signature lists. Sensors and storage are compared on their static fields only; a delta
+ * keeps their measured fields, such as sensor use and free space, with the static ones
+ * cleared. A new keyframe is written every {@link Config#SAMPLE_KEYFRAME_INTERVAL}
+ * samples, and the oldest delta is promoted to keyframe before a keyframe is deleted.
+ * <p>
+ * Inherited sections are linked, not copied, when a delta is materialized in the
+ * database. This is safe as long as samples are deleted without cascading to children.
+ */
+public final class SampleDelta {
+
+    public static final int SENSORS = 1;
+
+    public static final int LOCATION_PROVIDERS = 1 << 1;
+
+    public static final int SETTINGS = 1 << 2;
+
+    public static final int STORAGE = 1 << 3;
+
+    // Permissions and signatures of processes with the same package version
+    public static final int PROCESS_PACKAGES = 1 << 4;
+
+    private SampleDelta() {
+    }
+
+    /**
+     * Finds the keyframe a new sample should be encoded against.
+     *
+     * @return the current keyframe, or null if the new sample should be a keyframe.
+     */
+    public static Sample findKeyframe(Realm realm) {
+        Sample keyframe = realm.where(Sample.class)
+                .equalTo("isKeyframe", true)
+                .sort("timestamp", Sort.DESCENDING)
+                .findFirst();
+
+        if (keyframe == null) return null;
+
+        long deltas = realm.where(Sample.class).equalTo("keyframeId", keyframe.id).count();
+        return (deltas < Config.SAMPLE_KEYFRAME_INTERVAL - 1) ? keyframe : null;
+    }
+
+    /**
+     * Strips from an unmanaged sample every section equal to the keyframe.
+     *
+     * @param sample   new sample, not yet stored, already encoded by {@link StringDictionary}.
+     * @param keyframe keyframe to encode against.
+     */
+    public static void encode(Sample sample, Sample keyframe) {
+        int mask = 0;
+
+        if (!sample.sensorDetailsList.isEmpty()
+                && sensorsEqual(sample.sensorDetailsList, keyframe.sensorDetailsList)) {
+            for (SensorDetails sensor : sample.sensorDetailsList) {
+                clearStatic(sensor);
+            }
+            mask |= SENSORS;
+        }
+        if (!sample.locationProviders.isEmpty()
+                && providersEqual(sample.locationProviders, keyframe.locationProviders)) {
+            sample.locationProviders.clear();
+            mask |= LOCATION_PROVIDERS;
+        }
+        if (settingsEqual(sample.settings, keyframe.settings)) {
+            sample.settings = null;
+            mask |= SETTINGS;
+        }
+        if (storageEqual(sample.storageDetails, keyframe.storageDetails)) {
+            clearStatic(sample.storageDetails);
+            mask |= STORAGE;
+        }
+
+        boolean stripped = false;
+        for (ProcessInfo process : sample.processInfos) {
+            ProcessInfo match = findPackage(keyframe.processInfos, process);
+            if (match != null && packagesEqual(process, match)) {
+                process.appPermissions.clear();
+                process.appSignatures.clear();
+                stripped = true;
+            }
+        }
+        if (stripped) mask |= PROCESS_PACKAGES;
+
+        sample.keyframeId = keyframe.id;
+        sample.deltaMask = mask;
+    }
+
+    /**
+     * Rebuilds a full, unmanaged copy of a stored sample.
+     *
+     * @param realm  the realm the sample belongs to.
+     * @param sample a managed sample, keyframe or delta.
+     * @return an unmanaged sample with every section present and its strings resolved.
+     */
+    public static Sample decode(Realm realm, Sample sample) {
+        Sample full = realm.copyFromRealm(sample);
+
+        if (sample.keyframeId != 0 && sample.deltaMask != 0) {
+            Sample keyframe = realm.where(Sample.class)
+                    .equalTo("id", sample.keyframeId)
+                    .findFirst();
+
+            if (keyframe != null) {
+                inherit(full, realm.copyFromRealm(keyframe), full.deltaMask, null);
+                full.keyframeId = 0;
+                full.deltaMask = 0;
+            }
+        }
+
+        StringDictionary.decode(realm, full);
+        return full;
+    }
+
+    /**
+     * Turns the oldest delta of a keyframe into the new keyframe and re-targets the other
+     * deltas, so the keyframe can be deleted. Must be called inside a transaction.
+     *
+     * @param realm    the realm the keyframe belongs to.
+     * @param keyframe a managed keyframe about to be deleted.
+     */
+    public static void promote(Realm realm, Sample keyframe) {
+        if (!keyframe.isKeyframe) return;
+
+        RealmResults<Sample> deltas = realm.where(Sample.class)
+                .equalTo("keyframeId", keyframe.id)
+                .sort("timestamp")
+                .findAll();
+
+        if (deltas.isEmpty()) return;
+
+        Sample next = deltas.first();
+        int nextMask = next.deltaMask;
+
+        inherit(next, keyframe, nextMask, null);
+        next.isKeyframe = true;
+        next.keyframeId = 0;
+        next.deltaMask = 0;
+
+        for (int i = 1; i < deltas.size(); i++) {
+            Sample delta = deltas.get(i);
+            if (delta == null) continue;
+
+            // Sections the new keyframe did not inherit differ from the old keyframe
+            int missing = delta.deltaMask & ~nextMask & ~PROCESS_PACKAGES;
+            inherit(delta, keyframe, missing | (delta.deltaMask & PROCESS_PACKAGES), next);
+
+            delta.keyframeId = next.id;
+            delta.deltaMask &= ~missing;
+        }
+    }
+
+    public static boolean isLight(Sample sample) {
+        for (Feature feature : sample.features) {
+            if (Config.SAMPLING_MODE.equals(feature.key)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Copies the given sections of the keyframe into the target.
+     *
+     * @param next processes found with the same package in this sample are kept stripped.
+     */
+    private static void inherit(Sample target, Sample keyframe, int mask, Sample next) {
+        if ((mask & SENSORS) != 0) {
+            if (target.sensorDetailsList.isEmpty()) {
+                // Deltas stored before measured fields were kept
+                target.sensorDetailsList.addAll(keyframe.sensorDetailsList);
+            } else {
+                for (int i = 0; i < target.sensorDetailsList.size(); i++) {
+                    copyStatic(keyframe.sensorDetailsList.get(i), target.sensorDetailsList.get(i));
+                }
+            }
+        }
+        if ((mask & LOCATION_PROVIDERS) != 0) {
+            target.locationProviders.addAll(keyframe.locationProviders);
+        }
+        if ((mask & SETTINGS) != 0) {
+            target.settings = keyframe.settings;
+        }
+        if ((mask & STORAGE) != 0) {
+            if (target.storageDetails == null) {
+                target.storageDetails = keyframe.storageDetails;
+            } else {
+                copyStatic(keyframe.storageDetails, target.storageDetails);
+            }
+        }
+        if ((mask & PROCESS_PACKAGES) != 0) {
+            for (ProcessInfo process : target.processInfos) {
+                if (!process.appPermissions.isEmpty() || !process.appSignatures.isEmpty()) {
+                    continue;
+                }
+                if (next != null && findPackage(next.processInfos, process) != null) continue;
+
+                ProcessInfo match = findPackage(keyframe.processInfos, process);
+                if (match != null) {
+                    process.appPermissions.addAll(match.appPermissions);
+                    process.appSignatures.addAll(match.appSignatures);
+                }
+            }
+        }
+    }
+
+    private static ProcessInfo findPackage(List<ProcessInfo> processes, ProcessInfo process) {
+        if (process.nameId == 0) return null;
+
+        for (ProcessInfo candidate : processes) {
+            if (process.nameId == candidate.nameId
+                    && process.versionCode == candidate.versionCode) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    private static boolean packagesEqual(ProcessInfo a, ProcessInfo b) {
+        RealmList<AppPermission> permissions = b.appPermissions;
+        if (a.appPermissions.size() != permissions.size()) return false;
+        for (int i = 0; i < permissions.size(); i++) {
+            if (a.appPermissions.get(i).permissionId != permissions.get(i).permissionId) {
+                return false;
+            }
+        }
+
+        RealmList<AppSignature> signatures = b.appSignatures;
+        if (a.appSignatures.size() != signatures.size()) return false;
+        for (int i = 0; i < signatures.size(); i++) {
+            if (!equal(a.appSignatures.get(i).signature, signatures.get(i).signature)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean sensorsEqual(List<SensorDetails> a, List<SensorDetails> b) {
+        if (a.size() != b.size()) return false;
+
+        for (int i = 0; i < a.size(); i++) {
+            SensorDetails x = a.get(i);
+            SensorDetails y = b.get(i);
+            if (x.id != y.id || x.codeType != y.codeType || x.version != y.version
+                    || x.fifoMaxEventCount != y.fifoMaxEventCount
+                    || x.fifoReservedEventCount != y.fifoReservedEventCount
+                    || x.highestDirectReportRateLevel != y.highestDirectReportRateLevel
+                    || x.maxDelay != y.maxDelay || x.minDelay != y.minDelay
+                    || x.maximumRange != y.maximumRange || x.power != y.power
+                    || x.reportingMode != y.reportingMode || x.resolution != y.resolution
+                    || x.isAdditionalInfoSupported != y.isAdditionalInfoSupported
+                    || x.isDynamicSensor != y.isDynamicSensor
+                    || x.isWakeUpSensor != y.isWakeUpSensor
+                    || !equal(x.name, y.name) || !equal(x.vendor, y.vendor)
+                    || !equal(x.stringType, y.stringType)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean providersEqual(List<LocationProvider> a, List<LocationProvider> b) {
+        if (a.size() != b.size()) return false;
+
+        for (int i = 0; i < a.size(); i++) {
+            if (!equal(a.get(i).provider, b.get(i).provider)) return false;
+        }
+        return true;
+    }
+
+    private static boolean settingsEqual(Settings a, Settings b) {
+        return a != null && b != null
+                && a.bluetoothEnabled == b.bluetoothEnabled
+                && a.locationEnabled == b.locationEnabled
+                && a.powersaverEnabled == b.powersaverEnabled
+                && a.flashlightEnabled == b.flashlightEnabled
+                && a.nfcEnabled == b.nfcEnabled
+                && a.unknownSources == b.unknownSources
+                && a.developerMode == b.developerMode;
+    }
+
+    private static boolean storageEqual(StorageDetails a, StorageDetails b) {
+        return a != null && b != null
+                && a.total == b.total && a.totalExternal == b.totalExternal
+                && a.totalSystem == b.totalSystem && a.totalSecondary == b.totalSecondary;
+    }
+
+    /**
+     * Clears the fields compared by {@link #sensorsEqual}, except the id.
+     */
+    private static void clearStatic(SensorDetails sensor) {
+        sensor.codeType = 0;
+        sensor.version = 0;
+        sensor.fifoMaxEventCount = 0;
+        sensor.fifoReservedEventCount = 0;
+        sensor.highestDirectReportRateLevel = 0;
+        sensor.maxDelay = 0;
+        sensor.minDelay = 0;
+        sensor.maximumRange = 0;
+        sensor.power = 0;
+        sensor.reportingMode = 0;
+        sensor.resolution = 0;
+        sensor.isAdditionalInfoSupported = false;
+        sensor.isDynamicSensor = false;
+        sensor.isWakeUpSensor = false;
+        sensor.name = null;
+        sensor.vendor = null;
+        sensor.stringType = null;
+    }
+
+    private static void copyStatic(SensorDetails from, SensorDetails to) {
+        to.codeType = from.codeType;
+        to.version = from.version;
+        to.fifoMaxEventCount = from.fifoMaxEventCount;
+        to.fifoReservedEventCount = from.fifoReservedEventCount;
+        to.highestDirectReportRateLevel = from.highestDirectReportRateLevel;
+        to.maxDelay = from.maxDelay;
+        to.minDelay = from.minDelay;
+        to.maximumRange = from.maximumRange;
+        to.power = from.power;
+        to.reportingMode = from.reportingMode;
+        to.resolution = from.resolution;
+        to.isAdditionalInfoSupported = from.isAdditionalInfoSupported;
+        to.isDynamicSensor = from.isDynamicSensor;
+        to.isWakeUpSensor = from.isWakeUpSensor;
+        to.name = from.name;
+        to.vendor = from.vendor;
+        to.stringType = from.stringType;
+    }
+
+    /**
+     * Clears the fields compared by {@link #storageEqual}.
+     */
+    private static void clearStatic(StorageDetails storage) {
+        storage.total = 0;
+        storage.totalExternal = 0;
+        storage.totalSystem = 0;
+        storage.totalSecondary = 0;
+    }
+
+    private static void copyStatic(StorageDetails from, StorageDetails to) {
+        to.total = from.total;
+        to.totalExternal = from.totalExternal;
+        to.totalSystem = from.totalSystem;
+        to.totalSecondary = from.totalSecondary;
+    }
+
+    private static boolean equal(String a, String b) {
+        return (a == null) ? b == null : a.equals(b);
+    }
+}
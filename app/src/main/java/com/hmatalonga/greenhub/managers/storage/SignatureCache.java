@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2016 Hugo Matalonga & João Paulo Fernandes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmatalonga.greenhub.managers.storage;
+
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.util.AtomicFile;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import com.hmatalonga.greenhub.Config;
+import com.hmatalonga.greenhub.managers.sampling.SamplingMetrics;
+import com.hmatalonga.greenhub.models.Permissions;
+import com.hmatalonga.greenhub.models.Signatures;
+import com.hmatalonga.greenhub.models.data.AppSignature;
+import com.hmatalonga.greenhub.util.LogUtils;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.hmatalonga.greenhub.util.LogUtils.makeLogTag;
+
+/**
+ * Persistent cache of the digests computed by {@link Signatures#getSignatureList(PackageInfo)}.
+ * <p>
+ * Digests are kept per package along with the version code and last update time of the
+ * APK they were computed from, so certificates are parsed and hashed once per APK version.
+ * The digests include the permission fingerprint, so entries also record the cache format
+ * and the number of known permissions, and are dropped when either changes.
+ * Hits and misses are counted in {@link SamplingMetrics}.
+ */
+public final class SignatureCache {
+
+    private static final String TAG = makeLogTag(SignatureCache.class);
+
+    // Bumped whenever the digests computed for the same APK change
+    private static final int FORMAT = 1;
+
+    private static SignatureCache sInstance = null;
+
+    private final AtomicFile mFile;
+
+    private final Map<String, Entry> mEntries;
+
+    private boolean mDirty = false;
+
+    /**
+     * Digests of one APK version.
+     */
+    private static class Entry {
+        int format;
+
+        int permissions;
+
+        String packageName;
+
+        int versionCode;
+
+        long lastUpdateTime;
+
+        String[] digests;
+    }
+
+    public static synchronized SignatureCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new SignatureCache(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private SignatureCache(Context context) {
+        mFile = new AtomicFile(new File(context.getFilesDir(), Config.SIGNATURE_CACHE_FILE));
+        mEntries = new LinkedHashMap<String, Entry>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > Config.SIGNATURE_CACHE_SIZE;
+            }
+        };
+        load();
+    }
+
+    /**
+     * Gets the signature digests of a package queried with GET_SIGNATURES and
+     * GET_PERMISSIONS, computing them only if the APK changed.
+     *
+     * @return the digests, empty if the package is not signed.
+     */
+    public synchronized String[] get(PackageInfo pak) {
+        if (pak.signatures == null || pak.signatures.length == 0) return new String[0];
+
+        Entry entry = mEntries.get(pak.packageName);
+        if (entry != null && entry.versionCode == pak.versionCode
+                && entry.lastUpdateTime == pak.lastUpdateTime) {
+            SamplingMetrics.counter(SamplingMetrics.COUNTER_SIGNATURE_HITS).incrementAndGet();
+            return entry.digests;
+        }
+        SamplingMetrics.counter(SamplingMetrics.COUNTER_SIGNATURE_MISSES).incrementAndGet();
+
+        List<AppSignature> list = Signatures.getSignatureList(pak);
+        entry = new Entry();
+        entry.format = FORMAT;
+        entry.permissions = Permissions.size();
+        entry.packageName = pak.packageName;
+        entry.versionCode = pak.versionCode;
+        entry.lastUpdateTime = pak.lastUpdateTime;
+        entry.digests = new String[list.size()];
+        for (int i = 0; i < list.size(); i++) {
+            entry.digests[i] = list.get(i).signature;
+        }
+
+        mEntries.put(pak.packageName, entry);
+        mDirty = true;
+        return entry.digests;
+    }
+
+    /**
+     * Writes the cache to disk if it changed.
+     */
+    public synchronized void save() {
+        if (!mDirty) return;
+
+        FileOutputStream out = null;
+        try {
+            out = mFile.startWrite();
+            List<Entry> entries = new ArrayList<>(mEntries.values());
+            out.write(new Gson().toJson(entries).getBytes("UTF-8"));
+            mFile.finishWrite(out);
+            mDirty = false;
+        } catch (IOException e) {
+            LogUtils.logE(TAG, "Could not save the signature cache: " + e.getMessage());
+            if (out != null) mFile.failWrite(out);
+        }
+    }
+
+    private void load() {
+        List<Entry> entries;
+        try {
+            entries = new Gson().fromJson(
+                    new String(mFile.readFully(), "UTF-8"),
+                    new TypeToken<List<Entry>>() {}.getType()
+            );
+        } catch (FileNotFoundException e) {
+            return;
+        } catch (IOException | JsonParseException e) {
+            LogUtils.logE(TAG, "Could not load the signature cache: " + e.getMessage());
+            return;
+        }
+
+        if (entries == null) return;
+
+        for (Entry entry : entries) {
+            // Fingerprints of entries written with other permission tables are stale
+            if (entry.format != FORMAT || entry.permissions != Permissions.size()) {
+                mDirty = true;
+                continue;
+            }
+            if (entry.packageName != null && entry.digests != null) {
+                mEntries.put(entry.packageName, entry);
+            }
+        }
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2016 Hugo Matalonga & João Paulo Fernandes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmatalonga.greenhub.managers.storage;
+
+import com.hmatalonga.greenhub.models.data.AppPermission;
+import com.hmatalonga.greenhub.models.data.BatteryDetails;
+import com.hmatalonga.greenhub.models.data.BatteryUsage;
+import com.hmatalonga.greenhub.models.data.ProcessInfo;
+import com.hmatalonga.greenhub.models.data.Sample;
+import com.hmatalonga.greenhub.models.data.StringEntry;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.realm.Realm;
+import io.realm.RealmResults;
+
+/**
+ * Persistent dictionary of the strings repeated across samples and usages.
+ * <p>
+ * Process names, importances, installers, permissions and battery details are stored
+ * as int ids of {@link StringEntry} rows, 0 standing for null. The whole table is kept
+ * in memory after the first use, ids are never reused nor deleted. Samples are encoded
+ * right before being stored and decoded when read back for upload.
+ */
+public final class StringDictionary {
+
+    private static final Map<String, Integer> sIds = new HashMap<>();
+
+    // Value of each id, at index id - 1
+    private static final List<String> sValues = new ArrayList<>();
+
+    private static boolean sLoaded = false;
+
+    private StringDictionary() {
+    }
+
+    /**
+     * Gets the id of a value, adding it to the dictionary if needed.
+     * Must be called inside a transaction. If the transaction is cancelled,
+     * {@link #reset()} must be called so that the added values are forgotten.
+     *
+     * @return the id of the value, 0 if it is null.
+     */
+    public static synchronized int idOf(Realm realm, String value) {
+        if (value == null) return 0;
+
+        load(realm);
+
+        Integer id = sIds.get(value);
+        if (id != null) return id;
+
+        StringEntry entry = new StringEntry();
+        entry.id = sValues.size() + 1;
+        entry.value = value;
+        realm.copyToRealm(entry);
+
+        sValues.add(value);
+        sIds.put(value, entry.id);
+        return entry.id;
+    }
+
+    /**
+     * @return the value of an id, null if it is 0 or unknown.
+     */
+    public static synchronized String valueOf(Realm realm, int id) {
+        if (id <= 0) return null;
+
+        load(realm);
+
+        return (id <= sValues.size()) ? sValues.get(id - 1) : null;
+    }
+
+    /**
+     * Returns the instance held by the dictionary for a value, so equal strings
+     * collected while sampling share the same object. It never touches the database.
+     */
+    public static synchronized String canonical(String value) {
+        if (value == null || !sLoaded) return value;
+
+        Integer id = sIds.get(value);
+        return (id != null) ? sValues.get(id - 1) : value;
+    }
+
+    /**
+     * Drops the cached entries, so they are loaded again from the database on next use.
+     * Called after a cancelled transaction, whose new entries were rolled back.
+     */
+    public static synchronized void reset() {
+        sIds.clear();
+        sValues.clear();
+        sLoaded = false;
+    }
+
+    /**
+     * Sets the string ids of an unmanaged sample before it is stored.
+     * Must be called inside a transaction.
+     */
+    public static void encode(Realm realm, Sample sample) {
+        encode(realm, sample.batteryDetails);
+
+        for (ProcessInfo process : sample.processInfos) {
+            process.nameId = idOf(realm, process.name);
+            process.importanceId = idOf(realm, process.importance);
+            process.installationPkgId = idOf(realm, process.installationPkg);
+
+            for (AppPermission permission : process.appPermissions) {
+                permission.permissionId = idOf(realm, permission.permission);
+            }
+        }
+    }
+
+    /**
+     * Sets the string ids of an unmanaged usage before it is stored.
+     * Must be called inside a transaction.
+     */
+    public static void encode(Realm realm, BatteryUsage usage) {
+        encode(realm, usage.details);
+    }
+
+    /**
+     * Resolves the strings of an unmanaged sample copied from the database.
+     */
+    public static void decode(Realm realm, Sample sample) {
+        decode(realm, sample.batteryDetails);
+
+        for (ProcessInfo process : sample.processInfos) {
+            process.name = valueOf(realm, process.nameId);
+            process.importance = valueOf(realm, process.importanceId);
+            process.installationPkg = valueOf(realm, process.installationPkgId);
+
+            for (AppPermission permission : process.appPermissions) {
+                permission.permission = valueOf(realm, permission.permissionId);
+            }
+        }
+    }
+
+    /**
+     * Resolves the strings of an unmanaged usage copied from the database.
+     */
+    public static void decode(Realm realm, BatteryUsage usage) {
+        decode(realm, usage.details);
+    }
+
+    private static void encode(Realm realm, BatteryDetails details) {
+        if (details == null) return;
+
+        details.chargerId = idOf(realm, details.charger);
+        details.healthId = idOf(realm, details.health);
+        details.technologyId = idOf(realm, details.technology);
+    }
+
+    private static void decode(Realm realm, BatteryDetails details) {
+        if (details == null) return;
+
+        details.charger = valueOf(realm, details.chargerId);
+        details.health = valueOf(realm, details.healthId);
+        details.technology = valueOf(realm, details.technologyId);
+    }
+
+    private static void load(Realm realm) {
+        if (sLoaded) return;
+
+        RealmResults<StringEntry> entries = realm.where(StringEntry.class).sort("id").findAll();
+        for (StringEntry entry : entries) {
+            // Ids are given in sequence, gaps are tolerated anyway
+            while (sValues.size() < entry.id - 1) {
+                sValues.add(null);
+            }
+            sValues.add(entry.value);
+            sIds.put(entry.value, entry.id);
+        }
+        sLoaded = true;
+    }
+}
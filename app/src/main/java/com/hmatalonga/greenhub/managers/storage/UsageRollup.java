@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2016 Hugo Matalonga & João Paulo Fernandes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmatalonga.greenhub.managers.storage;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Count, min, max, sum, first and last of the battery level, temperature and voltage
+ * over a period of time, either an hour, a day or any window merged from them.
+ */
+public final class UsageRollup {
+
+    public static final int LEVEL = 0;
+
+    public static final int TEMPERATURE = 1;
+
+    public static final int VOLTAGE = 2;
+
+    private static final int METRICS = 3;
+
+    private final long mStart;
+
+    private int mCount = 0;
+
+    private final double[] mMin = new double[METRICS];
+
+    private final double[] mMax = new double[METRICS];
+
+    private final double[] mSum = new double[METRICS];
+
+    private final double[] mFirst = new double[METRICS];
+
+    private final double[] mLast = new double[METRICS];
+
+    UsageRollup(long start) {
+        mStart = start;
+    }
+
+    public long getStart() {
+        return mStart;
+    }
+
+    public int getCount() {
+        return mCount;
+    }
+
+    public double getMin(int metric) {
+        return mMin[metric];
+    }
+
+    public double getMax(int metric) {
+        return mMax[metric];
+    }
+
+    public double getSum(int metric) {
+        return mSum[metric];
+    }
+
+    /**
+     * @return the average of a metric, or 0 if the rollup is empty.
+     */
+    public double getAverage(int metric) {
+        return (mCount > 0) ? mSum[metric] / mCount : 0;
+    }
+
+    public double getFirst(int metric) {
+        return mFirst[metric];
+    }
+
+    public double getLast(int metric) {
+        return mLast[metric];
+    }
+
+    /**
+     * Adds a usage, which must not be before the ones already added.
+     */
+    void add(float level, float temperature, float voltage) {
+        add(LEVEL, level);
+        add(TEMPERATURE, temperature);
+        add(VOLTAGE, voltage);
+        mCount++;
+    }
+
+    /**
+     * Merges a rollup of a later period into this one.
+     */
+    void merge(UsageRollup later) {
+        if (later.mCount == 0) return;
+
+        for (int i = 0; i < METRICS; i++) {
+            if (mCount == 0) {
+                mMin[i] = later.mMin[i];
+                mMax[i] = later.mMax[i];
+                mFirst[i] = later.mFirst[i];
+            } else {
+                mMin[i] = Math.min(mMin[i], later.mMin[i]);
+                mMax[i] = Math.max(mMax[i], later.mMax[i]);
+            }
+            mSum[i] += later.mSum[i];
+            mLast[i] = later.mLast[i];
+        }
+        mCount += later.mCount;
+    }
+
+    void write(DataOutputStream out) throws IOException {
+        out.writeLong(mStart);
+        out.writeInt(mCount);
+        for (int i = 0; i < METRICS; i++) {
+            out.writeDouble(mMin[i]);
+            out.writeDouble(mMax[i]);
+            out.writeDouble(mSum[i]);
+            out.writeDouble(mFirst[i]);
+            out.writeDouble(mLast[i]);
+        }
+    }
+
+    static UsageRollup read(DataInputStream in) throws IOException {
+        UsageRollup rollup = new UsageRollup(in.readLong());
+        rollup.mCount = in.readInt();
+        for (int i = 0; i < METRICS; i++) {
+            rollup.mMin[i] = in.readDouble();
+            rollup.mMax[i] = in.readDouble();
+            rollup.mSum[i] = in.readDouble();
+            rollup.mFirst[i] = in.readDouble();
+            rollup.mLast[i] = in.readDouble();
+        }
+        return rollup;
+    }
+
+    private void add(int metric, double value) {
+        if (mCount == 0) {
+            mMin[metric] = value;
+            mMax[metric] = value;
+            mFirst[metric] = value;
+        } else {
+            mMin[metric] = Math.min(mMin[metric], value);
+            mMax[metric] = Math.max(mMax[metric], value);
+        }
+        mSum[metric] += value;
+        mLast[metric] = value;
+    }
+}
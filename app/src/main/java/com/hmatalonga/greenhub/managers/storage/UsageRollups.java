@@ -0,0 +1,231 @@
+/*
+ * Copyright (c) 2016 Hugo Matalonga & João Paulo Fernandes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmatalonga.greenhub.managers.storage;
+
+import android.content.Intent;
+
+import com.hmatalonga.greenhub.util.LogUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static com.hmatalonga.greenhub.util.LogUtils.makeLogTag;
+
+/**
+ * Hourly and daily rollups of the periodic battery usages, those triggered by a battery
+ * change, kept up to date as usages are appended to the {@link UsageStore}.
+ * <p>
+ * A window is summarized from the daily rollups it covers, the hourly rollups of its
+ * partial days and the raw usages of its partial hours. The rollups are saved along with
+ * the number of usages they were built from and the timestamp of the oldest one. Usages
+ * appended since are added again when loaded, the rollups are rebuilt from the store
+ * when usages were deleted since or the format version does not match. Not thread safe,
+ * the store guards all access.
+ */
+final class UsageRollups {
+
+    private static final String TAG = makeLogTag(UsageRollups.class);
+
+    // Bump when the rollups change, so that they are rebuilt from the usages
+    private static final int VERSION = 2;
+
+    private static final long HOUR = 3600000;
+
+    private static final long DAY = 86400000;
+
+    private final File mFile;
+
+    private final TreeMap<Long, UsageRollup> mHours = new TreeMap<>();
+
+    private final TreeMap<Long, UsageRollup> mDays = new TreeMap<>();
+
+    // Usages of the store the rollups were built from, periodic or not
+    private int mRows = 0;
+
+    // Timestamp of the oldest of them
+    private long mFirst = 0;
+
+    UsageRollups(File file) {
+        mFile = file;
+    }
+
+    void add(long timestamp, String triggeredBy, float level, float temperature,
+             float voltage) {
+        if (mRows++ == 0) mFirst = timestamp;
+        if (!Intent.ACTION_BATTERY_CHANGED.equals(triggeredBy)) return;
+
+        bucket(mHours, timestamp - timestamp % HOUR).add(level, temperature, voltage);
+        bucket(mDays, timestamp - timestamp % DAY).add(level, temperature, voltage);
+    }
+
+    void clear() {
+        mHours.clear();
+        mDays.clear();
+        mRows = 0;
+        mFirst = 0;
+    }
+
+    /**
+     * Summarizes the periodic usages with a timestamp in [from, to).
+     */
+    UsageRollup summarize(UsageStore store, long from, long to) {
+        long start = Math.max(0, from);
+        UsageRollup result = new UsageRollup(start);
+
+        long firstHour = ceil(start, HOUR);
+        long lastHour = to - to % HOUR;
+        if (firstHour >= lastHour) {
+            addUsages(result, store, start, to);
+            return result;
+        }
+
+        // In time order, so that the first and last values are right
+        addUsages(result, store, start, firstHour);
+        long firstDay = ceil(firstHour, DAY);
+        long lastDay = lastHour - lastHour % DAY;
+        if (firstDay < lastDay) {
+            merge(result, mHours, firstHour, firstDay);
+            merge(result, mDays, firstDay, lastDay);
+            merge(result, mHours, lastDay, lastHour);
+        } else {
+            merge(result, mHours, firstHour, lastHour);
+        }
+        addUsages(result, store, lastHour, to);
+        return result;
+    }
+
+    /**
+     * Loads the saved rollups.
+     *
+     * @param rows  number of usages in the store.
+     * @param first timestamp of the oldest usage in the store.
+     * @return the number of oldest usages the rollups were built from, the newer ones must
+     * be added, or -1 if the rollups are missing or out of date and must be rebuilt.
+     */
+    int load(int rows, long first) {
+        clear();
+        if (!mFile.exists()) return -1;
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(mFile)));
+            if (in.readInt() != VERSION) return -1;
+
+            mRows = in.readInt();
+            mFirst = in.readLong();
+            int hours = in.readInt();
+            for (int i = 0; i < hours; i++) {
+                UsageRollup hour = UsageRollup.read(in);
+                mHours.put(hour.getStart(), hour);
+                long day = hour.getStart() - hour.getStart() % DAY;
+                bucket(mDays, day).merge(hour);
+            }
+        } catch (IOException e) {
+            LogUtils.logE(TAG, "Could not load the rollups: " + e.getMessage());
+            clear();
+            return -1;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // Nothing to do here
+                }
+            }
+        }
+
+        // Usages are only appended or deleted from the oldest, so if the oldest usage is
+        // the same the rollups were built from the first rows of the store
+        if (mRows > rows || (mRows > 0 && mFirst != first)) {
+            clear();
+            return -1;
+        }
+        return mRows;
+    }
+
+    /**
+     * Saves the hourly rollups, the daily ones are merged again from them when loaded.
+     */
+    void save() {
+        File temp = new File(mFile.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            out.writeInt(VERSION);
+            out.writeInt(mRows);
+            out.writeLong(mFirst);
+            out.writeInt(mHours.size());
+            for (UsageRollup hour : mHours.values()) {
+                hour.write(out);
+            }
+            out.close();
+            out = null;
+
+            if (!temp.renameTo(mFile)) {
+                LogUtils.logE(TAG, "Could not replace " + mFile);
+            }
+        } catch (IOException e) {
+            LogUtils.logE(TAG, "Could not save the rollups: " + e.getMessage());
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // Nothing to do here
+                }
+            }
+        }
+    }
+
+    private static UsageRollup bucket(TreeMap<Long, UsageRollup> rollups, long start) {
+        UsageRollup rollup = rollups.get(start);
+        if (rollup == null) {
+            rollup = new UsageRollup(start);
+            rollups.put(start, rollup);
+        }
+        return rollup;
+    }
+
+    private static void merge(UsageRollup result, TreeMap<Long, UsageRollup> rollups,
+                              long from, long to) {
+        for (Map.Entry<Long, UsageRollup> entry : rollups.subMap(from, to).entrySet()) {
+            result.merge(entry.getValue());
+        }
+    }
+
+    private static void addUsages(UsageRollup result, UsageStore store, long from, long to) {
+        UsageScan scan = store.scan(from, to);
+        while (scan.moveToNext()) {
+            if (Intent.ACTION_BATTERY_CHANGED.equals(scan.getTriggeredBy())) {
+                result.add(scan.getLevel(), scan.getTemperature(), scan.getVoltage());
+            }
+        }
+    }
+
+    private static long ceil(long value, long unit) {
+        long rest = value % unit;
+        return (rest == 0) ? value : value - rest + unit;
+    }
+}
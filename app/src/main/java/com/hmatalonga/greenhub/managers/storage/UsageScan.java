@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2016 Hugo Matalonga & João Paulo Fernandes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmatalonga.greenhub.managers.storage;
+
+import java.util.List;
+
+/**
+ * Forward-only cursor over the battery usages of a time range, oldest first.
+ * <p>
+ * Values are read straight from the mapped segments, nothing is copied nor allocated
+ * per row. The rows are fixed when the scan is opened, later appends are not seen.
+ * A scan must not be used after the usages it covers are deleted.
+ */
+public final class UsageScan {
+
+    private final List<UsageSegment> mSegments;
+
+    // Row range of each segment, the end is exclusive
+    private final int[] mStarts;
+
+    private final int[] mEnds;
+
+    private final int mCount;
+
+    private int mSegment = 0;
+
+    private int mRow = -1;
+
+    private UsageSegment mCurrent;
+
+    UsageScan(List<UsageSegment> segments, int[] starts, int[] ends) {
+        mSegments = segments;
+        mStarts = starts;
+        mEnds = ends;
+
+        int count = 0;
+        for (int i = 0; i < starts.length; i++) {
+            count += ends[i] - starts[i];
+        }
+        mCount = count;
+    }
+
+    public int getCount() {
+        return mCount;
+    }
+
+    /**
+     * Moves to the next usage.
+     *
+     * @return false if there are no more usages.
+     */
+    public boolean moveToNext() {
+        if (mCurrent != null && mRow + 1 < mEnds[mSegment]) {
+            mRow++;
+            return true;
+        }
+
+        if (mCurrent != null) mSegment++;
+        while (mSegment < mStarts.length && mStarts[mSegment] >= mEnds[mSegment]) {
+            mSegment++;
+        }
+        if (mSegment >= mStarts.length) {
+            mCurrent = null;
+            return false;
+        }
+
+        mCurrent = mSegments.get(mSegment);
+        mRow = mStarts[mSegment];
+        return true;
+    }
+
+    public long getTimestamp() {
+        return mCurrent.timestamp(mRow);
+    }
+
+    public float getLevel() {
+        return mCurrent.level(mRow);
+    }
+
+    public float getTemperature() {
+        return mCurrent.temperature(mRow);
+    }
+
+    public float getVoltage() {
+        return mCurrent.voltage(mRow);
+    }
+
+    public int getRemainingCapacity() {
+        return mCurrent.remainingCapacity(mRow);
+    }
+
+    public int getCurrentNow() {
+        return mCurrent.currentNow(mRow);
+    }
+
+    public int getScreenOn() {
+        return mCurrent.screenOn(mRow);
+    }
+
+    /**
+     * @return the battery state, or null if it was not a known one.
+     */
+    public String getState() {
+        return UsageStore.STATES[mCurrent.state(mRow)];
+    }
+
+    /**
+     * @return the action of the trigger, or null if it was not a known one.
+     */
+    public String getTriggeredBy() {
+        return UsageStore.TRIGGERS[mCurrent.trigger(mRow)];
+    }
+
+    /**
+     * @return the charger, or null if it was not a known one.
+     */
+    public String getCharger() {
+        return UsageStore.CHARGERS[mCurrent.charger(mRow)];
+    }
+}
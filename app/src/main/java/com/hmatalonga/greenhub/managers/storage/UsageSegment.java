@@ -0,0 +1,263 @@
+/*
+ * Copyright (c) 2016 Hugo Matalonga & João Paulo Fernandes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmatalonga.greenhub.managers.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Memory-mapped file holding the battery usages of part of a day, one column per field.
+ * <p>
+ * The file is allocated for a fixed number of rows. Timestamps are stored as int offsets
+ * from the start of the day, so rows can still be found by binary search, the other
+ * fields as fixed-width floats, ints and byte codes. A row is written column by column
+ * and only then counted in the header, so a crash never leaves a partial row visible.
+ * Rows whose pages did not reach the disk are dropped when the file is opened again.
+ * Not thread safe, {@link UsageStore} guards all access.
+ */
+final class UsageSegment {
+
+    private static final int MAGIC = 0x47485553;
+
+    private static final int VERSION = 1;
+
+    // magic, version, day start, capacity, count and padding
+    private static final int HEADER_SIZE = 32;
+
+    private static final int BASE_OFFSET = 8;
+
+    private static final int CAPACITY_OFFSET = 16;
+
+    private static final int COUNT_OFFSET = 20;
+
+    // Bytes per row, six 4-byte columns and four 1-byte columns
+    private static final int ROW_SIZE = 6 * 4 + 4;
+
+    final File file;
+
+    // Start of the day, in ms
+    final long base;
+
+    private final int mCapacity;
+
+    private final MappedByteBuffer mBuffer;
+
+    private final int mTimes;
+
+    private final int mLevels;
+
+    private final int mTemperatures;
+
+    private final int mVoltages;
+
+    private final int mRemainingCapacities;
+
+    private final int mCurrents;
+
+    private final int mStates;
+
+    private final int mScreens;
+
+    private final int mTriggers;
+
+    private final int mChargers;
+
+    private int mCount;
+
+    private UsageSegment(File file, MappedByteBuffer buffer, long base, int capacity,
+                         int count) {
+        this.file = file;
+        this.base = base;
+        mBuffer = buffer;
+        mCapacity = capacity;
+        mCount = count;
+
+        mTimes = HEADER_SIZE;
+        mLevels = mTimes + 4 * capacity;
+        mTemperatures = mLevels + 4 * capacity;
+        mVoltages = mTemperatures + 4 * capacity;
+        mRemainingCapacities = mVoltages + 4 * capacity;
+        mCurrents = mRemainingCapacities + 4 * capacity;
+        mStates = mCurrents + 4 * capacity;
+        mScreens = mStates + capacity;
+        mTriggers = mScreens + capacity;
+        mChargers = mTriggers + capacity;
+    }
+
+    static UsageSegment create(File file, long base, int capacity) throws IOException {
+        MappedByteBuffer buffer = map(file, HEADER_SIZE + (long) ROW_SIZE * capacity);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putLong(BASE_OFFSET, base);
+        buffer.putInt(CAPACITY_OFFSET, capacity);
+        buffer.putInt(COUNT_OFFSET, 0);
+        return new UsageSegment(file, buffer, base, capacity, 0);
+    }
+
+    /**
+     * Opens an existing segment, dropping the rows that were not fully written.
+     *
+     * @return the segment, or null if the file is not a valid segment.
+     */
+    static UsageSegment open(File file) throws IOException {
+        if (file.length() < HEADER_SIZE) return null;
+
+        MappedByteBuffer buffer = map(file, file.length());
+        int capacity = buffer.getInt(CAPACITY_OFFSET);
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || capacity <= 0 ||
+                file.length() != HEADER_SIZE + (long) ROW_SIZE * capacity) {
+            return null;
+        }
+
+        int count = Math.max(0, Math.min(buffer.getInt(COUNT_OFFSET), capacity));
+        UsageSegment segment =
+                new UsageSegment(file, buffer, buffer.getLong(BASE_OFFSET), capacity, count);
+        segment.recover();
+        return segment;
+    }
+
+    int count() {
+        return mCount;
+    }
+
+    boolean isFull() {
+        return mCount == mCapacity;
+    }
+
+    long firstTimestamp() {
+        return timestamp(0);
+    }
+
+    long lastTimestamp() {
+        return timestamp(mCount - 1);
+    }
+
+    /**
+     * Appends a row, the timestamp must not be before the last one nor the day start.
+     */
+    void append(long timestamp, float level, float temperature, float voltage,
+                int remainingCapacity, int currentNow, int state, int screenOn, int trigger,
+                int charger) {
+        int i = mCount;
+        mBuffer.putInt(mTimes + 4 * i, (int) (timestamp - base));
+        mBuffer.putFloat(mLevels + 4 * i, level);
+        mBuffer.putFloat(mTemperatures + 4 * i, temperature);
+        mBuffer.putFloat(mVoltages + 4 * i, voltage);
+        mBuffer.putInt(mRemainingCapacities + 4 * i, remainingCapacity);
+        mBuffer.putInt(mCurrents + 4 * i, currentNow);
+        mBuffer.put(mStates + i, (byte) state);
+        mBuffer.put(mScreens + i, (byte) screenOn);
+        mBuffer.put(mTriggers + i, (byte) trigger);
+        mBuffer.put(mChargers + i, (byte) charger);
+
+        // Publish the row once all its columns are written
+        mCount = i + 1;
+        mBuffer.putInt(COUNT_OFFSET, mCount);
+    }
+
+    /**
+     * @return the index of the first row at or after the timestamp, or the row count if
+     * there is none.
+     */
+    int seek(long timestamp) {
+        int low = 0;
+        int high = mCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (timestamp(middle) < timestamp) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    long timestamp(int i) {
+        return base + mBuffer.getInt(mTimes + 4 * i);
+    }
+
+    float level(int i) {
+        return mBuffer.getFloat(mLevels + 4 * i);
+    }
+
+    float temperature(int i) {
+        return mBuffer.getFloat(mTemperatures + 4 * i);
+    }
+
+    float voltage(int i) {
+        return mBuffer.getFloat(mVoltages + 4 * i);
+    }
+
+    int remainingCapacity(int i) {
+        return mBuffer.getInt(mRemainingCapacities + 4 * i);
+    }
+
+    int currentNow(int i) {
+        return mBuffer.getInt(mCurrents + 4 * i);
+    }
+
+    int state(int i) {
+        return mBuffer.get(mStates + i);
+    }
+
+    int screenOn(int i) {
+        return mBuffer.get(mScreens + i);
+    }
+
+    int trigger(int i) {
+        return mBuffer.get(mTriggers + i);
+    }
+
+    int charger(int i) {
+        return mBuffer.get(mChargers + i);
+    }
+
+    /**
+     * Writes the mapped pages to the disk. Only needed to survive a power loss, the
+     * pages of a crashed process are still written by the kernel.
+     */
+    void sync() {
+        mBuffer.force();
+    }
+
+    private void recover() {
+        // Pages of the last rows may have been lost with the count already stored,
+        // leaving zeroed rows that break the order of the timestamps
+        int count = mCount;
+        while (count > 1 && timestamp(count - 1) < timestamp(count - 2)) {
+            count--;
+        }
+        if (count != mCount) {
+            mCount = count;
+            mBuffer.putInt(COUNT_OFFSET, mCount);
+        }
+    }
+
+    private static MappedByteBuffer map(File file, long size) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            // The mapping stays valid once the file is closed
+            return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } finally {
+            raf.close();
+        }
+    }
+}
@@ -0,0 +1,393 @@
+/*
+ * Copyright (c) 2016 Hugo Matalonga & João Paulo Fernandes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmatalonga.greenhub.managers.storage;
+
+import android.content.Context;
+import android.content.Intent;
+
+import com.hmatalonga.greenhub.Config;
+import com.hmatalonga.greenhub.models.data.BatteryDetails;
+import com.hmatalonga.greenhub.models.data.BatteryUsage;
+import com.hmatalonga.greenhub.util.LogUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import static com.hmatalonga.greenhub.util.LogUtils.makeLogTag;
+
+/**
+ * Append-only store of the battery usages, in memory-mapped segment files.
+ * <p>
+ * Each segment holds the usages of a single day (UTC) in columns, a day moving on to a
+ * new segment when one is full. Usages are kept in time order, a usage older than the
+ * last one, after a clock change, takes the last timestamp. Time ranges are found by
+ * binary search over the segments and then their rows, and read without copies through
+ * a {@link UsageScan}. Old usages are deleted a whole segment at a time. Windows are
+ * summarized from hourly and daily {@link UsageRollups}, updated on every append and saved
+ * every hour.
+ */
+public class UsageStore {
+
+    private static final String TAG = makeLogTag(UsageStore.class);
+
+    // Byte codes of the strings of a usage, 0 standing for null or any other value
+    static final String[] STATES = {
+            null, "Charging", "Discharging", "Full", "Not charging", "Unknown", "None"
+    };
+
+    static final String[] TRIGGERS = {
+            null,
+            Intent.ACTION_BATTERY_CHANGED,
+            Intent.ACTION_SCREEN_ON,
+            Intent.ACTION_SCREEN_OFF,
+            Intent.ACTION_POWER_CONNECTED,
+            Intent.ACTION_POWER_DISCONNECTED
+    };
+
+    static final String[] CHARGERS = {null, "ac", "usb", "wireless", "unplugged"};
+
+    private static final String DIRECTORY = "usages";
+
+    private static final String ROLLUPS_FILE = "rollups";
+
+    // Created once the usages stored in Realm by older versions were moved over
+    private static final String IMPORTED_FILE = "imported";
+
+    private static final long HOUR = 3600000;
+
+    private static final long DAY = 86400000;
+
+    private static UsageStore sInstance = null;
+
+    private final File mDirectory;
+
+    private final int mCapacity;
+
+    // Oldest first
+    private final List<UsageSegment> mSegments = new ArrayList<>();
+
+    private final UsageRollups mRollups;
+
+    /**
+     * Opens the store on first use, which may move the usages stored in Realm over and
+     * rebuild the rollups. Must not be called from the main thread.
+     */
+    public static synchronized UsageStore getInstance(final Context context) {
+        if (sInstance == null) {
+            File directory = new File(context.getFilesDir(), DIRECTORY);
+            UsageStore store = new UsageStore(directory, Config.USAGE_SEGMENT_CAPACITY);
+            // Done before the store is handed out, so no usage is appended meanwhile
+            store.importRealmUsages();
+            sInstance = store;
+        }
+        return sInstance;
+    }
+
+    /**
+     * Writes the latest usages to the disk, if the store was opened.
+     */
+    public static synchronized void syncInstance() {
+        if (sInstance != null) sInstance.sync();
+    }
+
+    /**
+     * Package-private for tests, which use their own directory.
+     *
+     * @param capacity usages per segment.
+     */
+    UsageStore(File directory, int capacity) {
+        mDirectory = directory;
+        mCapacity = capacity;
+
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            LogUtils.logE(TAG, "Could not create " + mDirectory);
+        }
+        load();
+
+        mRollups = new UsageRollups(new File(mDirectory, ROLLUPS_FILE));
+        int count = count();
+        long first = mSegments.isEmpty() ? 0 : mSegments.get(0).firstTimestamp();
+        int rows = mRollups.load(count, first);
+        if (rows < 0) {
+            rebuildRollups();
+        } else if (rows < count) {
+            // Usages appended after the rollups were last saved, e.g. before the process
+            // was killed
+            addRollups(rows);
+            mRollups.save();
+        }
+    }
+
+    public synchronized void append(BatteryUsage usage) {
+        UsageSegment tail = mSegments.isEmpty() ? null : mSegments.get(mSegments.size() - 1);
+        long timestamp = (tail != null) ? Math.max(usage.timestamp, tail.lastTimestamp())
+                : usage.timestamp;
+        long base = timestamp - timestamp % DAY;
+
+        if (tail == null || tail.base != base || tail.isFull()) {
+            int part = (tail != null && tail.base == base) ? partOf(tail.file) + 1 : 0;
+            File file = new File(mDirectory, base / DAY + "-" + part);
+            try {
+                UsageSegment segment = UsageSegment.create(file, base, mCapacity);
+                if (tail != null) {
+                    tail.sync();
+                    mRollups.save();
+                }
+                mSegments.add(segment);
+                tail = segment;
+            } catch (IOException e) {
+                LogUtils.logE(TAG, "Could not create " + file + ": " + e.getMessage());
+                return;
+            }
+        } else if (tail.lastTimestamp() / HOUR != timestamp / HOUR) {
+            // Saved every hour, so few usages are added again if the process is killed
+            tail.sync();
+            mRollups.save();
+        }
+
+        BatteryDetails details = usage.details;
+        tail.append(
+                timestamp,
+                usage.level,
+                (details != null) ? (float) details.temperature : 0,
+                (details != null) ? (float) details.voltage : 0,
+                (details != null) ? details.remainingCapacity : 0,
+                (details != null) ? details.currentNow : 0,
+                codeOf(STATES, usage.state),
+                usage.screenOn,
+                codeOf(TRIGGERS, usage.triggeredBy),
+                codeOf(CHARGERS, (details != null) ? details.charger : null)
+        );
+        mRollups.add(
+                timestamp,
+                usage.triggeredBy,
+                usage.level,
+                (details != null) ? (float) details.temperature : 0,
+                (details != null) ? (float) details.voltage : 0
+        );
+    }
+
+    /**
+     * Opens a scan over the usages with a timestamp in [from, to).
+     */
+    public synchronized UsageScan scan(long from, long to) {
+        // First segment ending at or after the start of the range
+        int low = 0;
+        int high = mSegments.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (mSegments.get(middle).lastTimestamp() < from) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        List<UsageSegment> segments = new ArrayList<>();
+        for (int i = low; i < mSegments.size(); i++) {
+            UsageSegment segment = mSegments.get(i);
+            if (segment.firstTimestamp() >= to) break;
+            segments.add(segment);
+        }
+
+        int[] starts = new int[segments.size()];
+        int[] ends = new int[segments.size()];
+        for (int i = 0; i < segments.size(); i++) {
+            starts[i] = segments.get(i).seek(from);
+            ends[i] = segments.get(i).seek(to);
+        }
+        return new UsageScan(segments, starts, ends);
+    }
+
+    /**
+     * Summarizes the level, temperature and voltage of the usages triggered by a battery
+     * change with a timestamp in [from, to), from the hourly and daily rollups.
+     */
+    public synchronized UsageRollup summarize(long from, long to) {
+        return mRollups.summarize(this, from, to);
+    }
+
+    public synchronized int count() {
+        int count = 0;
+        for (UsageSegment segment : mSegments) {
+            count += segment.count();
+        }
+        return count;
+    }
+
+    /**
+     * Deletes the segments whose usages are all older than the timestamp.
+     *
+     * @return the number of usages deleted.
+     */
+    public synchronized int deleteBefore(long timestamp) {
+        int count = 0;
+        while (!mSegments.isEmpty() && mSegments.get(0).lastTimestamp() < timestamp) {
+            UsageSegment segment = mSegments.remove(0);
+            count += segment.count();
+            if (!segment.file.delete()) {
+                LogUtils.logE(TAG, "Could not delete " + segment.file);
+            }
+        }
+        // A day may still have some of its segments, rollups are simply built again
+        if (count > 0) rebuildRollups();
+        return count;
+    }
+
+    /**
+     * Writes the latest usages and the rollups to the disk.
+     */
+    public synchronized void sync() {
+        if (!mSegments.isEmpty()) {
+            mSegments.get(mSegments.size() - 1).sync();
+        }
+        mRollups.save();
+    }
+
+    /**
+     * Builds the rollups again from all the usages, after a format change or when usages
+     * were deleted.
+     */
+    synchronized void rebuildRollups() {
+        mRollups.clear();
+        int count = addRollups(0);
+        mRollups.save();
+        LogUtils.logI(TAG, "Rebuilt the rollups of " + count + " usages");
+    }
+
+    /**
+     * Adds the usages from the given row on, oldest first, to the rollups.
+     *
+     * @return the number of usages added.
+     */
+    private int addRollups(int from) {
+        List<UsageSegment> segments = new ArrayList<>();
+        int skipped = 0;
+        for (UsageSegment segment : mSegments) {
+            if (skipped + segment.count() <= from && segments.isEmpty()) {
+                skipped += segment.count();
+            } else {
+                segments.add(segment);
+            }
+        }
+
+        int[] starts = new int[segments.size()];
+        int[] ends = new int[segments.size()];
+        for (int i = 0; i < segments.size(); i++) {
+            ends[i] = segments.get(i).count();
+        }
+        if (!segments.isEmpty()) starts[0] = from - skipped;
+
+        UsageScan scan = new UsageScan(segments, starts, ends);
+        while (scan.moveToNext()) {
+            mRollups.add(
+                    scan.getTimestamp(),
+                    scan.getTriggeredBy(),
+                    scan.getLevel(),
+                    scan.getTemperature(),
+                    scan.getVoltage()
+            );
+        }
+        return scan.getCount();
+    }
+
+    private void load() {
+        File[] files = mDirectory.listFiles();
+        if (files == null) return;
+
+        for (File file : files) {
+            String name = file.getName();
+            if (name.startsWith(ROLLUPS_FILE) || name.equals(IMPORTED_FILE)) continue;
+
+            UsageSegment segment = null;
+            try {
+                if (partOf(file) >= 0) segment = UsageSegment.open(file);
+            } catch (IOException e) {
+                LogUtils.logE(TAG, "Could not open " + file + ": " + e.getMessage());
+            }
+
+            if (segment != null && segment.count() > 0) {
+                mSegments.add(segment);
+            } else if (!file.delete()) {
+                LogUtils.logE(TAG, "Could not delete " + file);
+            }
+        }
+
+        Collections.sort(mSegments, new Comparator<UsageSegment>() {
+            @Override
+            public int compare(UsageSegment a, UsageSegment b) {
+                if (a.base != b.base) return (a.base < b.base) ? -1 : 1;
+                return partOf(a.file) - partOf(b.file);
+            }
+        });
+    }
+
+    /**
+     * Moves the usages stored in Realm by older versions over, unless already done.
+     * If a previous run was interrupted, the usages already copied are skipped.
+     */
+    private void importRealmUsages() {
+        File marker = new File(mDirectory, IMPORTED_FILE);
+        if (marker.exists()) return;
+
+        GreenHubDb database = new GreenHubDb();
+        try {
+            long after = mSegments.isEmpty() ? Long.MIN_VALUE
+                    : mSegments.get(mSegments.size() - 1).lastTimestamp();
+            List<BatteryUsage> usages = database.getUsages(after);
+            for (BatteryUsage usage : usages) {
+                append(usage);
+            }
+            // Copies must be on the disk before the originals are deleted
+            sync();
+            database.delete(BatteryUsage.class, Long.MIN_VALUE, Long.MAX_VALUE);
+
+            if (!marker.createNewFile()) {
+                LogUtils.logE(TAG, "Could not create " + marker);
+            }
+            LogUtils.logI(TAG, "Moved " + usages.size() + " usages from Realm");
+        } catch (IOException e) {
+            LogUtils.logE(TAG, "Could not create " + marker + ": " + e.getMessage());
+        } finally {
+            database.close();
+        }
+    }
+
+    /**
+     * @return the part of the day of a segment file, named day-part, or -1 for other files.
+     */
+    private static int partOf(File file) {
+        String name = file.getName();
+        int separator = name.indexOf('-');
+        try {
+            return (separator > 0) ? Integer.parseInt(name.substring(separator + 1)) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static int codeOf(String[] values, String value) {
+        for (int i = 1; i < values.length; i++) {
+            if (values[i].equals(value)) return i;
+        }
+        return 0;
+    }
+}
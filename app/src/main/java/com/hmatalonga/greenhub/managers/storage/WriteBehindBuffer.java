@@ -0,0 +1,282 @@
+/*
+ * Copyright (c) 2016 Hugo Matalonga & João Paulo Fernandes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmatalonga.greenhub.managers.storage;
+
+import com.hmatalonga.greenhub.Config;
+import com.hmatalonga.greenhub.managers.sampling.SamplingMetrics;
+import com.hmatalonga.greenhub.models.data.BatterySession;
+import com.hmatalonga.greenhub.models.data.BatteryUsage;
+import com.hmatalonga.greenhub.models.data.Sample;
+import com.hmatalonga.greenhub.util.LogUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static com.hmatalonga.greenhub.util.LogUtils.makeLogTag;
+
+/**
+ * Write-behind buffer of the samples, usages and sessions saved through {@link GreenHubDb}.
+ * <p>
+ * Records are queued and written by a dedicated thread in a single transaction, once
+ * {@link Config#WRITE_BUFFER_SIZE} records are pending, {@link Config#WRITE_BUFFER_DELAY}
+ * ms after the first of them was queued, or when {@link #flush()} is called, e.g. when the
+ * app goes to the background. The records must not be changed once queued.
+ * <p>
+ * Records are only kept in memory until written, so a process killed in between loses
+ * them; the delay bounds how many. A batch that fails to be written is queued again ahead
+ * of the newer records, and dropped after {@link Config#WRITE_BUFFER_ATTEMPTS} attempts.
+ */
+public final class WriteBehindBuffer {
+
+    private static final String TAG = makeLogTag(WriteBehindBuffer.class);
+
+    /**
+     * Writes a batch of records in a single transaction.
+     */
+    interface Writer {
+        void write(List<Sample> samples, List<BatteryUsage> usages,
+                   List<BatterySession> sessions);
+    }
+
+    private static final Writer DATABASE_WRITER = new Writer() {
+        @Override
+        public void write(List<Sample> samples, List<BatteryUsage> usages,
+                          List<BatterySession> sessions) {
+            GreenHubDb database = new GreenHubDb();
+            try {
+                database.insert(samples, usages, sessions);
+            } finally {
+                database.close();
+            }
+        }
+    };
+
+    private static WriteBehindBuffer sInstance = null;
+
+    private final ScheduledThreadPoolExecutor mExecutor;
+
+    private final Writer mWriter;
+
+    private final int mCapacity;
+
+    private final long mDelay;
+
+    private final int mAttempts;
+
+    // Failed attempts to write the oldest pending records
+    private int mFailures = 0;
+
+    private List<Sample> mSamples = new ArrayList<>();
+
+    private List<BatteryUsage> mUsages = new ArrayList<>();
+
+    private List<BatterySession> mSessions = new ArrayList<>();
+
+    // Samples of the batch being written, still visible to lastSample()
+    private List<Sample> mWriting = Collections.emptyList();
+
+    private ScheduledFuture<?> mDeadline;
+
+    private final Runnable mFlush = new Runnable() {
+        @Override
+        public void run() {
+            write();
+        }
+    };
+
+    public static synchronized WriteBehindBuffer getInstance() {
+        if (sInstance == null) {
+            sInstance = new WriteBehindBuffer(
+                    DATABASE_WRITER,
+                    Config.WRITE_BUFFER_SIZE,
+                    Config.WRITE_BUFFER_DELAY,
+                    Config.WRITE_BUFFER_ATTEMPTS
+            );
+        }
+        return sInstance;
+    }
+
+    WriteBehindBuffer(Writer writer, int capacity, long delay, int attempts) {
+        mWriter = writer;
+        mCapacity = capacity;
+        mDelay = delay;
+        mAttempts = attempts;
+        mExecutor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "WriteBehindBuffer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public synchronized void add(Sample sample) {
+        mSamples.add(sample);
+        onAdded();
+    }
+
+    public synchronized void add(BatteryUsage usage) {
+        mUsages.add(usage);
+        onAdded();
+    }
+
+    public synchronized void add(BatterySession session) {
+        mSessions.add(session);
+        onAdded();
+    }
+
+    /**
+     * Writes the pending records now, without waiting for them to be written.
+     */
+    public void flush() {
+        mExecutor.execute(mFlush);
+    }
+
+    /**
+     * Writes the pending records now, then runs the task on the writer thread, without
+     * waiting for either.
+     */
+    public void flush(final Runnable then) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                write();
+                then.run();
+            }
+        });
+    }
+
+    /**
+     * Writes the pending records now and waits for them to be written.
+     *
+     * @param timeout maximum time to wait, in ms.
+     * @return false if the records were not written in time.
+     */
+    public boolean flushAndWait(long timeout) {
+        Future<?> future = mExecutor.submit(mFlush);
+        try {
+            future.get(timeout, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException | TimeoutException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return the latest sample not written yet, or null if there is none.
+     */
+    public synchronized Sample lastSample() {
+        if (!mSamples.isEmpty()) return mSamples.get(mSamples.size() - 1);
+        if (!mWriting.isEmpty()) return mWriting.get(mWriting.size() - 1);
+        return null;
+    }
+
+    public synchronized int size() {
+        return mSamples.size() + mUsages.size() + mSessions.size();
+    }
+
+    private void onAdded() {
+        if (size() >= mCapacity) {
+            cancelDeadline();
+            mExecutor.execute(mFlush);
+        } else if (mDeadline == null) {
+            mDeadline = mExecutor.schedule(mFlush, mDelay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void cancelDeadline() {
+        if (mDeadline != null) {
+            mDeadline.cancel(false);
+            mDeadline = null;
+        }
+    }
+
+    /**
+     * Runs on the writer thread.
+     */
+    private void write() {
+        List<Sample> samples;
+        List<BatteryUsage> usages;
+        List<BatterySession> sessions;
+
+        synchronized (this) {
+            cancelDeadline();
+            if (size() == 0) return;
+
+            samples = mSamples;
+            usages = mUsages;
+            sessions = mSessions;
+            mSamples = new ArrayList<>();
+            mUsages = new ArrayList<>();
+            mSessions = new ArrayList<>();
+            mWriting = samples;
+        }
+
+        long start = System.nanoTime();
+        try {
+            mWriter.write(samples, usages, sessions);
+            synchronized (this) {
+                mFailures = 0;
+            }
+        } catch (RuntimeException e) {
+            LogUtils.logE(TAG, "Could not write " + (samples.size() + usages.size() +
+                    sessions.size()) + " records: " + e.getMessage());
+            onFailed(samples, usages, sessions);
+        } finally {
+            synchronized (this) {
+                mWriting = Collections.emptyList();
+            }
+        }
+        SamplingMetrics.phase(SamplingMetrics.PHASE_DB_WRITE).recordSince(start);
+    }
+
+    /**
+     * Queues a batch that failed to be written again, ahead of the records added since,
+     * or drops it once it failed too many times.
+     */
+    private synchronized void onFailed(List<Sample> samples, List<BatteryUsage> usages,
+                                       List<BatterySession> sessions) {
+        if (++mFailures >= mAttempts) {
+            int count = samples.size() + usages.size() + sessions.size();
+            LogUtils.logE(TAG, "Dropping " + count + " records after " + mFailures +
+                    " attempts");
+            SamplingMetrics.counter(SamplingMetrics.COUNTER_WRITES_DROPPED).addAndGet(count);
+            mFailures = 0;
+            return;
+        }
+
+        mSamples.addAll(0, samples);
+        mUsages.addAll(0, usages);
+        mSessions.addAll(0, sessions);
+        // Retried after the delay, rather than right away when the buffer is full
+        if (mDeadline == null) {
+            mDeadline = mExecutor.schedule(mFlush, mDelay, TimeUnit.MILLISECONDS);
+        }
+    }
+}
@@ -21,7 +21,7 @@ import android.app.ActivityManager.RunningServiceInfo;
 import android.content.Context;
 
 import com.hmatalonga.greenhub.models.data.ProcessInfo;
-import com.hmatalonga.greenhub.util.ProcessUtils;
+import com.hmatalonga.greenhub.util.ProcScanner;
 import com.hmatalonga.greenhub.util.StringHelper;
 
 import java.util.ArrayList;
@@ -30,60 +30,36 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
-import static com.hmatalonga.greenhub.util.LogUtils.logE;
-
 /**
  * Application properties model.
  */
 public class Application {
+    private static final ProcScanner sScanner = new ProcScanner();
+
+    /**
+     * Lists the running processes straight from /proc, used before Android N and as
+     * a fallback when the ActivityManager only reports the processes of the app.
+     *
+     * @param context Application's context
+     * @return the running processes, empty if /proc could not be read.
+     */
     public static ArrayList<ProcessInfo> getRunningAppInfoLegacy(final Context context) {
         ArrayList<ProcessInfo> processInfoList = new ArrayList<>();
-        List<String> psOutput = ProcessUtils.getCommandOutputAsList("ps");
-
-        if (psOutput.size() == 0) {
-            // the ps command failed to return the complete list of processes
-            return null;
-        }
-
-        psOutput.remove(0); // the first line contains the headers of the `ps` command,
-        // so we just discard that
-
-        for (String line : psOutput) {
-            String[] properties = line.split("[ \\t]+");
-            if (properties.length >= 9) {
-                String cmdUser = properties[0];
-                String cmdPid = properties[1];
-                String cmdName = properties[8];
-                String description;
-
-                if (cmdUser.matches("u[0-9]+_.+")) {
-                    if (cmdName.matches("(\\w+(\\.\\w+)+)$")) {  // this is a normal app
-                        description = "user";
-                    }else if (cmdName.matches("(\\w+(\\.\\w+)+:\\w+)$")) {  // this is a service
-                        description = "user-service";
-                    }else{
-                        description = "unknown";
-                    }
-                }else{
-                    description = "system";
-                }
 
+        synchronized (sScanner) {
+            int count = sScanner.scan();
+            for (int i = 0; i < count; i++) {
                 ProcessInfo item = new ProcessInfo();
-                item.importance = StringHelper.importanceStringLegacy(description);
-                try {
-                    int pid = Integer.parseInt(cmdPid);
-                    item.processId = pid;
-                }catch (NumberFormatException e) {
-                    logE("Wrong PID format: ", "" + cmdPid);
-                    item.processId = -1;
-                }
-                item.name = cmdName;
+                item.importance = StringHelper.importanceStringLegacy(
+                        describe(sScanner.getType(i))
+                );
+                item.processId = sScanner.getPid(i);
+                item.name = sScanner.getName(i);
                 processInfoList.add(item);
-
             }
         }
 
-        return null;
+        return processInfoList;
     }
 
     public static ArrayList<ProcessInfo> getRunningAppInfo(final Context context) {
@@ -185,4 +161,17 @@ public class Application {
                 StringHelper.importanceString(highestPriority)
         );
     }
+
+    private static String describe(int type) {
+        switch (type) {
+            case ProcScanner.TYPE_SYSTEM:
+                return "system";
+            case ProcScanner.TYPE_USER:
+                return "user";
+            case ProcScanner.TYPE_USER_SERVICE:
+                return "user-service";
+            default:
+                return "unknown";
+        }
+    }
 }
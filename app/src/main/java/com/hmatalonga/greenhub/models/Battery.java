@@ -23,8 +23,8 @@ import android.os.BatteryManager;
 import android.os.Build;
 
 import com.hmatalonga.greenhub.Config;
-import com.hmatalonga.greenhub.managers.storage.GreenHubDb;
-import com.hmatalonga.greenhub.models.data.BatteryUsage;
+import com.hmatalonga.greenhub.managers.sampling.BatteryTelemetry;
+import com.hmatalonga.greenhub.managers.sampling.RemainingTimeEstimator;
 import com.hmatalonga.greenhub.util.LogUtils;
 
 import java.io.BufferedReader;
@@ -34,9 +34,6 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.RandomAccessFile;
 import java.lang.reflect.Method;
-import java.util.ArrayList;
-
-import io.realm.RealmResults;
 
 import static com.hmatalonga.greenhub.util.LogUtils.logI;
 import static com.hmatalonga.greenhub.util.LogUtils.makeLogTag;
@@ -49,6 +46,9 @@ import static java.lang.Math.max;
 public class Battery {
     private static final String TAG = makeLogTag(Battery.class);
 
+    // Design capacity of the power profile, -1 until it is looked up
+    private static volatile int sDesignCapacity = -1;
+
     /**
      * Obtains the current battery voltage value.
      *
@@ -90,7 +90,17 @@ public class Battery {
         return 0;
     }
 
+    /**
+     * Get the battery design capacity from the power profile, looked up once per process
+     * since it needs reflection and the parsing of the profile.
+     *
+     * @param context Application context
+     * @return Battery design capacity (in mAh)
+     */
     public static int getBatteryDesignCapacity(final Context context) {
+        int value = sDesignCapacity;
+        if (value != -1) return value;
+
         Object mPowerProfile;
         double batteryCapacity = 0;
         final String POWER_PROFILE_CLASS = "com.android.internal.os.PowerProfile";
@@ -109,7 +119,8 @@ public class Battery {
             e.printStackTrace();
         }
 
-        return (int) batteryCapacity;
+        sDesignCapacity = (int) batteryCapacity;
+        return sDesignCapacity;
     }
 
     /**
@@ -162,12 +173,18 @@ public class Battery {
     }
 
     /**
-     * Get the Battery current at the moment (in mA)
+     * Get the Battery current at the moment (in mA), from the telemetry recorder if it is
+     * running.
      *
      * @param context Application context
      * @return battery current now (in mA)
      */
     public static int getBatteryCurrentNow(final Context context) {
+        float recorded = BatteryTelemetry.getInstance().getLatest(BatteryTelemetry.CURRENT);
+        if (!Float.isNaN(recorded)) {
+            return (int) recorded;
+        }
+
         int value = 0;
 
         BatteryManager manager = (BatteryManager) context.getSystemService(Context.BATTERY_SERVICE);
@@ -179,22 +196,13 @@ public class Battery {
     }
 
     /**
-     * Get the Battery current at the moment (in mA)
+     * Get the Battery current at the moment (in A)
      *
      * @param context Application context
-     * @return battery current now (in mA)
+     * @return battery current now (in A)
      */
     public static double getBatteryCurrentNowInAmperes(final Context context) {
-        int value = 0;
-
-        BatteryManager manager = (BatteryManager) context.getSystemService(Context.BATTERY_SERVICE);
-        if (manager != null) {
-            value = manager.getIntProperty(BatteryManager.BATTERY_PROPERTY_CURRENT_NOW);
-        }
-
-        value = (value != 0 && value != Integer.MIN_VALUE) ? value : 0;
-
-        return (double) value / 1000000;
+        return (double) getBatteryCurrentNow(context) / 1000000;
     }
 
     /**
@@ -324,93 +332,15 @@ public class Battery {
      * or for the remaining time to fully charge the battery.
      *
      * @param context  Context of application
+     * @param battery  Battery state of the current event
      * @param charging If true, the method returns the expected time until full charge
+     * @param charger  The charger type, used when charging
      * @return remaining battery time in seconds
      */
-    public static long getRemainingBatteryTime(final Context context, boolean charging,
-                                               String charger) {
-        double remainingCapacity;
-        double chargingSignal;
-        int defaultDischargeRate = Config.DEFAULT_DISCHARGE_RATE;
-
-        if (!charging) {
-            chargingSignal = -1;
-            remainingCapacity = getBatteryRemainingCapacity(context);
-            logI("WOW", "[B] RemCap: " + remainingCapacity);
-        } else {
-            chargingSignal = 1;
-            switch (charger) {
-                case "usb":
-                    defaultDischargeRate = Config.DEFAULT_USB_CHARGE_RATE;
-                    break;
-                case "ac":
-                    defaultDischargeRate = Config.DEFAULT_AC_CHARGE_RATE;
-                    break;
-                case "wireless":
-                    defaultDischargeRate = Config.DEFAULT_WIRELESS_CHARGE_RATE;
-                    break;
-                default:
-                    break;
-            }
-
-            int fullCapacity = getBatteryChargeCounter(context) != -1 ?
-                    getBatteryChargeCounter(context) : getBatteryDesignCapacity(context);
-            remainingCapacity = fullCapacity - getBatteryRemainingCapacity(context);
-        }
-
-        GreenHubDb database = new GreenHubDb();
-
-        RealmResults<BatteryUsage> allUsages = database.getUsages();
-        int limit = Math.min(Config.BATTERY_CAPACITY_SAMPLES_SIZE, allUsages.size());
-        if (limit <= 1) {
-            // no samples collected yet
-            // consider a naive value
-            LogUtils.logI(TAG, "Not enough samples yet in the DB." +
-                    "Assuming a blind estimation of battery remaining time.");
-            return ((int) ((remainingCapacity * (60 * 60)) / defaultDischargeRate));
-        }
-
-        LogUtils.logI(TAG, "Estimating battery remaining time using " + limit + " samples");
-        ArrayList<BatteryUsage> lastUsages = new ArrayList<>(allUsages.subList(0, limit));
-        ArrayList<Double> dischargeSamples = new ArrayList<>();
-        BatteryUsage previousUsage = null;
-
-        for (BatteryUsage currentUsage : lastUsages) {
-            if (previousUsage == null) {
-                previousUsage = currentUsage;
-                continue;
-            }
-            int currentCapacity = currentUsage.details.remainingCapacity;
-            int previousCapacity = previousUsage.details.remainingCapacity;
-            double discharge = chargingSignal * (previousCapacity - currentCapacity);
-
-            // prevent division by zero OR a negative charge/discharge:
-            // i.e., only positive differences are considered
-            if (discharge <= 0.0) {
-                previousUsage = currentUsage;
-                continue;
-            }
-            // in seconds
-            long elapsedTime = abs(
-                    (currentUsage.timestamp - previousUsage.timestamp) / 1000
-            );
-            dischargeSamples.add(elapsedTime / discharge);
-
-            previousUsage = currentUsage;
-        }
-        database.close();
-
-        if (dischargeSamples.size() == 0) {
-            return ((int) ((remainingCapacity * (60 * 60)) / defaultDischargeRate));
-        }
-
-        double sumDischarges = 0;
-        for (Double discharge : dischargeSamples) {
-            sumDischarges += discharge;
-        }
-        double dischargeRatio = sumDischarges / dischargeSamples.size();
-        return (long) (remainingCapacity * dischargeRatio);
-
+    public static long getRemainingBatteryTime(final Context context, BatterySnapshot battery,
+                                               boolean charging, String charger) {
+        return RemainingTimeEstimator.getInstance(context)
+                .estimate(charging, charger, battery.getRemainingCapacity(charging));
     }
 
     private static int getBatteryCurrentNowLegacy() {
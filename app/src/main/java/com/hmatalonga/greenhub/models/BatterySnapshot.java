@@ -0,0 +1,236 @@
+/*
+ * Copyright (c) 2016 Hugo Matalonga & João Paulo Fernandes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmatalonga.greenhub.models;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.BatteryManager;
+import android.os.Bundle;
+
+import com.hmatalonga.greenhub.managers.sampling.BatteryTelemetry;
+
+/**
+ * Battery state of a single event, read once and shared by everything handling it.
+ * <p>
+ * The intent extras are read from a single copy of the bundle and their codes mapped to
+ * the names stored in samples and usages. The {@link BatteryManager} properties are read
+ * in one pass, with the current coming from the telemetry recorder while it runs, and the
+ * design capacity is only looked up once per process, see
+ * {@link Battery#getBatteryDesignCapacity}.
+ */
+public final class BatterySnapshot {
+
+    // Battery level and its scale, -1 if unknown
+    public final int level;
+
+    public final int scale;
+
+    public final int plugged;
+
+    public final boolean present;
+
+    public final String health;
+
+    public final String status;
+
+    // One of "ac", "usb", "wireless" or "unplugged"
+    public final String charger;
+
+    public final String technology;
+
+    // In ºC
+    public final float temperature;
+
+    // In V
+    public final float voltage;
+
+    // Properties of the BatteryManager, 0 for a snapshot of the intent only
+
+    // In %, from 0-100
+    public final int capacity;
+
+    public final int chargeCounter;
+
+    public final int currentAverage;
+
+    public final int currentNow;
+
+    public final long energyCounter;
+
+    // In mAh
+    public final int designCapacity;
+
+    public final int remainingCapacity;
+
+    private BatterySnapshot(Context context, Intent intent) {
+        Bundle extras = intent != null ? intent.getExtras() : null;
+        if (extras == null) extras = Bundle.EMPTY;
+
+        level = extras.getInt(BatteryManager.EXTRA_LEVEL, -1);
+        scale = extras.getInt(BatteryManager.EXTRA_SCALE, -1);
+        plugged = extras.getInt(BatteryManager.EXTRA_PLUGGED, 0);
+        present = extras.getBoolean(BatteryManager.EXTRA_PRESENT);
+        health = getHealthName(extras.getInt(BatteryManager.EXTRA_HEALTH, 0));
+        status = getStatusName(extras.getInt(BatteryManager.EXTRA_STATUS, 0));
+        charger = getChargerName(plugged);
+        technology = extras.getString(BatteryManager.EXTRA_TECHNOLOGY);
+        temperature = ((float) extras.getInt(BatteryManager.EXTRA_TEMPERATURE, 0)) / 10;
+        voltage = ((float) extras.getInt(BatteryManager.EXTRA_VOLTAGE, 0)) / 1000;
+
+        BatteryManager manager = context != null
+                ? (BatteryManager) context.getSystemService(Context.BATTERY_SERVICE)
+                : null;
+
+        if (manager != null) {
+            capacity = valid(manager.getIntProperty(BatteryManager.BATTERY_PROPERTY_CAPACITY));
+            chargeCounter = manager.getIntProperty(BatteryManager.BATTERY_PROPERTY_CHARGE_COUNTER);
+            currentAverage = valid(
+                    manager.getIntProperty(BatteryManager.BATTERY_PROPERTY_CURRENT_AVERAGE)
+            );
+            float recorded = BatteryTelemetry.getInstance().getLatest(BatteryTelemetry.CURRENT);
+            currentNow = Float.isNaN(recorded)
+                    ? valid(manager.getIntProperty(BatteryManager.BATTERY_PROPERTY_CURRENT_NOW))
+                    : (int) recorded;
+            energyCounter =
+                    manager.getLongProperty(BatteryManager.BATTERY_PROPERTY_ENERGY_COUNTER);
+            designCapacity = Battery.getBatteryDesignCapacity(context);
+            remainingCapacity = computeRemainingCapacity(
+                    capacity, chargeCounter, designCapacity, voltage, energyCounter
+            );
+        } else {
+            capacity = 0;
+            chargeCounter = 0;
+            currentAverage = 0;
+            currentNow = 0;
+            energyCounter = 0;
+            designCapacity = 0;
+            remainingCapacity = 0;
+        }
+    }
+
+    /**
+     * Reads the intent extras and the battery properties.
+     *
+     * @param context the Context.
+     * @param intent  a battery changed intent, or null to only read the properties.
+     */
+    public static BatterySnapshot from(final Context context, Intent intent) {
+        return new BatterySnapshot(context, intent);
+    }
+
+    /**
+     * Reads the intent extras only, for the receivers that do not need the properties.
+     */
+    public static BatterySnapshot fromIntent(Intent intent) {
+        return new BatterySnapshot(null, intent);
+    }
+
+    public boolean isCharging() {
+        return "Charging".equals(status);
+    }
+
+    public boolean isPlugged() {
+        return plugged != 0;
+    }
+
+    /**
+     * @param charging if true, the capacity left to charge instead of the one to discharge.
+     * @return the capacity in mAh.
+     */
+    public double getRemainingCapacity(boolean charging) {
+        if (!charging) return remainingCapacity;
+
+        int fullCapacity = chargeCounter != -1 ? chargeCounter : designCapacity;
+        return fullCapacity - remainingCapacity;
+    }
+
+    /**
+     * Calculates the battery's remaining energy capacity, in mAh, from the battery
+     * properties.
+     */
+    static int computeRemainingCapacity(long capacity, long chargeCounter, int designCapacity,
+                                        double voltage, long energyCounter) {
+        if (capacity <= -1) {
+            capacity = 0;
+        }
+        if (chargeCounter <= -1) {
+            chargeCounter = Math.abs(designCapacity);  // in mAh
+        }
+
+        if (capacity > 0 && chargeCounter > 0) {
+            return (int) ((chargeCounter * capacity) / 100);
+        }
+
+        double voltageNow = Math.max(1, voltage);
+        if (energyCounter <= -1) {
+            energyCounter = 0;
+        }
+        return (int) (energyCounter / voltageNow);
+    }
+
+    static String getHealthName(int health) {
+        switch (health) {
+            case BatteryManager.BATTERY_HEALTH_DEAD:
+                return "Dead";
+            case BatteryManager.BATTERY_HEALTH_GOOD:
+                return "Good";
+            case BatteryManager.BATTERY_HEALTH_OVER_VOLTAGE:
+                return "Over voltage";
+            case BatteryManager.BATTERY_HEALTH_OVERHEAT:
+                return "Overheat";
+            case BatteryManager.BATTERY_HEALTH_UNSPECIFIED_FAILURE:
+                return "Unspecified failure";
+            default:
+                return "Unknown";
+        }
+    }
+
+    static String getStatusName(int status) {
+        switch (status) {
+            case BatteryManager.BATTERY_STATUS_CHARGING:
+                return "Charging";
+            case BatteryManager.BATTERY_STATUS_DISCHARGING:
+                return "Discharging";
+            case BatteryManager.BATTERY_STATUS_FULL:
+                return "Full";
+            case BatteryManager.BATTERY_STATUS_NOT_CHARGING:
+                return "Not charging";
+            case BatteryManager.BATTERY_STATUS_UNKNOWN:
+                return "Unknown";
+            default:
+                // New value for error state
+                return "None";
+        }
+    }
+
+    static String getChargerName(int plugged) {
+        switch (plugged) {
+            case BatteryManager.BATTERY_PLUGGED_AC:
+                return "ac";
+            case BatteryManager.BATTERY_PLUGGED_USB:
+                return "usb";
+            case BatteryManager.BATTERY_PLUGGED_WIRELESS:
+                return "wireless";
+            default:
+                return "unplugged";
+        }
+    }
+
+    private static int valid(int value) {
+        return value != Integer.MIN_VALUE ? value : 0;
+    }
+}
@@ -18,8 +18,9 @@ package com.hmatalonga.greenhub.models;
 
 import android.os.SystemClock;
 
-import java.io.IOException;
-import java.io.RandomAccessFile;
+import com.hmatalonga.greenhub.util.ProcFileReader;
+
+import java.util.Arrays;
 import java.util.concurrent.TimeUnit;
 
 import static com.hmatalonga.greenhub.util.LogUtils.makeLogTag;
@@ -55,29 +56,170 @@ public class Cpu {
      * splitting.:)
      */
 
+    public static final int STAT_USER = 0;
+    public static final int STAT_NICE = 1;
+    public static final int STAT_SYSTEM = 2;
+    public static final int STAT_IDLE = 3;
+    public static final int STAT_IOWAIT = 4;
+    public static final int STAT_IRQ = 5;
+    public static final int STAT_SOFTIRQ = 6;
+
+    // Number of counters kept per row of a stats array
+    public static final int STAT_FIELDS = 7;
+
+    private static final byte[] CPU_KEY = {'c', 'p', 'u'};
+
+    private static final ProcFileReader sStatReader = new ProcFileReader("/proc/stat");
+
+    private static int sPossibleCores = 0;
+
+    /**
+     * Reads the aggregated idle and busy times from /proc/stat.
+     *
+     * @return array with the idle time at index 0 and the busy time at index 1, in jiffies.
+     */
     public static synchronized long[] readUsagePoint() {
-        long idle = 0;
-        long cpu = 0;
-
-        try {
-            RandomAccessFile reader = new RandomAccessFile("/proc/stat", "r");
-
-            String load = reader.readLine();
-            String[] tokens = load.split(" ");
-            for (int i = 2; i <= 8; i++) {
-                // 5 index has idle value
-                if (i == 5) {
-                    idle = Long.parseLong(tokens[i]);
-                    continue;
+        long[] point = new long[2];
+        readUsagePoint(point);
+        return point;
+    }
+
+    /**
+     * Same as {@link #readUsagePoint()} but writing into a caller owned array of size 2.
+     *
+     * @param out array that receives the idle time at index 0 and the busy time at index 1.
+     */
+    public static synchronized void readUsagePoint(long[] out) {
+        out[0] = 0;
+        out[1] = 0;
+
+        if (!sStatReader.read() || !sStatReader.startsWith(CPU_KEY)) return;
+
+        sStatReader.skip(CPU_KEY.length);
+        for (int i = 0; i < STAT_FIELDS; i++) {
+            long value = sStatReader.nextLong();
+            if (value < 0) break;
+            if (i == STAT_IDLE) {
+                out[0] = value;
+            } else {
+                out[1] += value;
+            }
+        }
+    }
+
+    /**
+     * Reads the user, nice, system, idle, iowait, irq and softirq counters of every cpu
+     * line of /proc/stat into {@code out}, {@link #STAT_FIELDS} values per row.
+     * Row 0 holds the aggregated "cpu" line and row n + 1 holds the "cpuN" line.
+     * Rows of offline cores, which the kernel does not list, are left zeroed.
+     * No objects are allocated by this call.
+     *
+     * @param out caller owned array, see {@link #newStatsArray()}.
+     * @return number of rows filled, or 0 if /proc/stat could not be read.
+     */
+    public static synchronized int readCoreStats(long[] out) {
+        Arrays.fill(out, 0);
+
+        if (!sStatReader.read()) return 0;
+
+        int rows = 0;
+        int maxRows = out.length / STAT_FIELDS;
+
+        while (sStatReader.startsWith(CPU_KEY)) {
+            sStatReader.skip(CPU_KEY.length);
+
+            int row = 0;
+            byte next = sStatReader.hasMore() ?
+                    sStatReader.byteAt(sStatReader.position()) : 0;
+            if (next >= '0' && next <= '9') {
+                row = (int) sStatReader.nextLong() + 1;
+            }
+
+            if (row < maxRows) {
+                int offset = row * STAT_FIELDS;
+                for (int i = 0; i < STAT_FIELDS; i++) {
+                    long value = sStatReader.nextLong();
+                    if (value < 0) break;
+                    out[offset + i] = value;
+                }
+                rows = Math.max(rows, row + 1);
+            }
+
+            if (!sStatReader.nextLine()) break;
+        }
+
+        return rows;
+    }
+
+    /**
+     * Allocates an array big enough to hold the aggregated row and one row per
+     * possible core, to be reused with {@link #readCoreStats(long[])}.
+     */
+    public static long[] newStatsArray() {
+        return new long[(getPossibleCoreCount() + 1) * STAT_FIELDS];
+    }
+
+    /**
+     * Number of cores the kernel may bring online, including cores currently offline.
+     */
+    public static synchronized int getPossibleCoreCount() {
+        if (sPossibleCores > 0) return sPossibleCores;
+
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        // The file has the format "0-7" (or just "0" on single core devices)
+        ProcFileReader reader = new ProcFileReader("/sys/devices/system/cpu/possible", 64);
+        if (reader.read()) {
+            long first = reader.nextLong();
+            if (first >= 0 && reader.hasMore() && reader.byteAt(reader.position()) == '-') {
+                reader.skip(1);
+                long last = reader.nextLong();
+                if (last >= first) {
+                    cores = Math.max(cores, (int) last + 1);
                 }
-                cpu += Long.parseLong(tokens[i]);
             }
-            reader.close();
-        } catch (IOException e) {
-            e.printStackTrace();
         }
+        reader.close();
+
+        sPossibleCores = cores;
+        return sPossibleCores;
+    }
+
+    /**
+     * Calculate the busy fraction of a single row between two stats arrays
+     * filled by {@link #readCoreStats(long[])}.
+     *
+     * @param then stats read first
+     * @param now  stats read last
+     * @param row  0 for the aggregated usage, n + 1 for core n
+     * @return usage fraction (0-1), or -1 if the core was offline in any of the readings.
+     */
+    public static double getUsage(long[] then, long[] now, int row) {
+        int offset = row * STAT_FIELDS;
+        if (then == null || now == null) return -1;
+        if (offset + STAT_FIELDS > Math.min(then.length, now.length)) return -1;
+
+        long idle = 0;
+        long busy = 0;
+        long totalThen = 0;
+        long totalNow = 0;
+
+        for (int i = 0; i < STAT_FIELDS; i++) {
+            long delta = now[offset + i] - then[offset + i];
+            totalThen += then[offset + i];
+            totalNow += now[offset + i];
+            if (i == STAT_IDLE) {
+                idle += delta;
+            } else {
+                busy += delta;
+            }
+        }
+
+        // Offline cores have no counters, and a core that went offline resets them
+        if (totalThen == 0 || totalNow == 0 || idle < 0 || busy < 0) return -1;
+        if (idle + busy == 0) return 0;
 
-        return new long[]{idle, cpu};
+        return (double) busy / (idle + busy);
     }
 
     /**
@@ -22,8 +22,8 @@ import android.app.Activity;
 import android.app.ActivityManager;
 import android.os.Debug;
 
-import java.io.IOException;
-import java.io.RandomAccessFile;
+import com.hmatalonga.greenhub.util.ProcFileReader;
+
 import java.util.List;
 import java.util.Locale;
 
@@ -37,10 +37,19 @@ public class Memory {
 
     private static final String TAG = makeLogTag(Memory.class);
 
-    public static final int TOTAL = 0;
-    public static final int FREE = 1;
-    public static final int ACTIVE = 2;
-    public static final int INACTIVE = 3;
+    // Keys include the colon so that e.g. "Active(anon):" is not taken for "Active:"
+    private static final byte[] KEY_MEM_TOTAL = "MemTotal:".getBytes();
+    private static final byte[] KEY_MEM_FREE = "MemFree:".getBytes();
+    private static final byte[] KEY_MEM_AVAILABLE = "MemAvailable:".getBytes();
+    private static final byte[] KEY_BUFFERS = "Buffers:".getBytes();
+    private static final byte[] KEY_CACHED = "Cached:".getBytes();
+    private static final byte[] KEY_ACTIVE = "Active:".getBytes();
+    private static final byte[] KEY_INACTIVE = "Inactive:".getBytes();
+    private static final byte[] KEY_SWAP_TOTAL = "SwapTotal:".getBytes();
+    private static final byte[] KEY_SWAP_FREE = "SwapFree:".getBytes();
+    private static final byte[] KEY_DIRTY = "Dirty:".getBytes();
+
+    private static final ProcFileReader sMemInfoReader = new ProcFileReader("/proc/meminfo");
 
     //TODO: Provide implementations for newer API levels due to SDK changes.
 
@@ -113,39 +122,90 @@ public class Memory {
     /**
      * Reads the current memory usage by accessing the system file /proc/meminfo
      *
-     * @return array of int values containing free, total, active and inactive memory in KB.
+     * @param out snapshot to fill, values in KB.
+     * @return true if the file could be read, false otherwise.
+     */
+    public static synchronized boolean readMemoryInfo(MemorySnapshot out) {
+        out.clear();
+        if (!sMemInfoReader.read()) return false;
+        parseMemoryInfo(sMemInfoReader, out);
+        return true;
+    }
+
+    /**
+     * Single pass over a loaded /proc/meminfo, dispatching on the key of each line.
+     * Lines may come in any order, so this works with the layout of any kernel version.
+     *
+     * @param reader reader with the meminfo content loaded.
+     * @param out    snapshot to fill, values in KB.
      */
-    public static synchronized int[] readMemoryInfo() {
-        // Local variables need to initialized before use, because of static
-        int total = 0;
-        int free = 0;
-        int active = 0;
-        int inactive = 0;
-
-        try {
-            RandomAccessFile reader = new RandomAccessFile("/proc/meminfo", "r");
-
-            String load = reader.readLine();
-            String[] tokens = load.split("\\s+");
-            total = Integer.parseInt(tokens[1]);
-            load = reader.readLine();
-            tokens = load.split("\\s+");
-            free = Integer.parseInt(tokens[1]);
-            for (int i = 0; i < 4; i++) {
-                load = reader.readLine();
+    static void parseMemoryInfo(ProcFileReader reader, MemorySnapshot out) {
+        boolean hasAvailable = false;
+
+        while (reader.hasMore()) {
+            switch (reader.byteAt(reader.position())) {
+                case 'M':
+                    if (reader.startsWith(KEY_MEM_TOTAL)) {
+                        reader.skip(KEY_MEM_TOTAL.length);
+                        out.total = reader.nextLong();
+                    } else if (reader.startsWith(KEY_MEM_FREE)) {
+                        reader.skip(KEY_MEM_FREE.length);
+                        out.free = reader.nextLong();
+                    } else if (reader.startsWith(KEY_MEM_AVAILABLE)) {
+                        reader.skip(KEY_MEM_AVAILABLE.length);
+                        out.available = reader.nextLong();
+                        hasAvailable = true;
+                    }
+                    break;
+                case 'B':
+                    if (reader.startsWith(KEY_BUFFERS)) {
+                        reader.skip(KEY_BUFFERS.length);
+                        out.buffers = reader.nextLong();
+                    }
+                    break;
+                case 'C':
+                    if (reader.startsWith(KEY_CACHED)) {
+                        reader.skip(KEY_CACHED.length);
+                        out.cached = reader.nextLong();
+                    }
+                    break;
+                case 'A':
+                    if (reader.startsWith(KEY_ACTIVE)) {
+                        reader.skip(KEY_ACTIVE.length);
+                        out.active = reader.nextLong();
+                    }
+                    break;
+                case 'I':
+                    if (reader.startsWith(KEY_INACTIVE)) {
+                        reader.skip(KEY_INACTIVE.length);
+                        out.inactive = reader.nextLong();
+                    }
+                    break;
+                case 'S':
+                    if (reader.startsWith(KEY_SWAP_TOTAL)) {
+                        reader.skip(KEY_SWAP_TOTAL.length);
+                        out.swapTotal = reader.nextLong();
+                    } else if (reader.startsWith(KEY_SWAP_FREE)) {
+                        reader.skip(KEY_SWAP_FREE.length);
+                        out.swapFree = reader.nextLong();
+                    }
+                    break;
+                case 'D':
+                    if (reader.startsWith(KEY_DIRTY)) {
+                        reader.skip(KEY_DIRTY.length);
+                        out.dirty = reader.nextLong();
+                    }
+                    break;
+                default:
+                    break;
             }
-            tokens = load.split("\\s+");
-            active = Integer.parseInt(tokens[1]);
-            load = reader.readLine();
-            tokens = load.split("\\s+");
-            inactive = Integer.parseInt(tokens[1]);
-
-            reader.close();
-        } catch (IOException e) {
-            e.printStackTrace();
+            if (!reader.nextLine()) break;
         }
 
-        return new int[] {free, total, active, inactive};
+        // MemAvailable only exists since kernel 3.14, estimate it on older ones
+        if (!hasAvailable) {
+            out.available = out.free + out.buffers + out.cached;
+        }
     }
 
     public static long[] getMemoryInfo(Context context) {
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2016 Hugo Matalonga & João Paulo Fernandes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmatalonga.greenhub.models;
+
+/**
+ * Values read from /proc/meminfo, all in KB.
+ * Instances are meant to be reused between readings.
+ */
+public class MemorySnapshot {
+
+    public long total;
+
+    public long free;
+
+    // Estimate of memory available for new apps without swapping
+    public long available;
+
+    public long buffers;
+
+    public long cached;
+
+    public long active;
+
+    public long inactive;
+
+    public long swapTotal;
+
+    public long swapFree;
+
+    public long dirty;
+
+    public void clear() {
+        total = 0;
+        free = 0;
+        available = 0;
+        buffers = 0;
+        cached = 0;
+        active = 0;
+        inactive = 0;
+        swapTotal = 0;
+        swapFree = 0;
+        dirty = 0;
+    }
+
+    /**
+     * Memory in use, total minus available.
+     */
+    public long used() {
+        return Math.max(0, total - available);
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2016 Hugo Matalonga & João Paulo Fernandes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmatalonga.greenhub.models;
+
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageInfo;
+
+import com.hmatalonga.greenhub.managers.storage.SignatureCache;
+
+/**
+ * Metadata of an installed package kept by the package cache.
+ * Label and installer are looked up lazily since they need extra binder calls.
+ */
+public class PackageMetadata {
+
+    public String packageName;
+
+    public String processName;
+
+    public String versionName;
+
+    public int versionCode;
+
+    public int flags;
+
+    public int uid;
+
+    public long firstInstallTime;
+
+    public long lastUpdateTime;
+
+    public boolean enabled;
+
+    // Permissions declared by the package
+    public String[] permissions;
+
+    // Digests from SignatureCache, empty if the package is not signed
+    public String[] signatures;
+
+    public String label;
+
+    public boolean labelLoaded;
+
+    public String installer;
+
+    public boolean installerLoaded;
+
+    /**
+     * Builds the metadata of a package queried with GET_PERMISSIONS and GET_SIGNATURES.
+     */
+    public static PackageMetadata from(PackageInfo pak, SignatureCache signatures) {
+        PackageMetadata metadata = new PackageMetadata();
+        metadata.packageName = pak.packageName;
+        metadata.versionName = pak.versionName;
+        metadata.versionCode = pak.versionCode;
+        metadata.firstInstallTime = pak.firstInstallTime;
+        metadata.lastUpdateTime = pak.lastUpdateTime;
+
+        if (pak.applicationInfo != null) {
+            metadata.processName = pak.applicationInfo.processName;
+            metadata.flags = pak.applicationInfo.flags;
+            metadata.uid = pak.applicationInfo.uid;
+            metadata.enabled = pak.applicationInfo.enabled;
+        }
+
+        if (pak.permissions != null) {
+            metadata.permissions = new String[pak.permissions.length];
+            for (int i = 0; i < pak.permissions.length; i++) {
+                metadata.permissions[i] = pak.permissions[i].name;
+            }
+        } else {
+            metadata.permissions = new String[0];
+        }
+
+        metadata.signatures = signatures.get(pak);
+
+        return metadata;
+    }
+
+    /**
+     * @return true if the app is a system app or an update to a system app.
+     */
+    public boolean isSystemApp() {
+        return (flags & ApplicationInfo.FLAG_SYSTEM) > 0
+                || (flags & ApplicationInfo.FLAG_UPDATED_SYSTEM_APP) > 0;
+    }
+}
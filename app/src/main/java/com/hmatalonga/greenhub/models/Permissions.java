@@ -18,40 +18,120 @@ package com.hmatalonga.greenhub.models;
 
 import com.hmatalonga.greenhub.Config;
 
-import java.util.ArrayList;
-import java.util.Collections;
-
 /**
  * Permissions.
+ * <p>
+ * Requested permissions are summarized as a bitset, one bit per permission known in
+ * {@link Config#PERMISSIONS_TABLES}. Bits are assigned in table order, so appending a
+ * table only adds bits at the end. Names are looked up in an open addressing index
+ * built once, with linear probing.
  */
 public class Permissions {
 
     private static final String TAG = "Permissions";
 
-    private static final ArrayList<String> PERMISSION_LIST = new ArrayList<>();
+    // Number of bits, one per table entry
+    private static final int SIZE = countPermissions();
 
-    public static byte[] getPermissionBytes(String[] perms) {
-        if (perms == null) {
-            return null;
-        }
-        if (PERMISSION_LIST.size() == 0) {
-            populatePermList();
+    // Slots of the index, at most half of them are used
+    private static final String[] KEYS = new String[capacityFor(SIZE)];
+
+    private static final int[] BITS = new int[KEYS.length];
+
+    static {
+        int bit = 0;
+        for (String[] table : Config.PERMISSIONS_TABLES) {
+            for (String permission : table) {
+                // A repeated name keeps its first bit, the slot of the copy stays unused
+                if (indexOf(permission) < 0) {
+                    int slot = slotOf(permission);
+                    KEYS[slot] = permission;
+                    BITS[slot] = bit;
+                }
+                bit++;
+            }
         }
+    }
+
+    /**
+     * @return the bit of a permission, or -1 if it is not in the tables.
+     */
+    public static int indexOf(String permission) {
+        if (permission == null) return -1;
+
+        int slot = slotOf(permission);
+        return (KEYS[slot] != null) ? BITS[slot] : -1;
+    }
 
-        byte[] bytes = new byte[PERMISSION_LIST.size() / 8 + 1];
+    /**
+     * @return the number of bits of a fingerprint.
+     */
+    public static int size() {
+        return SIZE;
+    }
+
+    /**
+     * Sets the bit of every known permission, unknown ones are ignored.
+     *
+     * @param perms requested permissions of a package.
+     * @return the fingerprint, with bit i of the table in word i / 64.
+     */
+    public static long[] getFingerprint(String[] perms) {
+        // Sized as the serialized form, which always has a spare byte
+        long[] words = new long[SIZE / 64 + 1];
 
         for (String p : perms) {
-            int idx = PERMISSION_LIST.indexOf(p);
-            if (idx > 0) {
-                int i = idx / 8;
-                idx = (int) Math.pow(2, idx - i * 8);
-                bytes[i] = (byte) (bytes[i] | idx);
+            int bit = indexOf(p);
+            if (bit >= 0) {
+                words[bit >>> 6] |= 1L << (bit & 63);
             }
         }
+        return words;
+    }
+
+    /**
+     * Serializes a fingerprint with bit i of the table as bit i % 8 of byte i / 8.
+     */
+    public static byte[] toBytes(long[] fingerprint) {
+        byte[] bytes = new byte[SIZE / 8 + 1];
+
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) (fingerprint[i >>> 3] >>> ((i & 7) << 3));
+        }
         return bytes;
     }
 
-    private static void populatePermList() {
-        Collections.addAll(PERMISSION_LIST, Config.PERMISSIONS_ARRAY);
+    public static byte[] getPermissionBytes(String[] perms) {
+        if (perms == null) {
+            return null;
+        }
+        return toBytes(getFingerprint(perms));
+    }
+
+    private static int slotOf(String permission) {
+        int mask = KEYS.length - 1;
+        int h = permission.hashCode();
+        int slot = (h ^ (h >>> 16)) & mask;
+
+        while (KEYS[slot] != null && !KEYS[slot].equals(permission)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static int countPermissions() {
+        int count = 0;
+        for (String[] table : Config.PERMISSIONS_TABLES) {
+            count += table.length;
+        }
+        return count;
+    }
+
+    private static int capacityFor(int size) {
+        int capacity = 1;
+        while (capacity < size * 2) {
+            capacity <<= 1;
+        }
+        return capacity;
     }
 }
@@ -20,7 +20,6 @@ import android.app.Activity;
 import android.app.ActivityManager;
 import android.app.ActivityManager.RunningAppProcessInfo;
 import android.content.Context;
-import android.content.SharedPreferences;
 
 import com.hmatalonga.greenhub.Config;
 import com.hmatalonga.greenhub.models.data.AppSignature;
@@ -30,6 +29,8 @@ import com.hmatalonga.greenhub.util.StringHelper;
 import java.lang.ref.WeakReference;
 import java.util.List;
 
+import io.realm.RealmList;
+
 /**
  * Process properties model.
  */
@@ -66,22 +67,18 @@ public class Process {
      * Helper to set application to the uninstalled state in the GreenHub sample.
      *
      * @param pName the package that was uninstalled.
-     * @param pref The preference that stored the uninstallation directive.
-     *             This preference will be deleted to
-     *             ensure uninstallations are not sent multiple times.
-     * @param e the Editor (passed and not created here for efficiency)
      * @return a new ProcessInfo entry describing the uninstalled item.
      */
-    public static ProcessInfo uninstalledItem(String pName, String pref,
-                                              SharedPreferences.Editor e) {
+    public static ProcessInfo uninstalledItem(String pName) {
         ProcessInfo item = new ProcessInfo();
+        item.appPermissions = new RealmList<>();
+        item.appSignatures = new RealmList<>();
         item.name = pName;
         item.appSignatures.add(new AppSignature("uninstalled"));
         item.processId = -1;
+        item.cpuUserTime = -1;
+        item.cpuSystemTime = -1;
         item.importance = Config.IMPORTANCE_UNINSTALLED;
-        // Remember to remove it so we do not send
-        // multiple uninstall events
-        e.remove(pref);
         return item;
     }
 
@@ -89,20 +86,17 @@ public class Process {
      * Helper to set application to the disabled state in the GreenHub sample.
      *
      * @param pName the package that was disabled.
-     * @param pref The preference that stored the disabled directive.
-     *             This preference will be deleted to ensure
-     *             disabled apps are not sent multiple times.
-     * @param e the Editor (passed and not created here for efficiency)
-     * @return a new ProcessInfo entry describing the uninstalled item.
+     * @return a new ProcessInfo entry describing the disabled item.
      */
-    public static ProcessInfo disabledItem(String pName, String pref, SharedPreferences.Editor e) {
+    public static ProcessInfo disabledItem(String pName) {
         ProcessInfo item = new ProcessInfo();
+        item.appPermissions = new RealmList<>();
+        item.appSignatures = new RealmList<>();
         item.name = pName;
         item.processId = -1;
+        item.cpuUserTime = -1;
+        item.cpuSystemTime = -1;
         item.importance = Config.IMPORTANCE_DISABLED;
-        // Remember to remove it so we do not send
-        // multiple uninstall events
-        e.remove(pref);
         return item;
     }
 
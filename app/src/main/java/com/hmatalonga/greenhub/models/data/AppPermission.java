@@ -17,14 +17,19 @@
 package com.hmatalonga.greenhub.models.data;
 
 import io.realm.RealmObject;
+import io.realm.annotations.Ignore;
 
 /**
  * AppPermission.
  */
 public class AppPermission extends RealmObject {
 
+    // Stored as permissionId
+    @Ignore
     public String permission;
 
+    public int permissionId;
+
     public AppPermission() {}
 
     public AppPermission(String permission) {
@@ -17,27 +17,38 @@
 package com.hmatalonga.greenhub.models.data;
 
 import io.realm.RealmObject;
+import io.realm.annotations.Ignore;
 
 /**
  * Battery Details data definition.
  */
 public class BatteryDetails extends RealmObject {
 
-    // Currently ac, usb, or unplugged
+    // Currently ac, usb, or unplugged, stored as chargerId
+    @Ignore
     public String charger;
 
-    // Currently Unknown, Unspecified failure, Dead, Cold, Overheat, Over voltage or Good
+    public int chargerId;
+
+    // Currently Unknown, Unspecified failure, Dead, Cold, Overheat, Over voltage or Good,
+    // stored as healthId
+    @Ignore
     public String health;
 
+    public int healthId;
+
     // Voltage in Volts
     public double voltage;
 
     // Temperature in Celsius
     public double temperature;
 
-    // Battery technology
+    // Battery technology, stored as technologyId
+    @Ignore
     public String technology;
 
+    public int technologyId;
+
     // Total capacity in mAh
     public int capacity;
 
@@ -16,6 +16,7 @@
 
 package com.hmatalonga.greenhub.models.data;
 
+import io.realm.RealmList;
 import io.realm.RealmObject;
 
 /**
@@ -26,6 +27,9 @@ public class CpuStatus extends RealmObject {
     // CPU usage fraction (0-1)
     public double cpuUsage;
 
+    // CPU usage fraction (0-1) of each core, -1 if the core was offline
+    public RealmList<Double> coreUsage;
+
     // Uptime in seconds
     public long upTime;
 
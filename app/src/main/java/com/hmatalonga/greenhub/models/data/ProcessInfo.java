@@ -18,6 +18,7 @@ package com.hmatalonga.greenhub.models.data;
 
 import io.realm.RealmList;
 import io.realm.RealmObject;
+import io.realm.annotations.Ignore;
 
 /**
  * Process Info data definition.
@@ -27,27 +28,42 @@ public class ProcessInfo extends RealmObject {
     // Process Id
     public int processId;
 
-    // Process Name
+    // Process Name, stored as nameId
+    @Ignore
     public String name;
 
+    public int nameId;
+
     // Human readable application name
     public String applicationLabel;
 
     // If the app is a system app or update to a system app
     public boolean isSystemApp;
 
-    // Foreground, visible, background, service, empty
+    // Foreground, visible, background, service, empty, stored as importanceId
+    @Ignore
     public String importance;
 
+    public int importanceId;
+
     // Version of app, human-readable
     public String versionName;
 
     // Version of app, android version code
     public int versionCode;
 
-    // Package that installed this process, e.g. com.google.play
+    // Package that installed this process, e.g. com.google.play, stored as installationPkgId
+    @Ignore
     public String installationPkg;
 
+    public int installationPkgId;
+
+    // CPU time in user mode since the previous sample, in jiffies (-1 if unknown)
+    public long cpuUserTime;
+
+    // CPU time in kernel mode since the previous sample, in jiffies (-1 if unknown)
+    public long cpuSystemTime;
+
     // Package Permissions
     public RealmList<AppPermission> appPermissions;
 
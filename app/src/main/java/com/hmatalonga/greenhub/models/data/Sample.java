@@ -113,4 +113,14 @@ public class Sample extends RealmObject {
 
     // Sensor list struct, with sensor power, type, isWakeUp, etc.
     public RealmList<SensorDetails> sensorDetailsList;
+
+    // If the sample is stored in full and other samples are encoded against it
+    public boolean isKeyframe;
+
+    // Id of the keyframe this sample is encoded against, 0 if none
+    @Index
+    public int keyframeId;
+
+    // Sections inherited from the keyframe, see SampleDelta
+    public int deltaMask;
 }
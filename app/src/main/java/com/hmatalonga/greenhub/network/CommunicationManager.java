@@ -18,6 +18,7 @@ package com.hmatalonga.greenhub.network;
 
 import android.content.Context;
 import android.os.Handler;
+import android.os.Looper;
 
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
@@ -26,6 +27,7 @@ import com.hmatalonga.greenhub.Config;
 import com.hmatalonga.greenhub.R;
 import com.hmatalonga.greenhub.events.StatusEvent;
 import com.hmatalonga.greenhub.managers.storage.GreenHubDb;
+import com.hmatalonga.greenhub.managers.storage.SampleCursor;
 import com.hmatalonga.greenhub.models.data.AppPermission;
 import com.hmatalonga.greenhub.models.data.AppSignature;
 import com.hmatalonga.greenhub.models.data.Feature;
@@ -35,16 +37,17 @@ import com.hmatalonga.greenhub.models.data.Sample;
 import com.hmatalonga.greenhub.models.data.SensorDetails;
 import com.hmatalonga.greenhub.models.data.Upload;
 import com.hmatalonga.greenhub.network.services.GreenHubAPIService;
-import com.hmatalonga.greenhub.tasks.DeleteSampleTask;
 import com.hmatalonga.greenhub.util.LogUtils;
 import com.hmatalonga.greenhub.util.NetworkWatcher;
 import com.hmatalonga.greenhub.util.SettingsUtils;
 
 import org.greenrobot.eventbus.EventBus;
 
-import java.util.Iterator;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 
-import io.realm.Realm;
 import retrofit2.Call;
 import retrofit2.Callback;
 import retrofit2.Response;
@@ -77,7 +80,17 @@ public class CommunicationManager {
 
     private GreenHubAPIService mService;
 
-    private Iterator<Integer> mCollection;
+    // Single thread owning the Realm of an upload run
+    private final ExecutorService mUploader = Executors.newSingleThreadExecutor();
+
+    private GreenHubDb mDatabase;
+
+    private SampleCursor mCursor;
+
+    // Ids of uploaded samples, deleted together once a page is done
+    private int[] mUploaded;
+
+    private int mUploadedCount;
 
     public CommunicationManager(final Context context, boolean background) {
         mContext = context;
@@ -113,70 +126,98 @@ public class CommunicationManager {
             return;
         }
 
-        GreenHubDb database = new GreenHubDb();
-        long count = database.count(Sample.class);
-        mCollection = database.allSamplesIds();
-        database.close();
+        isUploading = true;
+
+        // The whole run, from the first sample to the last response, uses the same Realm
+        mUploader.execute(new Runnable() {
+            @Override
+            public void run() {
+                startUpload();
+            }
+        });
+    }
+
+    /**
+     * Runs on the uploader thread.
+     */
+    private void startUpload() {
+        mDatabase = new GreenHubDb();
+        long count = mDatabase.count(Sample.class);
+        mCursor = mDatabase.sampleCursor(Config.UPLOAD_PAGE_SIZE);
+        mUploaded = new int[Config.UPLOAD_PAGE_SIZE];
+        mUploadedCount = 0;
 
         LogUtils.logI(TAG, count + " samples to upload...");
 
-        if (!mCollection.hasNext()) {
+        if (!mCursor.hasNext()) {
             EventBus.getDefault().post(
                     new StatusEvent(mContext.getString(R.string.event_no_samples))
             );
             isUploading = false;
             refreshStatus();
+            finishUpload();
             return;
         }
 
         EventBus.getDefault().post(new StatusEvent(this.makeUploadingMessage(count)));
-        uploadSample(mCollection.next());
+        uploadNextSample();
     }
 
     /**
-     * Uploads a single Sample object, sending a HTTP request to the server
-     *
-     * @param id Id of sample to upload
+     * Uploads the next sample of the cursor, sending a HTTP request to the server.
+     * Runs on the uploader thread.
      */
-    private void uploadSample(final int id) {
+    private void uploadNextSample() {
         isUploading = true;
 
-        LogUtils.logI(TAG, "Uploading sample => " + id);
-
-        Realm realm = Realm.getDefaultInstance();
-        final Sample sample = realm.where(Sample.class).equalTo("id", id).findFirst();
-        final Upload upload = sample == null ? null : new Upload(bundleSample(sample));
-        realm.close();
-
-        LogUtils.logI(TAG, "Sample found => " + (sample != null));
+        Sample sample = null;
+        int id = 0;
+        while (sample == null && mCursor.hasNext()) {
+            id = mCursor.next();
+            LogUtils.logI(TAG, "Uploading sample => " + id);
+            sample = mCursor.load(id);
+            LogUtils.logI(TAG, "Sample found => " + (sample != null));
+        }
 
-        if (sample == null && mCollection.hasNext()) {
-            uploadSample(mCollection.next());
-        } else if (sample == null) {
-            new DeleteSampleTask().execute(id);
+        if (sample == null) {
             isUploading = false;
             isQueued = false;
             uploadAttempts = 0;
+            finishUpload();
             return;
         }
 
+        final int uploadId = id;
+        final Upload upload = new Upload(bundleSample(sample));
+
         Call<Integer> call = mService.createSample(upload);
         call.enqueue(new Callback<Integer>() {
             @Override
-            public void onResponse(Call<Integer> call, Response<Integer> response) {
+            public void onResponse(Call<Integer> call, final Response<Integer> response) {
                 if (response == null) {
                     EventBus.getDefault().post(
                             new StatusEvent(
                                     mContext.getString(R.string.event_server_response_failed)
                             )
                     );
+                    onUploader(new Runnable() {
+                        @Override
+                        public void run() {
+                            finishUpload();
+                        }
+                    });
                     return;
                 }
-                if (response.body() != null) {
-                    handleResponse(response.body(), id);
-                } else {
-                    handleResponse(RESPONSE_ERROR, -1);
-                }
+                onUploader(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (response.body() != null) {
+                            handleResponse(response.body(), uploadId);
+                        } else {
+                            handleResponse(RESPONSE_ERROR, -1);
+                        }
+                    }
+                });
             }
 
             @Override
@@ -190,23 +231,29 @@ public class CommunicationManager {
 
                 logI(TAG, "HTTP call onFailure uploadAttempts:" + uploadAttempts);
 
-                // Clean up mDatabase
-                // new DeleteOldSamplesTask().execute();
-
                 refreshStatus();
+                onUploader(new Runnable() {
+                    @Override
+                    public void run() {
+                        finishUpload();
+                    }
+                });
             }
         });
     }
 
+    /**
+     * Runs on the uploader thread.
+     */
     private void handleResponse(int response, int id) {
         if (response == RESPONSE_OKAY) {
-            String message =
-                    "Sample => " + id + " uploaded successfully! Deleting uploaded sample...";
-            logI(TAG, message);
-            // delete uploaded sample and upload next one
-            new DeleteSampleTask().execute(id);
+            logI(TAG, "Sample => " + id + " uploaded successfully!");
+            mUploaded[mUploadedCount++] = id;
+            if (mUploadedCount == mUploaded.length) {
+                deleteUploaded();
+            }
 
-            if (!mCollection.hasNext()) {
+            if (!mCursor.hasNext()) {
                 EventBus.getDefault().post(
                         new StatusEvent(mContext.getString(R.string.event_upload_finished))
                 );
@@ -217,8 +264,9 @@ public class CommunicationManager {
                 LogUtils.logI(TAG, "All samples were uploaded!");
 
                 refreshStatus();
+                finishUpload();
             } else {
-                uploadSample(mCollection.next());
+                uploadNextSample();
             }
         } else if (response == RESPONSE_ERROR) {
             EventBus.getDefault().post(
@@ -231,12 +279,48 @@ public class CommunicationManager {
                     "Sample: " + id + " HTTP response error uploadAttempts:" + uploadAttempts;
             LogUtils.logI(TAG, message);
 
-            // Clean up mDatabase
-            // First try-force upload or ask user through notification?
-            // new DeleteOldSamplesTask().execute();
+            refreshStatus();
+            finishUpload();
+        } else {
+            // The server answered something else, the run ends without retrying
+            isUploading = false;
+            LogUtils.logI(TAG, "Sample: " + id + " unexpected response: " + response);
 
             refreshStatus();
+            finishUpload();
+        }
+    }
+
+    private void onUploader(Runnable task) {
+        try {
+            mUploader.execute(task);
+        } catch (RejectedExecutionException e) {
+            // The run is over already
+        }
+    }
+
+    /**
+     * Closes the Realm of the run and stops the uploader thread. Runs on the uploader thread.
+     */
+    private void finishUpload() {
+        mCursor = null;
+        if (mDatabase != null) {
+            deleteUploaded();
+            mDatabase.close();
+            mDatabase = null;
         }
+        mUploader.shutdown();
+    }
+
+    /**
+     * Deletes the uploaded samples in a single transaction. Runs on the uploader thread.
+     */
+    private void deleteUploaded() {
+        if (mUploadedCount == 0) return;
+
+        logI(TAG, "Deleting " + mUploadedCount + " uploaded samples...");
+        mDatabase.delete(Sample.class, Arrays.copyOf(mUploaded, mUploadedCount));
+        mUploadedCount = 0;
     }
 
     private JsonObject bundleSample(final Sample sample) {
@@ -323,6 +407,13 @@ public class CommunicationManager {
         child.addProperty("cpuUsage", sample.cpuStatus.cpuUsage);
         child.addProperty("upTime", sample.cpuStatus.upTime);
         child.addProperty("sleepTime", sample.cpuStatus.sleepTime);
+        if (sample.cpuStatus.coreUsage != null && !sample.cpuStatus.coreUsage.isEmpty()) {
+            list = new JsonArray();
+            for (Double usage : sample.cpuStatus.coreUsage) {
+                list.add(usage);
+            }
+            child.add("coreUsage", list);
+        }
         root.add("cpuStatus", child);
 
         root.addProperty("screenOn", sample.screenOn);
@@ -430,6 +521,8 @@ public class CommunicationManager {
                         "installationPkg",
                         el.installationPkg == null ? "" : el.installationPkg
                 );
+                child.addProperty("cpuUserTime", el.cpuUserTime);
+                child.addProperty("cpuSystemTime", el.cpuSystemTime);
 
                 // AppPermissions
                 if (el.appPermissions != null && !el.appPermissions.isEmpty()) {
@@ -463,7 +556,7 @@ public class CommunicationManager {
     }
 
     private void refreshStatus() {
-        Handler handler = new Handler();
+        Handler handler = new Handler(Looper.getMainLooper());
         handler.postDelayed(new Runnable() {
             @Override
             public void run() {
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2016 Hugo Matalonga & João Paulo Fernandes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmatalonga.greenhub.receivers;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+import android.os.AsyncTask;
+
+import com.hmatalonga.greenhub.managers.storage.PackageCache;
+import com.hmatalonga.greenhub.managers.storage.PackageJournal;
+import com.hmatalonga.greenhub.util.LogUtils;
+
+import static com.hmatalonga.greenhub.util.LogUtils.makeLogTag;
+
+/**
+ * PackageReceiver.
+ */
+public class PackageReceiver extends BroadcastReceiver {
+
+    private static final String TAG = makeLogTag(PackageReceiver.class);
+
+    /**
+     * Records the package event in the journal and drops the package from the cache.
+     *
+     * @param context the context
+     * @param intent the intent (PACKAGE_ADDED, PACKAGE_REMOVED, PACKAGE_REPLACED...)
+     */
+    @Override
+    public void onReceive(final Context context, Intent intent) {
+        String action = intent.getAction();
+        Uri data = intent.getData();
+        final String pkg = (data != null) ? data.getSchemeSpecificPart() : null;
+
+        if (action == null || pkg == null) return;
+
+        LogUtils.logI(TAG, action + " " + pkg);
+
+        final boolean replacing = intent.getBooleanExtra(Intent.EXTRA_REPLACING, false);
+        final int event;
+        if (action.equals(Intent.ACTION_PACKAGE_ADDED)) {
+            event = replacing ? PackageJournal.REPLACED : PackageJournal.INSTALLED;
+        } else if (action.equals(Intent.ACTION_PACKAGE_REMOVED) && !replacing) {
+            event = PackageJournal.UNINSTALLED;
+        } else if (action.equals(Intent.ACTION_PACKAGE_CHANGED)) {
+            event = PackageJournal.DISABLED;
+        } else {
+            event = 0;
+        }
+
+        // The package is loaded again and the cache written to disk off the main thread
+        final PendingResult result = goAsync();
+        AsyncTask.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    PackageCache cache = PackageCache.getInstance(context);
+                    if (event == PackageJournal.DISABLED) {
+                        // A change of the package may just be a component being toggled
+                        cache.invalidateChanged(pkg);
+                    } else {
+                        if (event != 0) {
+                            PackageJournal.getInstance(context).append(event, pkg);
+                        }
+                        cache.invalidate(pkg);
+                    }
+                    cache.save();
+                } finally {
+                    result.finish();
+                }
+            }
+        });
+    }
+}
@@ -20,14 +20,14 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
-import android.os.BatteryManager;
-import android.os.Build;
 
 import com.hmatalonga.greenhub.events.BatteryTimeEvent;
 import com.hmatalonga.greenhub.events.PowerSourceEvent;
 import com.hmatalonga.greenhub.managers.sampling.Inspector;
+import com.hmatalonga.greenhub.managers.sampling.SamplingActor;
 import com.hmatalonga.greenhub.managers.storage.GreenHubDb;
 import com.hmatalonga.greenhub.models.Battery;
+import com.hmatalonga.greenhub.models.BatterySnapshot;
 import com.hmatalonga.greenhub.util.LogUtils;
 import com.hmatalonga.greenhub.util.Notifier;
 
@@ -48,7 +48,7 @@ public class PowerConnectionReceiver extends BroadcastReceiver {
         if (action == null) return;
 
         boolean isCharging = false;
-        String batteryCharger = "";
+        BatterySnapshot battery;
         if (intent.getAction().equals(Intent.ACTION_POWER_CONNECTED)) {
             isCharging = true;
 
@@ -57,32 +57,19 @@ public class PowerConnectionReceiver extends BroadcastReceiver {
 
             if (mIntent == null) return;
 
-            int chargePlug = mIntent.getIntExtra(BatteryManager.EXTRA_PLUGGED, -1);
-            boolean usbCharge = chargePlug == BatteryManager.BATTERY_PLUGGED_USB;
-            boolean acCharge = chargePlug == BatteryManager.BATTERY_PLUGGED_AC;
-            boolean wirelessCharge = false;
-
-            if (Build.VERSION.SDK_INT >= 21) {
-                wirelessCharge = chargePlug == BatteryManager.BATTERY_PLUGGED_WIRELESS;
+            battery = BatterySnapshot.from(context, mIntent);
+            if (!"unplugged".equals(battery.charger)) {
+                EventBus.getDefault().post(new PowerSourceEvent(battery.charger));
             }
-
-            if (acCharge) {
-                batteryCharger = "ac";
-                EventBus.getDefault().post(new PowerSourceEvent("ac"));
-            } else if (usbCharge) {
-                batteryCharger = "usb";
-                EventBus.getDefault().post(new PowerSourceEvent("usb"));
-            } else if (wirelessCharge) {
-                batteryCharger = "wireless";
-                EventBus.getDefault().post(new PowerSourceEvent("wireless"));
+        } else {
+            battery = BatterySnapshot.from(context, null);
+            if (intent.getAction().equals(Intent.ACTION_POWER_DISCONNECTED)) {
+                EventBus.getDefault().post(new PowerSourceEvent("unplugged"));
             }
-        } else if (intent.getAction().equals(Intent.ACTION_POWER_DISCONNECTED)) {
-            isCharging = false;
-            EventBus.getDefault().post(new PowerSourceEvent("unplugged"));
         }
         // Post to subscribers & update notification
-        int batteryRemaining =
-                (int) (Battery.getRemainingBatteryTime(context, isCharging, batteryCharger) / 60);
+        int batteryRemaining = (int) (Battery.getRemainingBatteryTime(
+                context, battery, isCharging, battery.charger) / 60);
         int batteryRemainingHours = batteryRemaining / 60;
         int batteryRemainingMinutes = batteryRemaining % 60;
 
@@ -94,8 +81,20 @@ public class PowerConnectionReceiver extends BroadcastReceiver {
 //                batteryRemainingHours + "h " + batteryRemainingMinutes + "m", isCharging
 //        );
 
+        // Save a new Battery Session to the mDatabase, in order with the samples
+        final Context appContext = context.getApplicationContext();
+        final Intent event = new Intent(intent);
+
+        SamplingActor.getInstance().post(new Runnable() {
+            @Override
+            public void run() {
+                saveSession(appContext, event);
+            }
+        });
+    }
+
+    private static void saveSession(final Context context, Intent intent) {
         try {
-            // Save a new Battery Session to the mDatabase
             GreenHubDb database = new GreenHubDb();
             LogUtils.logI(TAG, "Getting new session");
             database.saveSession(Inspector.getBatterySession(context, intent));
@@ -18,12 +18,10 @@ package com.hmatalonga.greenhub.tasks;
 
 import android.os.AsyncTask;
 
+import com.hmatalonga.greenhub.managers.storage.GreenHubDb;
 import com.hmatalonga.greenhub.models.data.BatterySession;
 import com.hmatalonga.greenhub.util.DateUtils;
 
-import io.realm.Realm;
-import io.realm.RealmResults;
-
 /**
  * DeleteSessionsTask.
  */
@@ -31,33 +29,14 @@ public class DeleteSessionsTask extends AsyncTask<Integer, Void, Boolean> {
 
     private static final String TAG = "DeleteSessionsTask";
 
-    private boolean mResponse;
-
     @Override
     protected Boolean doInBackground(Integer... params) {
-        mResponse = false;
-        // Open the Realm
-        Realm realm = Realm.getDefaultInstance();
-
+        GreenHubDb database = new GreenHubDb();
         try {
-            final int interval = params[0];
-            realm.executeTransaction(new Realm.Transaction() {
-                @Override
-                public void execute(Realm realm) {
-                    RealmResults<BatterySession> sessions =
-                            realm.where(BatterySession.class).lessThan(
-                                    "timestamp",
-                                    DateUtils.getMilliSecondsInterval(interval)
-                            ).findAll();
-                    if (sessions != null && !sessions.isEmpty()) {
-                        mResponse = sessions.deleteAllFromRealm();
-                    }
-                }
-            });
+            long before = DateUtils.getMilliSecondsInterval(params[0]);
+            return database.delete(BatterySession.class, Long.MIN_VALUE, before) > 0;
         } finally {
-            realm.close();
+            database.close();
         }
-
-        return mResponse;
     }
 }
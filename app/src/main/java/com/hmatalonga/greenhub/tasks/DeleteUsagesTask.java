@@ -16,14 +16,12 @@
 
 package com.hmatalonga.greenhub.tasks;
 
+import android.content.Context;
 import android.os.AsyncTask;
 
-import com.hmatalonga.greenhub.models.data.BatteryUsage;
+import com.hmatalonga.greenhub.managers.storage.UsageStore;
 import com.hmatalonga.greenhub.util.DateUtils;
 
-import io.realm.Realm;
-import io.realm.RealmResults;
-
 /**
  * DeleteUsagesTask.
  */
@@ -31,32 +29,15 @@ public class DeleteUsagesTask extends AsyncTask<Integer, Void, Boolean> {
 
     private static final String TAG = "DeleteUsagesTask";
 
-    private boolean mResponse;
+    private final Context mContext;
+
+    public DeleteUsagesTask(final Context context) {
+        mContext = context.getApplicationContext();
+    }
 
     @Override
     protected Boolean doInBackground(Integer... params) {
-        mResponse = false;
-        // Open the Realm
-        Realm realm = Realm.getDefaultInstance();
-        try {
-            final int interval = params[0];
-            realm.executeTransaction(new Realm.Transaction() {
-                @Override
-                public void execute(Realm realm) {
-                    RealmResults<BatteryUsage> usages =
-                            realm.where(BatteryUsage.class).lessThan(
-                                    "timestamp",
-                                    DateUtils.getMilliSecondsInterval(interval)
-                            ).findAll();
-                    if (usages != null && !usages.isEmpty()) {
-                        mResponse = usages.deleteAllFromRealm();
-                    }
-                }
-            });
-        } finally {
-            realm.close();
-        }
-
-        return mResponse;
+        long before = DateUtils.getMilliSecondsInterval(params[0]);
+        return UsageStore.getInstance(mContext).deleteBefore(before) > 0;
     }
 }
@@ -17,6 +17,7 @@
 package com.hmatalonga.greenhub.ui;
 
 import android.content.Context;
+import android.content.Intent;
 import android.content.SharedPreferences;
 import android.os.Bundle;
 import android.preference.EditTextPreference;
@@ -33,6 +34,8 @@ import com.crashlytics.android.answers.CustomEvent;
 import com.hmatalonga.greenhub.BuildConfig;
 import com.hmatalonga.greenhub.GreenHubApp;
 import com.hmatalonga.greenhub.R;
+import com.hmatalonga.greenhub.managers.sampling.BatteryTelemetry;
+import com.hmatalonga.greenhub.managers.sampling.SamplingMetrics;
 import com.hmatalonga.greenhub.tasks.DeleteSessionsTask;
 import com.hmatalonga.greenhub.tasks.DeleteUsagesTask;
 import com.hmatalonga.greenhub.util.Notifier;
@@ -75,12 +78,29 @@ public class SettingsActivity extends BaseActivity {
             findPreference(SettingsUtils.PREF_APP_VERSION).setSummary(versionName);
 
             bindPreferenceSummaryToValue(findPreference(SettingsUtils.PREF_DATA_HISTORY));
+            bindPreferenceSummaryToValue(findPreference(SettingsUtils.PREF_SAMPLING_BUDGET));
+            bindPreferenceSummaryToValue(findPreference(SettingsUtils.PREF_TELEMETRY_INTERVAL));
             bindPreferenceSummaryToValue(findPreference(SettingsUtils.PREF_UPLOAD_RATE));
             bindPreferenceSummaryToValue(findPreference(SettingsUtils.PREF_TEMPERATURE_RATE));
             bindPreferenceSummaryToValue(findPreference(SettingsUtils.PREF_TEMPERATURE_WARNING));
             bindPreferenceSummaryToValue(findPreference(SettingsUtils.PREF_TEMPERATURE_HIGH));
             bindPreferenceSummaryToValue(findPreference(SettingsUtils.PREF_NOTIFICATIONS_PRIORITY));
 
+            if (BuildConfig.DEBUG) {
+                findPreference(SettingsUtils.PREF_SAMPLING_METRICS).setOnPreferenceClickListener(
+                        new Preference.OnPreferenceClickListener() {
+                            @Override
+                            public boolean onPreferenceClick(Preference preference) {
+                                shareSamplingMetrics();
+                                return true;
+                            }
+                        });
+            } else {
+                getPreferenceScreen().removePreference(
+                        findPreference(SettingsUtils.PREF_DEBUG_HEADER)
+                );
+            }
+
             SettingsUtils.registerOnSharedPreferenceChangeListener(getActivity(), this);
         }
 
@@ -112,12 +132,21 @@ public class SettingsActivity extends BaseActivity {
                     bindPreferenceSummaryToValue(preference);
                     // Delete old data history
                     final int interval = SettingsUtils.fetchDataHistoryInterval(context);
-                    new DeleteUsagesTask().execute(interval);
+                    new DeleteUsagesTask(context).execute(interval);
                     new DeleteSessionsTask().execute(interval);
                     break;
                 case SettingsUtils.PREF_UPLOAD_RATE:
                     bindPreferenceSummaryToValue(preference);
                     break;
+                case SettingsUtils.PREF_SAMPLING_BUDGET:
+                    bindPreferenceSummaryToValue(preference);
+                    break;
+                case SettingsUtils.PREF_TELEMETRY_INTERVAL:
+                    bindPreferenceSummaryToValue(preference);
+                    BatteryTelemetry.getInstance().setInterval(
+                            SettingsUtils.fetchTelemetryInterval(context)
+                    );
+                    break;
                 /*
                 case SettingsUtils.PREF_POWER_INDICATOR:
                     if (SettingsUtils.isPowerIndicatorShown(context)) {
@@ -152,6 +181,15 @@ public class SettingsActivity extends BaseActivity {
             }
         }
 
+        private void shareSamplingMetrics() {
+            Intent intent = new Intent(Intent.ACTION_SEND);
+            intent.setType("text/plain");
+            intent.putExtra(Intent.EXTRA_TEXT, SamplingMetrics.toJson().toString());
+            startActivity(Intent.createChooser(
+                    intent, getString(R.string.pref_title_sampling_metrics)
+            ));
+        }
+
         private void bindPreferenceSummaryToValue(Preference preference) {
             String stringValue = PreferenceManager
                     .getDefaultSharedPreferences(preference.getContext())
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2016 Hugo Matalonga & João Paulo Fernandes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmatalonga.greenhub.util;
+
+import com.google.gson.JsonObject;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-bucket latency histogram, in microseconds.
+ * <p>
+ * Buckets are log-linear: every power of two range is split in {@link #SUB_BUCKETS}
+ * linear buckets, which keeps the relative error under 25% from 1 us up to ~18 minutes
+ * with 120 counters. Recording only increments primitive counters, so it can be done
+ * on hot paths and from several threads.
+ */
+public class LatencyHistogram {
+
+    static final int SUB_BUCKET_BITS = 2;
+
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    // Values up to 2^30 us, larger ones are kept in the last bucket
+    static final int MAX_EXPONENT = 30;
+
+    static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final long[] mCounts = new long[BUCKET_COUNT];
+
+    private long mCount;
+
+    private long mSum;
+
+    private long mMax;
+
+    public synchronized void record(long micros) {
+        if (micros < 0) micros = 0;
+        mCounts[bucketOf(micros)]++;
+        mCount++;
+        mSum += micros;
+        if (micros > mMax) mMax = micros;
+    }
+
+    /**
+     * Records the time elapsed since {@code startNanos}, as given by {@link System#nanoTime()}.
+     */
+    public void recordSince(long startNanos) {
+        record((System.nanoTime() - startNanos) / 1000);
+    }
+
+    public synchronized long getCount() {
+        return mCount;
+    }
+
+    public synchronized long getMax() {
+        return mMax;
+    }
+
+    public synchronized long getMean() {
+        return mCount == 0 ? 0 : mSum / mCount;
+    }
+
+    /**
+     * Upper bound of the bucket holding the given percentile, capped to the max value.
+     *
+     * @param percentile value between 0 and 100.
+     * @return the latency in microseconds, 0 if there are no records.
+     */
+    public synchronized long getPercentile(double percentile) {
+        if (mCount == 0) return 0;
+
+        long rank = (long) Math.ceil(mCount * percentile / 100);
+        if (rank < 1) rank = 1;
+
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += mCounts[i];
+            if (seen >= rank) {
+                return Math.min(mMax, upperBoundOf(i));
+            }
+        }
+        return mMax;
+    }
+
+    public synchronized void reset() {
+        Arrays.fill(mCounts, 0);
+        mCount = 0;
+        mSum = 0;
+        mMax = 0;
+    }
+
+    public synchronized JsonObject toJson() {
+        JsonObject json = new JsonObject();
+        json.addProperty("count", mCount);
+        json.addProperty("mean", getMean());
+        json.addProperty("p50", getPercentile(50));
+        json.addProperty("p90", getPercentile(90));
+        json.addProperty("p99", getPercentile(99));
+        json.addProperty("max", mMax);
+        return json;
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) return BUCKET_COUNT - 1;
+
+        int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    static long lowerBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int sub = bucket % SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + sub) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    static long upperBoundOf(int bucket) {
+        if (bucket >= BUCKET_COUNT - 1) return Long.MAX_VALUE;
+        return lowerBoundOf(bucket + 1) - 1;
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright (c) 2016 Hugo Matalonga & João Paulo Fernandes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmatalonga.greenhub.util;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reusable reader for small pseudo files such as /proc/stat or /proc/meminfo.
+ * <p>
+ * The whole file is loaded into a byte buffer which is kept between reads, and the
+ * file handle is left open and rewound on every read. Values are then extracted
+ * with a forward-only cursor, so once the buffer has grown to fit the file no
+ * objects are allocated per read. Instances are not thread safe.
+ */
+public class ProcFileReader {
+
+    private static final int DEFAULT_CAPACITY = 4096;
+
+    private final String mPath;
+
+    private RandomAccessFile mFile;
+
+    private byte[] mBuffer;
+
+    private int mLength;
+
+    private int mPosition;
+
+    public ProcFileReader(String path) {
+        this(path, DEFAULT_CAPACITY);
+    }
+
+    public ProcFileReader(String path, int capacity) {
+        mPath = path;
+        mBuffer = new byte[capacity];
+    }
+
+    /**
+     * Loads the current content of the file into the buffer and rewinds the cursor.
+     *
+     * @return true if the file could be read, false otherwise.
+     */
+    public boolean read() {
+        mLength = 0;
+        mPosition = 0;
+
+        try {
+            if (mFile == null) {
+                mFile = new RandomAccessFile(mPath, "r");
+            } else {
+                mFile.seek(0);
+            }
+            fill(mFile);
+            return true;
+        } catch (IOException e) {
+            close();
+            mLength = 0;
+            return false;
+        }
+    }
+
+    /**
+     * Loads the content of another file into the same buffer, closing it right after.
+     * Used for files such as /proc/[pid]/stat that should not keep a descriptor open.
+     *
+     * @param path the file to read.
+     * @return true if the file could be read, false otherwise.
+     */
+    public boolean readOnce(String path) {
+        mLength = 0;
+        mPosition = 0;
+
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(path, "r");
+            fill(file);
+            return true;
+        } catch (IOException e) {
+            mLength = 0;
+            return false;
+        } finally {
+            if (file != null) {
+                try {
+                    file.close();
+                } catch (IOException e) {
+                    // Nothing to do here
+                }
+            }
+        }
+    }
+
+    public void close() {
+        if (mFile != null) {
+            try {
+                mFile.close();
+            } catch (IOException e) {
+                // Nothing to do here
+            }
+            mFile = null;
+        }
+    }
+
+    public boolean hasMore() {
+        return mPosition < mLength;
+    }
+
+    public int position() {
+        return mPosition;
+    }
+
+    public int length() {
+        return mLength;
+    }
+
+    public byte byteAt(int index) {
+        return mBuffer[index];
+    }
+
+    /**
+     * Checks if the text at the cursor starts with the given ASCII key.
+     */
+    public boolean startsWith(byte[] key) {
+        if (mPosition + key.length > mLength) return false;
+        for (int i = 0; i < key.length; i++) {
+            if (mBuffer[mPosition + i] != key[i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Moves the cursor forward by {@code count} bytes, without crossing the end of the buffer.
+     */
+    public void skip(int count) {
+        mPosition = Math.min(mLength, mPosition + count);
+    }
+
+    /**
+     * Moves the cursor to the beginning of the next line.
+     *
+     * @return true if there is a next line, false if the end of the buffer was reached.
+     */
+    public boolean nextLine() {
+        while (mPosition < mLength && mBuffer[mPosition] != '\n') {
+            mPosition++;
+        }
+        if (mPosition < mLength) mPosition++;
+        return mPosition < mLength;
+    }
+
+    /**
+     * Moves the cursor right after the last occurrence of {@code value} in the buffer.
+     *
+     * @return true if the value was found, false otherwise.
+     */
+    public boolean skipPastLast(byte value) {
+        for (int i = mLength - 1; i >= mPosition; i--) {
+            if (mBuffer[i] == value) {
+                mPosition = i + 1;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Skips the next whitespace separated token of the current line.
+     */
+    public void skipToken() {
+        skipSeparators();
+        while (mPosition < mLength && !isSeparator(mBuffer[mPosition])
+                && mBuffer[mPosition] != '\n') {
+            mPosition++;
+        }
+    }
+
+    /**
+     * Parses the next non-negative decimal number of the current line.
+     *
+     * @return the parsed value, or -1 if the line has no more numbers.
+     */
+    public long nextLong() {
+        skipSeparators();
+        if (mPosition >= mLength || !isDigit(mBuffer[mPosition])) return -1;
+
+        long value = 0;
+        while (mPosition < mLength && isDigit(mBuffer[mPosition])) {
+            value = value * 10 + (mBuffer[mPosition] - '0');
+            mPosition++;
+        }
+        return value;
+    }
+
+    /**
+     * Reads the text from the cursor up to the delimiter or the end of the buffer,
+     * and moves the cursor past the delimiter.
+     *
+     * @return the text read, empty if the cursor is at the delimiter.
+     */
+    public String nextString(byte delimiter) {
+        int start = mPosition;
+        while (mPosition < mLength && mBuffer[mPosition] != delimiter) {
+            mPosition++;
+        }
+        String value = new String(mBuffer, start, mPosition - start, StandardCharsets.UTF_8);
+        if (mPosition < mLength) mPosition++;
+        return value;
+    }
+
+    private void fill(RandomAccessFile file) throws IOException {
+        int count;
+        while ((count = file.read(mBuffer, mLength, mBuffer.length - mLength)) > 0) {
+            mLength += count;
+            if (mLength == mBuffer.length) {
+                byte[] buffer = new byte[mBuffer.length * 2];
+                System.arraycopy(mBuffer, 0, buffer, 0, mLength);
+                mBuffer = buffer;
+            }
+        }
+    }
+
+    private void skipSeparators() {
+        while (mPosition < mLength && isSeparator(mBuffer[mPosition])) {
+            mPosition++;
+        }
+    }
+
+    private static boolean isSeparator(byte b) {
+        return b == ' ' || b == '\t' || b == ':';
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright (c) 2016 Hugo Matalonga & João Paulo Fernandes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmatalonga.greenhub.util;
+
+import java.io.File;
+
+/**
+ * Lists the running processes by walking the /proc/[pid] directories, instead of
+ * forking ps.
+ * <p>
+ * For each process the name is read from cmdline, the real uid from status and the state
+ * from stat, all through the same {@link ProcFileReader} buffer. Results are kept in
+ * primitive arrays reused between scans. Kernel threads, which have an empty cmdline, and
+ * zombies are skipped. Since Android N only the processes of the app itself are usually
+ * visible.
+ */
+public class ProcScanner {
+
+    public static final int TYPE_SYSTEM = 0;
+
+    public static final int TYPE_USER = 1;
+
+    public static final int TYPE_USER_SERVICE = 2;
+
+    public static final int TYPE_UNKNOWN = 3;
+
+    // Uids of apps start here, see android.os.Process.FIRST_APPLICATION_UID
+    private static final int FIRST_APPLICATION_UID = 10000;
+
+    private static final byte[] UID_KEY = {'U', 'i', 'd', ':'};
+
+    private final File mProc;
+
+    private final ProcFileReader mReader = new ProcFileReader(null, 1024);
+
+    private final StringBuilder mPath = new StringBuilder(24);
+
+    private int mSize = 0;
+
+    private int[] mPids;
+
+    private int[] mUids;
+
+    private int[] mTypes;
+
+    private String[] mNames;
+
+    public ProcScanner() {
+        this(new File("/proc"), 256);
+    }
+
+    ProcScanner(File proc, int capacity) {
+        mProc = proc;
+        mPids = new int[capacity];
+        mUids = new int[capacity];
+        mTypes = new int[capacity];
+        mNames = new String[capacity];
+    }
+
+    /**
+     * Lists the processes visible right now.
+     *
+     * @return the number of processes found.
+     */
+    public synchronized int scan() {
+        mSize = 0;
+
+        String[] files = mProc.list();
+        if (files == null) return 0;
+
+        for (String file : files) {
+            int pid = parsePid(file);
+            if (pid <= 0) continue;
+
+            if (mSize == mPids.length) grow();
+            if (read(pid, mSize)) mSize++;
+        }
+        return mSize;
+    }
+
+    public synchronized int size() {
+        return mSize;
+    }
+
+    public synchronized int getPid(int index) {
+        return mPids[index];
+    }
+
+    public synchronized int getUid(int index) {
+        return mUids[index];
+    }
+
+    public synchronized String getName(int index) {
+        return mNames[index];
+    }
+
+    /**
+     * @return one of the TYPE_* constants.
+     */
+    public synchronized int getType(int index) {
+        return mTypes[index];
+    }
+
+    /**
+     * Classifies a process the same way the rows of ps were: processes of system uids,
+     * apps named like a package, and app services named package:service.
+     */
+    static int classify(int uid, String name) {
+        if (uid < FIRST_APPLICATION_UID) return TYPE_SYSTEM;
+
+        int colon = name.indexOf(':');
+        int end = (colon < 0) ? name.length() : colon;
+
+        if (!isPackageName(name, end)) return TYPE_UNKNOWN;
+        if (colon < 0) return TYPE_USER;
+
+        return isWord(name, colon + 1, name.length()) ? TYPE_USER_SERVICE : TYPE_UNKNOWN;
+    }
+
+    private boolean read(int pid, int index) {
+        // argv[0] up to the first NUL, empty for kernel threads
+        if (!mReader.readOnce(path(pid, "/cmdline"))) return false;
+        String name = mReader.nextString((byte) 0);
+        if (name.isEmpty()) return false;
+
+        if (!mReader.readOnce(path(pid, "/status"))) return false;
+        int uid = -1;
+        do {
+            if (mReader.startsWith(UID_KEY)) {
+                mReader.skip(UID_KEY.length);
+                uid = (int) mReader.nextLong();
+                break;
+            }
+        } while (mReader.nextLine());
+        if (uid < 0) return false;
+
+        // The state follows the name, which may contain spaces and parentheses
+        if (!mReader.readOnce(path(pid, "/stat"))) return false;
+        if (!mReader.skipPastLast((byte) ')')) return false;
+        mReader.skip(1);
+        if (!mReader.hasMore() || mReader.byteAt(mReader.position()) == 'Z') return false;
+
+        mPids[index] = pid;
+        mUids[index] = uid;
+        mNames[index] = name;
+        mTypes[index] = classify(uid, name);
+        return true;
+    }
+
+    private String path(int pid, String file) {
+        mPath.setLength(0);
+        mPath.append(mProc.getPath()).append('/').append(pid).append(file);
+        return mPath.toString();
+    }
+
+    private void grow() {
+        int capacity = mPids.length * 2;
+
+        int[] pids = new int[capacity];
+        int[] uids = new int[capacity];
+        int[] types = new int[capacity];
+        String[] names = new String[capacity];
+
+        System.arraycopy(mPids, 0, pids, 0, mSize);
+        System.arraycopy(mUids, 0, uids, 0, mSize);
+        System.arraycopy(mTypes, 0, types, 0, mSize);
+        System.arraycopy(mNames, 0, names, 0, mSize);
+
+        mPids = pids;
+        mUids = uids;
+        mTypes = types;
+        mNames = names;
+    }
+
+    /**
+     * @return the pid named by a /proc entry, or -1 if it is not a process directory.
+     */
+    private static int parsePid(String file) {
+        int length = file.length();
+        if (length == 0 || length > 9) return -1;
+
+        int pid = 0;
+        for (int i = 0; i < length; i++) {
+            char c = file.charAt(i);
+            if (c < '0' || c > '9') return -1;
+            pid = pid * 10 + (c - '0');
+        }
+        return pid;
+    }
+
+    // Same as the regex \w+(\.\w+)+ over the first end characters
+    private static boolean isPackageName(String name, int end) {
+        int dots = 0;
+        int start = 0;
+        for (int i = 0; i <= end; i++) {
+            if (i == end || name.charAt(i) == '.') {
+                if (!isWord(name, start, i)) return false;
+                if (i < end) dots++;
+                start = i + 1;
+            }
+        }
+        return dots > 0;
+    }
+
+    // Same as the regex \w+ over the given range
+    private static boolean isWord(String name, int start, int end) {
+        if (start >= end) return false;
+
+        for (int i = start; i < end; i++) {
+            char c = name.charAt(i);
+            boolean word = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+                    || (c >= '0' && c <= '9') || c == '_';
+            if (!word) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2016 Hugo Matalonga & João Paulo Fernandes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmatalonga.greenhub.util;
+
+import android.content.SharedPreferences;
+
+import com.hmatalonga.greenhub.Config;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static com.hmatalonga.greenhub.util.SettingsUtils.PREF_AUTO_UPLOAD;
+import static com.hmatalonga.greenhub.util.SettingsUtils.PREF_BATTERY_ALERTS;
+import static com.hmatalonga.greenhub.util.SettingsUtils.PREF_CHARGE_ALERTS;
+import static com.hmatalonga.greenhub.util.SettingsUtils.PREF_DATA_HISTORY;
+import static com.hmatalonga.greenhub.util.SettingsUtils.PREF_DEVICE_REGISTERED;
+import static com.hmatalonga.greenhub.util.SettingsUtils.PREF_MESSAGE_ALERTS;
+import static com.hmatalonga.greenhub.util.SettingsUtils.PREF_MOBILE_DATA;
+import static com.hmatalonga.greenhub.util.SettingsUtils.PREF_NOTIFICATIONS_PRIORITY;
+import static com.hmatalonga.greenhub.util.SettingsUtils.PREF_POWER_INDICATOR;
+import static com.hmatalonga.greenhub.util.SettingsUtils.PREF_SAMPLING_BUDGET;
+import static com.hmatalonga.greenhub.util.SettingsUtils.PREF_SAMPLING_SCREEN;
+import static com.hmatalonga.greenhub.util.SettingsUtils.PREF_SEND_INSTALLED_PACKAGES;
+import static com.hmatalonga.greenhub.util.SettingsUtils.PREF_SERVER_URL;
+import static com.hmatalonga.greenhub.util.SettingsUtils.PREF_TELEMETRY_INTERVAL;
+import static com.hmatalonga.greenhub.util.SettingsUtils.PREF_TEMPERATURE_ALERTS;
+import static com.hmatalonga.greenhub.util.SettingsUtils.PREF_TEMPERATURE_HIGH;
+import static com.hmatalonga.greenhub.util.SettingsUtils.PREF_TEMPERATURE_RATE;
+import static com.hmatalonga.greenhub.util.SettingsUtils.PREF_TEMPERATURE_WARNING;
+import static com.hmatalonga.greenhub.util.SettingsUtils.PREF_UPLOAD_RATE;
+
+/**
+ * Typed, immutable copy of the preferences read on every battery broadcast and sample.
+ * <p>
+ * Built once from the {@link SharedPreferences} and replaced as a whole when one of them
+ * changes, see {@link SettingsUtils#snapshot}, so readers get plain fields with no map
+ * lookup or parsing and never see half of an update.
+ */
+public final class SettingsSnapshot {
+
+    private static final Set<String> KEYS = new HashSet<>(Arrays.asList(
+            PREF_SAMPLING_SCREEN,
+            PREF_DATA_HISTORY,
+            PREF_SAMPLING_BUDGET,
+            PREF_TELEMETRY_INTERVAL,
+            PREF_MOBILE_DATA,
+            PREF_AUTO_UPLOAD,
+            PREF_UPLOAD_RATE,
+            PREF_NOTIFICATIONS_PRIORITY,
+            PREF_POWER_INDICATOR,
+            PREF_BATTERY_ALERTS,
+            PREF_CHARGE_ALERTS,
+            PREF_TEMPERATURE_ALERTS,
+            PREF_TEMPERATURE_RATE,
+            PREF_TEMPERATURE_WARNING,
+            PREF_TEMPERATURE_HIGH,
+            PREF_MESSAGE_ALERTS,
+            PREF_DEVICE_REGISTERED,
+            PREF_SERVER_URL,
+            PREF_SEND_INSTALLED_PACKAGES
+    ));
+
+    public final boolean samplingScreen;
+
+    // Days of data history to keep
+    public final int dataHistory;
+
+    // CPU time budget of sampling, in ms per hour
+    public final int samplingBudget;
+
+    // Time between readings of the battery current while it is shown, in ms
+    public final int telemetryInterval;
+
+    public final boolean mobileData;
+
+    public final boolean autoUpload;
+
+    public final int uploadRate;
+
+    public final int notificationsPriority;
+
+    public final boolean powerIndicator;
+
+    public final boolean batteryAlerts;
+
+    public final boolean chargeAlerts;
+
+    public final boolean temperatureAlerts;
+
+    // Minutes between temperature alerts
+    public final int temperatureRate;
+
+    // Temperature thresholds, in ºC
+    public final int temperatureWarning;
+
+    public final int temperatureHigh;
+
+    public final boolean messageAlerts;
+
+    public final boolean deviceRegistered;
+
+    public final String serverUrl;
+
+    public final boolean installedPackagesIncluded;
+
+    private SettingsSnapshot(SharedPreferences sp) {
+        samplingScreen = sp.getBoolean(PREF_SAMPLING_SCREEN, false);
+        dataHistory = parse(sp, PREF_DATA_HISTORY, Config.DATA_HISTORY_DEFAULT);
+        samplingBudget = parse(sp, PREF_SAMPLING_BUDGET, Config.SAMPLING_BUDGET_DEFAULT);
+        telemetryInterval = parse(sp, PREF_TELEMETRY_INTERVAL, Config.TELEMETRY_INTERVAL_DEFAULT);
+        mobileData = sp.getBoolean(PREF_MOBILE_DATA, false);
+        autoUpload = sp.getBoolean(PREF_AUTO_UPLOAD, true);
+        uploadRate = parse(sp, PREF_UPLOAD_RATE, Config.UPLOAD_DEFAULT_RATE);
+        notificationsPriority = parse(
+                sp, PREF_NOTIFICATIONS_PRIORITY, Config.NOTIFICATION_DEFAULT_PRIORITY
+        );
+        powerIndicator = sp.getBoolean(PREF_POWER_INDICATOR, false);
+        batteryAlerts = sp.getBoolean(PREF_BATTERY_ALERTS, true);
+        chargeAlerts = sp.getBoolean(PREF_CHARGE_ALERTS, true);
+        temperatureAlerts = sp.getBoolean(PREF_TEMPERATURE_ALERTS, true);
+        temperatureRate = parse(
+                sp, PREF_TEMPERATURE_RATE, Config.NOTIFICATION_DEFAULT_TEMPERATURE_RATE
+        );
+        temperatureWarning = parse(
+                sp, PREF_TEMPERATURE_WARNING, Config.NOTIFICATION_DEFAULT_TEMPERATURE_WARNING
+        );
+        temperatureHigh = parse(
+                sp, PREF_TEMPERATURE_HIGH, Config.NOTIFICATION_DEFAULT_TEMPERATURE_HIGH
+        );
+        messageAlerts = sp.getBoolean(PREF_MESSAGE_ALERTS, true);
+        deviceRegistered = sp.getBoolean(PREF_DEVICE_REGISTERED, false);
+        serverUrl = sp.getString(PREF_SERVER_URL, Config.SERVER_URL_DEFAULT);
+        installedPackagesIncluded = sp.getBoolean(PREF_SEND_INSTALLED_PACKAGES, false);
+    }
+
+    public static SettingsSnapshot from(SharedPreferences sp) {
+        return new SettingsSnapshot(sp);
+    }
+
+    /**
+     * @return true if the preference is part of the snapshot. A null key, sent when all
+     * the preferences are cleared, is covered as well.
+     */
+    public static boolean covers(String key) {
+        return key == null || KEYS.contains(key);
+    }
+
+    public boolean isServerUrlPresent() {
+        return !Config.SERVER_URL_DEFAULT.equals(serverUrl);
+    }
+
+    /**
+     * Parses a number kept as a string by a list preference, with leading zeros allowed.
+     * An invalid value gives the default instead.
+     */
+    private static int parse(SharedPreferences sp, String key, String defaultValue) {
+        String value = sp.getString(key, defaultValue);
+        if (value != null) {
+            try {
+                return Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                // Nothing to do here
+            }
+        }
+        return Integer.parseInt(defaultValue);
+    }
+}
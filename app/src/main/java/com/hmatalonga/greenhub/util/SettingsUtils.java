@@ -60,6 +60,14 @@ public class SettingsUtils {
      * Integer indicating which data history days range to keep.
      */
     public static final String PREF_DATA_HISTORY = "pref_data_history";
+    /**
+     * Integer indicating the CPU time budget of sampling, in milliseconds per hour.
+     */
+    public static final String PREF_SAMPLING_BUDGET = "pref_sampling_budget";
+    /**
+     * Integer indicating the time between readings of the battery current, in milliseconds.
+     */
+    public static final String PREF_TELEMETRY_INTERVAL = "pref_telemetry_interval";
     /**
      * Boolean indicating whether to allow uploads using mobile data.
      */
@@ -136,8 +144,63 @@ public class SettingsUtils {
      */
     public static final String PREF_REMAINING_TIME = "pref_remaining_time";
 
+    /**
+     * Debug entry to share the sampling latency histograms.
+     */
+    public static final String PREF_SAMPLING_METRICS = "pref_sampling_metrics";
+
+    /**
+     * Category of debug only preferences.
+     */
+    public static final String PREF_DEBUG_HEADER = "debug_header";
+
     // endregion
 
+    private static volatile SettingsSnapshot sSnapshot = null;
+
+    // Kept here since the preferences only hold a weak reference to their listeners
+    private static final SharedPreferences.OnSharedPreferenceChangeListener sListener =
+            new SharedPreferences.OnSharedPreferenceChangeListener() {
+                @Override
+                public void onSharedPreferenceChanged(SharedPreferences sp, String key) {
+                    if (SettingsSnapshot.covers(key)) {
+                        refresh(sp);
+                    }
+                }
+            };
+
+    /**
+     * Returns the current snapshot of the preferences read on hot paths. It is built on
+     * the first call and rebuilt whenever one of its preferences changes.
+     *
+     * @param context Context to be used to lookup the {@link android.content.SharedPreferences}.
+     */
+    public static SettingsSnapshot snapshot(final Context context) {
+        SettingsSnapshot snapshot = sSnapshot;
+        if (snapshot != null) return snapshot;
+
+        synchronized (SettingsUtils.class) {
+            if (sSnapshot == null) {
+                Context appContext = context.getApplicationContext();
+                SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(appContext);
+                sp.registerOnSharedPreferenceChangeListener(sListener);
+                sSnapshot = SettingsSnapshot.from(sp);
+            }
+            return sSnapshot;
+        }
+    }
+
+    /**
+     * Rebuilds the snapshot. Also called right after a write from here, since the listener
+     * is only called later on the main thread. Builds are serialized so an older one never
+     * replaces a newer one.
+     */
+    private static synchronized void refresh(SharedPreferences sp) {
+        if (sSnapshot != null) {
+            sSnapshot = SettingsSnapshot.from(sp);
+        }
+    }
+
     /**
      * Return true if user has accepted the
      * {@link WelcomeActivity Tos}, false if they haven't (yet).
@@ -169,6 +232,7 @@ public class SettingsUtils {
     public static void markDeviceAccepted(final Context context, boolean newValue) {
         SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
         sp.edit().putBoolean(PREF_DEVICE_REGISTERED, newValue).apply();
+        refresh(sp);
     }
 
     /**
@@ -178,8 +242,7 @@ public class SettingsUtils {
      * @param context Context to be used to lookup the {@link android.content.SharedPreferences}.
      */
     public static boolean isDeviceRegistered(final Context context) {
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
-        return sp.getBoolean(PREF_DEVICE_REGISTERED, false);
+        return snapshot(context).deviceRegistered;
     }
 
     /**
@@ -191,6 +254,7 @@ public class SettingsUtils {
     public static void saveServerUrl(final Context context, String url) {
         SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
         sp.edit().putString(PREF_SERVER_URL, url).apply();
+        refresh(sp);
     }
 
     /**
@@ -199,24 +263,21 @@ public class SettingsUtils {
      * @param context Context to be used to edit the {@link android.content.SharedPreferences}.
      */
     public static String fetchServerUrl(final Context context) {
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
-        return sp.getString(PREF_SERVER_URL, Config.SERVER_URL_DEFAULT);
+        return snapshot(context).serverUrl;
     }
 
     public static boolean isServerUrlPresent(final Context context) {
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
-        return !sp.getString(PREF_SERVER_URL, Config.SERVER_URL_DEFAULT)
-                .equals(Config.SERVER_URL_DEFAULT);
+        return snapshot(context).isServerUrlPresent();
     }
 
     public static void markInstalledPackagesIncluded(final Context context, boolean newValue) {
         SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
         sp.edit().putBoolean(PREF_SEND_INSTALLED_PACKAGES, newValue).apply();
+        refresh(sp);
     }
 
     public static boolean isInstalledPackagesIncluded(final Context context) {
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
-        return sp.getBoolean(PREF_SEND_INSTALLED_PACKAGES, false);
+        return snapshot(context).installedPackagesIncluded;
     }
 
     /**
@@ -225,15 +286,19 @@ public class SettingsUtils {
      * @param context Context to be used to lookup the {@link android.content.SharedPreferences}.
      */
     public static boolean isSamplingScreenOn(final Context context) {
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
-        return sp.getBoolean(PREF_SAMPLING_SCREEN, false);
+        return snapshot(context).samplingScreen;
     }
 
     public static int fetchDataHistoryInterval(final Context context) {
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
-        return Integer.parseInt(
-                sp.getString(PREF_DATA_HISTORY, Config.DATA_HISTORY_DEFAULT)
-        );
+        return snapshot(context).dataHistory;
+    }
+
+    public static int fetchSamplingBudget(final Context context) {
+        return snapshot(context).samplingBudget;
+    }
+
+    public static int fetchTelemetryInterval(final Context context) {
+        return snapshot(context).telemetryInterval;
     }
 
     /**
@@ -243,8 +308,7 @@ public class SettingsUtils {
      * @param context Context to be used to lookup the {@link android.content.SharedPreferences}.
      */
     public static boolean isMobileDataAllowed(final Context context) {
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
-        return sp.getBoolean(PREF_MOBILE_DATA, false);
+        return snapshot(context).mobileData;
     }
 
     /**
@@ -254,22 +318,15 @@ public class SettingsUtils {
      * @param context Context to be used to lookup the {@link android.content.SharedPreferences}.
      */
     public static boolean isAutomaticUploadingAllowed(final Context context) {
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
-        return sp.getBoolean(PREF_AUTO_UPLOAD, true);
+        return snapshot(context).autoUpload;
     }
 
     public static int fetchUploadRate(final Context context) {
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
-        return Integer.parseInt(
-                sp.getString(PREF_UPLOAD_RATE, Config.UPLOAD_DEFAULT_RATE)
-        );
+        return snapshot(context).uploadRate;
     }
 
     public static int fetchNotificationsPriority(final Context context) {
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
-        return Integer.parseInt(
-                sp.getString(PREF_NOTIFICATIONS_PRIORITY, Config.NOTIFICATION_DEFAULT_PRIORITY)
-        );
+        return snapshot(context).notificationsPriority;
     }
 
     /**
@@ -278,8 +335,7 @@ public class SettingsUtils {
      * @param context Context to be used to lookup the {@link android.content.SharedPreferences}.
      */
     public static boolean isPowerIndicatorShown(final Context context) {
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
-        return sp.getBoolean(PREF_POWER_INDICATOR, false);
+        return snapshot(context).powerIndicator;
     }
 
     /**
@@ -288,8 +344,7 @@ public class SettingsUtils {
      * @param context Context to be used to lookup the {@link android.content.SharedPreferences}.
      */
     public static boolean isBatteryAlertsOn(final Context context) {
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
-        return sp.getBoolean(PREF_BATTERY_ALERTS, true);
+        return snapshot(context).batteryAlerts;
     }
 
     /**
@@ -298,8 +353,7 @@ public class SettingsUtils {
      * @param context Context to be used to lookup the {@link android.content.SharedPreferences}.
      */
     public static boolean isChargeAlertsOn(final Context context) {
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
-        return sp.getBoolean(PREF_CHARGE_ALERTS, true);
+        return snapshot(context).chargeAlerts;
     }
 
     /**
@@ -308,35 +362,19 @@ public class SettingsUtils {
      * @param context Context to be used to lookup the {@link android.content.SharedPreferences}.
      */
     public static boolean isTemperatureAlertsOn(final Context context) {
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
-        return sp.getBoolean(PREF_TEMPERATURE_ALERTS, true);
+        return snapshot(context).temperatureAlerts;
     }
 
     public static int fetchTemperatureAlertsRate(final Context context) {
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
-        return Integer.parseInt(
-                sp.getString(PREF_TEMPERATURE_RATE, Config.NOTIFICATION_DEFAULT_TEMPERATURE_RATE)
-        );
+        return snapshot(context).temperatureRate;
     }
 
     public static int fetchTemperatureWarning(final Context context) {
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
-        return Integer.parseInt(
-                sp.getString(
-                        PREF_TEMPERATURE_WARNING,
-                        Config.NOTIFICATION_DEFAULT_TEMPERATURE_WARNING
-                ).replaceFirst("^0+(?!$)", "")
-        );
+        return snapshot(context).temperatureWarning;
     }
 
     public static int fetchTemperatureHigh(final Context context) {
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
-        return Integer.parseInt(
-                sp.getString(
-                        PREF_TEMPERATURE_HIGH,
-                        Config.NOTIFICATION_DEFAULT_TEMPERATURE_HIGH
-                ).replaceFirst("^0+(?!$)", "")
-        );
+        return snapshot(context).temperatureHigh;
     }
 
     /**
@@ -366,8 +404,7 @@ public class SettingsUtils {
      * @param context Context to be used to lookup the {@link android.content.SharedPreferences}.
      */
     public static boolean isMessageAlertsOn(final Context context) {
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
-        return sp.getBoolean(PREF_MESSAGE_ALERTS, true);
+        return snapshot(context).messageAlerts;
     }
 
     /**
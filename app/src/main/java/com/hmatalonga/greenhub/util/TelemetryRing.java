@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2016 Hugo Matalonga & João Paulo Fernandes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmatalonga.greenhub.util;
+
+/**
+ * Fixed-size ring of timestamped float values, written by one thread and read by any.
+ * <p>
+ * The writer fills a slot and then publishes the total number of values written through
+ * a volatile counter, so readers never take a lock. A reader copies the slots it wants
+ * and reads the counter again afterwards: values the writer may have overwritten in the
+ * meantime are dropped from the copy, the rest is consistent.
+ */
+public class TelemetryRing {
+
+    private final int mCapacity;
+
+    // One slot more than the capacity, for the value being written
+    private final long[] mTimes;
+
+    private final float[] mValues;
+
+    // Values written so far, slot of value i is i % (capacity + 1)
+    private volatile long mCount = 0;
+
+    public TelemetryRing(int capacity) {
+        mCapacity = capacity;
+        mTimes = new long[capacity + 1];
+        mValues = new float[capacity + 1];
+    }
+
+    /**
+     * Appends a value, overwriting the oldest one if the ring is full. Writer thread only.
+     */
+    public void add(long time, float value) {
+        long count = mCount;
+        int slot = (int) (count % mTimes.length);
+        mTimes[slot] = time;
+        mValues[slot] = value;
+        mCount = count + 1;
+    }
+
+    public int capacity() {
+        return mCapacity;
+    }
+
+    /**
+     * @return the number of values written since the ring was created.
+     */
+    public long count() {
+        return mCount;
+    }
+
+    /**
+     * Copies the most recent values taken at or after {@code since}, oldest first.
+     *
+     * @param since  oldest time to copy.
+     * @param times  receives the times, its length limits the number of values copied.
+     * @param values receives the values, at least as long as {@code times}.
+     * @return the number of values copied.
+     */
+    public int snapshot(long since, long[] times, float[] values) {
+        int slots = mTimes.length;
+        long end = mCount;
+        long start = Math.max(0, end - Math.min(mCapacity, times.length));
+
+        int copied = 0;
+        for (long i = start; i < end; i++) {
+            int slot = (int) (i % slots);
+            times[copied] = mTimes[slot];
+            values[copied] = mValues[slot];
+            copied++;
+        }
+
+        // The slot of the value being written next may have been overwritten during the copy
+        long valid = mCount - slots + 1;
+        int skip = (int) Math.max(0, valid - start);
+
+        int size = 0;
+        for (int i = skip; i < copied; i++) {
+            if (times[i] < since) continue;
+            times[size] = times[i];
+            values[size] = values[i];
+            size++;
+        }
+        return size;
+    }
+}
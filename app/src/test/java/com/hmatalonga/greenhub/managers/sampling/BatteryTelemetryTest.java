@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2016 Hugo Matalonga & João Paulo Fernandes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmatalonga.greenhub.managers.sampling;
+
+import com.hmatalonga.greenhub.Config;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the downsampling of the battery telemetry.
+ */
+public class BatteryTelemetryTest {
+
+    @Test
+    public void readingsAreAveragedPerResolution() throws Exception {
+        BatteryTelemetry telemetry = new BatteryTelemetry();
+
+        // Two readings per second for two minutes, the current follows the second
+        for (long time = 0; time < 120000; time += 500) {
+            telemetry.record(time, time / 1000, 4.2f, Float.NaN);
+        }
+
+        long[] times = new long[400];
+        float[] values = new float[400];
+
+        // The bucket still open is not in the ring yet
+        int count = telemetry.snapshot(BatteryTelemetry.CURRENT,
+                BatteryTelemetry.RESOLUTION_SECOND, 0, times, values);
+        assertEquals(119, count);
+        assertEquals(118000, times[count - 1]);
+        assertEquals(118, values[count - 1], 0.0001);
+
+        count = telemetry.snapshot(BatteryTelemetry.CURRENT,
+                BatteryTelemetry.RESOLUTION_TEN_SECONDS, 0, times, values);
+        assertEquals(11, count);
+        assertEquals(0, times[0]);
+        assertEquals(4.5, values[0], 0.0001);
+        assertEquals(104.5, values[10], 0.0001);
+
+        count = telemetry.snapshot(BatteryTelemetry.CURRENT,
+                BatteryTelemetry.RESOLUTION_MINUTE, 0, times, values);
+        assertEquals(1, count);
+        assertEquals(29.5, values[0], 0.0001);
+
+        count = telemetry.snapshot(BatteryTelemetry.VOLTAGE,
+                BatteryTelemetry.RESOLUTION_MINUTE, 0, times, values);
+        assertEquals(1, count);
+        assertEquals(4.2, values[0], 0.0001);
+
+        // Channels without readings stay empty
+        assertEquals(0, telemetry.snapshot(BatteryTelemetry.TEMPERATURE,
+                BatteryTelemetry.RESOLUTION_SECOND, 0, times, values));
+    }
+
+    @Test
+    public void currentIsReadFastOnlyWhileConsumed() throws Exception {
+        BatteryTelemetry telemetry = new BatteryTelemetry();
+        telemetry.setInterval(500);
+
+        assertEquals(Config.TELEMETRY_IDLE_INTERVAL, telemetry.interval());
+
+        telemetry.acquire();
+        telemetry.acquire();
+        telemetry.release();
+        assertEquals(500, telemetry.interval());
+
+        // Nothing is shown while the screen is off
+        telemetry.setScreenOn(false);
+        assertEquals(0, telemetry.interval());
+
+        telemetry.setScreenOn(true);
+        telemetry.release();
+        telemetry.release();
+        assertEquals(Config.TELEMETRY_IDLE_INTERVAL, telemetry.interval());
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2016 Hugo Matalonga & João Paulo Fernandes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmatalonga.greenhub.managers.sampling;
+
+import com.hmatalonga.greenhub.Config;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the rates learned by the remaining time estimator.
+ */
+public class RemainingTimeEstimatorTest {
+
+    private RemainingTimeEstimator mEstimator;
+
+    @Before
+    public void setUp() throws Exception {
+        mEstimator = new RemainingTimeEstimator(null);
+    }
+
+    @Test
+    public void usesDefaultRatesUntilMeasured() throws Exception {
+        assertEquals(3600, mEstimator.estimate(false, null, Config.DEFAULT_DISCHARGE_RATE));
+        assertEquals(7200, mEstimator.estimate(true, "ac", 2 * Config.DEFAULT_AC_CHARGE_RATE));
+    }
+
+    @Test
+    public void learnsRatePerMode() throws Exception {
+        int discharge = RemainingTimeEstimator.MODE_DISCHARGE;
+        // 10 mAh every 60 s
+        mEstimator.add(discharge, 0, 1000);
+        mEstimator.add(discharge, 60000, 990);
+
+        assertEquals(6f, mEstimator.getRate(discharge), 1e-6);
+        assertEquals(600, mEstimator.estimate(false, null, 100));
+        assertEquals(0f, mEstimator.getRate(RemainingTimeEstimator.MODE_USB), 0);
+
+        // Slower, the average moves towards it
+        mEstimator.add(discharge, 180000, 980);
+        float rate = mEstimator.getRate(discharge);
+        assertEquals(6f + 2f / 11 * (12f - 6f), rate, 1e-4);
+    }
+
+    @Test
+    public void keepsStartWhileReadingIsUnchanged() throws Exception {
+        int usb = RemainingTimeEstimator.MODE_USB;
+        mEstimator.add(usb, 0, 500);
+        mEstimator.add(usb, 30000, 500);
+        mEstimator.add(usb, 60000, 510);
+
+        assertEquals(6f, mEstimator.getRate(usb), 1e-6);
+    }
+
+    @Test
+    public void restartsWhenModeChanges() throws Exception {
+        mEstimator.add(RemainingTimeEstimator.MODE_DISCHARGE, 0, 1000);
+        mEstimator.add(RemainingTimeEstimator.MODE_AC, 60000, 1010);
+        mEstimator.add(RemainingTimeEstimator.MODE_DISCHARGE, 120000, 1000);
+
+        assertEquals(0f, mEstimator.getRate(RemainingTimeEstimator.MODE_DISCHARGE), 0);
+        assertEquals(0f, mEstimator.getRate(RemainingTimeEstimator.MODE_AC), 0);
+    }
+
+    @Test
+    public void mapsStateAndCharger() throws Exception {
+        assertEquals(RemainingTimeEstimator.MODE_DISCHARGE,
+                RemainingTimeEstimator.getMode("Discharging", "unplugged"));
+        assertEquals(RemainingTimeEstimator.MODE_WIRELESS,
+                RemainingTimeEstimator.getMode("Charging", "wireless"));
+        assertEquals(RemainingTimeEstimator.MODE_CHARGE,
+                RemainingTimeEstimator.getMode("Charging", "unplugged"));
+        assertEquals(RemainingTimeEstimator.MODE_NONE,
+                RemainingTimeEstimator.getMode("Full", "ac"));
+    }
+}
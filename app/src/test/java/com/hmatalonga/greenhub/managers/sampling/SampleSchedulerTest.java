@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2016 Hugo Matalonga & João Paulo Fernandes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmatalonga.greenhub.managers.sampling;
+
+import android.content.Intent;
+
+import com.hmatalonga.greenhub.Config;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests how the sample scheduler coalesces bursts of battery broadcasts.
+ */
+public class SampleSchedulerTest {
+
+    @Before
+    public void setUp() throws Exception {
+        SamplingMetrics.reset();
+    }
+
+    @Test
+    public void burstBeforeStartIsOneRun() throws Exception {
+        SampleScheduler scheduler = new SampleScheduler();
+        Intent first = new Intent();
+        Intent last = new Intent();
+
+        assertTrue(scheduler.offer(first, 0));
+        assertFalse(scheduler.offer(new Intent(), 1));
+        assertFalse(scheduler.offer(last, 2));
+
+        // The run sees the latest broadcast
+        assertSame(last, scheduler.start(3));
+        assertFalse(scheduler.finish(4));
+
+        assertCounters(3, 2, 1);
+    }
+
+    @Test
+    public void burstWhileRunningIsOnePendingRun() throws Exception {
+        SampleScheduler scheduler = new SampleScheduler();
+        Intent last = new Intent();
+
+        assertTrue(scheduler.offer(new Intent(), 0));
+        scheduler.start(1);
+
+        assertFalse(scheduler.offer(new Intent(), 2));
+        assertFalse(scheduler.offer(new Intent(), 3));
+        assertFalse(scheduler.offer(last, 4));
+
+        assertTrue(scheduler.finish(5));
+        assertSame(last, scheduler.start(6));
+        assertFalse(scheduler.finish(7));
+
+        // Nothing left once the pending run is done
+        assertNull(scheduler.start(8));
+        assertCounters(4, 2, 2);
+    }
+
+    @Test
+    public void lostRunIsGivenUp() throws Exception {
+        SampleScheduler scheduler = new SampleScheduler();
+
+        assertTrue(scheduler.offer(new Intent(), 0));
+        scheduler.start(1);
+        assertFalse(scheduler.offer(new Intent(), 2));
+
+        assertTrue(scheduler.offer(new Intent(), 2 + Config.SAMPLING_RUN_TIMEOUT));
+    }
+
+    private static void assertCounters(long received, long coalesced, long executed) {
+        assertEquals(received,
+                SamplingMetrics.counter(SamplingMetrics.COUNTER_EVENTS_RECEIVED).get());
+        assertEquals(coalesced,
+                SamplingMetrics.counter(SamplingMetrics.COUNTER_EVENTS_COALESCED).get());
+        assertEquals(executed,
+                SamplingMetrics.counter(SamplingMetrics.COUNTER_EVENTS_EXECUTED).get());
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2016 Hugo Matalonga & João Paulo Fernandes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmatalonga.greenhub.managers.sampling;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the ordering and the backpressure of the sampling actor.
+ */
+public class SamplingActorTest {
+
+    private static final long TIMEOUT = 5000;
+
+    @Test
+    public void eventsRunInOrder() throws Exception {
+        SamplingActor actor = new SamplingActor(8);
+        final List<Integer> order = new ArrayList<>();
+
+        for (int i = 0; i < 5; i++) {
+            final int event = i;
+            assertTrue(actor.post(new Runnable() {
+                @Override
+                public void run() {
+                    order.add(event);
+                }
+            }));
+        }
+        assertTrue(actor.call(new Runnable() {
+            @Override
+            public void run() {
+                order.add(5);
+            }
+        }, TIMEOUT));
+
+        assertEquals(6, order.size());
+        for (int i = 0; i < order.size(); i++) {
+            assertEquals(i, (int) order.get(i));
+        }
+    }
+
+    @Test
+    public void fullMailboxRejectsEvents() throws Exception {
+        SamplingActor actor = new SamplingActor(2);
+        final CountDownLatch running = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        Runnable noop = new Runnable() {
+            @Override
+            public void run() {
+            }
+        };
+
+        assertTrue(actor.post(new Runnable() {
+            @Override
+            public void run() {
+                running.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }));
+        running.await();
+
+        assertTrue(actor.post(noop));
+        assertTrue(actor.post(noop));
+        assertFalse(actor.post(noop));
+        assertFalse(actor.call(noop, TIMEOUT));
+
+        release.countDown();
+        assertTrue(actor.call(noop, TIMEOUT));
+    }
+
+    @Test
+    public void batteryLevelChangesBetweenEvents() throws Exception {
+        final SamplingActor actor = new SamplingActor(8);
+        final double[] levels = new double[2];
+
+        actor.reportBatteryLevel(40, 100);
+        actor.call(new Runnable() {
+            @Override
+            public void run() {
+                levels[0] = actor.getBatteryLevel();
+                // Reported while an event runs, applied after it
+                actor.reportBatteryLevel(39, 100);
+                levels[1] = actor.getBatteryLevel();
+            }
+        }, TIMEOUT);
+
+        assertEquals(0.40, levels[0], 0.0001);
+        assertEquals(0.40, levels[1], 0.0001);
+        assertEquals(0.39, actor.getReportedBatteryLevel(), 0.0001);
+
+        actor.call(new Runnable() {
+            @Override
+            public void run() {
+                levels[0] = actor.getBatteryLevel();
+            }
+        }, TIMEOUT);
+        assertEquals(0.39, levels[0], 0.0001);
+    }
+
+    @Test
+    public void skippedChangeIsNotSeenAgain() throws Exception {
+        final SamplingActor actor = new SamplingActor(8);
+        final List<Boolean> changes = new ArrayList<>();
+        Runnable event = new Runnable() {
+            @Override
+            public void run() {
+                // Nothing is stored for the change, as when the sample is skipped
+                changes.add(actor.takeLevelChange());
+            }
+        };
+
+        assertTrue(actor.call(new Runnable() {
+            @Override
+            public void run() {
+                // Seeded from the last stored sample
+                actor.setLastBatteryLevel(0.49);
+            }
+        }, TIMEOUT));
+
+        actor.reportBatteryLevel(50, 100);
+        assertTrue(actor.call(event, TIMEOUT));
+        actor.reportBatteryLevel(50, 100);
+        assertTrue(actor.call(event, TIMEOUT));
+        actor.reportBatteryLevel(51, 100);
+        assertTrue(actor.call(event, TIMEOUT));
+
+        assertEquals(3, changes.size());
+        assertTrue(changes.get(0));
+        assertFalse(changes.get(1));
+        assertTrue(changes.get(2));
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2016 Hugo Matalonga & João Paulo Fernandes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmatalonga.greenhub.managers.sampling;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the token bucket of the sampling governor.
+ */
+public class SamplingGovernorTest {
+
+    private static final long BUDGET = 4000;
+
+    @Test
+    public void budgetLimitsFullSamples() throws Exception {
+        SamplingGovernor governor = new SamplingGovernor(null);
+
+        // A quarter of the budget is available right away
+        assertEquals(SamplingGovernor.MODE_FULL, governor.decide(0, BUDGET, true, 0.8));
+        governor.charge(SamplingGovernor.MODE_FULL, 900);
+
+        // 100 ms left, enough for a light sample only
+        assertEquals(SamplingGovernor.MODE_LIGHT, governor.decide(0, BUDGET, true, 0.8));
+        governor.charge(SamplingGovernor.MODE_LIGHT, 100);
+        assertEquals(SamplingGovernor.MODE_SKIP, governor.decide(0, BUDGET, true, 0.8));
+
+        // Refilled at 4000 ms per hour
+        assertEquals(SamplingGovernor.MODE_FULL, governor.decide(900000, BUDGET, true, 0.8));
+    }
+
+    @Test
+    public void screenOffAndLowBatteryAreMoreConservative() throws Exception {
+        SamplingGovernor governor = new SamplingGovernor(null);
+
+        assertEquals(SamplingGovernor.MODE_FULL, governor.decide(0, BUDGET, false, 0.8));
+        governor.charge(SamplingGovernor.MODE_FULL, 400);
+
+        // 600 ms left, screen off needs twice the smoothed cost of a full sample
+        assertEquals(SamplingGovernor.MODE_LIGHT, governor.decide(0, BUDGET, false, 0.8));
+        assertEquals(SamplingGovernor.MODE_FULL, governor.decide(0, BUDGET, true, 0.8));
+
+        // Never a full sample on low battery
+        assertEquals(SamplingGovernor.MODE_LIGHT, governor.decide(0, BUDGET, true, 0.1));
+    }
+}
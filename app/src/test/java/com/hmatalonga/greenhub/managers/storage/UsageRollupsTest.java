@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2016 Hugo Matalonga & João Paulo Fernandes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmatalonga.greenhub.managers.storage;
+
+import android.content.Intent;
+
+import com.hmatalonga.greenhub.models.data.BatteryDetails;
+import com.hmatalonga.greenhub.models.data.BatteryUsage;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests that window summaries merged from rollups match the raw usages.
+ */
+public class UsageRollupsTest {
+
+    private static final long HOUR = 3600000;
+
+    private static final long DAY = 86400000;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final List<BatteryUsage> mUsages = new ArrayList<>();
+
+    private UsageStore fill(long from, long to, long step) {
+        UsageStore store = new UsageStore(mFolder.getRoot(), 1024);
+        int i = 0;
+        for (long t = from; t < to; t += step, i++) {
+            BatteryUsage usage = new BatteryUsage();
+            usage.timestamp = t;
+            usage.level = (i * 37 % 100) / 100f;
+            usage.triggeredBy = (i % 5 == 0) ? Intent.ACTION_SCREEN_ON
+                    : Intent.ACTION_BATTERY_CHANGED;
+            usage.details = new BatteryDetails();
+            usage.details.temperature = 20 + i * 13 % 17;
+            usage.details.voltage = 3.5 + (i * 7 % 10) / 10f;
+            store.append(usage);
+            mUsages.add(usage);
+        }
+        return store;
+    }
+
+    private void assertSummary(UsageStore store, long from, long to) {
+        UsageRollup expected = new UsageRollup(from);
+        for (BatteryUsage usage : mUsages) {
+            if (usage.timestamp < from || usage.timestamp >= to) continue;
+            if (!Intent.ACTION_BATTERY_CHANGED.equals(usage.triggeredBy)) continue;
+            expected.add(usage.level, (float) usage.details.temperature,
+                    (float) usage.details.voltage);
+        }
+
+        UsageRollup actual = store.summarize(from, to);
+        assertEquals(expected.getCount(), actual.getCount());
+        int[] metrics = {UsageRollup.LEVEL, UsageRollup.TEMPERATURE, UsageRollup.VOLTAGE};
+        for (int metric : metrics) {
+            assertEquals(expected.getMin(metric), actual.getMin(metric), 0);
+            assertEquals(expected.getMax(metric), actual.getMax(metric), 0);
+            assertEquals(expected.getSum(metric), actual.getSum(metric), 1e-6);
+            assertEquals(expected.getFirst(metric), actual.getFirst(metric), 0);
+            assertEquals(expected.getLast(metric), actual.getLast(metric), 0);
+        }
+    }
+
+    @Test
+    public void summariesMatchTheUsages() throws Exception {
+        UsageStore store = fill(DAY - 5 * HOUR, 4 * DAY + 3 * HOUR, 7 * 60000);
+
+        // Within an hour, across hours, across days and over everything
+        assertSummary(store, DAY + 10 * 60000, DAY + 50 * 60000);
+        assertSummary(store, DAY + 10 * 60000, DAY + 5 * HOUR + 1);
+        assertSummary(store, DAY - 90 * 60000, 3 * DAY + 7 * HOUR + 12345);
+        assertSummary(store, 2 * DAY, 3 * DAY);
+        assertSummary(store, 0, 5 * DAY);
+        assertSummary(store, 5 * DAY, 6 * DAY);
+    }
+
+    @Test
+    public void rebuildsWhenOutOfDate() throws Exception {
+        UsageStore store = fill(DAY, 3 * DAY, 11 * 60000);
+        store.sync();
+
+        // More usages appended without the rollups being saved
+        BatteryUsage usage = new BatteryUsage();
+        usage.timestamp = 3 * DAY + HOUR;
+        usage.level = 1;
+        usage.triggeredBy = Intent.ACTION_BATTERY_CHANGED;
+        usage.details = new BatteryDetails();
+        store.append(usage);
+        mUsages.add(usage);
+
+        assertSummary(new UsageStore(mFolder.getRoot(), 1024), 0, 4 * DAY);
+
+        // Rollups of an unknown format
+        FileOutputStream out = new FileOutputStream(new File(mFolder.getRoot(), "rollups"));
+        out.write(new byte[] {0, 0, 0, 99});
+        out.close();
+
+        assertSummary(new UsageStore(mFolder.getRoot(), 1024), 0, 4 * DAY);
+    }
+
+    @Test
+    public void deletionsAreLeftOutOfTheRollups() throws Exception {
+        UsageStore store = fill(DAY, 4 * DAY, 13 * 60000);
+        store.deleteBefore(2 * DAY);
+
+        List<BatteryUsage> kept = new ArrayList<>();
+        for (BatteryUsage usage : mUsages) {
+            if (usage.timestamp >= 2 * DAY) kept.add(usage);
+        }
+        mUsages.clear();
+        mUsages.addAll(kept);
+
+        assertSummary(store, 0, 5 * DAY);
+    }
+
+    @Test
+    public void rebuildsWhenSavedBeforeADeletion() throws Exception {
+        UsageStore store = fill(DAY, 4 * DAY, 13 * 60000);
+        store.sync();
+        File rollups = new File(mFolder.getRoot(), "rollups");
+        byte[] saved = Files.readAllBytes(rollups.toPath());
+
+        // Killed after the deletion, but before the rollups were saved again
+        store.deleteBefore(2 * DAY);
+
+        List<BatteryUsage> kept = new ArrayList<>();
+        for (BatteryUsage usage : mUsages) {
+            if (usage.timestamp >= 2 * DAY) kept.add(usage);
+        }
+        mUsages.clear();
+        mUsages.addAll(kept);
+
+        // More usages than the rollups were built from
+        for (int i = 0; i < 200; i++) {
+            BatteryUsage usage = new BatteryUsage();
+            usage.timestamp = 4 * DAY + i * 7 * 60000;
+            usage.level = i % 100 / 100f;
+            usage.triggeredBy = Intent.ACTION_BATTERY_CHANGED;
+            usage.details = new BatteryDetails();
+            store.append(usage);
+            mUsages.add(usage);
+        }
+        Files.write(rollups.toPath(), saved);
+
+        assertSummary(new UsageStore(mFolder.getRoot(), 1024), 0, 6 * DAY);
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2016 Hugo Matalonga & João Paulo Fernandes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmatalonga.greenhub.managers.storage;
+
+import android.content.Intent;
+
+import com.hmatalonga.greenhub.models.data.BatteryDetails;
+import com.hmatalonga.greenhub.models.data.BatteryUsage;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the segments, seeks and recovery of the usage store.
+ */
+public class UsageStoreTest {
+
+    private static final long DAY = 86400000;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private int segments() {
+        int count = 0;
+        for (String name : mFolder.getRoot().list()) {
+            if (!name.startsWith("rollups")) count++;
+        }
+        return count;
+    }
+
+    private static BatteryUsage usage(long timestamp, float level) {
+        BatteryUsage usage = new BatteryUsage();
+        usage.timestamp = timestamp;
+        usage.level = level;
+        usage.state = "Charging";
+        usage.screenOn = 1;
+        usage.triggeredBy = Intent.ACTION_BATTERY_CHANGED;
+        usage.details = new BatteryDetails();
+        usage.details.temperature = 30.5;
+        usage.details.voltage = 4.2;
+        usage.details.charger = "usb";
+        usage.details.remainingCapacity = 1500;
+        return usage;
+    }
+
+    @Test
+    public void scansTimeRangeAcrossDays() throws Exception {
+        UsageStore store = new UsageStore(mFolder.getRoot(), 16);
+        for (long t = DAY - 5000; t < DAY + 5000; t += 1000) {
+            store.append(usage(t, 0.5f));
+        }
+
+        UsageScan scan = store.scan(DAY - 2000, DAY + 2000);
+        assertEquals(4, scan.getCount());
+        long expected = DAY - 2000;
+        while (scan.moveToNext()) {
+            assertEquals(expected, scan.getTimestamp());
+            assertEquals(0.5f, scan.getLevel(), 0);
+            assertEquals(30.5f, scan.getTemperature(), 0);
+            assertEquals(1500, scan.getRemainingCapacity());
+            assertEquals("Charging", scan.getState());
+            assertEquals(Intent.ACTION_BATTERY_CHANGED, scan.getTriggeredBy());
+            assertEquals("usb", scan.getCharger());
+            expected += 1000;
+        }
+        assertEquals(DAY + 2000, expected);
+        assertEquals(2, segments());
+    }
+
+    @Test
+    public void unknownStringsAreStoredAsNull() throws Exception {
+        UsageStore store = new UsageStore(mFolder.getRoot(), 16);
+        BatteryUsage usage = usage(1000, 0.5f);
+        usage.state = "Exploded";
+        usage.details = null;
+        store.append(usage);
+
+        UsageScan scan = store.scan(0, DAY);
+        assertTrue(scan.moveToNext());
+        assertNull(scan.getState());
+        assertNull(scan.getCharger());
+        assertFalse(scan.moveToNext());
+    }
+
+    @Test
+    public void fullSegmentsContinueInTheSameDay() throws Exception {
+        UsageStore store = new UsageStore(mFolder.getRoot(), 4);
+        for (int i = 0; i < 10; i++) {
+            store.append(usage(1000 + i, 0.5f));
+        }
+
+        assertEquals(3, segments());
+        assertEquals(10, store.scan(0, DAY).getCount());
+        assertEquals(6, store.scan(1002, 1008).getCount());
+
+        // Segments are sorted again when opened
+        assertEquals(10, new UsageStore(mFolder.getRoot(), 4).scan(0, DAY).getCount());
+    }
+
+    @Test
+    public void keepsTimeOrderWhenClockGoesBack() throws Exception {
+        UsageStore store = new UsageStore(mFolder.getRoot(), 16);
+        store.append(usage(5000, 0.5f));
+        store.append(usage(3000, 0.4f));
+
+        UsageScan scan = store.scan(0, DAY);
+        assertTrue(scan.moveToNext());
+        assertTrue(scan.moveToNext());
+        assertEquals(5000, scan.getTimestamp());
+        assertEquals(0.4f, scan.getLevel(), 0);
+    }
+
+    @Test
+    public void dropsRowsLostInACrash() throws Exception {
+        UsageStore store = new UsageStore(mFolder.getRoot(), 16);
+        for (int i = 1; i <= 3; i++) {
+            store.append(usage(1000 * i, 0.5f));
+        }
+
+        // Count of the header stored, but the row itself never written
+        File file = new File(mFolder.getRoot(), "0-0");
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.seek(20);
+        raf.writeInt(4);
+        raf.close();
+
+        assertEquals(3, new UsageStore(mFolder.getRoot(), 16).count());
+    }
+
+    @Test
+    public void deletesWholeSegmentsBefore() throws Exception {
+        UsageStore store = new UsageStore(mFolder.getRoot(), 16);
+        store.append(usage(1000, 0.5f));
+        store.append(usage(DAY + 1000, 0.5f));
+        store.append(usage(2 * DAY + 1000, 0.5f));
+
+        assertEquals(1, store.deleteBefore(DAY + 500));
+        assertEquals(2, store.count());
+        assertEquals(0, store.deleteBefore(DAY + 500));
+        assertEquals(2, segments());
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2016 Hugo Matalonga & João Paulo Fernandes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmatalonga.greenhub.managers.storage;
+
+import com.hmatalonga.greenhub.managers.sampling.SamplingMetrics;
+import com.hmatalonga.greenhub.models.data.BatterySession;
+import com.hmatalonga.greenhub.models.data.BatteryUsage;
+import com.hmatalonga.greenhub.models.data.Sample;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests when the write-behind buffer writes its records.
+ */
+public class WriteBehindBufferTest {
+
+    private static class RecordingWriter implements WriteBehindBuffer.Writer {
+        final List<Integer> batches = new ArrayList<>();
+
+        final CountDownLatch written;
+
+        RecordingWriter(int count) {
+            written = new CountDownLatch(count);
+        }
+
+        @Override
+        public synchronized void write(List<Sample> samples, List<BatteryUsage> usages,
+                                       List<BatterySession> sessions) {
+            batches.add(samples.size() + usages.size() + sessions.size());
+            written.countDown();
+        }
+    }
+
+    /**
+     * Fails the first writes, then records what it is given.
+     */
+    private static class FailingWriter extends RecordingWriter {
+        int failures;
+
+        final List<Sample> samples = new ArrayList<>();
+
+        FailingWriter(int failures) {
+            super(1);
+            this.failures = failures;
+        }
+
+        @Override
+        public synchronized void write(List<Sample> samples, List<BatteryUsage> usages,
+                                       List<BatterySession> sessions) {
+            if (failures-- > 0) throw new IllegalStateException("Write failed");
+            this.samples.addAll(samples);
+            super.write(samples, usages, sessions);
+        }
+    }
+
+    @Test
+    public void writesOneBatchWhenFull() throws Exception {
+        RecordingWriter writer = new RecordingWriter(1);
+        WriteBehindBuffer buffer = new WriteBehindBuffer(writer, 3, 60000, 3);
+
+        buffer.add(new Sample());
+        buffer.add(new BatteryUsage());
+        buffer.add(new BatterySession());
+
+        assertTrue(writer.written.await(1, TimeUnit.SECONDS));
+        assertEquals(1, writer.batches.size());
+        assertEquals(3, (int) writer.batches.get(0));
+        assertEquals(0, buffer.size());
+    }
+
+    @Test
+    public void writesAfterDelay() throws Exception {
+        RecordingWriter writer = new RecordingWriter(1);
+        WriteBehindBuffer buffer = new WriteBehindBuffer(writer, 16, 50, 3);
+
+        buffer.add(new Sample());
+        buffer.add(new BatteryUsage());
+        assertEquals(2, buffer.size());
+
+        assertTrue(writer.written.await(1, TimeUnit.SECONDS));
+        assertEquals(2, (int) writer.batches.get(0));
+    }
+
+    @Test
+    public void pendingSampleIsVisibleUntilWritten() throws Exception {
+        RecordingWriter writer = new RecordingWriter(1);
+        WriteBehindBuffer buffer = new WriteBehindBuffer(writer, 16, 60000, 3);
+        Sample sample = new Sample();
+
+        buffer.add(new Sample());
+        buffer.add(sample);
+        assertSame(sample, buffer.lastSample());
+
+        assertTrue(buffer.flushAndWait(1000));
+        assertNull(buffer.lastSample());
+        assertEquals(1, writer.batches.size());
+    }
+
+    @Test
+    public void failedBatchIsWrittenFirstOnRetry() throws Exception {
+        FailingWriter writer = new FailingWriter(1);
+        WriteBehindBuffer buffer = new WriteBehindBuffer(writer, 16, 60000, 3);
+        Sample first = new Sample();
+        Sample second = new Sample();
+
+        buffer.add(first);
+        buffer.flushAndWait(1000);
+        assertEquals(1, buffer.size());
+
+        buffer.add(second);
+        assertTrue(buffer.flushAndWait(1000));
+        assertEquals(0, buffer.size());
+        assertSame(first, writer.samples.get(0));
+        assertSame(second, writer.samples.get(1));
+    }
+
+    @Test
+    public void dropsBatchAfterTooManyAttempts() throws Exception {
+        SamplingMetrics.reset();
+        FailingWriter writer = new FailingWriter(2);
+        WriteBehindBuffer buffer = new WriteBehindBuffer(writer, 16, 60000, 2);
+
+        buffer.add(new Sample());
+        buffer.add(new BatteryUsage());
+        buffer.flushAndWait(1000);
+        assertEquals(2, buffer.size());
+        buffer.flushAndWait(1000);
+
+        assertEquals(0, buffer.size());
+        assertTrue(writer.batches.isEmpty());
+        assertEquals(2, SamplingMetrics.counter(SamplingMetrics.COUNTER_WRITES_DROPPED).get());
+    }
+}
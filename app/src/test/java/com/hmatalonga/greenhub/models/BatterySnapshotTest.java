@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2016 Hugo Matalonga & João Paulo Fernandes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmatalonga.greenhub.models;
+
+import android.os.BatteryManager;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for the values derived by the battery snapshot.
+ */
+public class BatterySnapshotTest {
+
+    @Test
+    public void codesAreMappedToStoredNames() throws Exception {
+        assertEquals("Overheat",
+                BatterySnapshot.getHealthName(BatteryManager.BATTERY_HEALTH_OVERHEAT));
+        assertEquals("Unknown", BatterySnapshot.getHealthName(0));
+        assertEquals("Charging",
+                BatterySnapshot.getStatusName(BatteryManager.BATTERY_STATUS_CHARGING));
+        assertEquals("None", BatterySnapshot.getStatusName(0));
+        assertEquals("usb",
+                BatterySnapshot.getChargerName(BatteryManager.BATTERY_PLUGGED_USB));
+        assertEquals("unplugged", BatterySnapshot.getChargerName(0));
+    }
+
+    @Test
+    public void remainingCapacityFromChargeCounter() throws Exception {
+        assertEquals(1500, BatterySnapshot.computeRemainingCapacity(50, 3000, 0, 4, 0));
+        // Design capacity when the charge counter is not supported
+        assertEquals(1000, BatterySnapshot.computeRemainingCapacity(25, -1, 4000, 4, 0));
+    }
+
+    @Test
+    public void remainingCapacityFromEnergyCounter() throws Exception {
+        assertEquals(2000, BatterySnapshot.computeRemainingCapacity(0, 0, 0, 4, 8000));
+        assertEquals(0, BatterySnapshot.computeRemainingCapacity(0, 0, 0, 4, -1));
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2016 Hugo Matalonga & João Paulo Fernandes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmatalonga.greenhub.models;
+
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Tests for the /proc/stat based CPU accounting.
+ */
+public class CpuTest {
+
+    @Test
+    public void usageIsComputedPerRow() throws Exception {
+        long[] then = new long[3 * Cpu.STAT_FIELDS];
+        long[] now = new long[3 * Cpu.STAT_FIELDS];
+
+        // Aggregated row: 50 busy jiffies, 50 idle jiffies
+        then[Cpu.STAT_USER] = 100;
+        then[Cpu.STAT_IDLE] = 100;
+        now[Cpu.STAT_USER] = 150;
+        now[Cpu.STAT_IDLE] = 150;
+
+        // Core 0: fully busy
+        then[Cpu.STAT_FIELDS + Cpu.STAT_SYSTEM] = 10;
+        then[Cpu.STAT_FIELDS + Cpu.STAT_IDLE] = 10;
+        now[Cpu.STAT_FIELDS + Cpu.STAT_SYSTEM] = 60;
+        now[Cpu.STAT_FIELDS + Cpu.STAT_IDLE] = 10;
+
+        assertEquals(0.5, Cpu.getUsage(then, now, 0), 0.0001);
+        assertEquals(1.0, Cpu.getUsage(then, now, 1), 0.0001);
+        // Core 1 was offline on both readings
+        assertEquals(-1, Cpu.getUsage(then, now, 2), 0.0001);
+        // Row out of bounds
+        assertEquals(-1, Cpu.getUsage(then, now, 3), 0.0001);
+    }
+
+    @Test
+    public void readsCoreStatsFromProc() throws Exception {
+        assumeTrue(new File("/proc/stat").canRead());
+
+        long[] stats = Cpu.newStatsArray();
+        int rows = Cpu.readCoreStats(stats);
+
+        assertTrue(rows >= 2);
+        assertTrue(stats[Cpu.STAT_IDLE] > 0);
+        assertTrue(stats[Cpu.STAT_IDLE] >= stats[Cpu.STAT_FIELDS + Cpu.STAT_IDLE]);
+
+        long[] point = Cpu.readUsagePoint();
+        assertTrue(point[0] >= stats[Cpu.STAT_IDLE]);
+    }
+}
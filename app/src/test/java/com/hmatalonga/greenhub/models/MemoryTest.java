@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2016 Hugo Matalonga & João Paulo Fernandes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmatalonga.greenhub.models;
+
+import com.hmatalonga.greenhub.util.ProcFileReader;
+
+import org.junit.Test;
+
+import java.net.URL;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the /proc/meminfo parser against captures of several kernel versions.
+ */
+public class MemoryTest {
+
+    private static MemorySnapshot parse(String fixture) {
+        URL url = MemoryTest.class.getClassLoader().getResource("meminfo/" + fixture);
+        assertNotNull(url);
+
+        ProcFileReader reader = new ProcFileReader(url.getPath());
+        assertTrue(reader.read());
+
+        MemorySnapshot snapshot = new MemorySnapshot();
+        Memory.parseMemoryInfo(reader, snapshot);
+        reader.close();
+
+        return snapshot;
+    }
+
+    @Test
+    public void parsesKernelWithoutMemAvailable() throws Exception {
+        MemorySnapshot snapshot = parse("kernel-2.6.35.txt");
+
+        assertEquals(403012, snapshot.total);
+        assertEquals(12480, snapshot.free);
+        assertEquals(1256, snapshot.buffers);
+        assertEquals(107444, snapshot.cached);
+        assertEquals(215304, snapshot.active);
+        assertEquals(110632, snapshot.inactive);
+        assertEquals(0, snapshot.swapTotal);
+        assertEquals(24, snapshot.dirty);
+        // Estimated from free, buffers and cached
+        assertEquals(12480 + 1256 + 107444, snapshot.available);
+    }
+
+    @Test
+    public void parsesKernelWithSwap() throws Exception {
+        MemorySnapshot snapshot = parse("kernel-3.10.49.txt");
+
+        assertEquals(1857128, snapshot.total);
+        assertEquals(96312, snapshot.free);
+        assertEquals(502100, snapshot.cached);
+        assertEquals(831612, snapshot.active);
+        assertEquals(447264, snapshot.inactive);
+        assertEquals(524284, snapshot.swapTotal);
+        assertEquals(289732, snapshot.swapFree);
+        assertEquals(148, snapshot.dirty);
+    }
+
+    @Test
+    public void parsesKernelWithMemAvailable() throws Exception {
+        MemorySnapshot snapshot = parse("kernel-4.14.117.txt");
+
+        assertEquals(3745740, snapshot.total);
+        assertEquals(120496, snapshot.free);
+        assertEquals(1415904, snapshot.available);
+        assertEquals(5732, snapshot.buffers);
+        assertEquals(1363468, snapshot.cached);
+        assertEquals(1439440, snapshot.active);
+        assertEquals(959752, snapshot.inactive);
+        assertEquals(2097148, snapshot.swapTotal);
+        assertEquals(1392636, snapshot.swapFree);
+        assertEquals(1212, snapshot.dirty);
+        assertEquals(3745740 - 1415904, snapshot.used());
+    }
+
+    @Test
+    public void parsesRecentKernel() throws Exception {
+        MemorySnapshot snapshot = parse("kernel-5.10.107.txt");
+
+        assertEquals(7698044, snapshot.total);
+        assertEquals(227256, snapshot.free);
+        assertEquals(3108828, snapshot.available);
+        assertEquals(3003076, snapshot.cached);
+        assertEquals(2151344, snapshot.active);
+        assertEquals(2714120, snapshot.inactive);
+        assertEquals(6291452, snapshot.swapTotal);
+        assertEquals(5219068, snapshot.swapFree);
+        assertEquals(404, snapshot.dirty);
+    }
+
+    @Test
+    public void readerIsReusedBetweenReadings() throws Exception {
+        URL url = MemoryTest.class.getClassLoader().getResource("meminfo/kernel-4.14.117.txt");
+        assertNotNull(url);
+
+        ProcFileReader reader = new ProcFileReader(url.getPath(), 64);
+        MemorySnapshot snapshot = new MemorySnapshot();
+
+        for (int i = 0; i < 3; i++) {
+            snapshot.clear();
+            assertTrue(reader.read());
+            Memory.parseMemoryInfo(reader, snapshot);
+            assertEquals(3745740, snapshot.total);
+            assertEquals(1212, snapshot.dirty);
+        }
+        reader.close();
+    }
+}
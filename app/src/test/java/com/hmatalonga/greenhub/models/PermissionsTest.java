@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2016 Hugo Matalonga & João Paulo Fernandes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmatalonga.greenhub.models;
+
+import com.hmatalonga.greenhub.Config;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests the permission fingerprint against the original byte layout.
+ */
+public class PermissionsTest {
+
+    // Fingerprint of the permissions below computed by the original implementation,
+    // which only knew the first table
+    private static final byte[] ORIGINAL_BYTES = {
+            32, 0, 0, 0, 0, 0, 16, 0, 0, 8, 0, 0, 64, 0, 2
+    };
+
+    @Test
+    public void everyPermissionHasItsTableBit() throws Exception {
+        int bit = 0;
+        for (String[] table : Config.PERMISSIONS_TABLES) {
+            for (String permission : table) {
+                assertEquals(bit++, Permissions.indexOf(permission));
+            }
+        }
+        assertEquals(bit, Permissions.size());
+    }
+
+    @Test
+    public void unknownPermissionsAreIgnored() throws Exception {
+        assertEquals(-1, Permissions.indexOf("com.example.permission.UNKNOWN"));
+        assertEquals(-1, Permissions.indexOf(null));
+
+        byte[] bytes = Permissions.getPermissionBytes(
+                new String[] {"com.example.permission.UNKNOWN"}
+        );
+        assertArrayEquals(new byte[Permissions.size() / 8 + 1], bytes);
+        assertNull(Permissions.getPermissionBytes(null));
+    }
+
+    @Test
+    public void firstPermissionIsKept() throws Exception {
+        byte[] bytes = Permissions.getPermissionBytes(
+                new String[] {Config.PERMISSIONS_ARRAY[0]}
+        );
+        assertEquals(1, bytes[0]);
+    }
+
+    @Test
+    public void matchesOriginalLayout() throws Exception {
+        String[] perms = {
+                "android.permission.INTERNET",
+                "android.permission.ACCESS_NETWORK_STATE",
+                "android.permission.WAKE_LOCK",
+                "android.permission.WRITE_SYNC_SETTINGS",
+                "android.permission.RECEIVE_BOOT_COMPLETED",
+                "com.example.permission.C2D_MESSAGE"
+        };
+        byte[] bytes = Permissions.getPermissionBytes(perms);
+
+        assertArrayEquals(ORIGINAL_BYTES, Arrays.copyOf(bytes, ORIGINAL_BYTES.length));
+        for (int i = ORIGINAL_BYTES.length; i < bytes.length; i++) {
+            assertEquals(0, bytes[i]);
+        }
+    }
+
+    @Test
+    public void appendedPermissionsFollowTheOriginalBits() throws Exception {
+        byte[] bytes = Permissions.getPermissionBytes(new String[] {
+                "android.permission.FOREGROUND_SERVICE",
+                "com.android.launcher.permission.INSTALL_SHORTCUT"
+        });
+
+        // Bits 127 and 132, right after the 114 bits of the first table
+        assertEquals((byte) 128, bytes[15]);
+        assertEquals(16, bytes[16]);
+    }
+
+    @Test
+    public void appendedTablesKeepExistingBits() throws Exception {
+        int last = Config.PERMISSIONS_ARRAY.length - 1;
+        assertEquals(last, Permissions.indexOf(Config.PERMISSIONS_ARRAY[last]));
+        assertEquals(last + 1, Permissions.indexOf(Config.PERMISSIONS_ARRAY_V2[0]));
+    }
+}
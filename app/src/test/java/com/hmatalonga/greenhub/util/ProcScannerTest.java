@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2016 Hugo Matalonga & João Paulo Fernandes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmatalonga.greenhub.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the process classification that replaced the ps regular expressions, and the
+ * scan of a fake /proc tree.
+ */
+public class ProcScannerTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private void process(int pid, String cmdline, String status, String stat)
+            throws IOException {
+        File dir = mFolder.newFolder(String.valueOf(pid));
+        write(new File(dir, "cmdline"), cmdline);
+        write(new File(dir, "status"), status);
+        write(new File(dir, "stat"), stat);
+    }
+
+    private void process(int pid, String name, int uid, char state) throws IOException {
+        process(pid, name + "\0--flag\0", status(name, uid),
+                pid + " (" + name + ") " + state + " 1 0 0 0 -1 4194624 0 0 0 0 12 3\n");
+    }
+
+    private static String status(String name, int uid) {
+        return "Name:\t" + name + "\nUmask:\t0077\nState:\tS (sleeping)\nTgid:\t1\n"
+                + "Uid:\t" + uid + "\t" + uid + "\t" + uid + "\t" + uid + "\n"
+                + "Gid:\t" + uid + "\t" + uid + "\t" + uid + "\t" + uid + "\n";
+    }
+
+    private static void write(File file, String content) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+
+    private static int indexOf(ProcScanner scanner, int pid) {
+        for (int i = 0; i < scanner.size(); i++) {
+            if (scanner.getPid(i) == pid) return i;
+        }
+        return -1;
+    }
+
+    @Test
+    public void systemUidsAreSystemProcesses() throws Exception {
+        assertEquals(ProcScanner.TYPE_SYSTEM, ProcScanner.classify(0, "/init"));
+        assertEquals(ProcScanner.TYPE_SYSTEM, ProcScanner.classify(1000, "system_server"));
+        assertEquals(ProcScanner.TYPE_SYSTEM, ProcScanner.classify(1001, "com.android.phone"));
+    }
+
+    @Test
+    public void packageNamesAreApps() throws Exception {
+        assertEquals(ProcScanner.TYPE_USER, ProcScanner.classify(10052, "com.hmatalonga.greenhub"));
+        assertEquals(ProcScanner.TYPE_USER, ProcScanner.classify(10052, "a_b.c1"));
+    }
+
+    @Test
+    public void namedProcessesAreServices() throws Exception {
+        assertEquals(ProcScanner.TYPE_USER_SERVICE,
+                ProcScanner.classify(10071, "com.google.android.gms:persistent"));
+        assertEquals(ProcScanner.TYPE_USER_SERVICE, ProcScanner.classify(10071, "a.b:c"));
+    }
+
+    @Test
+    public void otherNamesAreUnknown() throws Exception {
+        assertEquals(ProcScanner.TYPE_UNKNOWN, ProcScanner.classify(10010, "webview_zygote"));
+        assertEquals(ProcScanner.TYPE_UNKNOWN, ProcScanner.classify(10010, "com..example"));
+        assertEquals(ProcScanner.TYPE_UNKNOWN, ProcScanner.classify(10010, "com.example."));
+        assertEquals(ProcScanner.TYPE_UNKNOWN, ProcScanner.classify(10010, "com.example:"));
+        assertEquals(ProcScanner.TYPE_UNKNOWN, ProcScanner.classify(10010, "com.example:a:b"));
+        assertEquals(ProcScanner.TYPE_UNKNOWN, ProcScanner.classify(10010, "/system/bin/sh"));
+    }
+
+    @Test
+    public void readsNameUidAndType() throws Exception {
+        process(1, "/init", 0, 'S');
+        process(812, "com.hmatalonga.greenhub", 10052, 'R');
+        process(913, "com.google.android.gms:persistent", 10071, 'S');
+        mFolder.newFolder("self");
+        mFolder.newFile("uptime");
+
+        ProcScanner scanner = new ProcScanner(mFolder.getRoot(), 8);
+        assertEquals(3, scanner.scan());
+
+        int index = indexOf(scanner, 812);
+        assertEquals("com.hmatalonga.greenhub", scanner.getName(index));
+        assertEquals(10052, scanner.getUid(index));
+        assertEquals(ProcScanner.TYPE_USER, scanner.getType(index));
+        assertEquals(ProcScanner.TYPE_SYSTEM, scanner.getType(indexOf(scanner, 1)));
+        assertEquals(ProcScanner.TYPE_USER_SERVICE, scanner.getType(indexOf(scanner, 913)));
+    }
+
+    @Test
+    public void skipsKernelThreadsAndZombies() throws Exception {
+        process(2, "", status("kthreadd", 0), "2 (kthreadd) S 0 0 0 0 -1\n");
+        process(340, "com.example.gone", 10080, 'Z');
+        process(341, "com.example.app", 10081, 'S');
+
+        ProcScanner scanner = new ProcScanner(mFolder.getRoot(), 8);
+        assertEquals(1, scanner.scan());
+        assertEquals(341, scanner.getPid(0));
+    }
+
+    @Test
+    public void stateFollowsTheLastParenthesis() throws Exception {
+        // The name in stat is the truncated comm, which may contain ") Z ("
+        process(500, "com.example.app", status("app", 10090),
+                "500 (app) Z (x)) S 1 0 0 0 -1\n");
+        process(501, "com.example.dead", status("dead", 10091),
+                "501 (dead) S (x)) Z 1 0 0 0 -1\n");
+
+        ProcScanner scanner = new ProcScanner(mFolder.getRoot(), 8);
+        assertEquals(1, scanner.scan());
+        assertEquals(500, scanner.getPid(0));
+        assertEquals("com.example.app", scanner.getName(0));
+    }
+
+    @Test
+    public void skipsProcessesWithoutUid() throws Exception {
+        process(600, "com.example.app", "Name:\tapp\nState:\tS (sleeping)\n",
+                "600 (app) S 1 0 0 0 -1\n");
+        process(601, "com.example.other", 10100, 'S');
+
+        ProcScanner scanner = new ProcScanner(mFolder.getRoot(), 8);
+        assertEquals(1, scanner.scan());
+        assertEquals(601, scanner.getPid(0));
+    }
+
+    @Test
+    public void growsPastTheInitialCapacity() throws Exception {
+        for (int pid = 1000; pid < 1010; pid++) {
+            process(pid, "com.example.app" + pid, 10000 + pid, 'S');
+        }
+
+        ProcScanner scanner = new ProcScanner(mFolder.getRoot(), 2);
+        assertEquals(10, scanner.scan());
+        for (int pid = 1000; pid < 1010; pid++) {
+            int index = indexOf(scanner, pid);
+            assertEquals("com.example.app" + pid, scanner.getName(index));
+            assertEquals(10000 + pid, scanner.getUid(index));
+        }
+        // Scans reuse the grown arrays
+        assertEquals(10, scanner.scan());
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2016 Hugo Matalonga & João Paulo Fernandes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmatalonga.greenhub.util;
+
+import android.content.SharedPreferences;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests the parsing of the settings snapshot.
+ */
+public class SettingsSnapshotTest {
+
+    @Test
+    public void readsTypedValues() throws Exception {
+        SharedPreferences sp = mock(SharedPreferences.class);
+        when(sp.getString(eq(SettingsUtils.PREF_TEMPERATURE_WARNING), anyString()))
+                .thenReturn("035");
+        when(sp.getString(eq(SettingsUtils.PREF_UPLOAD_RATE), anyString())).thenReturn("50");
+        when(sp.getBoolean(eq(SettingsUtils.PREF_POWER_INDICATOR), eq(false))).thenReturn(true);
+
+        SettingsSnapshot snapshot = SettingsSnapshot.from(sp);
+
+        assertEquals(35, snapshot.temperatureWarning);
+        assertEquals(50, snapshot.uploadRate);
+        assertTrue(snapshot.powerIndicator);
+    }
+
+    @Test
+    public void invalidNumbersFallBackToDefaults() throws Exception {
+        SharedPreferences sp = mock(SharedPreferences.class);
+        when(sp.getString(eq(SettingsUtils.PREF_TEMPERATURE_HIGH), anyString()))
+                .thenReturn("hot");
+
+        SettingsSnapshot snapshot = SettingsSnapshot.from(sp);
+
+        assertEquals(45, snapshot.temperatureHigh);
+        // Missing values as well
+        assertEquals(5, snapshot.temperatureRate);
+    }
+
+    @Test
+    public void coversOnlyItsPreferences() throws Exception {
+        assertTrue(SettingsSnapshot.covers(SettingsUtils.PREF_TEMPERATURE_WARNING));
+        assertTrue(SettingsSnapshot.covers(null));
+        assertFalse(SettingsSnapshot.covers(SettingsUtils.PREF_LAST_TEMPERATURE_ALERT));
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2016 Hugo Matalonga & João Paulo Fernandes
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hmatalonga.greenhub.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the snapshots of the telemetry ring, alone and while it is being written.
+ */
+public class TelemetryRingTest {
+
+    @Test
+    public void keepsTheMostRecentValues() throws Exception {
+        TelemetryRing ring = new TelemetryRing(4);
+        for (int i = 0; i < 10; i++) {
+            ring.add(i * 1000, i);
+        }
+
+        long[] times = new long[8];
+        float[] values = new float[8];
+        int count = ring.snapshot(0, times, values);
+
+        assertEquals(4, count);
+        for (int i = 0; i < count; i++) {
+            assertEquals((6 + i) * 1000, times[i]);
+            assertEquals(6 + i, values[i], 0);
+        }
+        assertEquals(10, ring.count());
+    }
+
+    @Test
+    public void snapshotIsLimitedBySinceAndLength() throws Exception {
+        TelemetryRing ring = new TelemetryRing(16);
+        for (int i = 0; i < 10; i++) {
+            ring.add(i * 1000, i);
+        }
+
+        long[] times = new long[16];
+        float[] values = new float[16];
+        assertEquals(3, ring.snapshot(7000, times, values));
+        assertEquals(7, values[0], 0);
+
+        times = new long[2];
+        values = new float[2];
+        assertEquals(2, ring.snapshot(0, times, values));
+        assertEquals(8, values[0], 0);
+        assertEquals(9, values[1], 0);
+    }
+
+    @Test
+    public void readersSeeConsistentValuesWhileWriting() throws Exception {
+        final TelemetryRing ring = new TelemetryRing(64);
+        final int total = 200000;
+
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < total; i++) {
+                    ring.add(i, i);
+                }
+            }
+        });
+        writer.start();
+
+        long[] times = new long[64];
+        float[] values = new float[64];
+        while (writer.isAlive()) {
+            int count = ring.snapshot(0, times, values);
+            for (int i = 0; i < count; i++) {
+                // A torn slot would pair a time with the value of another lap
+                assertEquals((float) times[i], values[i], 0);
+                if (i > 0) assertEquals(times[i - 1] + 1, times[i]);
+            }
+        }
+        writer.join();
+
+        assertTrue(ring.snapshot(0, times, values) == 64);
+        assertEquals(total - 1, times[63]);
+    }
+}